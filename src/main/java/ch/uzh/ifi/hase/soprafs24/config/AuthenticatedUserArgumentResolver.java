@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Resolves controller parameters of type AuthenticatedUser from the
+ * "Authorization: Bearer <token>" header. The token is looked up once per
+ * request (through the AuthenticatedUserCache) and the result is kept as a
+ * request attribute; a missing header, an unknown token or a user that is not
+ * online is rejected with 401 before the controller runs. A parameter that
+ * is annotated with @Nullable is null instead.
+ */
+public class AuthenticatedUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    static final String REQUEST_ATTRIBUTE = AuthenticatedUser.class.getName();
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final UserService userService;
+
+    public AuthenticatedUserArgumentResolver(UserService userService) {
+        this.userService = userService;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return AuthenticatedUser.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public AuthenticatedUser resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+            NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Object resolved = webRequest.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (resolved instanceof AuthenticatedUser) {
+            return (AuthenticatedUser) resolved;
+        }
+        try {
+            AuthenticatedUser user = authenticate(webRequest.getHeader(HttpHeaders.AUTHORIZATION));
+            webRequest.setAttribute(REQUEST_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+            return user;
+        } catch (ResponseStatusException e) {
+            if (parameter.isOptional()) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private AuthenticatedUser authenticate(String authorizationHeader) {
+        if (authorizationHeader == null || authorizationHeader.trim().isEmpty()
+                || !authorizationHeader.startsWith(BEARER_PREFIX)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED,
+                    "Unauthorized: Missing or invalid Authorization header.");
+        }
+        AuthenticatedUser user = userService.getAuthenticatedUser(authorizationHeader.substring(BEARER_PREFIX.length()));
+        if (user == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found");
+        }
+        if (!user.isOnline()) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Not authorized (login required)");
+        }
+        return user;
+    }
+}
@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.calendar.CalendarScopes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+
+/**
+ * The Google API objects shared by all calendar operations: one HTTP transport,
+ * whose keep-alive connections and TLS sessions are reused by every request to
+ * Google, and one authorization code flow, so the client secrets are read and
+ * parsed once.
+ * The flow is created on first use, an instance without Google credentials
+ * starts and only fails when the calendar is used.
+ */
+@Configuration
+public class GoogleCalendarConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(GoogleCalendarConfig.class);
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    private static final String OFFLINE = "offline";
+
+    @Bean
+    public NetHttpTransport googleHttpTransport() throws GeneralSecurityException, IOException {
+        return GoogleNetHttpTransport.newTrustedTransport();
+    }
+
+    @Bean
+    @Lazy
+    public GoogleAuthorizationCodeFlow googleAuthorizationCodeFlow(NetHttpTransport googleHttpTransport,
+            JpaDataStoreFactory jpaDataStoreFactory) throws IOException {
+        return new GoogleAuthorizationCodeFlow.Builder(
+                googleHttpTransport,
+                JSON_FACTORY,
+                loadClientSecrets(),
+                Collections.singletonList(CalendarScopes.CALENDAR))
+                .setAccessType(OFFLINE)
+                .setDataStoreFactory(jpaDataStoreFactory)
+                .setTokenServerUrl(new GenericUrl("https://oauth2.googleapis.com/token"))
+                .build();
+    }
+
+    private GoogleClientSecrets loadClientSecrets() throws IOException {
+        String json = System.getenv("GOOGLE_CALENDAR_CREDENTIALS");
+
+        if (json == null || json.isEmpty()) {
+            logger.warn("GOOGLE_CALENDAR_CREDENTIALS environment variable is not set. Using local_credentials.json as fallback.");
+
+            try (InputStream in = new FileInputStream("src/main/resources/local_credentials.json")) {
+                return GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in));
+            } catch (FileNotFoundException e) {
+                logger.error("local_credentials.json not found. Google Calendar integration will not work.", e);
+                throw new IllegalStateException("Missing both GOOGLE_CALENDAR_CREDENTIALS and local_credentials.json", e);
+            }
+        }
+        return GoogleClientSecrets.load(JSON_FACTORY,
+                new InputStreamReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+    }
+}
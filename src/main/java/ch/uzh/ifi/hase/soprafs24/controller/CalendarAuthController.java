@@ -1,5 +1,6 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
 import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
@@ -36,18 +37,9 @@ public class CalendarAuthController {
 
     @GetMapping("/calendar/auth-url")
     @ResponseStatus(HttpStatus.OK)
-    public Map<String, String> getGoogleAuthUrl(@RequestHeader("Authorization") String authorizationHeader) throws Exception {
-        String token = validateAuthorizationHeader(authorizationHeader);
-        if (!userService.validateToken(token)) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-        }
-        // Get authenticated user ID
-        Long userId = userService.findIDforToken(token);
-        if (userId == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-        }
+    public Map<String, String> getGoogleAuthUrl(AuthenticatedUser user) throws Exception {
         try {
-            String authURL = calendarService.generateAuthUrl(userId);
+            String authURL = calendarService.generateAuthUrl(user.getUserId());
             return Collections.singletonMap("authUrl", authURL);
         } catch (IllegalStateException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Google Calendar integration is not enabled.");
@@ -74,11 +66,4 @@ public class CalendarAuthController {
         // Redirect to frontend calendar page
         return new RedirectView(calendarService.getRedirectURL(teamId));
     }
-
-    private String validateAuthorizationHeader(String authorizationHeader) {
-        if (authorizationHeader == null || authorizationHeader.trim().isEmpty() || !authorizationHeader.startsWith("Bearer ")) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Missing or invalid Authorization header.");
-        }
-        return authorizationHeader.substring(7);  // Remove "Bearer " prefix
-    }
 }
@@ -1,8 +1,8 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.repository.GoogleTokenRepository;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
 import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
-import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.service.TeamService;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,15 +25,13 @@ public class CalendarController {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CalendarController.class);
 
     private final CalendarService calendarService;
-    private final UserService userService;
     private final TeamService teamService;
     private final GoogleTokenRepository googleTokenRepository;
     
 
     @Autowired
-    public CalendarController(CalendarService calendarService, UserService userService, TeamService teamService, GoogleTokenRepository googleTokenRepository) {
+    public CalendarController(CalendarService calendarService, TeamService teamService, GoogleTokenRepository googleTokenRepository) {
         this.calendarService = calendarService;
-        this.userService = userService;
         this.teamService = teamService;
         this.googleTokenRepository = googleTokenRepository;
     }
@@ -41,18 +39,10 @@ public class CalendarController {
 
     @PostMapping("/calendar/sync")
     @ResponseStatus(HttpStatus.OK)
-    public String syncAllActiveTasks(@RequestHeader("Authorization") String authorizationHeader) {
-        String token = validateAuthorizationHeader(authorizationHeader);
-        if (!userService.validateToken(token)) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-        }
+    public String syncAllActiveTasks(AuthenticatedUser user) {
         // Validate if the team is paused
-        teamService.validateTeamPaused(token);
-        // Get authenticated user ID
-        Long userId = userService.findIDforToken(token);
-        if (userId == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-        }
+        teamService.validateTeamPaused(user);
+        Long userId = user.getUserId();
         requireSyncedGoogleAccount(userId);
         // Sync active tasks to Google Calendar
         calendarService.syncAllActiveTasksToUserCalendar(userId);
@@ -64,16 +54,8 @@ public class CalendarController {
     @ResponseStatus(HttpStatus.OK)
     public List<Map<String, Object>> getEventsInRange(@RequestParam String startDate, // Format: "YYYY-MM-DD"
                                         @RequestParam String endDate,  // Format: "YYYY-MM-DD"
-                                        @RequestHeader("Authorization") String authorizationHeader) throws IOException {
-        String token = validateAuthorizationHeader(authorizationHeader);
-        if (!userService.validateToken(token)) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-        }
-        // Get authenticated user ID
-        Long userId = userService.findIDforToken(token);
-        if (userId == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-        }
+                                        AuthenticatedUser user) throws IOException {
+        Long userId = user.getUserId();
         // Check if user has a linked Google token
         requireSyncedGoogleAccount(userId);
 
@@ -83,16 +65,8 @@ public class CalendarController {
 
     @GetMapping("/calendar/events/{id}")
     @ResponseStatus(HttpStatus.OK)
-    public Map<String, Object> getEventById(@PathVariable String id, @RequestHeader("Authorization") String authorizationHeader) throws IOException, GeneralSecurityException {
-        String token = validateAuthorizationHeader(authorizationHeader);
-        if (!userService.validateToken(token)) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-        }
-        // Get authenticated user ID
-        Long userId = userService.findIDforToken(token);
-        if (userId == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-        }
+    public Map<String, Object> getEventById(@PathVariable String id, AuthenticatedUser user) throws IOException, GeneralSecurityException {
+        Long userId = user.getUserId();
         requireSyncedGoogleAccount(userId);
         Event event = calendarService.getEventById(id, userId);
         if (event == null) {
@@ -130,30 +104,15 @@ public class CalendarController {
             @RequestParam(defaultValue = "true") boolean activeOnly,
             @RequestParam String startDate, // Format: "YYYY-MM-DD"
             @RequestParam String endDate,  // Format: "YYYY-MM-DD"
-            @RequestHeader("Authorization") String authorizationHeader) throws IOException {
+            AuthenticatedUser user) throws IOException {
 
-        String token = validateAuthorizationHeader(authorizationHeader);
-        if (!userService.validateToken(token)) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-        }
-        // Get authenticated user ID
-        Long userId = userService.findIDforToken(token);
-        if (userId == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-        }
+        Long userId = user.getUserId();
         requireSyncedGoogleAccount(userId);
 
         return calendarService.getCombinedEvents(userId, activeOnly, startDate, endDate);
     }
 
 
-    private String validateAuthorizationHeader(String authorizationHeader) {
-        if (authorizationHeader == null || authorizationHeader.trim().isEmpty() || !authorizationHeader.startsWith("Bearer ")) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Missing or invalid Authorization header.");
-        }
-        return authorizationHeader.substring(7);  // Remove "Bearer " prefix
-    }
-
     private void requireSyncedGoogleAccount(Long userId) {
         GoogleToken token = googleTokenRepository.findGoogleTokenById(userId);
         if (token == null) {
@@ -0,0 +1,83 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Helpers for list endpoints that support keyset pagination (afterId, limit)
+ * and streamed JSON arrays.
+ * A page is a plain JSON array; if it is full, the X-Next-After-Id header holds
+ * the afterId to request the next page with. Streamed responses are served by a
+ * separate handler mapped to stream=true.
+ */
+final class KeysetResponses {
+
+  static final String NEXT_AFTER_ID_HEADER = "X-Next-After-Id";
+  static final int DEFAULT_LIMIT = 50;
+  static final int MAX_LIMIT = 500;
+
+  private KeysetResponses() {
+  }
+
+  static boolean isPageRequest(Long afterId, Integer limit) {
+    return afterId != null || limit != null;
+  }
+
+  static int resolveLimit(Integer limit) {
+    if (limit == null) {
+      return DEFAULT_LIMIT;
+    }
+    if (limit < 1 || limit > MAX_LIMIT) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_LIMIT);
+    }
+    return limit;
+  }
+
+  static long resolveAfterId(Long afterId) {
+    return afterId == null ? 0L : afterId;
+  }
+
+  static <T> ResponseEntity<List<T>> page(List<T> items, int limit, Function<T, Long> idOf) {
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (items.size() == limit) {
+      response.header(NEXT_AFTER_ID_HEADER, String.valueOf(idOf.apply(items.get(items.size() - 1))));
+    }
+    return response.body(items);
+  }
+
+  /**
+   * Writes a JSON array element by element while the producer runs, so the
+   * response never holds more than one element in memory.
+   *
+   * @param objectMapper The mapper used to serialize the elements.
+   * @param producer     Receives the element writer and calls it once per element.
+   */
+  static ResponseEntity<StreamingResponseBody> jsonArray(ObjectMapper objectMapper, Consumer<Consumer<Object>> producer) {
+    StreamingResponseBody body = outputStream -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.writeStartArray();
+        producer.accept(element -> {
+          try {
+            generator.writeObject(element);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        generator.writeEndArray();
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+}
@@ -1,20 +1,24 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.entity.TaskExpiryJob;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskExpiryJobGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskPutDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.service.TaskExpiryService;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
-import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.service.TeamService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
-import java.util.Date;
-import java.util.Calendar;
-
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,40 +27,58 @@ import java.util.List;
 public class TaskController {
 
   private final TaskService taskService;
-  private final UserRepository userrepository;
   private final TeamService teamService;
   private final UserService userService;
+  private final TaskExpiryService taskExpiryService;
+  private final ObjectMapper objectMapper;
   private String additionalTask = "additional"; 
   
 
-  TaskController(TaskService taskService, UserRepository userrepository, TeamService teamService, UserService userService) {
+  TaskController(TaskService taskService, TeamService teamService, UserService userService,
+                 TaskExpiryService taskExpiryService, ObjectMapper objectMapper) {
     this.taskService = taskService;
-    this.userrepository = userrepository;
     this.teamService = teamService;
     this.userService = userService;
+    this.taskExpiryService = taskExpiryService;
+    this.objectMapper = objectMapper;
   }
     @PostMapping("/tasks")
     @ResponseStatus(HttpStatus.CREATED)
-    public TaskGetDTO createTask(@RequestBody TaskPostDTO taskPostDTO, @RequestHeader("Authorization") String authorizationHeader) {
-        // Extract the token from the Bearer header
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
+    public TaskGetDTO createTask(@RequestBody TaskPostDTO taskPostDTO, AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
         // validate the DTO before converting to catch errors
         taskService.validatePostDto(taskPostDTO);
         // Convert the incoming DTO to an entity
         Task task = DTOMapper.INSTANCE.convertTaskPostDTOtoEntity(taskPostDTO);
         // send the task to the service for creation
-        Task createdTask = taskService.createTask(task, userToken);
+        Task createdTask = taskService.createTask(task, user);
         // Convert the created entity back to a DTO for the response
         return DTOMapper.INSTANCE.convertEntityToTaskGetDTO(createdTask);
     }
 
+    @PostMapping("/tasks/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public List<TaskGetDTO> createTasks(@RequestBody List<TaskPostDTO> taskPostDTOs, AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
+        // validate the whole batch first, nothing is created if one task is invalid
+        taskService.validateBatchPostDtos(taskPostDTOs);
+        List<Task> tasks = new ArrayList<>();
+        for (TaskPostDTO taskPostDTO : taskPostDTOs) {
+            tasks.add(DTOMapper.INSTANCE.convertTaskPostDTOtoEntity(taskPostDTO));
+        }
+        List<Task> createdTasks = taskService.createTasks(tasks, user);
+
+        List<TaskGetDTO> taskGetDTOs = new ArrayList<>();
+        for (Task task : createdTasks) {
+            taskGetDTOs.add(DTOMapper.INSTANCE.convertEntityToTaskGetDTO(task));
+        }
+        return taskGetDTOs;
+    }
+
     @PostMapping("/tasks/luckyDraw")
-    public List<TaskGetDTO> luckyDraw(@RequestHeader("Authorization") String authorizationHeader) {
-        // Extract the token from the Bearer header
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
-        Long userTeamId = userrepository.findByToken(userToken).getTeamId();
+    public List<TaskGetDTO> luckyDraw(AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
+        Long userTeamId = user.getTeamId();
         // Retrieve all active tasks using the service
         List<Task> updatedTasks = taskService.luckyDrawTasks(userTeamId);
 
@@ -68,11 +90,9 @@ public class TaskController {
     }
 
     @PostMapping("/tasks/autodistribute")
-    public List<TaskGetDTO> autodistribute(@RequestHeader("Authorization") String authorizationHeader) {
-        // Extract the token from the Bearer header
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
-        Long userTeamId = userrepository.findByToken(userToken).getTeamId();
+    public List<TaskGetDTO> autodistribute(AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
+        Long userTeamId = user.getTeamId();
         // Call service to do the actual task distribution and XP update
         List<Task> updatedTasks = taskService.autodistributeTasks(userTeamId);
    
@@ -84,32 +104,41 @@ public class TaskController {
     }
 
     @GetMapping("/tasks")
-    @ResponseStatus(HttpStatus.OK)
-    public List<TaskGetDTO> getTasks(@RequestParam(required = false) Boolean isActive,
+    public ResponseEntity<List<TaskGetDTO>> getTasks(@RequestParam(required = false) Boolean isActive,
                                         @RequestParam(required = false) String type,
-                                        @RequestHeader("Authorization") String authorizationHeader) {
-        // Validate the user token
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
-        // Retrieve all tasks using the service
-        List<Task> tasks = taskService.getFilteredTasks(isActive, type);
-        // Convert the list of entities to a list of DTOs for the response
-        List<TaskGetDTO> taskGetDTOs = new ArrayList<>();
-        Long userTeamId = userrepository.findByToken(userToken).getTeamId();
-        for (Task task : tasks) {
-            if (task.getTeamId().equals(userTeamId)) {
-            taskGetDTOs.add(DTOMapper.INSTANCE.convertEntityToTaskGetDTO(task));
-            }
+                                        @RequestParam(required = false) Long afterId,
+                                        @RequestParam(required = false) Integer limit,
+                                        AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
+        Long userTeamId = user.getTeamId();
+        // Retrieve the tasks of the user's team as DTOs (projection query), one page if afterId or limit is given
+        int pageSize = KeysetResponses.resolveLimit(limit);
+        boolean isPageRequest = KeysetResponses.isPageRequest(afterId, limit);
+        List<TaskGetDTO> taskGetDTOs = isPageRequest
+                ? taskService.getFilteredTaskDTOsPage(userTeamId, isActive, type,
+                        KeysetResponses.resolveAfterId(afterId), pageSize)
+                : taskService.getFilteredTaskDTOs(userTeamId, isActive, type);
+        if (isPageRequest) {
+            return KeysetResponses.page(taskGetDTOs, pageSize, TaskGetDTO::getId);
         }
-        return taskGetDTOs;
+        return ResponseEntity.ok(taskGetDTOs);
+    }
+
+    @GetMapping(value = "/tasks", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamTasks(@RequestParam(required = false) Boolean isActive,
+                                        @RequestParam(required = false) String type,
+                                        AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
+        Long userTeamId = user.getTeamId();
+        // the tasks are written to the response one by one while they are read from the database
+        return KeysetResponses.jsonArray(objectMapper, writeElement -> taskService.forEachFilteredTaskDTO(
+                userTeamId, isActive, type, writeElement::accept));
     }
 
     @GetMapping("/tasks/{taskId}")
     @ResponseStatus(HttpStatus.OK)
-    public TaskGetDTO getTask(@PathVariable Long taskId, @RequestHeader("Authorization") String authorizationHeader) {
-        // Validate the user token
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
+    public TaskGetDTO getTask(@PathVariable Long taskId, AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
         // Retrieve the task using the service
         Task task = taskService.getTaskById(taskId);
         if (task == null) {
@@ -121,13 +150,14 @@ public class TaskController {
 
     @GetMapping("/tasks/{taskId}/isEditable")
     @ResponseStatus(HttpStatus.OK)
-    public Boolean getIsEditable(@PathVariable Long taskId, @RequestHeader("Authorization") String authorizationHeader) {
+    public Boolean getIsEditable(@PathVariable Long taskId, @Nullable AuthenticatedUser user) {
+        if (user == null) {
+            return false; // not logged in
+        }
         try {
-            // Validate the user token
-            String userToken = validateAuthorizationHeader(authorizationHeader);
-            teamService.validateTeamPaused(userToken);
+            teamService.validateTeamPaused(user);
             // Validate whether the user can edit the task
-            taskService.validateCreator(userToken, taskId);
+            taskService.validateCreator(user, taskId);
             Task task = taskService.getTaskById(taskId);
             if (!additionalTask.equals(taskService.checkTaskType(task))) {
                 throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Task is not editable");
@@ -140,19 +170,17 @@ public class TaskController {
 
     @PutMapping("/tasks/{taskId}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public TaskGetDTO updateTask(@PathVariable Long taskId, @RequestBody TaskPutDTO taskPutDTO, @RequestHeader("Authorization") String authorizationHeader) {
-        // Validate the user token
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
+    public TaskGetDTO updateTask(@PathVariable Long taskId, @RequestBody TaskPutDTO taskPutDTO, AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
         // check if task is in the same team as the user
-        taskService.validateTaskInTeam(userToken, taskId);
+        taskService.validateTaskInTeam(user, taskId);
         // Checks if user is the creator of the task and if task exists
-        taskService.validateRecurringEdit(userToken, taskId);
+        taskService.validateRecurringEdit(user, taskId);
         // Retrieve the existing task
         Task existingTask = taskService.getTaskById(taskId);
         // convert putDTO to entity
         Task task = DTOMapper.INSTANCE.convertTaskPutDTOtoEntity(taskPutDTO);
-        Long userId = userrepository.findByToken(userToken).getId();
+        Long userId = user.getUserId();
         Task updatedTask = taskService.updateTask(existingTask, task,userId);
         // Convert the updated entity back to a DTO for the response
         return DTOMapper.INSTANCE.convertEntityToTaskGetDTO(updatedTask);
@@ -161,14 +189,10 @@ public class TaskController {
     //decided on Patch since it only requires the update of one singular field
     @PatchMapping("/tasks/{taskId}/claim")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public TaskGetDTO claimTasks(@PathVariable Long taskId, @RequestHeader("Authorization") String authorizationHeader) {
-        // Validate the user token        
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
-        //Retrieves Task by Id or throws Http error if the task doesn't exist
-        Task existingTask = taskService.getTaskById(taskId);
-        //Claims the task for the user and assigns the user to the correct field 
-        Task claimed = taskService.claimTask(existingTask,userToken);               
+    public TaskGetDTO claimTasks(@PathVariable Long taskId, AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
+        //Claims the task for the user in one conditional update (404 if missing, 409 if already claimed)
+        Task claimed = taskService.claimTask(taskId, user);
         // Convert the updated entity back to a DTO for the response
         return DTOMapper.INSTANCE.convertEntityToTaskGetDTO(claimed);
     }
@@ -176,87 +200,46 @@ public class TaskController {
     @PatchMapping("/tasks/{taskId}/quit")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void quitTasks(@PathVariable Long taskId, 
-                                      @RequestHeader("Authorization") String authorizationHeader){
+                                      AuthenticatedUser user){
         
-        // Validate the user token
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
+        teamService.validateTeamPaused(user);
         // check if task is in the same team as the user
-        taskService.validateTaskInTeam(userToken, taskId);
+        taskService.validateTaskInTeam(user, taskId);
         // Unclaims the task for the user and assigns the user to the correct field
-        taskService.quitTask(taskId,userrepository.findByToken(userToken).getId());
+        taskService.quitTask(taskId,user.getUserId());
     }
 
 
     @GetMapping("/tasks/expire")
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    public List<TaskGetDTO> expireTasks(@RequestHeader(value = "X-CRON-AUTH", required = false) String authHeader) {
-        if (!"mySecureCronToken987".equals(authHeader)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Access denied. Cron job only.");
-        }
-
-        // Get all tasks in the system
-        List<Task> allTasks = taskService.getAllTasks();
-
-        Calendar today = Calendar.getInstance();
-        today.set(Calendar.HOUR_OF_DAY, 0);
-        today.set(Calendar.MINUTE, 0);
-        today.set(Calendar.SECOND, 0);
-        today.set(Calendar.MILLISECOND, 0);
-        Date currentDate = today.getTime();
-
-        List<TaskGetDTO> expiredTasks = new ArrayList<>();
-
-        for (Task task : allTasks) {
-            if (!Boolean.TRUE.equals(task.getActiveStatus())) continue;
-
-            if (task.getDeadline().before(currentDate)) {
-                if (task.getIsAssignedTo() != null) {
-                    userService.deductExperiencePoints(task.getIsAssignedTo(), task.getValue());
-                } else {
-                    taskService.deductExperiencePointsFromAll(task.getTeamId(), task.getValue());
-                }
-
-                Date oldDeadline = task.getDeadline();
-                task.setStartDate(oldDeadline);
-
-                String taskType = taskService.checkTaskType(task);
-                if (additionalTask.equals(taskType)) {
-                    int daysVisible = task.getDaysVisible();
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.setTime(task.getStartDate());
-                    calendar.add(Calendar.DATE, daysVisible);
-                    task.setDeadline(calendar.getTime());
-                } else {
-                    taskService.calculateDeadlineOnExpire(task);
-                }
-
-                taskService.unLuckyDraw(task);
-                taskService.unassignTask(task);
-                taskService.saveTask(task);
-
-                expiredTasks.add(DTOMapper.INSTANCE.convertEntityToTaskGetDTO(task));
-            }
-        }
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public TaskExpiryJobGetDTO expireTasks(@RequestHeader(value = "X-CRON-AUTH", required = false) String authHeader) {
+        validateCronHeader(authHeader);
+        // the expiry runs in the background, the job reports its progress
+        TaskExpiryJob job = taskExpiryService.startExpiryJob();
+        return DTOMapper.INSTANCE.convertEntityToTaskExpiryJobGetDTO(job);
+    }
 
-        return expiredTasks;
+    @GetMapping("/tasks/expire/{jobId}")
+    @ResponseStatus(HttpStatus.OK)
+    public TaskExpiryJobGetDTO getExpiryJob(@PathVariable Long jobId,
+            @RequestHeader(value = "X-CRON-AUTH", required = false) String authHeader) {
+        validateCronHeader(authHeader);
+        return DTOMapper.INSTANCE.convertEntityToTaskExpiryJobGetDTO(taskExpiryService.getJob(jobId));
     }
 
 
     @DeleteMapping("/tasks/{taskId}/finish")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public List<TaskGetDTO> finishTasks(@PathVariable Long taskId, @RequestHeader("Authorization") String authorizationHeader) {
-        // Validate the user token
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
+    public List<TaskGetDTO> finishTasks(@PathVariable Long taskId, AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
         
         // Check if task is in the same team as the user
-        taskService.validateTaskInTeam(userToken, taskId);
+        taskService.validateTaskInTeam(user, taskId);
         
         // Get the task by ID
         Task task = taskService.getTaskById(taskId);
         
-        Long userId = userrepository.findByToken(userToken).getId();
+        Long userId = user.getUserId();
         if (task.getIsAssignedTo() == null || !task.getIsAssignedTo().equals(userId)) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You can only finish tasks that you have claimed");
         }
@@ -292,22 +275,19 @@ public class TaskController {
     
     @DeleteMapping("/tasks/{taskId}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void deleteTask(@PathVariable Long taskId, @RequestHeader("Authorization") String authorizationHeader) {
-        // Validate the user token
-        String userToken = validateAuthorizationHeader(authorizationHeader);
-        teamService.validateTeamPaused(userToken);
+    public void deleteTask(@PathVariable Long taskId, AuthenticatedUser user) {
+        teamService.validateTeamPaused(user);
         // check if task is in the same team as the user
-        taskService.validateTaskInTeam(userToken, taskId);
+        taskService.validateTaskInTeam(user, taskId);
         // Checks if user is the creator of the task and if task exists
-        taskService.validateRecurringEdit(userToken, taskId);
+        taskService.validateRecurringEdit(user, taskId);
         // Delete the task using the service
-        taskService.deleteTask(taskId,userrepository.findByToken(userToken).getId());
+        taskService.deleteTask(taskId,user.getUserId());
     }
 
-    private String validateAuthorizationHeader(String authorizationHeader) {
-        if (authorizationHeader == null || authorizationHeader.trim().isEmpty() || !authorizationHeader.startsWith("Bearer ")) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Missing or invalid Authorization header.");
+    private void validateCronHeader(String authHeader) {
+        if (!"mySecureCronToken987".equals(authHeader)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Access denied. Cron job only.");
         }
-        return authorizationHeader.substring(7);  // Remove "Bearer " prefix
-      }
+    }
 }
\ No newline at end of file
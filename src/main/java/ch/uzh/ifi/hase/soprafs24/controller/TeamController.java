@@ -5,6 +5,7 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.team.TeamGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.team.TeamPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.team.TeamPutDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
@@ -41,41 +42,19 @@ public class TeamController {
   @PostMapping("/teams")
   @ResponseStatus(HttpStatus.CREATED)
   
-  public TeamGetDTO createTeam(@RequestBody TeamPostDTO teamPostDTO, @RequestHeader("Authorization") String authorizationHeader) {
-    // convert API user to internal representation
-    String token = validateAuthorizationHeader(authorizationHeader);
-
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-
-    Long userId = userService.findIDforToken(token);
-    if (userId == null) {
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-    }
+  public TeamGetDTO createTeam(@RequestBody TeamPostDTO teamPostDTO, AuthenticatedUser user) {
     // Convert DTO to Team entity
     Team newTeam = DTOMapper.INSTANCE.convertTeamPostDTOtoEntity(teamPostDTO);
     
     // create user
-    Team createdTeam = teamService.createTeam(userId, newTeam);    // convert internal representation of user back to API
-    return DTOMapper.INSTANCE.convertEntityToTeamGetDTO(createdTeam);
+    Team createdTeam = teamService.createTeam(user.getUserId(), newTeam);    // convert internal representation of user back to API
+    return convertTeamToDTO(createdTeam);
   }
 
   @PostMapping("/teams/join")
   @ResponseStatus(HttpStatus.CREATED)
   
-  public Team joinTeam(@RequestBody TeamPostDTO teamPostDTO, @RequestHeader("Authorization") String authorizationHeader) {
-    // Validate the token
-    String token = validateAuthorizationHeader(authorizationHeader);
-
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-    // Get user ID from token
-    Long userId = userService.findIDforToken(token);
-    if (userId == null) {
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-    }
+  public TeamGetDTO joinTeam(@RequestBody TeamPostDTO teamPostDTO, AuthenticatedUser user) {
     // Get team code from DTO
     Team newTeam = DTOMapper.INSTANCE.convertTeamPostDTOtoEntity(teamPostDTO);
     String code = newTeam.getCode();
@@ -83,39 +62,25 @@ public class TeamController {
         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing or invalid team code.");
     }
     // Process team joining
-    teamService.joinTeam(userId, code);
-    return teamService.getTeamByCode(code);
+    teamService.joinTeam(user.getUserId(), code);
+    return convertTeamToDTO(teamService.getTeamByCode(code));
   }
 
   @GetMapping("/teams/{teamId}")
   @ResponseStatus(HttpStatus.OK)
   
-  public TeamGetDTO getTeamById(@PathVariable Long teamId, @RequestHeader("Authorization") String authorizationHeader) {
-    // Extract and validate the token
-    String token = validateAuthorizationHeader(authorizationHeader);
-
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-
+  public TeamGetDTO getTeamById(@PathVariable Long teamId, AuthenticatedUser user) {
     // Fetch all users
     Team team = teamService.getTeamById(teamId);
 
     // Convert each user to the API representation
-    return DTOMapper.INSTANCE.convertEntityToTeamGetDTO(team);
+    return convertTeamToDTO(team);
   }
 
   @GetMapping("/teams/{teamId}/users")
   @ResponseStatus(HttpStatus.OK)
   
-  public List<UserGetDTO> getUsersByTeam(@PathVariable Long teamId, @RequestHeader("Authorization") String authorizationHeader) {
-    // Extract and validate the token
-    String token = validateAuthorizationHeader(authorizationHeader);
-
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-
+  public List<UserGetDTO> getUsersByTeam(@PathVariable Long teamId, AuthenticatedUser user) {
     // Fetch user IDs from the team
     List<Long> userIds = teamService.getUsersByTeamId(teamId);
 
@@ -133,44 +98,19 @@ public class TeamController {
   @PutMapping("/teams/{teamId}")
   @ResponseStatus(HttpStatus.NO_CONTENT)
   public void editTeamName(@PathVariable Long teamId, @RequestBody TeamPutDTO teamPutDTO, 
-                         @RequestHeader("Authorization") String authorizationHeader) {    
-
-    // Validate token
-    String token = validateAuthorizationHeader(authorizationHeader);
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-
-    // Get authenticated user ID
-    Long userId = userService.findIDforToken(token);
-    if (userId == null) {
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-    }
+                         AuthenticatedUser user) {    
 
     // Extract new team name from DTO
     String newTeamName = teamPutDTO.getName();
 
     // Call service to update team name
-    teamService.updateTeamName(teamId, userId, newTeamName);
+    teamService.updateTeamName(teamId, user.getUserId(), newTeamName);
   }
 
   @PutMapping("/teams/{teamId}/paused")
   @ResponseStatus(HttpStatus.NO_CONTENT)
-  public void pauseTeam(@PathVariable Long teamId, @RequestHeader("Authorization") String authorizationHeader) {
-    // Extract and validate the token
-    String token = validateAuthorizationHeader(authorizationHeader);
-
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-
-    // Get authenticated user ID
-    Long userId = userService.findIDforToken(token);
-    if (userId == null) {
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found.");
-    }
-
-    teamService.pauseTeam(teamId, userId);
+  public void pauseTeam(@PathVariable Long teamId, AuthenticatedUser user) {
+    teamService.pauseTeam(teamId, user.getUserId());
 
 
 
@@ -179,28 +119,19 @@ public class TeamController {
   @DeleteMapping("/teams/{teamId}/users/{userId}")
   @ResponseStatus(HttpStatus.NO_CONTENT)
   public void userQuit(@PathVariable Long teamId, @PathVariable Long userId, 
-                     @RequestHeader("Authorization") String authorizationHeader) {
-
-    String token = validateAuthorizationHeader(authorizationHeader);
-    
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-  
-    Long authenticatedUserId = userService.findIDforToken(token);
-
+                     AuthenticatedUser user) {
     // Ensure the user can only quit their own team
-    if (!authenticatedUserId.equals(userId)) {
+    if (!user.getUserId().equals(userId)) {
         throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Forbidden: You can only quit your own team.");
     }
     teamService.quitTeam(userId, teamId);
   }
 
-  private String validateAuthorizationHeader(String authorizationHeader) {
-    if (authorizationHeader == null || authorizationHeader.trim().isEmpty() || !authorizationHeader.startsWith("Bearer ")) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Missing or invalid Authorization header.");
-    }
-    return authorizationHeader.substring(7);  // Remove "Bearer " prefix
+  // members are stored in TEAM_MEMBERSHIP, not on the team entity
+  private TeamGetDTO convertTeamToDTO(Team team) {
+    TeamGetDTO teamGetDTO = DTOMapper.INSTANCE.convertEntityToTeamGetDTO(team);
+    teamGetDTO.setMembers(teamService.getUsersByTeamId(team.getId()));
+    return teamGetDTO;
   }
 }
 
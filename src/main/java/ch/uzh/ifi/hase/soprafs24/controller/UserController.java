@@ -6,15 +6,18 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserPutDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
 
 
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -30,13 +33,16 @@ public class UserController {
   private final UserService userService;
   private final UserRepository userRepository;
   private final TaskService taskService;
+  private final ObjectMapper objectMapper;
 
   
 
-  UserController(UserService userService, UserRepository userRepository, TaskService taskService) {
+  UserController(UserService userService, UserRepository userRepository, TaskService taskService,
+                 ObjectMapper objectMapper) {
     this.userService = userService;
     this.userRepository = userRepository;
     this.taskService = taskService;
+    this.objectMapper = objectMapper;
   }
 
   @PostMapping("/users")
@@ -66,38 +72,32 @@ public class UserController {
   }  
 
   @GetMapping("/users")
-  @ResponseStatus(HttpStatus.OK)
-  
-  public List<UserGetDTO> getAllUsers(@RequestHeader("Authorization") String authorizationHeader) {
-    // Extract and validate the token
-    String token = validateAuthorizationHeader(authorizationHeader);
-
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
+  public ResponseEntity<List<UserGetDTO>> getAllUsers(@RequestParam(required = false) Long afterId,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      AuthenticatedUser user) {
+    // Fetch all users, or one page of them if afterId or limit is given
+    int pageSize = KeysetResponses.resolveLimit(limit);
+    boolean isPageRequest = KeysetResponses.isPageRequest(afterId, limit);
+    // the DTOs are read with a projection query, no User entities are loaded
+    List<UserGetDTO> userGetDTOs = isPageRequest
+        ? userService.getUserDTOsPage(KeysetResponses.resolveAfterId(afterId), pageSize)
+        : userService.getUserDTOs();
+    if (isPageRequest) {
+        return KeysetResponses.page(userGetDTOs, pageSize, UserGetDTO::getId);
     }
+    return ResponseEntity.ok(userGetDTOs);
+  }
 
-    // Fetch all users
-    List<User> users = userService.getUsers();
-    List<UserGetDTO> userGetDTOs = new ArrayList<>();
-
-    // Convert each user to the API representation
-    for (User user : users) {
-        userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
-    }
-    return userGetDTOs;
+  @GetMapping(value = "/users", params = "stream=true")
+  public ResponseEntity<StreamingResponseBody> streamAllUsers(AuthenticatedUser user) {
+    // the users are written to the response one by one while they are read from the database
+    return KeysetResponses.jsonArray(objectMapper, writeElement -> userService.forEachUserDTO(writeElement::accept));
   }
 
   @GetMapping("/users/{userId}")
   @ResponseStatus(HttpStatus.OK)
   
-  public UserGetDTO getUserProfile(@PathVariable Long userId, @RequestHeader("Authorization") String authorizationHeader) {
-    // Extract the token from the Authorization header
-    String token = validateAuthorizationHeader(authorizationHeader);
-
-    if (!userService.validateToken(token)) {
-      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-
+  public UserGetDTO getUserProfile(@PathVariable Long userId, AuthenticatedUser authenticatedUser) {
     User user = userService.getUserById(userId);
     return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
   }
@@ -105,48 +105,28 @@ public class UserController {
   @GetMapping("/users/me")
   @ResponseStatus(HttpStatus.OK)
   
-  public UserGetDTO getUser(@RequestHeader("Authorization") String authorizationHeader) {
-    // Extract the token from the Authorization header
-    String token = validateAuthorizationHeader(authorizationHeader);
-
-    if (!userService.validateToken(token)) {
-      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-
-    User user = userService.getUserByToken(token);
+  public UserGetDTO getUser(AuthenticatedUser authenticatedUser) {
+    User user = userService.getUserById(authenticatedUser.getUserId());
     return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
   }
 
   @PutMapping("/logout")
   @ResponseStatus(HttpStatus.NO_CONTENT)
-  public void logoff(@RequestHeader("Authorization") String authorizationHeader) {
-    String token = validateAuthorizationHeader(authorizationHeader);
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-    Long authenticatedUserId = userService.findIDforToken(token);
-    
-    User user = userService.getUserById(authenticatedUserId);
+  public void logoff(AuthenticatedUser authenticatedUser) {
+    User user = userService.getUserById(authenticatedUser.getUserId());
 
     userService.logoffUser(user);
   }
 
   @PutMapping("/users/{userId}")
   @ResponseStatus(HttpStatus.OK)
-  public UserGetDTO update(@PathVariable Long userId, @RequestBody UserPutDTO userPutDTO, @RequestHeader("Authorization") String authorizationHeader) {    
+  public UserGetDTO update(@PathVariable Long userId, @RequestBody UserPutDTO userPutDTO, AuthenticatedUser authenticatedUser) {    
     if(!userRepository.findById(userId).isPresent()){
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User with userId " + userId + " was not found.");
     }
 
-    String token = validateAuthorizationHeader(authorizationHeader);
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-
-    Long authenticatedUserId = userService.findIDforToken(token);
-    
     // Ensure the user ID in the path matches the authenticated user ID
-    if (!authenticatedUserId.equals(userId)) {
+    if (!authenticatedUser.getUserId().equals(userId)) {
         throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Forbidden: You can only update your own profile.");
     }
       
@@ -161,24 +141,12 @@ public class UserController {
 
   @DeleteMapping("/users/{userId}")
   @ResponseStatus(HttpStatus.NO_CONTENT)
-  public void deleteUser(@PathVariable Long userId, @RequestHeader("Authorization") String authorizationHeader) {
-    String token = validateAuthorizationHeader(authorizationHeader);
-    if (!userService.validateToken(token)) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Invalid token.");
-    }
-    Long authenticatedUserId = userService.findIDforToken(token);
+  public void deleteUser(@PathVariable Long userId, AuthenticatedUser authenticatedUser) {
     // Ensure the user is deleting their own account
-    if (!authenticatedUserId.equals(userId)) {
+    if (!authenticatedUser.getUserId().equals(userId)) {
         throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Forbidden: You can only delete your own account.");
     }
     userService.deleteUser(userId);
     
   }
-
-  private String validateAuthorizationHeader(String authorizationHeader) {
-    if (authorizationHeader == null || authorizationHeader.trim().isEmpty() || !authorizationHeader.startsWith("Bearer ")) {
-        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Missing or invalid Authorization header.");
-    }
-    return authorizationHeader.substring(7);  // Remove "Bearer " prefix
-  }
 }
@@ -0,0 +1,130 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.util.Date;
+import ch.uzh.ifi.hase.soprafs24.constant.CalendarSyncAction;
+
+/**
+ * A pending Google Calendar sync of a task, written in the transaction that
+ * changed the task and drained by the CalendarSyncWorker (transactional outbox).
+ * The row is deleted once the calendar is up to date.
+ */
+@Entity
+@Table(name = "CALENDAR_SYNC_OUTBOX", indexes = {
+        @Index(name = "idx_calendar_sync_due", columnList = "nextAttemptAt"),
+        @Index(name = "idx_calendar_sync_task", columnList = "taskId")
+})
+public class CalendarSyncIntent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // allocationSize 1: the latest intent of a task is the one with the highest id, across instances
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "calendar_sync_outbox_sequence")
+    @SequenceGenerator(name = "calendar_sync_outbox_sequence", sequenceName = "calendar_sync_outbox_sequence", allocationSize = 1)
+    @Column(updatable = false)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long taskId;
+
+    // owner of the calendar, the creator of the task
+    @Column(nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CalendarSyncAction action;
+
+    // event to delete if the worker has not recorded one in the CalendarSyncLease, the task row is gone by then
+    @Column(nullable = true)
+    private String googleEventId;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    // due time, pushed back after a failed attempt
+    @Column(nullable = false)
+    private Date nextAttemptAt;
+
+    @Column(nullable = false)
+    private Date createdAt;
+
+    @Column(nullable = true)
+    private String lastError;
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(Long taskId) {
+        this.taskId = taskId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public CalendarSyncAction getAction() {
+        return action;
+    }
+
+    public void setAction(CalendarSyncAction action) {
+        this.action = action;
+    }
+
+    public String getGoogleEventId() {
+        return googleEventId;
+    }
+
+    public void setGoogleEventId(String googleEventId) {
+        this.googleEventId = googleEventId;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Date nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
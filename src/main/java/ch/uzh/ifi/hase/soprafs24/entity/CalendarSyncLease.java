@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * The lease a CalendarSyncWorker holds while it syncs a task, so the intents
+ * of one task are processed by one instance at a time, and the event id the
+ * worker wrote for the task last. The row outlives the task until its DELETE
+ * intent is processed, which reads the event id from here.
+ */
+@Entity
+@Table(name = "CALENDAR_SYNC_LEASE")
+public class CalendarSyncLease implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(updatable = false)
+    private Long taskId;
+
+    // held until this time, free once it has passed
+    @Column(nullable = false)
+    private Date leasedUntil;
+
+    @Column(nullable = true)
+    private String googleEventId;
+
+    // Getters and Setters
+    public Long getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(Long taskId) {
+        this.taskId = taskId;
+    }
+
+    public Date getLeasedUntil() {
+        return leasedUntil;
+    }
+
+    public void setLeasedUntil(Date leasedUntil) {
+        this.leasedUntil = leasedUntil;
+    }
+
+    public String getGoogleEventId() {
+        return googleEventId;
+    }
+
+    public void setGoogleEventId(String googleEventId) {
+        this.googleEventId = googleEventId;
+    }
+}
@@ -2,6 +2,9 @@ package ch.uzh.ifi.hase.soprafs24.entity;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import java.io.Serializable;
 import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
 import ch.uzh.ifi.hase.soprafs24.listener.TaskEntityListener;
@@ -14,15 +17,28 @@ import java.util.Date;
  * Every variable is mapped to a database field using @Column.
  */
 @Entity
-@Table(name = "TASK")
+@Table(name = "TASK", indexes = {
+        @Index(name = "idx_task_team_active_visible", columnList = "teamId, activeStatus, visibleFrom"),
+        @Index(name = "idx_task_team_assignee", columnList = "teamId, isAssignedTo"),
+        @Index(name = "idx_task_assignee", columnList = "isAssignedTo"),
+        @Index(name = "idx_task_creator", columnList = "creatorId"),
+        @Index(name = "idx_task_locked_by", columnList = "lockedByUser"),
+        @Index(name = "idx_task_lock_expires", columnList = "lockExpiresAt"),
+        @Index(name = "idx_task_active_deadline", columnList = "activeStatus, deadline")
+})
 @EntityListeners(TaskEntityListener.class)
 public class Task implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // pooled-lo: one sequence call reserves 50 ids, so inserts can be sent as JDBC batches
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "task_sequence")
-    @SequenceGenerator(name = "task_sequence", sequenceName = "task_sequence", allocationSize = 1)
+    @GenericGenerator(name = "task_sequence", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "task_sequence"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     @Column(updatable = false)
     private Long id;
 
@@ -87,12 +103,21 @@ public class Task implements Serializable {
     @Column(nullable = true)
     private Boolean luckyDraw;
 
-    @Column(nullable = true)
+    // lock lease, only written by the conditional updates of the TaskLockService: a save of
+    // the entity must not overwrite a lock taken after the task was loaded
+    @Column(nullable = true, insertable = false, updatable = false)
     private Long lockedByUser;
 
+    @Column(nullable = true, insertable = false, updatable = false)
+    private Date lockExpiresAt;
+
     @Column(nullable = true)
     private Date lastFinish;
 
+    // first day (epoch day) on which the task is visible/finishable: deadline - daysVisible + 1
+    @Column(nullable = true)
+    private Long visibleFrom;
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -154,6 +179,14 @@ public class Task implements Serializable {
         return lastFinish;
     }
 
+    public Long getVisibleFrom() {
+        return visibleFrom;
+    }
+
+    public void setVisibleFrom(Long visibleFrom) {
+        this.visibleFrom = visibleFrom;
+    }
+
     public void setUnpausedDate(Date unpausedDate) {
         this.unpausedDate = unpausedDate;
     }
@@ -272,4 +305,12 @@ public class Task implements Serializable {
     public void setLockedByUser(Long lockedByUserId) {
         this.lockedByUser = lockedByUserId;
     }
+
+    public Date getLockExpiresAt() {
+        return lockExpiresAt;
+    }
+
+    public void setLockExpiresAt(Date lockExpiresAt) {
+        this.lockExpiresAt = lockExpiresAt;
+    }
 }
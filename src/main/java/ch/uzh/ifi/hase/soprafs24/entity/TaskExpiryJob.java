@@ -0,0 +1,128 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import ch.uzh.ifi.hase.soprafs24.constant.ExpiryJobStatus;
+
+import java.util.Date;
+
+/**
+ * Internal representation of a task expiry run
+ * Progress is stored after every chunk, so an interrupted run can be resumed
+ * from lastTaskId.
+ */
+@Entity
+@Table(name = "TASK_EXPIRY_JOB", indexes = {
+        @Index(name = "idx_expiry_job_cutoff_status", columnList = "cutoffDate, status")
+})
+public class TaskExpiryJob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "task_expiry_job_sequence")
+    @SequenceGenerator(name = "task_expiry_job_sequence", sequenceName = "task_expiry_job_sequence", allocationSize = 1)
+    @Column(updatable = false)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ExpiryJobStatus status;
+
+    // tasks with a deadline before this date are expired
+    @Column(nullable = false)
+    private Date cutoffDate;
+
+    // id of the last processed task, the next chunk starts after it
+    @Column(nullable = false)
+    private Long lastTaskId;
+
+    @Column(nullable = false)
+    private Integer processedTasks;
+
+    @Column(nullable = false)
+    private Date startedAt;
+
+    @Column(nullable = false)
+    private Date updatedAt;
+
+    @Column(nullable = true)
+    private Date finishedAt;
+
+    @Column(nullable = true)
+    private String lastError;
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public ExpiryJobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ExpiryJobStatus status) {
+        this.status = status;
+    }
+
+    public Date getCutoffDate() {
+        return cutoffDate;
+    }
+
+    public void setCutoffDate(Date cutoffDate) {
+        this.cutoffDate = cutoffDate;
+    }
+
+    public Long getLastTaskId() {
+        return lastTaskId;
+    }
+
+    public void setLastTaskId(Long lastTaskId) {
+        this.lastTaskId = lastTaskId;
+    }
+
+    public Integer getProcessedTasks() {
+        return processedTasks;
+    }
+
+    public void setProcessedTasks(Integer processedTasks) {
+        this.processedTasks = processedTasks;
+    }
+
+    public Date getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Date startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public Date getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Date finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
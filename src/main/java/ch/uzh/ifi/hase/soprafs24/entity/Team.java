@@ -2,6 +2,9 @@ package ch.uzh.ifi.hase.soprafs24.entity;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import ch.uzh.ifi.hase.soprafs24.listener.TeamEntityListener;
 
 import java.io.Serializable;
@@ -22,7 +25,11 @@ public class Team implements Serializable {
 
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_sequence")
-    @SequenceGenerator(name = "team_sequence", sequenceName = "team_sequence", allocationSize = 1)
+    @GenericGenerator(name = "team_sequence", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "team_sequence"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     @Column(updatable = false)
     private Long id;
 
@@ -38,9 +45,6 @@ public class Team implements Serializable {
     @Column(nullable = false, unique = true)
     private String code;
 
-    @ElementCollection
-    private List<Long> members = new ArrayList<>(); // Storing user IDs of the team members
-
     @ElementCollection
     private List<Long> tasks = new ArrayList<>(); // Storing task IDs of the all tasks (additional and recurring tasks)
 
@@ -88,14 +92,6 @@ public class Team implements Serializable {
         this.level = level;
     }
 
-    public List<Long> getMembers() {
-        return members;
-    }
-
-    public void setMembers(List<Long> members) {
-        this.members = members;
-    }
-
     public List<Long> getTasks() {
         return tasks;
     }
@@ -0,0 +1,41 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+
+/**
+ * The sequence number of the last task event sent to a team. Every delta or
+ * snapshot gets the next number, so clients can detect missed events
+ * (see TaskEventService).
+ */
+@Entity
+@Table(name = "TEAM_EVENT_SEQUENCE")
+public class TeamEventSequence implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(updatable = false)
+    private Long teamId;
+
+    @Column(nullable = false)
+    private Long lastSequence;
+
+    // Getters and Setters
+    public Long getTeamId() {
+        return teamId;
+    }
+
+    public void setTeamId(Long teamId) {
+        this.teamId = teamId;
+    }
+
+    public Long getLastSequence() {
+        return lastSequence;
+    }
+
+    public void setLastSequence(Long lastSequence) {
+        this.lastSequence = lastSequence;
+    }
+}
@@ -0,0 +1,72 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import java.io.Serializable;
+
+/**
+ * Team Membership Representation
+ * One row per user in a team. Joining or leaving a team inserts or deletes a
+ * single row, membership checks and member counts are answered by the
+ * (teamId, userId) index.
+ */
+@Entity
+@Table(name = "TEAM_MEMBERSHIP", indexes = {
+        @Index(name = "ux_team_membership_team_user", columnList = "teamId, userId", unique = true),
+        @Index(name = "idx_team_membership_user", columnList = "userId")
+})
+public class TeamMembership implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_membership_sequence")
+    @GenericGenerator(name = "team_membership_sequence", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "team_membership_sequence"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
+    @Column(updatable = false)
+    private Long id;
+
+    @Column(nullable = false, updatable = false)
+    private Long teamId;
+
+    @Column(nullable = false, updatable = false)
+    private Long userId;
+
+    public TeamMembership() {
+    }
+
+    public TeamMembership(Long teamId, Long userId) {
+        this.teamId = teamId;
+        this.userId = userId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getTeamId() {
+        return teamId;
+    }
+
+    public void setTeamId(Long teamId) {
+        this.teamId = teamId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+}
@@ -5,6 +5,10 @@ import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.listener.UserEntityListener;
 
 import javax.persistence.*;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import java.io.Serializable;
 import java.util.Date;
 
@@ -27,7 +31,11 @@ public class User implements Serializable {
 
   @Id
   @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_sequence")
-  @SequenceGenerator(name = "user_sequence", sequenceName = "user_sequence", allocationSize = 1)
+  @GenericGenerator(name = "user_sequence", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+          @Parameter(name = "sequence_name", value = "user_sequence"),
+          @Parameter(name = "increment_size", value = "50"),
+          @Parameter(name = "optimizer", value = "pooled-lo")
+  })
   @Column(updatable = false)
   private Long id;
 
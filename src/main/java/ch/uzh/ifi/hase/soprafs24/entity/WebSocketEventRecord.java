@@ -0,0 +1,83 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A WebSocket event as written to the shared event table, so that every
+ * instance can deliver it to its own sessions (see DatabaseWebSocketEventBus).
+ * Rows are only kept for a short time.
+ */
+@Entity
+@Table(name = "WEBSOCKET_EVENT", indexes = {
+        @Index(name = "idx_websocket_event_created", columnList = "createdAt")
+})
+public class WebSocketEventRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // allocationSize 1: ids have to increase in publishing order across instances
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "websocket_event_sequence")
+    @SequenceGenerator(name = "websocket_event_sequence", sequenceName = "websocket_event_sequence", allocationSize = 1)
+    @Column(updatable = false)
+    private Long id;
+
+    // instance that published the event, it has already delivered it locally
+    @Column(nullable = false)
+    private String originNode;
+
+    // null for events that go to all sessions
+    @Column(nullable = true)
+    private Long teamId;
+
+    // the serialized DatabaseChangeEventDTO
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false)
+    private Date createdAt;
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getOriginNode() {
+        return originNode;
+    }
+
+    public void setOriginNode(String originNode) {
+        this.originNode = originNode;
+    }
+
+    public Long getTeamId() {
+        return teamId;
+    }
+
+    public void setTeamId(Long teamId) {
+        this.teamId = teamId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -1,106 +1,131 @@
-
 package ch.uzh.ifi.hase.soprafs24.listener;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
-import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
-import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
+import ch.uzh.ifi.hase.soprafs24.service.TaskEventService;
+import ch.uzh.ifi.hase.soprafs24.service.TaskLockService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
-import org.springframework.transaction.support.TransactionSynchronization;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.PostPersist;
 import javax.persistence.PostRemove;
 import javax.persistence.PostUpdate;
 
+/**
+ * Sends the written tasks to their team as TASK_CREATED, TASK_UPDATED and
+ * TASK_DELETED deltas (see TaskEventService). Within a transaction the writes
+ * are collected per team and task (see TransactionNotificationCollector) and
+ * sent once after commit.
+ */
 @Component
 public class TaskEntityListener {
 
     private final Logger log = LoggerFactory.getLogger(TaskEntityListener.class);
     private static final String ENTITY_TYPE = "TASKS";
-    private final WebSocketNotificationService notificationService;
-    private final TaskRepository taskRepository;
+    private final TaskEventService taskEventService;
+    private final TaskLockService taskLockService;
+    private final TransactionNotificationCollector notificationCollector;
 
     @Autowired
-    public TaskEntityListener(@Lazy WebSocketNotificationService notificationService,@Lazy TaskRepository taskRepository ) {
-        this.notificationService = notificationService;
-        this.taskRepository = taskRepository;
+    public TaskEntityListener(@Lazy TaskEventService taskEventService, @Lazy TaskLockService taskLockService,
+            @Lazy TransactionNotificationCollector notificationCollector) {
+        this.taskEventService = taskEventService;
+        this.taskLockService = taskLockService;
+        this.notificationCollector = notificationCollector;
+    }
+
+    private enum Change {
+        CREATED, UPDATED, DELETED
     }
-    List<TaskGetDTO> getCurrentTasksForTeamDTO(Long teamId) {
-        if (teamId == null) {
-            return Collections.emptyList();
+
+    private static final class PendingChange {
+        private final Task task;
+        private final Change change;
+
+        private PendingChange(Task task, Change change) {
+            this.task = task;
+            this.change = change;
         }
-        List<Task> teamTasks = taskRepository.findAll().stream()
-                                    .filter(t -> teamId.equals(t.getTeamId()))
-                                    .toList();
-    
-        return teamTasks.stream()
-                        .map(DTOMapper.INSTANCE::convertEntityToTaskGetDTO)
-                        .toList();
     }
 
-    private void sendNotification(Task task, String action) {
+    private DatabaseChangeEventDTO<?> toEvent(Task task, Change change) {
+        if (change == Change.DELETED) {
+            return TaskEventService.deleted(task.getId());
+        }
+        // the entity is only mapped after commit, so the event carries its final state
+        TaskGetDTO taskDTO = taskLockService.withLockHolder(DTOMapper.INSTANCE.convertEntityToTaskGetDTO(task),
+                task.getLockExpiresAt());
+        return change == Change.CREATED ? TaskEventService.created(taskDTO) : TaskEventService.updated(taskDTO);
+    }
+
+    private void sendNotification(Task task, Change change) {
         if (task == null || task.getTeamId() == null) {
-            log.warn("Task or Task.teamId is null. Cannot send notification for action: {}", action);
+            log.warn("Task or Task.teamId is null. Cannot send notification for change: {}", change);
             return;
         }
-        log.debug("TaskEntityListener: Sending notification for task ID: {}, Team ID: {}, Action: {}", task.getId(), task.getTeamId(), action);
+        log.debug("TaskEntityListener: Sending notification for task ID: {}, Team ID: {}, Change: {}", task.getId(), task.getTeamId(), change);
         if (TransactionSynchronizationManager.isActualTransactionActive()) {
-            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                @Override
-                public void afterCommit() {
-                    log.debug("Entity Listener (after commit): Notifying team {} about task {} (Action: {})", task.getTeamId(), task.getId(), action);
-                    try {
-                        notificationService.notifyTeamMembers(
-                                task.getTeamId(),
-                                ENTITY_TYPE, 
-                                getCurrentTasksForTeamDTO(task.getTeamId()) 
-                        );
-                    } catch (Exception e) {
-                        log.error("Error sending notification from TaskEntityListener after commit for task {}: {}", task.getId(), e.getMessage(), e);
-                    }
-                }
-            });
-        } else {
-            
-            
-            log.debug("Entity Listener (no active transaction): Notifying team {} about task {} (Action: {})", task.getTeamId(), task.getId(), action);
-             try {
-                notificationService.notifyTeamMembers(
-                        task.getTeamId(),
-                        ENTITY_TYPE,
-                        getCurrentTasksForTeamDTO(task.getTeamId())
-                );
-            } catch (Exception e) {
-                log.error("Error sending notification from TaskEntityListener (no transaction) for task {}: {}", task.getId(), e.getMessage(), e);
+            Long teamId = task.getTeamId();
+            Map<Long, PendingChange> teamChanges = notificationCollector.collect(ENTITY_TYPE, teamId,
+                    LinkedHashMap::new, changes -> publishAfterCommit(teamId, changes));
+            PendingChange previous = teamChanges.get(task.getId());
+            Change merged = merge(previous != null ? previous.change : null, change);
+            if (merged == null) {
+                // created and deleted in the same transaction, the clients never saw it
+                teamChanges.remove(task.getId());
+            } else {
+                teamChanges.put(task.getId(), new PendingChange(task, merged));
             }
+        } else {
+            log.debug("Entity Listener (no active transaction): Notifying team {} about task {} (Change: {})", task.getTeamId(), task.getId(), change);
+            taskEventService.publishChanges(task.getTeamId(), List.of(toEvent(task, change)));
+        }
+    }
+
+    // one event per task and transaction: created + updated is still created, created + deleted is nothing
+    private static Change merge(Change previous, Change next) {
+        if (previous == Change.CREATED) {
+            return next == Change.DELETED ? null : Change.CREATED;
         }
+        return next == Change.DELETED || previous == Change.DELETED ? Change.DELETED : next;
+    }
+
+    private void publishAfterCommit(Long teamId, Map<Long, PendingChange> teamChanges) {
+        log.debug("Entity Listener (after commit): Notifying team {} about {} changed task(s)", teamId, teamChanges.size());
+        List<DatabaseChangeEventDTO<?>> events = new ArrayList<>();
+        for (PendingChange pending : teamChanges.values()) {
+            events.add(toEvent(pending.task, pending.change));
+        }
+        taskEventService.publishChanges(teamId, events);
     }
 
     @PostPersist
     public void afterTaskPersist(Task task) {
         log.debug("TaskEntityListener: @PostPersist triggered for task ID: {}", task.getId());
-        sendNotification(task, "PERSIST");
+        sendNotification(task, Change.CREATED);
     }
 
     @PostUpdate
     public void afterTaskUpdate(Task task) {
         log.debug("TaskEntityListener: @PostUpdate triggered for task ID: {}", task.getId());
-        sendNotification(task, "UPDATE");
+        sendNotification(task, Change.UPDATED);
     }
 
     @PostRemove
     public void afterTaskRemove(Task task) {
         log.debug("TaskEntityListener: @PostRemove triggered for task ID: {}, Team ID: {}", task.getId(), task.getTeamId());
-        
-        sendNotification(task, "REMOVE");
+
+        sendNotification(task, Change.DELETED);
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.team.TeamGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs24.service.TeamService;
+import ch.uzh.ifi.hase.soprafs24.service.TeamStateCache;
 import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import org.slf4j.Logger;
@@ -12,7 +13,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.persistence.PostPersist;
@@ -29,13 +29,19 @@ public class TeamEntityListener {
     private static final String ENTITY_TYPE = "TEAM";
     private final WebSocketNotificationService notificationService;
     private final TeamService teamService;
+    private final TransactionNotificationCollector notificationCollector;
+    private final TeamStateCache teamStateCache;
 
     @Autowired
     public TeamEntityListener(@Lazy WebSocketNotificationService notificationService,
             @Lazy TeamService teamService,
-            @Lazy UserService userService) {
+            @Lazy UserService userService,
+            @Lazy TransactionNotificationCollector notificationCollector,
+            @Lazy TeamStateCache teamStateCache) {
         this.notificationService = notificationService;
         this.teamService = teamService;
+        this.notificationCollector = notificationCollector;
+        this.teamStateCache = teamStateCache;
     }
 
     private void sendCreateUpdateNotification(Team team, String action) {
@@ -47,21 +53,20 @@ public class TeamEntityListener {
         final Long teamId = team.getId();
 
         if (TransactionSynchronizationManager.isActualTransactionActive()) {
-            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                @Override
-                public void afterCommit() {
-                    try {
-
-                        Team freshTeam = teamService.getTeamById(teamId);
-                        TeamGetDTO teamGetDTO = DTOMapper.INSTANCE.convertEntityToTeamGetDTO(freshTeam);
-                        log.debug(
-                                "TeamEntityListener (after commit): Notifying members of team {} about {} (Action: {})",
-                                teamId, teamId, action);
-                        notificationService.notifyTeamMembers(teamId, ENTITY_TYPE, teamGetDTO);
-                    } catch (Exception e) {
-                        log.error("Error sending {} notification from TeamEntityListener after commit for team {}: {}",
-                                action, teamId, e.getMessage(), e);
-                    }
+            // one TEAM notification per team and transaction, the last action wins
+            notificationCollector.afterCommit(ENTITY_TYPE, teamId, () -> {
+                try {
+
+                    Team freshTeam = teamService.getTeamById(teamId);
+                    TeamGetDTO teamGetDTO = DTOMapper.INSTANCE.convertEntityToTeamGetDTO(freshTeam);
+                    teamGetDTO.setMembers(teamService.getUsersByTeamId(teamId));
+                    log.debug(
+                            "TeamEntityListener (after commit): Notifying members of team {} about {} (Action: {})",
+                            teamId, teamId, action);
+                    notificationService.notifyTeamMembers(teamId, ENTITY_TYPE, teamGetDTO);
+                } catch (Exception e) {
+                    log.error("Error sending {} notification from TeamEntityListener after commit for team {}: {}",
+                            action, teamId, e.getMessage(), e);
                 }
             });
         } else {
@@ -80,20 +85,18 @@ public class TeamEntityListener {
         final Long teamId = team.getId();
 
         if (TransactionSynchronizationManager.isActualTransactionActive()) {
-            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                @Override
-                public void afterCommit() {
-                    try {
-                        log.debug("TeamEntityListener (after commit): Notifying about deleted team {} (Action: {})",
-                                teamId, action);
-                        Map<String, Object> deletePayload = new HashMap<>();
-                        deletePayload.put("id", teamId);
-                        deletePayload.put("status", "DELETED");
-                        notificationService.notifyTeamMembers(teamId, ENTITY_TYPE, deletePayload);
-                    } catch (Exception e) {
-                        log.error("Error sending {} notification from TeamEntityListener after commit for team {}: {}",
-                                action, teamId, e.getMessage(), e);
-                    }
+            // replaces a pending update of the same team
+            notificationCollector.afterCommit(ENTITY_TYPE, teamId, () -> {
+                try {
+                    log.debug("TeamEntityListener (after commit): Notifying about deleted team {} (Action: {})",
+                            teamId, action);
+                    Map<String, Object> deletePayload = new HashMap<>();
+                    deletePayload.put("id", teamId);
+                    deletePayload.put("status", "DELETED");
+                    notificationService.notifyTeamMembers(teamId, ENTITY_TYPE, deletePayload);
+                } catch (Exception e) {
+                    log.error("Error sending {} notification from TeamEntityListener after commit for team {}: {}",
+                            action, teamId, e.getMessage(), e);
                 }
             });
         } else {
@@ -106,6 +109,7 @@ public class TeamEntityListener {
     @PostPersist
     public void afterTeamPersist(Team team) {
         log.debug("TeamEntityListener: @PostPersist triggered for team ID: {}", team.getId());
+        teamStateCache.invalidateTeam(team.getId());
         sendCreateUpdateNotification(team, "PERSIST");
     }
 
@@ -113,12 +117,14 @@ public class TeamEntityListener {
     public void afterTeamUpdate(Team team) {
 
         log.debug("TeamEntityListener: @PostUpdate triggered for team ID: {}", team.getId());
+        teamStateCache.invalidateTeam(team.getId());
         sendCreateUpdateNotification(team, "UPDATE");
     }
 
     @PostRemove
     public void afterTeamRemove(Team team) {
         log.debug("TeamEntityListener: @PostRemove triggered for team ID: {}", team.getId());
+        teamStateCache.invalidateTeam(team.getId());
         sendRemoveNotification(team, "REMOVE");
     }
 }
\ No newline at end of file
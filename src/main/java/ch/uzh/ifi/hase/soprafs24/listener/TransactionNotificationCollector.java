@@ -0,0 +1,142 @@
+package ch.uzh.ifi.hase.soprafs24.listener;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Collects the WebSocket notifications the entity listeners request during a
+ * transaction and sends each one once after commit: a transaction that writes
+ * 40 tasks or members of a team sends one notification per team and type
+ * instead of 40.
+ * Notifications are keyed by type and id (usually the team id). The pending
+ * notifications are kept on the transaction's synchronization, so a
+ * REQUIRES_NEW transaction collects its own and they are dropped on rollback.
+ * The counters websocket.notifications.requested, .sent and .coalesced (tagged
+ * with the type) show how many notifications were saved.
+ */
+@Component
+public class TransactionNotificationCollector {
+
+    static final String REQUESTED_METRIC = "websocket.notifications.requested";
+    static final String SENT_METRIC = "websocket.notifications.sent";
+    static final String COALESCED_METRIC = "websocket.notifications.coalesced";
+
+    private final Logger log = LoggerFactory.getLogger(TransactionNotificationCollector.class);
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public TransactionNotificationCollector(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns the state collected for a type and id in the current transaction,
+     * creating it on the first call. The notification is called with the state
+     * once after commit.
+     *
+     * @throws IllegalStateException if no transaction is active.
+     */
+    public <T> T collect(String type, Long id, Supplier<T> newState, Consumer<T> notification) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Notifications can only be collected within a transaction");
+        }
+        meterRegistry.counter(REQUESTED_METRIC, "type", type).increment();
+        String key = type + ":" + id;
+        Map<String, Pending<?>> pending = pendingNotifications();
+        @SuppressWarnings("unchecked")
+        Pending<T> existing = (Pending<T>) pending.get(key);
+        if (existing != null) {
+            meterRegistry.counter(COALESCED_METRIC, "type", type).increment();
+            return existing.state;
+        }
+        Pending<T> created = new Pending<>(type, id, newState.get(), notification);
+        pending.put(key, created);
+        return created.state;
+    }
+
+    /**
+     * Sends a notification after commit, once per type and id and transaction: if
+     * it is requested again, the last request is sent. Without a transaction it is
+     * sent right away.
+     */
+    public void afterCommit(String type, Long id, Runnable notification) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            meterRegistry.counter(REQUESTED_METRIC, "type", type).increment();
+            send(type, id, notification);
+            return;
+        }
+        Runnable[] last = collect(type, id, () -> new Runnable[1], holder -> holder[0].run());
+        last[0] = notification;
+    }
+
+    private Map<String, Pending<?>> pendingNotifications() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof CollectingSynchronization
+                    && ((CollectingSynchronization) synchronization).owner() == this) {
+                return ((CollectingSynchronization) synchronization).pending;
+            }
+        }
+        CollectingSynchronization synchronization = new CollectingSynchronization();
+        TransactionSynchronizationManager.registerSynchronization(synchronization);
+        return synchronization.pending;
+    }
+
+    private void send(String type, Long id, Runnable notification) {
+        try {
+            notification.run();
+            meterRegistry.counter(SENT_METRIC, "type", type).increment();
+        } catch (Exception e) {
+            log.error("Error sending {} notification for {} after commit: {}", type, id, e.getMessage(), e);
+        }
+    }
+
+    private static final class Pending<T> {
+        private final String type;
+        private final Long id;
+        private final T state;
+        private final Consumer<T> notification;
+
+        private Pending(String type, Long id, T state, Consumer<T> notification) {
+            this.type = type;
+            this.id = id;
+            this.state = state;
+            this.notification = notification;
+        }
+
+        private void run() {
+            notification.accept(state);
+        }
+    }
+
+    private final class CollectingSynchronization implements TransactionSynchronization {
+        // in the order the notifications were first requested
+        private final Map<String, Pending<?>> pending = new LinkedHashMap<>();
+
+        private TransactionNotificationCollector owner() {
+            return TransactionNotificationCollector.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            log.debug("Sending {} coalesced notification(s) after commit", pending.size());
+            for (Pending<?> notification : pending.values()) {
+                send(notification.type, notification.id, notification::run);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            pending.clear();
+        }
+    }
+}
@@ -2,6 +2,8 @@ package ch.uzh.ifi.hase.soprafs24.listener;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUserCache;
+import ch.uzh.ifi.hase.soprafs24.service.TeamStateCache;
 import ch.uzh.ifi.hase.soprafs24.service.TeamService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
@@ -11,7 +13,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.persistence.PostPersist;
@@ -23,19 +24,29 @@ import java.util.List;
 @Component
 public class UserEntityListener {
     private static final String ENTITY_TYPE = "MEMBERS";
+    private static final String SESSION_ACTION_TYPE = "USER_SESSION";
     private final Logger log = LoggerFactory.getLogger(UserEntityListener.class);
     private final WebSocketNotificationService notificationService;
     private final TeamService teamService;
     private final SocketHandler socketHandler;
+    private final TransactionNotificationCollector notificationCollector;
+    private final AuthenticatedUserCache authenticatedUserCache;
+    private final TeamStateCache teamStateCache;
 
     @Autowired
     public UserEntityListener(@Lazy WebSocketNotificationService notificationService,
             @Lazy TeamService teamService,
             @Lazy UserService userService,
-            @Lazy SocketHandler socketHandler) {
+            @Lazy SocketHandler socketHandler,
+            @Lazy TransactionNotificationCollector notificationCollector,
+            @Lazy AuthenticatedUserCache authenticatedUserCache,
+            @Lazy TeamStateCache teamStateCache) {
         this.notificationService = notificationService;
         this.teamService = teamService;
         this.socketHandler = socketHandler;
+        this.notificationCollector = notificationCollector;
+        this.authenticatedUserCache = authenticatedUserCache;
+        this.teamStateCache = teamStateCache;
     }
 
     private User cloneUserForSnapshot(User originalUser) {
@@ -96,70 +107,35 @@ public class UserEntityListener {
         if (TransactionSynchronizationManager.isActualTransactionActive()) {
             final User userSnapshot = cloneUserForSnapshot(user);
 
-            log.debug("User Listener: Registering synchronization for user {} (Potential New Team: {}), Action: {}",
+            log.debug("User Listener: Collecting post-commit action for user {} (Potential New Team: {}), Action: {}",
                     userIdForLog, teamIdForLog, action);
-            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                @Override
-                public void afterCommit() {
-                    log.debug("User Listener (after commit): Executing post-commit logic for user {} (Action: {})",
+            if ("USER_REMOVED".equals(action)) {
+                // session actions are collected per user, the last one of the transaction wins
+                notificationCollector.afterCommit(SESSION_ACTION_TYPE, userSnapshot.getId(), () -> {
+                    log.info(
+                            "User Listener (after commit): User {} (Action: {}) was removed. Attempting to close their WebSocket session.",
                             userSnapshot.getId(), action);
-
-                    if ("USER_REMOVED".equals(action)) {
+                    socketHandler.closeSessionForUser(userSnapshot.getId(), "User account deleted");
+                });
+            } else if (userSnapshot.getTeamId() == null) {
+                if ("USER_UPDATED".equals(action) || "USER_PERSISTED_NO_TEAM".equals(action)
+                        || "USER_PERSISTED_JOINED_TEAM".equals(action)) {
+                    notificationCollector.afterCommit(SESSION_ACTION_TYPE, userSnapshot.getId(), () -> {
                         log.info(
-                                "User Listener (after commit): User {} (Action: {}) was removed. Attempting to close their WebSocket session.",
+                                "User Listener (after commit): User {} (Action: {}) now has no teamId or is new without a team. Attempting to move/confirm WebSocket session to pending.",
                                 userSnapshot.getId(), action);
-                        socketHandler.closeSessionForUser(userSnapshot.getId(), "User account deleted");
-                    } else if (userSnapshot.getTeamId() == null) {
-
-                        if ("USER_UPDATED".equals(action) || "USER_PERSISTED_NO_TEAM".equals(action)) {
-                            log.info(
-                                    "User Listener (after commit): User {} (Action: {}) now has no teamId or is new without a team. Attempting to move/confirm WebSocket session to pending.",
-                                    userSnapshot.getId(), action);
-                            socketHandler.moveSessionToPending(userSnapshot.getId());
-                        } else if ("USER_PERSISTED_JOINED_TEAM".equals(action)) {
-
-                            log.warn(
-                                    "User Listener (after commit): Action was {} for user {} but teamId is unexpectedly null. Attempting to pend session.",
-                                    action, userSnapshot.getId());
-                            socketHandler.moveSessionToPending(userSnapshot.getId());
-                        } else {
-                            log.debug(
-                                    "User Listener (after commit): User {} (Action: {}) has null teamId. No specific WebSocket session move-to-pending action triggered besides default handling for new users if applicable.",
-                                    userSnapshot.getId(), action);
-                        }
-                    } else {
-
-                        log.debug(
-                                "User Listener (after commit): User {} is in team {}. Processing team notifications for action {}.",
-                                userSnapshot.getId(), userSnapshot.getTeamId(), action);
-                        performNotificationLogic(userSnapshot, action + "_AFTER_COMMIT_TEAM_NOTIFICATION");
-                    }
-                }
-
-                @Override
-                public void afterCompletion(int status) {
-                    String userNameForLog = (userSnapshot != null && userSnapshot.getId() != null)
-                            ? userSnapshot.getId().toString()
-                            : "UNKNOWN_USER_ID_IN_SNAPSHOT";
-                    if (userIdForLog != null && (userSnapshot == null || userSnapshot.getId() == null)) {
-                        userNameForLog = userIdForLog.toString();
-                    }
-
-                    if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
-                        log.info(
-                                "User Listener (after completion - ROLLED_BACK): Transaction for user {} (Action: {}) was rolled back. WebSocket/Notification changes were not applied.",
-                                userNameForLog, action);
-                    } else if (status == TransactionSynchronization.STATUS_COMMITTED) {
-                        log.info(
-                                "User Listener (after completion - COMMITTED): Transaction for user {} (Action: {}) committed. Post-commit logic should have run.",
-                                userNameForLog, action);
-                    } else {
-                        log.info(
-                                "User Listener (after completion - status {}): Transaction for user {} (Action: {}) completed.",
-                                status, userNameForLog, action);
-                    }
+                        socketHandler.moveSessionToPending(userSnapshot.getId());
+                    });
+                } else {
+                    log.debug(
+                            "User Listener: User {} (Action: {}) has null teamId. No specific WebSocket session move-to-pending action triggered.",
+                            userSnapshot.getId(), action);
                 }
-            });
+            } else {
+                // one MEMBERS snapshot per team and transaction, no matter how many of its members were written
+                notificationCollector.afterCommit(ENTITY_TYPE, userSnapshot.getTeamId(),
+                        () -> performNotificationLogic(userSnapshot, action + "_AFTER_COMMIT_TEAM_NOTIFICATION"));
+            }
         } else {
             log.warn(
                     "User Listener: No active transaction for user action {}. WebSocket/Notification changes for user {} (team {}) WILL NOT BE SENT/APPLIED.",
@@ -193,6 +169,9 @@ public class UserEntityListener {
             return;
         }
         log.debug("User Listener: @PostUpdate triggered for user ID: {}", user.getId());
+        // status, token or team may have changed, the color is part of the team state
+        authenticatedUserCache.invalidateUser(user.getId());
+        teamStateCache.invalidateTeam(user.getTeamId());
         sendNotificationAfterCommit(user, "USER_UPDATED");
     }
 
@@ -203,6 +182,8 @@ public class UserEntityListener {
             return;
         }
         log.debug("User Listener: @PostRemove triggered for user ID: {}", user.getId());
+        authenticatedUserCache.invalidateUser(user.getId());
+        teamStateCache.invalidateTeam(user.getTeamId());
         sendNotificationAfterCommit(user, "USER_REMOVED");
     }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.CalendarSyncIntent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository("calendarSyncIntentRepository")
+public interface CalendarSyncIntentRepository extends JpaRepository<CalendarSyncIntent, Long> {
+
+    // without the tasks another instance is syncing right now
+    @Query("SELECT i FROM CalendarSyncIntent i WHERE i.nextAttemptAt <= :now AND NOT EXISTS "
+            + "(SELECT l FROM CalendarSyncLease l WHERE l.taskId = i.taskId AND l.leasedUntil > :now) ORDER BY i.id")
+    List<CalendarSyncIntent> findDue(@Param("now") Date now, Pageable pageable);
+
+    // the intent and the older ones of the same task it replaced
+    @Modifying
+    @Query("DELETE FROM CalendarSyncIntent i WHERE i.taskId = :taskId AND i.id <= :upToId")
+    int deleteUpTo(@Param("taskId") Long taskId, @Param("upToId") Long upToId);
+}
@@ -0,0 +1,40 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.CalendarSyncLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+
+@Repository("calendarSyncLeaseRepository")
+public interface CalendarSyncLeaseRepository extends JpaRepository<CalendarSyncLease, Long> {
+
+    // compare-and-set: of several workers only one takes a lease that has run out
+    @Modifying
+    @Query("UPDATE CalendarSyncLease l SET l.leasedUntil = :leaseUntil WHERE l.taskId = :taskId AND l.leasedUntil <= :now")
+    int claim(@Param("taskId") Long taskId, @Param("now") Date now, @Param("leaseUntil") Date leaseUntil);
+
+    // first sync of the task; plain insert instead of save(), a merge would take over a lease another instance just created
+    @Modifying
+    @Query(value = "INSERT INTO calendar_sync_lease (task_id, leased_until) VALUES (:taskId, :leaseUntil)", nativeQuery = true)
+    int insert(@Param("taskId") Long taskId, @Param("leaseUntil") Date leaseUntil);
+
+    // only the holder's own lease, it may have run out and been taken over
+    @Modifying
+    @Query("UPDATE CalendarSyncLease l SET l.leasedUntil = :now WHERE l.taskId = :taskId AND l.leasedUntil = :leaseUntil")
+    int release(@Param("taskId") Long taskId, @Param("leaseUntil") Date leaseUntil, @Param("now") Date now);
+
+    @Query("SELECT l.googleEventId FROM CalendarSyncLease l WHERE l.taskId = :taskId")
+    String findGoogleEventIdByTaskId(@Param("taskId") Long taskId);
+
+    @Modifying
+    @Query("UPDATE CalendarSyncLease l SET l.googleEventId = :googleEventId WHERE l.taskId = :taskId")
+    int updateGoogleEventId(@Param("taskId") Long taskId, @Param("googleEventId") String googleEventId);
+
+    @Modifying
+    @Query("DELETE FROM CalendarSyncLease l WHERE l.taskId = :taskId")
+    int deleteByTaskId(@Param("taskId") Long taskId);
+}
@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ExpiryJobStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.TaskExpiryJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.Date;
+
+
+@Repository("taskExpiryJobRepository")
+public interface TaskExpiryJobRepository extends JpaRepository<TaskExpiryJob, Long> {
+    TaskExpiryJob findTaskExpiryJobById(Long id);
+
+    // latest unfinished run for a cutoff date, used to resume
+    TaskExpiryJob findFirstByCutoffDateAndStatusNotOrderByIdDesc(Date cutoffDate, ExpiryJobStatus status);
+}
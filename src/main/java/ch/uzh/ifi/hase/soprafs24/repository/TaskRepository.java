@@ -1,9 +1,24 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskClaimView;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskLockView;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 
 
@@ -15,5 +30,169 @@ public interface TaskRepository extends JpaRepository<Task, Long> {
 
     List<Task> findTaskByTeamId(Long id);
 
+    // team-scoped lookups, backed by idx_task_team_active_visible / idx_task_team_assignee
+    List<Task> findTaskByTeamIdAndActiveStatus(Long teamId, Boolean activeStatus);
+
+    List<Task> findTaskByTeamIdAndFrequencyIsNotNull(Long teamId); // recurring tasks
+
+    List<Task> findTaskByTeamIdAndFrequencyIsNull(Long teamId); // additional tasks
+
+    List<Task> findTaskByTeamIdAndActiveStatusAndFrequencyIsNotNull(Long teamId, Boolean activeStatus);
+
+    List<Task> findTaskByTeamIdAndActiveStatusAndFrequencyIsNull(Long teamId, Boolean activeStatus);
+
+    // visible tasks: visibleFrom (epoch day) <= today
+    List<Task> findTaskByTeamIdAndActiveStatusAndVisibleFromLessThanEqual(Long teamId, Boolean activeStatus,
+            Long day);
+
+    List<Task> findTaskByTeamIdAndActiveStatusAndFrequencyIsNotNullAndVisibleFromLessThanEqual(Long teamId,
+            Boolean activeStatus, Long day);
+
+    List<Task> findTaskByTeamIdAndActiveStatusAndFrequencyIsNullAndVisibleFromLessThanEqual(Long teamId,
+            Boolean activeStatus, Long day);
+
+    List<Task> findTaskByTeamIdAndActiveStatusAndIsAssignedToIsNullAndVisibleFromLessThanEqual(Long teamId,
+            Boolean activeStatus, Long day);
+
+    // read-only projection of the TaskGetDTO columns; builds TaskView objects instead of managed entities
+    String TASK_VIEW_SELECT = "SELECT new ch.uzh.ifi.hase.soprafs24.repository.projection.TaskView("
+            + "t.id, t.creatorId, t.isAssignedTo, t.name, t.description, t.deadline, t.color, t.activeStatus, "
+            + "t.value, t.googleEventId, t.daysVisible, t.frequency, t.startDate, t.luckyDraw, t.creatorName, "
+            + "t.assigneeName, t.lockedByUser, t.lockExpiresAt) FROM Task t ";
+
+    // filter shared by the GET /tasks queries; tasks without a visibleFrom day count as not visible yet
+    String TEAM_TASK_FILTER = "AND t.activeStatus IN :activeStatuses "
+            + "AND ((:recurring = true AND t.frequency IS NOT NULL) OR (:additional = true AND t.frequency IS NULL)) "
+            + "AND (:anyVisibility = true OR t.visibleFrom BETWEEN :visibleFromMin AND :visibleFromMax "
+            + "OR (:unscheduled = true AND t.visibleFrom IS NULL))";
+
+    @Query(TASK_VIEW_SELECT + "WHERE t.teamId = :teamId ORDER BY t.id ASC")
+    List<TaskView> findTaskViewsByTeamId(@Param("teamId") Long teamId);
+
+    // the tasks of a team with the GET /tasks filters; all parameters are always bound (type and
+    // visibility are passed as flags and ranges) so the query has no nullable parameters
+    @Query(TASK_VIEW_SELECT + "WHERE t.teamId = :teamId " + TEAM_TASK_FILTER + " ORDER BY t.id ASC")
+    List<TaskView> findTeamTaskViews(@Param("teamId") Long teamId,
+            @Param("activeStatuses") Collection<Boolean> activeStatuses, @Param("recurring") boolean recurring,
+            @Param("additional") boolean additional, @Param("anyVisibility") boolean anyVisibility,
+            @Param("unscheduled") boolean unscheduled, @Param("visibleFromMin") Long visibleFromMin,
+            @Param("visibleFromMax") Long visibleFromMax);
+
+    // keyset page of findTeamTaskViews
+    @Query(TASK_VIEW_SELECT + "WHERE t.teamId = :teamId AND t.id > :afterId " + TEAM_TASK_FILTER + " ORDER BY t.id ASC")
+    List<TaskView> findTeamTaskViewsAfterId(@Param("teamId") Long teamId, @Param("afterId") Long afterId,
+            @Param("activeStatuses") Collection<Boolean> activeStatuses, @Param("recurring") boolean recurring,
+            @Param("additional") boolean additional, @Param("anyVisibility") boolean anyVisibility,
+            @Param("unscheduled") boolean unscheduled, @Param("visibleFromMin") Long visibleFromMin,
+            @Param("visibleFromMax") Long visibleFromMax, Pageable pageable);
+
+    // same as findTeamTaskViews, fetched in chunks; must be consumed (and closed) inside a transaction
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "200"))
+    @Query(TASK_VIEW_SELECT + "WHERE t.teamId = :teamId " + TEAM_TASK_FILTER + " ORDER BY t.id ASC")
+    Stream<TaskView> streamTeamTaskViews(@Param("teamId") Long teamId,
+            @Param("activeStatuses") Collection<Boolean> activeStatuses, @Param("recurring") boolean recurring,
+            @Param("additional") boolean additional, @Param("anyVisibility") boolean anyVisibility,
+            @Param("unscheduled") boolean unscheduled, @Param("visibleFromMin") Long visibleFromMin,
+            @Param("visibleFromMax") Long visibleFromMax);
+
+    // compare-and-set claim: only succeeds while the task is unassigned and not paused, so of several
+    // concurrent claims exactly one updates the row; returns the number of updated rows (0 or 1)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Task t SET t.isAssignedTo = :userId, t.assigneeName = :assigneeName, t.color = :color "
+            + "WHERE t.id = :taskId AND t.isAssignedTo IS NULL AND t.isPaused = false")
+    int claimIfUnassigned(@Param("taskId") Long taskId, @Param("userId") Long userId,
+            @Param("assigneeName") String assigneeName, @Param("color") ColorID color);
+
+    // compare-and-set quit: only the current assignee can release a task, and not while it is lucky drawn
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Task t SET t.isAssignedTo = NULL, t.assigneeName = NULL, t.color = NULL "
+            + "WHERE t.id = :taskId AND t.isAssignedTo = :userId AND (t.luckyDraw IS NULL OR t.luckyDraw = false)")
+    int unassignIfAssignedTo(@Param("taskId") Long taskId, @Param("userId") Long userId);
+
+    // a failed claim is explained from these two columns, without loading the task
+    @Query("SELECT new ch.uzh.ifi.hase.soprafs24.repository.projection.TaskClaimView(t.isAssignedTo, t.isPaused) "
+            + "FROM Task t WHERE t.id = :taskId")
+    TaskClaimView findClaimViewById(@Param("taskId") Long taskId);
+
+    @Query("SELECT t.teamId FROM Task t WHERE t.id = :taskId")
+    Long findTeamIdById(@Param("taskId") Long taskId);
+
+    // task lock leases (see TaskLockService); compare-and-set updates, so instances agree on the holder.
+    // The lock columns are not updatable through the entity, the listener is not triggered.
+    // Leases are taken and checked against the database clock, not the clocks of the instances.
+    @Query("SELECT t.lockedByUser FROM Task t WHERE t.id = :taskId AND t.lockExpiresAt > CURRENT_TIMESTAMP")
+    Long findLockHolderById(@Param("taskId") Long taskId);
+
+    // takes a free or expired lock, or renews the lock of the same user
+    @Modifying
+    @Query(value = "UPDATE task SET locked_by_user = :userId, "
+            + "lock_expires_at = CURRENT_TIMESTAMP + :leaseSeconds * INTERVAL '1' SECOND WHERE id = :taskId "
+            + "AND (locked_by_user IS NULL OR locked_by_user = :userId OR lock_expires_at <= CURRENT_TIMESTAMP)",
+            nativeQuery = true)
+    int lockIfFree(@Param("taskId") Long taskId, @Param("userId") Long userId,
+            @Param("leaseSeconds") long leaseSeconds);
+
+    @Modifying
+    @Query("UPDATE Task t SET t.lockedByUser = NULL, t.lockExpiresAt = NULL "
+            + "WHERE t.id = :taskId AND t.lockedByUser = :userId")
+    int unlockIfLockedBy(@Param("taskId") Long taskId, @Param("userId") Long userId);
+
+    // only the instance whose update succeeds reports the expiry
+    @Modifying
+    @Query("UPDATE Task t SET t.lockedByUser = NULL, t.lockExpiresAt = NULL "
+            + "WHERE t.id = :taskId AND t.lockedByUser = :userId AND t.lockExpiresAt <= CURRENT_TIMESTAMP")
+    int unlockIfExpired(@Param("taskId") Long taskId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "UPDATE task SET lock_expires_at = CURRENT_TIMESTAMP + :leaseSeconds * INTERVAL '1' SECOND "
+            + "WHERE locked_by_user = :userId AND lock_expires_at > CURRENT_TIMESTAMP", nativeQuery = true)
+    int renewLocksOfUser(@Param("userId") Long userId, @Param("leaseSeconds") long leaseSeconds);
+
+    // backed by idx_task_locked_by
+    @Query("SELECT new ch.uzh.ifi.hase.soprafs24.repository.projection.TaskLockView(t.id, t.teamId, t.lockedByUser) "
+            + "FROM Task t WHERE t.lockedByUser = :userId")
+    List<TaskLockView> findLocksOfUser(@Param("userId") Long userId);
+
+    // backed by idx_task_lock_expires
+    @Query("SELECT new ch.uzh.ifi.hase.soprafs24.repository.projection.TaskLockView(t.id, t.teamId, t.lockedByUser) "
+            + "FROM Task t WHERE t.lockExpiresAt <= CURRENT_TIMESTAMP AND t.lockedByUser IS NOT NULL")
+    List<TaskLockView> findExpiredLocks(Pageable pageable);
+
     List<Task> findTaskByIsAssignedTo(Long id); //user id goes in here
-}
\ No newline at end of file
+
+    List<Task> findTaskByCreatorId(Long creatorId);
+
+    // expiry chunks in id order (keyset), backed by idx_task_active_deadline
+    List<Task> findTaskByActiveStatusAndDeadlineBeforeAndIdGreaterThanOrderByIdAsc(Boolean activeStatus,
+            Date deadline, Long id, Pageable pageable);
+
+    // team pause/unpause; bulk updates bypass the TaskEntityListener as well
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Task t SET t.isPaused = true, t.pausedDate = :pausedDate "
+            + "WHERE t.teamId = :teamId AND t.isPaused = false")
+    int pauseAllTasksOfTeam(@Param("teamId") Long teamId, @Param("pausedDate") Date pausedDate);
+
+    @Query("SELECT DISTINCT t.pausedDate FROM Task t "
+            + "WHERE t.teamId = :teamId AND t.isPaused = true AND t.pausedDate IS NOT NULL")
+    List<Date> findPausedDatesOfTeam(@Param("teamId") Long teamId);
+
+    // shifts deadline and visibleFrom by the paused days; additional tasks keep their visibleFrom
+    // and grow daysVisible instead (daysVisible = deadline - creationDate for those)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE task SET deadline = deadline + :days * INTERVAL '1' DAY, "
+            + "days_visible = CASE WHEN frequency IS NULL THEN days_visible + :days ELSE days_visible END, "
+            + "visible_from = CASE WHEN frequency IS NULL THEN visible_from ELSE visible_from + :days END "
+            + "WHERE team_id = :teamId AND is_paused = true AND paused_date = :pausedDate", nativeQuery = true)
+    int shiftPausedTasksOfTeam(@Param("teamId") Long teamId, @Param("pausedDate") Date pausedDate,
+            @Param("days") int days);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Task t SET t.isPaused = false, t.unpausedDate = :unpausedDate "
+            + "WHERE t.teamId = :teamId AND t.isPaused = true")
+    int unpauseAllTasksOfTeam(@Param("teamId") Long teamId, @Param("unpausedDate") Date unpausedDate);
+
+    // written by the background calendar sync; only touches the event id so concurrent edits are kept
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Task t SET t.googleEventId = :googleEventId WHERE t.id = :taskId")
+    int updateGoogleEventId(@Param("taskId") Long taskId, @Param("googleEventId") String googleEventId);
+}
@@ -0,0 +1,25 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.TeamEventSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository("teamEventSequenceRepository")
+public interface TeamEventSequenceRepository extends JpaRepository<TeamEventSequence, Long> {
+
+    // the row stays locked until commit, so concurrent reservations of a team get disjoint ranges
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE TeamEventSequence s SET s.lastSequence = s.lastSequence + :count WHERE s.teamId = :teamId")
+    int increment(@Param("teamId") Long teamId, @Param("count") long count);
+
+    // plain insert instead of save(): a merge would overwrite a row another instance just created
+    @Modifying
+    @Query(value = "INSERT INTO team_event_sequence (team_id, last_sequence) VALUES (:teamId, :count)", nativeQuery = true)
+    int insert(@Param("teamId") Long teamId, @Param("count") long count);
+
+    @Query("SELECT s.lastSequence FROM TeamEventSequence s WHERE s.teamId = :teamId")
+    Long findLastSequence(@Param("teamId") Long teamId);
+}
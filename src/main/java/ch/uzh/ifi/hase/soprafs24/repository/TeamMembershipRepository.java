@@ -0,0 +1,25 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.TeamMembership;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository("teamMembershipRepository")
+public interface TeamMembershipRepository extends JpaRepository<TeamMembership, Long> {
+  boolean existsByTeamIdAndUserId(Long teamId, Long userId);
+
+  long countByTeamId(Long teamId);
+
+  // ordered by join order, like the former Team.members list
+  @Query("SELECT m.userId FROM TeamMembership m WHERE m.teamId = :teamId ORDER BY m.id")
+  List<Long> findUserIdsByTeamId(@Param("teamId") Long teamId);
+
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("DELETE FROM TeamMembership m WHERE m.teamId = :teamId AND m.userId = :userId")
+  int deleteByTeamIdAndUserId(@Param("teamId") Long teamId, @Param("userId") Long userId);
+}
@@ -2,6 +2,8 @@ package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 
@@ -11,5 +13,11 @@ public interface TeamRepository extends JpaRepository<Team, Long> {
 
   Team findByCode(String code);
 
-  Team findTeamById(Long id);
+  default Team findTeamById(Long id) {
+    return id == null ? null : findById(id).orElse(null);
+  }
+
+  // read from the database, never from a Team already loaded into the session; null if the team does not exist
+  @Query("SELECT COALESCE(t.isPaused, false) FROM Team t WHERE t.id = :teamId")
+  Boolean findIsPausedById(@Param("teamId") Long teamId);
 }
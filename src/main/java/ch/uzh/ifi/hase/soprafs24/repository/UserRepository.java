@@ -1,9 +1,19 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 
 @Repository("userRepository")
@@ -12,11 +22,39 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
   User findByUsername(String username);
 
-  User findUserById(Long id);
+  default User findUserById(Long id) {
+    return id == null ? null : findById(id).orElse(null);
+  }
 
   User findByPassword(String password); 
 
   User findByToken(String token);
 
   List<User> findByTeamId(Long teamId);
+
+  // read-only projection into UserGetDTO, the arguments follow the field order of UserGetDTO
+  String USER_DTO_SELECT = "SELECT new ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO("
+      + "u.id, u.name, u.username, u.color, u.token, u.status, u.creationDate, u.birthDate, u.teamId, "
+      + "u.xp, u.level) FROM User u ";
+
+  @Query(USER_DTO_SELECT + "ORDER BY u.id")
+  List<UserGetDTO> findAllUserDTOs();
+
+  // keyset pagination: the next `pageable.size` users after the given id
+  @Query(USER_DTO_SELECT + "WHERE u.id > :afterId ORDER BY u.id")
+  List<UserGetDTO> findUserDTOsAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
+  // all users in id order, fetched in chunks; must be consumed (and closed) inside a transaction
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "200"))
+  @Query(USER_DTO_SELECT + "ORDER BY u.id")
+  Stream<UserGetDTO> streamAllUserDTOs();
+
+  // atomic XP change, clamped at 0; returns the number of updated rows (0 if the user does not exist)
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("UPDATE User u SET u.xp = CASE WHEN u.xp + :delta < 0 THEN 0 ELSE u.xp + :delta END WHERE u.id = :userId")
+  int addExperiencePoints(@Param("userId") Long userId, @Param("delta") Integer delta);
+
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("UPDATE User u SET u.level = :level WHERE u.id = :userId")
+  int updateLevel(@Param("userId") Long userId, @Param("level") int level);
 }
@@ -0,0 +1,29 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.WebSocketEventRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository("webSocketEventRecordRepository")
+public interface WebSocketEventRecordRepository extends JpaRepository<WebSocketEventRecord, Long> {
+
+    @Query("SELECT MAX(e.id) FROM WebSocketEventRecord e")
+    Long findMaxId();
+
+    // ids only: pollers re-read the recent ids and only fetch the payloads of new ones
+    @Query("SELECT e.id FROM WebSocketEventRecord e WHERE e.id > :afterId ORDER BY e.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId);
+
+    List<WebSocketEventRecord> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM WebSocketEventRecord e WHERE e.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Date cutoff);
+}
@@ -0,0 +1,15 @@
+package ch.uzh.ifi.hase.soprafs24.repository.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The assignee and pause flag of a task, read by the TaskService to explain a
+ * failed claim without loading the task.
+ */
+@Getter
+@AllArgsConstructor
+public class TaskClaimView {
+    private Long isAssignedTo;
+    private Boolean isPaused;
+}
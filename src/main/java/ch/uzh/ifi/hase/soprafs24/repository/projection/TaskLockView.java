@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.repository.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The lock columns of a task, read by the TaskLockService to release or expire
+ * locks without loading the tasks.
+ */
+@Getter
+@AllArgsConstructor
+public class TaskLockView {
+    private Long taskId;
+    private Long teamId;
+    private Long lockedByUser;
+}
@@ -0,0 +1,36 @@
+package ch.uzh.ifi.hase.soprafs24.repository.projection;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * Read-only projection of the Task columns needed for a TaskGetDTO.
+ * Built by JPQL constructor expressions (see TaskRepository.TASK_VIEW_SELECT),
+ * so no Task entity is loaded into the persistence context.
+ * The constructor parameter order must match the select list.
+ */
+@Getter
+@AllArgsConstructor
+public class TaskView {
+    private Long id;
+    private Long creatorId;
+    private Long isAssignedTo;
+    private String name;
+    private String description;
+    private Date deadline;
+    private ColorID color;
+    private Boolean activeStatus;
+    private Integer value;
+    private String googleEventId;
+    private Integer daysVisible;
+    private Integer frequency;
+    private Date startDate;
+    private Boolean luckyDraw;
+    private String creatorName;
+    private String assigneeName;
+    private Long lockedByUser;
+    private Date lockExpiresAt;
+}
@@ -0,0 +1,22 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto.task;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TaskExpiryJobGetDTO {
+    private Long id;
+    private String status;
+    private String cutoffDate;
+    private Long lastTaskId;
+    private Integer processedTasks;
+    private String startedAt;
+    private String finishedAt;
+    private String lastError;
+}
@@ -1,4 +1,5 @@
 package ch.uzh.ifi.hase.soprafs24.rest.dto.websocket;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -13,12 +14,21 @@ import lombok.Setter;
 public class DatabaseChangeEventDTO<T> {
     private String entityType; // e.g., "task", "user", "team"
     private T payload;         // payload data e.g a list of all tasks
+    // per-team sequence number of task events, null for all other events
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long sequence;
+
+    public DatabaseChangeEventDTO(String entityType, T payload) {
+        this.entityType = entityType;
+        this.payload = payload;
+    }
 
     @Override
     public String toString() {
         return "DatabaseChangeEventDTO{" +
                "entityType='" + entityType + '\'' +
                ", payload=" + (payload != null ? payload.toString() : "null") +
+               (sequence != null ? ", sequence=" + sequence : "") +
                '}';
     }
 }
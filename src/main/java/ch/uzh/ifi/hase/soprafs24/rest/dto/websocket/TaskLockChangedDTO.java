@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto.websocket;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TaskLockChangedDTO {
+    private Long taskId;
+    private Long lockedByUser; // null once the task is unlocked
+}
@@ -3,7 +3,10 @@ package ch.uzh.ifi.hase.soprafs24.rest.mapper;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.entity.TaskExpiryJob;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskView;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskDeleteDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskExpiryJobGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskPutDTO;
@@ -72,7 +75,7 @@ public interface DTOMapper {
   @Mapping(source = "xp", target = "xp")
   @Mapping(source = "level", target = "level")
   @Mapping(source = "code", target = "code")
-  @Mapping(source = "members", target = "members")
+  @Mapping(target = "members", ignore = true)
   @Mapping(source = "tasks", target = "tasks")
   @Mapping(source = "isPaused", target = "isPaused")
   TeamGetDTO convertEntityToTeamGetDTO(Team team);
@@ -110,6 +113,25 @@ public interface DTOMapper {
   @Mapping(source = "assigneeName", target = "assigneeName")
   TaskGetDTO convertEntityToTaskGetDTO(Task task);
 
+  @Mapping(source = "id", target = "id")
+  @Mapping(source = "creatorId", target = "creatorId")
+  @Mapping(source = "isAssignedTo", target = "isAssignedTo")
+  @Mapping(source = "name", target = "name")
+  @Mapping(source = "description", target = "description")
+  @Mapping(source = "deadline", target = "deadline", dateFormat = "yyyy-MM-dd")
+  @Mapping(source = "color", target = "color")
+  @Mapping(source = "activeStatus", target = "activeStatus")
+  @Mapping(source = "value", target = "value")
+  @Mapping(source = "googleEventId", target = "googleEventId")
+  @Mapping(source = "daysVisible", target = "daysVisible")
+  @Mapping(source = "startDate", target = "startDate", dateFormat = "yyyy-MM-dd")
+  @Mapping(source = "frequency", target = "frequency")
+  @Mapping(source = "luckyDraw", target = "luckyDraw")
+  @Mapping(source = "creatorName", target = "creatorName")
+  @Mapping(source = "assigneeName", target = "assigneeName")
+  @Mapping(source = "lockedByUser", target = "lockedByUser")
+  TaskGetDTO convertTaskViewToTaskGetDTO(TaskView taskView);
+
   @Mapping(source = "id", target = "id")
   @Mapping(source = "creatorId", target = "creatorId")
   @Mapping(source = "isAssignedTo", target = "isAssignedTo")
@@ -142,4 +164,14 @@ public interface DTOMapper {
 
   @Mapping(source = "id", target = "id")
   Task convertTaskDeleteDTOtoEntity(TaskDeleteDTO taskDeleteDTO);
+
+  @Mapping(source = "id", target = "id")
+  @Mapping(source = "status", target = "status")
+  @Mapping(source = "cutoffDate", target = "cutoffDate", dateFormat = "yyyy-MM-dd")
+  @Mapping(source = "lastTaskId", target = "lastTaskId")
+  @Mapping(source = "processedTasks", target = "processedTasks")
+  @Mapping(source = "startedAt", target = "startedAt", dateFormat = "yyyy-MM-dd'T'HH:mm:ss")
+  @Mapping(source = "finishedAt", target = "finishedAt", dateFormat = "yyyy-MM-dd'T'HH:mm:ss")
+  @Mapping(source = "lastError", target = "lastError")
+  TaskExpiryJobGetDTO convertEntityToTaskExpiryJobGetDTO(TaskExpiryJob taskExpiryJob);
 }
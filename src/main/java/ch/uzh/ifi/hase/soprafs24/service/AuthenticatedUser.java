@@ -0,0 +1,62 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+/**
+ * The user behind the bearer token of a request, resolved once per request
+ * (see AuthenticatedUserArgumentResolver). It is an immutable copy of the
+ * fields the controllers and validations need, so it can be cached and shared
+ * between requests without holding on to a managed User entity.
+ */
+public final class AuthenticatedUser {
+
+    private final Long userId;
+    private final String username;
+    private final Long teamId;
+    private final UserStatus status;
+    private final ColorID color;
+
+    public AuthenticatedUser(Long userId, String username, Long teamId, UserStatus status, ColorID color) {
+        this.userId = userId;
+        this.username = username;
+        this.teamId = teamId;
+        this.status = status;
+        this.color = color;
+    }
+
+    public static AuthenticatedUser of(User user) {
+        return new AuthenticatedUser(user.getId(), user.getUsername(), user.getTeamId(), user.getStatus(),
+                user.getColor());
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Long getTeamId() {
+        return teamId;
+    }
+
+    public UserStatus getStatus() {
+        return status;
+    }
+
+    public ColorID getColor() {
+        return color;
+    }
+
+    public boolean isOnline() {
+        return status == UserStatus.ONLINE;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthenticatedUser{userId=" + userId + ", teamId=" + teamId + ", status=" + status + "}";
+    }
+}
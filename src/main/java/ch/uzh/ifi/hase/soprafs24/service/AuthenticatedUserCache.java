@@ -0,0 +1,129 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Short-lived cache from bearer token to AuthenticatedUser, so the token of a
+ * request is not looked up again by every validation and by every request of
+ * a client that polls.
+ * Entries live for auth.token-cache.ttl-millis. The UserEntityListener drops
+ * the entry of a user whenever the user is updated (login, logout, team
+ * change, profile change) or removed, once right away and once more after the
+ * commit, so a reader that loaded the old row in between does not keep it.
+ * Unknown tokens are not cached.
+ */
+@Component
+public class AuthenticatedUserCache {
+
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // token per user, so an update of a user drops its entry without a scan
+    private final Map<Long, String> tokensByUser = new ConcurrentHashMap<>();
+    // bumped by every invalidation, a load that overlapped one is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong nextSweepAt = new AtomicLong();
+
+    @Autowired
+    public AuthenticatedUserCache(@Value("${auth.token-cache.ttl-millis:5000}") long ttlMillis) {
+        this(ttlMillis, System::currentTimeMillis);
+    }
+
+    public AuthenticatedUserCache(long ttlMillis, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @param token  The bearer token.
+     * @param loader Loads the user of a token that is not cached, may return null.
+     * @return The user of the token, null if there is none.
+     */
+    public AuthenticatedUser get(String token, Function<String, User> loader) {
+        if (token == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        Entry entry = entries.get(token);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.user;
+        }
+        long loadGeneration = generation.get();
+        User user = loader.apply(token);
+        if (user == null || user.getId() == null) {
+            entries.remove(token);
+            return null;
+        }
+        AuthenticatedUser authenticatedUser = AuthenticatedUser.of(user);
+        if (ttlMillis > 0 && generation.get() == loadGeneration) {
+            entries.put(token, new Entry(authenticatedUser, now + ttlMillis));
+            String previousToken = tokensByUser.put(authenticatedUser.getUserId(), token);
+            if (previousToken != null && !previousToken.equals(token)) {
+                entries.remove(previousToken);
+            }
+        }
+        sweep(now);
+        return authenticatedUser;
+    }
+
+    /**
+     * Drops the cached entry of the user, again after the commit if a
+     * transaction is active.
+     */
+    public void invalidateUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long userId) {
+        generation.incrementAndGet();
+        String token = tokensByUser.remove(userId);
+        if (token != null) {
+            entries.remove(token);
+        }
+    }
+
+    // expired entries of tokens that are no longer used are dropped at most once per TTL
+    private void sweep(long now) {
+        long sweepAt = nextSweepAt.get();
+        if (now < sweepAt || !nextSweepAt.compareAndSet(sweepAt, now + Math.max(ttlMillis, 1000L))) {
+            return;
+        }
+        entries.forEach((token, entry) -> {
+            if (entry.expiresAt <= now && entries.remove(token, entry)) {
+                tokensByUser.remove(entry.user.getUserId(), token);
+            }
+        });
+    }
+
+    private static final class Entry {
+        private final AuthenticatedUser user;
+        private final long expiresAt;
+
+        private Entry(AuthenticatedUser user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.services.calendar.Calendar;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Calendar clients per user, so repeated calendar operations of a user skip
+ * the token lookup and the construction of the client.
+ * A client is kept until shortly before the access token of its credential
+ * expires (the same margin after which CalendarService refreshes the token),
+ * the next operation then loads and, if needed, refreshes the credential and
+ * builds a new client. CalendarService drops the client of a user whose
+ * token was replaced through the OAuth callback.
+ */
+@Component
+public class CalendarClientCache {
+
+    // CalendarService refreshes tokens that expire within this margin
+    static final long EXPIRY_MARGIN_MILLIS = 60_000L;
+
+    private final LongSupplier clock;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepAt = new AtomicLong();
+
+    @Autowired
+    public CalendarClientCache() {
+        this(System::currentTimeMillis);
+    }
+
+    public CalendarClientCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Loads the credential of a user, refreshing its access token if needed.
+     */
+    @FunctionalInterface
+    public interface CredentialLoader {
+        Credential load(Long userId) throws IOException, GeneralSecurityException;
+    }
+
+    /**
+     * @param userId      The ID of the user.
+     * @param credentials Loads the credential of a user without a usable client.
+     * @param builder     Builds the client for a credential.
+     * @return The Calendar client of the user.
+     */
+    public Calendar get(Long userId, CredentialLoader credentials, Function<Credential, Calendar> builder)
+            throws IOException, GeneralSecurityException {
+        if (userId == null) {
+            return builder.apply(credentials.load(null));
+        }
+        long now = clock.getAsLong();
+        Entry entry = entries.get(userId);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.calendar;
+        }
+        Credential credential = credentials.load(userId);
+        Calendar calendar = builder.apply(credential);
+        Long expiresAt = credential.getExpirationTimeMilliseconds();
+        // a credential without an expiry is not cached, its token is refreshed on every load
+        if (expiresAt != null && expiresAt - EXPIRY_MARGIN_MILLIS > now) {
+            entries.put(userId, new Entry(calendar, expiresAt - EXPIRY_MARGIN_MILLIS));
+        } else {
+            entries.remove(userId);
+        }
+        sweep(now);
+        return calendar;
+    }
+
+    /**
+     * Drops the client of the user, the next operation builds one from the
+     * stored token.
+     */
+    public void invalidateUser(Long userId) {
+        if (userId != null) {
+            entries.remove(userId);
+        }
+    }
+
+    // clients of users that stopped using the calendar are dropped at most once per margin
+    private void sweep(long now) {
+        long sweepAt = nextSweepAt.get();
+        if (now < sweepAt || !nextSweepAt.compareAndSet(sweepAt, now + EXPIRY_MARGIN_MILLIS)) {
+            return;
+        }
+        entries.forEach((userId, entry) -> {
+            if (entry.expiresAt <= now) {
+                entries.remove(userId, entry);
+            }
+        });
+    }
+
+    private static final class Entry {
+        private final Calendar calendar;
+        private final long expiresAt;
+
+        private Entry(Calendar calendar, long expiresAt) {
+            this.calendar = calendar;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -3,15 +3,12 @@ package ch.uzh.ifi.hase.soprafs24.service;
 import com.google.api.client.auth.oauth2.BearerToken;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.DateTime;
-import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.services.calendar.Calendar;
-import com.google.api.services.calendar.CalendarScopes;
 import com.google.api.services.calendar.model.Event;
 import com.google.api.services.calendar.model.EventDateTime;
 import com.google.api.services.calendar.model.Events;
@@ -19,7 +16,9 @@ import com.google.common.annotations.VisibleForTesting;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpStatus;
@@ -28,13 +27,11 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import ch.uzh.ifi.hase.soprafs24.repository.GoogleTokenRepository;
-import ch.uzh.ifi.hase.soprafs24.config.JpaDataStoreFactory;
 import ch.uzh.ifi.hase.soprafs24.entity.GoogleToken;
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
 import ch.uzh.ifi.hase.soprafs24.exceptions.CalendarAuthorizationException;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.time.Instant;
 import java.time.LocalDate;
@@ -69,46 +66,35 @@ public class CalendarService {
     @Value("${frontend.url}")
     private String frontendUrl;
 
+    // empty for Google, tests point it at a local fake Calendar endpoint
+    @Value("${google.calendar.root-url:}")
+    private String calendarRootUrl;
+
     private TaskService taskService;
     private final GoogleTokenRepository googleTokenRepository;
+    private final NetHttpTransport httpTransport;
+    private final ObjectProvider<GoogleAuthorizationCodeFlow> flowProvider;
+    private final CalendarClientCache calendarClientCache;
+    private final CalendarSyncOutbox calendarSyncOutbox;
 
     @Autowired
-    private JpaDataStoreFactory jpaDataStoreFactory;
-
-    public CalendarService(@Lazy TaskService taskService, GoogleTokenRepository googleTokenRepository) {
+    public CalendarService(@Lazy TaskService taskService, GoogleTokenRepository googleTokenRepository,
+            @Qualifier("googleHttpTransport") NetHttpTransport httpTransport,
+            ObjectProvider<GoogleAuthorizationCodeFlow> flowProvider,
+            CalendarClientCache calendarClientCache, CalendarSyncOutbox calendarSyncOutbox) {
         this.taskService = taskService;
         this.googleTokenRepository = googleTokenRepository;
+        this.httpTransport = httpTransport;
+        this.flowProvider = flowProvider;
+        this.calendarClientCache = calendarClientCache;
+        this.calendarSyncOutbox = calendarSyncOutbox;
     }
 
+    /**
+     * @return The shared flow (see GoogleCalendarConfig), created on first use.
+     */
     protected GoogleAuthorizationCodeFlow getFlow() throws IOException, GeneralSecurityException {
-        String json = System.getenv("GOOGLE_CALENDAR_CREDENTIALS");
-        GoogleClientSecrets clientSecrets;
-
-        if (json == null || json.isEmpty()) {
-            logger.warn("GOOGLE_CALENDAR_CREDENTIALS environment variable is not set. Using local_credentials.json as fallback.");
-
-            try (InputStream in = new FileInputStream("src/main/resources/local_credentials.json")) {
-                clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in));
-            } catch (FileNotFoundException e) {
-                logger.error("local_credentials.json not found. Google Calendar integration will not work.", e);
-                throw new IllegalStateException("Missing both GOOGLE_CALENDAR_CREDENTIALS and local_credentials.json", e);
-            }
-        } else {
-            clientSecrets = GoogleClientSecrets.load(JSON_FACTORY,
-                    new InputStreamReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
-        }
-
-        final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        
-        return new GoogleAuthorizationCodeFlow.Builder(
-                httpTransport,
-                JSON_FACTORY,
-                clientSecrets,
-                Collections.singletonList(CalendarScopes.CALENDAR))
-                .setAccessType(OFFLINE)
-                .setDataStoreFactory(jpaDataStoreFactory)
-                .setTokenServerUrl(new GenericUrl("https://oauth2.googleapis.com/token"))
-                .build();
+        return flowProvider.getObject();
     }
 
     protected String getRedirectUri() {
@@ -235,44 +221,77 @@ public class CalendarService {
     public void syncSingleTask(Task task, Long userId) {
         try {
             Calendar cal = getCalendarServiceForUser(userId);
-
-            LocalDate startDate = task.getStartDate().toInstant()
-                .atZone(ZoneId.systemDefault())
-                .toLocalDate();
-            LocalDate deadlineDate = task.getDeadline().toInstant()
-                .atZone(ZoneId.systemDefault())
-                .toLocalDate();
-
-            DateTime startDateTime = new DateTime(startDate.toString());
-            DateTime endDateTime = new DateTime(deadlineDate.plusDays(1).toString());
-
-            Event event = new Event()
-                .setSummary("[TASK] " + task.getName())
-                .setDescription(task.getDescription())
-                .setStart(new EventDateTime().setDate(startDateTime))
-                .setEnd(new EventDateTime().setDate(endDateTime));
-
-            if (Boolean.TRUE.equals(task.getActiveStatus())) {
-                if (task.getGoogleEventId() == null) {
-                    Event inserted = cal.events()
-                                         .insert(PRIMARY, event)
-                                         .execute();
-                    task.setGoogleEventId(inserted.getId());
-                } else {
-                    cal.events()
-                       .update(PRIMARY, task.getGoogleEventId(), event)
-                       .execute();
-                }
-            } else if (task.getGoogleEventId() != null) {
-                cal.events().delete(PRIMARY, task.getGoogleEventId()).execute();
-                task.setGoogleEventId(null);
-            }
+            upsertTaskEvent(cal, task);
             taskService.saveTask(task);
 
         } catch (IOException | GeneralSecurityException ex) {
             logger.warn("Google Calendar sync failed for task {} / user {}: {}", task.getId(), userId, ex.getMessage(), ex);        }
     }
 
+    /**
+     * Writes the event of a task to the calendar of a user, for the
+     * CalendarSyncWorker. Unlike syncSingleTask failures are thrown, so the
+     * worker can retry, and the task is not saved.
+     *
+     * @return The event id of the task afterwards, null if it has no event.
+     */
+    public String pushTaskEvent(Task task, Long userId) throws IOException, GeneralSecurityException {
+        upsertTaskEvent(getCalendarServiceForUser(userId), task);
+        return task.getGoogleEventId();
+    }
+
+    /**
+     * Deletes an event of a deleted task, an event that is already gone counts
+     * as deleted.
+     */
+    public void deleteTaskEvent(String googleEventId, Long userId) throws IOException, GeneralSecurityException {
+        try {
+            getCalendarServiceForUser(userId).events().delete(PRIMARY, googleEventId).execute();
+        } catch (HttpResponseException e) {
+            if (e.getStatusCode() != 404 && e.getStatusCode() != 410) {
+                throw e;
+            }
+        }
+    }
+
+    public boolean isCalendarConnected(Long userId) {
+        return googleTokenRepository.existsById(userId);
+    }
+
+    private void upsertTaskEvent(Calendar cal, Task task) throws IOException {
+        LocalDate startDate = task.getStartDate().toInstant()
+            .atZone(ZoneId.systemDefault())
+            .toLocalDate();
+        LocalDate deadlineDate = task.getDeadline().toInstant()
+            .atZone(ZoneId.systemDefault())
+            .toLocalDate();
+
+        DateTime startDateTime = new DateTime(startDate.toString());
+        DateTime endDateTime = new DateTime(deadlineDate.plusDays(1).toString());
+
+        Event event = new Event()
+            .setSummary("[TASK] " + task.getName())
+            .setDescription(task.getDescription())
+            .setStart(new EventDateTime().setDate(startDateTime))
+            .setEnd(new EventDateTime().setDate(endDateTime));
+
+        if (Boolean.TRUE.equals(task.getActiveStatus())) {
+            if (task.getGoogleEventId() == null) {
+                Event inserted = cal.events()
+                                     .insert(PRIMARY, event)
+                                     .execute();
+                task.setGoogleEventId(inserted.getId());
+            } else {
+                cal.events()
+                   .update(PRIMARY, task.getGoogleEventId(), event)
+                   .execute();
+            }
+        } else if (task.getGoogleEventId() != null) {
+            cal.events().delete(PRIMARY, task.getGoogleEventId()).execute();
+            task.setGoogleEventId(null);
+        }
+    }
+
     public void syncTaskWithGoogleCalendar(Long userId, Map<String, Object> taskEvent) {
         try {
             Calendar userCalendar = getCalendarServiceForUser(userId);
@@ -299,12 +318,13 @@ public class CalendarService {
         }
     }
 
+    /**
+     * Queues a sync of all active tasks of the user's team. The CalendarSyncWorker
+     * pushes them under the lease of each task, so a manual sync cannot race a
+     * pending edit and create a second event, and it writes back only the event id.
+     */
     public void syncAllActiveTasksToUserCalendar(Long userId) {
-        taskService.getFilteredTasks(true, null)
-                   .forEach(t -> {
-                       syncSingleTask(t, userId);
-                       taskService.saveTask(t);   // Save task to DB
-                   });
+        calendarSyncOutbox.enqueueUpserts(taskService.getFilteredTasksForUser(userId, true, null));
     }
 
     public String generateAuthUrl(Long userId) throws CalendarAuthorizationException {
@@ -355,6 +375,8 @@ public class CalendarService {
         googleToken.setExpirationTime(System.currentTimeMillis() + (tokenResponse.getExpiresInSeconds() * 1000));
 
         googleTokenRepository.save(googleToken);
+        // the cached client still holds the previous token
+        calendarClientCache.invalidateUser(userId);
 
         logger.info("Google OAuth token saved for user: {}", userId);
     }
@@ -400,12 +422,15 @@ public class CalendarService {
 
     @VisibleForTesting
     public Calendar getCalendarServiceForUser(Long userId) throws IOException, GeneralSecurityException {
-        Credential cred = getUserCredentials(userId);
-        final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-
-        return new Calendar.Builder(httpTransport, JSON_FACTORY, cred)
-                .setApplicationName(APPLICATION_NAME)
-                .build();
+        return calendarClientCache.get(userId, this::getUserCredentials,
+                cred -> {
+                    Calendar.Builder builder = new Calendar.Builder(httpTransport, JSON_FACTORY, cred)
+                            .setApplicationName(APPLICATION_NAME);
+                    if (calendarRootUrl != null && !calendarRootUrl.isEmpty()) {
+                        builder.setRootUrl(calendarRootUrl);
+                    }
+                    return builder.build();
+                });
     }
 
     public Event getEventById(String eventId, Long userId) throws IOException, GeneralSecurityException {
@@ -435,7 +460,7 @@ public class CalendarService {
         }
     
         // Fetch tasks (filtered by active status if needed)
-        List<Task> tasks = taskService.getFilteredTasks(activeOnly, null);  // Ensure taskService handles 'activeOnly'
+        List<Task> tasks = taskService.getFilteredTasksForUser(userId, activeOnly, null);  // only tasks of the user's team
         for (Task task : tasks) {
             if (!isWithinRange(task.getDeadline(), startDate, endDate)) {
                 continue; // skip tasks outside of date range
@@ -0,0 +1,100 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.CalendarSyncAction;
+import ch.uzh.ifi.hase.soprafs24.entity.CalendarSyncIntent;
+import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.repository.CalendarSyncIntentRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GoogleTokenRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records that the Google Calendar of a task's creator has to be updated.
+ * The intent is written in the transaction that changes the task, so it is
+ * committed or rolled back together with the change, and the CalendarSyncWorker
+ * talks to Google after the commit, without holding a database connection.
+ * Nothing is written for a creator without a connected Google Calendar, the
+ * worker would only drop the intent; the token is looked up once per creator
+ * and call.
+ */
+@Service
+@Transactional(rollbackFor = Exception.class)
+public class CalendarSyncOutbox {
+
+    private final CalendarSyncIntentRepository intentRepository;
+    private final GoogleTokenRepository googleTokenRepository;
+
+    @Autowired
+    public CalendarSyncOutbox(@Qualifier("calendarSyncIntentRepository") CalendarSyncIntentRepository intentRepository,
+            @Qualifier("googleTokenRepository") GoogleTokenRepository googleTokenRepository) {
+        this.intentRepository = intentRepository;
+        this.googleTokenRepository = googleTokenRepository;
+    }
+
+    /**
+     * The event of the task is created or updated (or deleted if the task is
+     * no longer active) from the state of the task when the intent is processed.
+     *
+     * @param task A saved task.
+     */
+    public void enqueueUpsert(Task task) {
+        if (isCalendarConnected(task.getcreatorId())) {
+            intentRepository.save(newIntent(task, CalendarSyncAction.UPSERT, new Date()));
+        }
+    }
+
+    public void enqueueUpserts(List<Task> tasks) {
+        Date now = new Date();
+        Map<Long, Boolean> connected = new HashMap<>();
+        List<CalendarSyncIntent> intents = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            if (task.getcreatorId() != null
+                    && connected.computeIfAbsent(task.getcreatorId(), this::isCalendarConnected)) {
+                intents.add(newIntent(task, CalendarSyncAction.UPSERT, now));
+            }
+        }
+        if (!intents.isEmpty()) {
+            intentRepository.saveAll(intents);
+        }
+    }
+
+    /**
+     * The event of the task is deleted. The event id is kept on the intent
+     * since the task itself is deleted; a push of the task that is still
+     * running records its event id in the CalendarSyncLease instead, which the
+     * worker reads when it processes the DELETE.
+     *
+     * @param task The task that is being deleted.
+     */
+    public void enqueueDelete(Task task) {
+        if (!isCalendarConnected(task.getcreatorId())) {
+            return;
+        }
+        CalendarSyncIntent intent = newIntent(task, CalendarSyncAction.DELETE, new Date());
+        intent.setGoogleEventId(task.getGoogleEventId());
+        intentRepository.save(intent);
+    }
+
+    private boolean isCalendarConnected(Long userId) {
+        return userId != null && googleTokenRepository.existsById(userId);
+    }
+
+    private CalendarSyncIntent newIntent(Task task, CalendarSyncAction action, Date now) {
+        CalendarSyncIntent intent = new CalendarSyncIntent();
+        intent.setTaskId(task.getId());
+        intent.setUserId(task.getcreatorId());
+        intent.setAction(action);
+        intent.setAttempts(0);
+        intent.setNextAttemptAt(now);
+        intent.setCreatedAt(now);
+        return intent;
+    }
+}
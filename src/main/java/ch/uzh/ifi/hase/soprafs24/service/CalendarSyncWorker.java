@@ -0,0 +1,254 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.CalendarSyncAction;
+import ch.uzh.ifi.hase.soprafs24.entity.CalendarSyncIntent;
+import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.repository.CalendarSyncIntentRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.CalendarSyncLeaseRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Drains the calendar sync outbox (see CalendarSyncOutbox) in the background.
+ * Every poll takes the due intents, keeps only the latest one per task (earlier
+ * edits of the same task are covered by it), takes the lease of the task (see
+ * CalendarSyncLease) and talks to Google outside of any transaction. The
+ * database is only used for the short reads and writes around the call.
+ * Since the lease is per task and not per intent, an edit made while the task
+ * is being pushed waits for the push instead of racing it on another instance.
+ * The event id of a push is recorded on the lease as well, and a DELETE reads
+ * it when it runs, so it also deletes an event whose push was still running
+ * when the task was deleted.
+ * A failed intent is retried after calendar.sync.backoff-millis, doubled with
+ * every attempt up to MAX_BACKOFF_MILLIS, and dropped after
+ * calendar.sync.max-attempts. An instance that dies while holding a lease
+ * leaves the task to the other instances once the lease runs out.
+ */
+@Component
+@ConditionalOnProperty(name = "calendar.sync.worker.enabled", havingValue = "true", matchIfMissing = true)
+public class CalendarSyncWorker {
+
+    static final int BATCH_SIZE = 50;
+    static final long LEASE_MILLIS = 120_000;
+    static final long MAX_BACKOFF_MILLIS = 3_600_000;
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private static final Logger log = LoggerFactory.getLogger(CalendarSyncWorker.class);
+    private final CalendarSyncIntentRepository intentRepository;
+    private final CalendarSyncLeaseRepository leaseRepository;
+    private final TaskRepository taskRepository;
+    private final CalendarService calendarService;
+    private final TransactionTemplate transactionTemplate;
+    private final long pollMillis;
+    private final long backoffMillis;
+    private final int maxAttempts;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "calendar-sync-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public CalendarSyncWorker(@Qualifier("calendarSyncIntentRepository") CalendarSyncIntentRepository intentRepository,
+            @Qualifier("calendarSyncLeaseRepository") CalendarSyncLeaseRepository leaseRepository,
+            @Qualifier("taskRepository") TaskRepository taskRepository,
+            @Qualifier("calendarService") CalendarService calendarService,
+            PlatformTransactionManager transactionManager,
+            @Value("${calendar.sync.poll-millis:1000}") long pollMillis,
+            @Value("${calendar.sync.backoff-millis:5000}") long backoffMillis,
+            @Value("${calendar.sync.max-attempts:8}") int maxAttempts) {
+        this(intentRepository, leaseRepository, taskRepository, calendarService, new TransactionTemplate(transactionManager),
+                pollMillis, backoffMillis, maxAttempts, System::currentTimeMillis);
+    }
+
+    public CalendarSyncWorker(CalendarSyncIntentRepository intentRepository,
+            CalendarSyncLeaseRepository leaseRepository, TaskRepository taskRepository,
+            CalendarService calendarService, TransactionTemplate transactionTemplate, long pollMillis,
+            long backoffMillis, int maxAttempts, LongSupplier clock) {
+        this.intentRepository = intentRepository;
+        this.leaseRepository = leaseRepository;
+        this.taskRepository = taskRepository;
+        this.calendarService = calendarService;
+        this.transactionTemplate = transactionTemplate;
+        this.pollMillis = pollMillis;
+        this.backoffMillis = backoffMillis;
+        this.maxAttempts = maxAttempts;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void start() {
+        worker.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    void poll() {
+        try {
+            drain();
+        } catch (Exception e) {
+            log.warn("Draining the calendar sync outbox failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Processes the intents that are due now.
+     *
+     * @return The number of intents that were processed, successfully or not.
+     */
+    public int drain() {
+        long now = clock.getAsLong();
+        List<CalendarSyncIntent> due = transactionTemplate
+                .execute(status -> intentRepository.findDue(new Date(now), PageRequest.of(0, BATCH_SIZE)));
+        // ordered by id, so the latest intent of each task wins
+        Map<Long, CalendarSyncIntent> latestByTask = new LinkedHashMap<>();
+        for (CalendarSyncIntent intent : due) {
+            latestByTask.put(intent.getTaskId(), intent);
+        }
+        int processed = 0;
+        for (CalendarSyncIntent intent : latestByTask.values()) {
+            Date leaseUntil = new Date(now + LEASE_MILLIS);
+            if (!claim(intent.getTaskId(), new Date(now), leaseUntil)) {
+                continue; // being synced by another instance
+            }
+            try {
+                // the holder of the previous lease may have processed it since it was read
+                if (Boolean.TRUE.equals(transactionTemplate.execute(
+                        status -> intentRepository.existsById(intent.getId())))) {
+                    process(intent);
+                    processed++;
+                }
+            } finally {
+                transactionTemplate.executeWithoutResult(status ->
+                        leaseRepository.release(intent.getTaskId(), leaseUntil, new Date(clock.getAsLong())));
+            }
+        }
+        return processed;
+    }
+
+    private boolean claim(Long taskId, Date now, Date leaseUntil) {
+        Integer claimed = transactionTemplate.execute(status -> leaseRepository.claim(taskId, now, leaseUntil));
+        if (claimed != null && claimed > 0) {
+            return true;
+        }
+        try {
+            // first sync of the task
+            transactionTemplate.executeWithoutResult(status -> leaseRepository.insert(taskId, leaseUntil));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // the lease exists and is held by another instance
+            return false;
+        }
+    }
+
+    private void process(CalendarSyncIntent intent) {
+        try {
+            if (calendarService.isCalendarConnected(intent.getUserId())) {
+                if (intent.getAction() == CalendarSyncAction.DELETE) {
+                    deleteEvent(intent);
+                } else {
+                    pushTask(intent);
+                }
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                intentRepository.deleteUpTo(intent.getTaskId(), intent.getId());
+                if (intent.getAction() == CalendarSyncAction.DELETE) {
+                    leaseRepository.deleteByTaskId(intent.getTaskId());
+                }
+            });
+        } catch (Exception e) {
+            retryLater(intent, e);
+        }
+    }
+
+    private void deleteEvent(CalendarSyncIntent intent) throws Exception {
+        // read now and not when the task was deleted, a push running back then recorded its event here
+        String recorded = transactionTemplate.execute(
+                status -> leaseRepository.findGoogleEventIdByTaskId(intent.getTaskId()));
+        String eventId = recorded != null ? recorded : intent.getGoogleEventId();
+        if (eventId != null) {
+            calendarService.deleteTaskEvent(eventId, intent.getUserId());
+        }
+    }
+
+    private void pushTask(CalendarSyncIntent intent) throws Exception {
+        Task task = transactionTemplate.execute(status -> taskRepository.findById(intent.getTaskId()).orElse(null));
+        if (task == null) {
+            return; // deleted meanwhile, its DELETE intent takes care of the event
+        }
+        String storedEventId = task.getGoogleEventId();
+        String recorded = transactionTemplate.execute(
+                status -> leaseRepository.findGoogleEventIdByTaskId(intent.getTaskId()));
+        if (recorded != null) {
+            // an edit saved with an older copy of the task may have overwritten the column
+            task.setGoogleEventId(recorded);
+        }
+        String eventId = calendarService.pushTaskEvent(task, intent.getUserId());
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!Objects.equals(storedEventId, eventId)) {
+                taskRepository.updateGoogleEventId(task.getId(), eventId);
+            }
+            leaseRepository.updateGoogleEventId(task.getId(), eventId);
+        });
+    }
+
+    private void retryLater(CalendarSyncIntent intent, Exception error) {
+        int attempts = intent.getAttempts() + 1;
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (attempts >= maxAttempts) {
+            log.error("Google Calendar sync of task {} for user {} failed {} times, giving up: {}",
+                    intent.getTaskId(), intent.getUserId(), attempts, message, error);
+            transactionTemplate.executeWithoutResult(
+                    status -> intentRepository.deleteUpTo(intent.getTaskId(), intent.getId()));
+            return;
+        }
+        long delay = backoffMillis(attempts);
+        log.warn("Google Calendar sync of task {} for user {} failed (attempt {}), retrying in {} ms: {}",
+                intent.getTaskId(), intent.getUserId(), attempts, delay, message);
+        transactionTemplate.executeWithoutResult(status -> {
+            // the older intents of the task are covered by this one
+            intentRepository.deleteUpTo(intent.getTaskId(), intent.getId() - 1);
+            intentRepository.findById(intent.getId()).ifPresent(stored -> {
+                stored.setAttempts(attempts);
+                stored.setNextAttemptAt(new Date(clock.getAsLong() + delay));
+                stored.setLastError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+                intentRepository.save(stored);
+            });
+        });
+    }
+
+    // backoffMillis, 2x, 4x, ... up to MAX_BACKOFF_MILLIS
+    private long backoffMillis(int attempts) {
+        long delay = backoffMillis;
+        for (int i = 1; i < attempts && delay < MAX_BACKOFF_MILLIS; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_BACKOFF_MILLIS);
+    }
+}
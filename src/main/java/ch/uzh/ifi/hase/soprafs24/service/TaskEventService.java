@@ -0,0 +1,252 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.TeamEventSequenceRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Sends task changes to the members of a team as deltas (TASK_CREATED,
+ * TASK_UPDATED, TASK_DELETED) instead of full TASKS snapshots.
+ * Every event of a team carries the next number of the team's sequence, which is
+ * kept in the database so it increases across instances. A client applies an
+ * event with the number following the last one it has seen, ignores older ones
+ * and sends a SNAPSHOT message to get the full task list when it sees a gap.
+ * Snapshots carry the sequence number they are current with.
+ * The events are queued after the commit of the change and numbered and sent by
+ * one publisher thread. The committing request neither opens a second database
+ * connection nor waits for the reservation, the publisher reserves the numbers of
+ * all queued events of a team with one update, and the events of an instance are
+ * sent in the order they were numbered.
+ */
+@Service
+public class TaskEventService {
+
+    public static final String TASKS_ENTITY_TYPE = "TASKS";
+    public static final String TASK_CREATED_ENTITY_TYPE = "TASK_CREATED";
+    public static final String TASK_UPDATED_ENTITY_TYPE = "TASK_UPDATED";
+    public static final String TASK_DELETED_ENTITY_TYPE = "TASK_DELETED";
+    static final int BATCH_SIZE = 200;
+    static final int QUEUE_CAPACITY = 10_000;
+
+    private final Logger log = LoggerFactory.getLogger(TaskEventService.class);
+    private final TeamEventSequenceRepository sequenceRepository;
+    private final WebSocketNotificationService notificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Publication> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final ExecutorService publisher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "task-event-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public TaskEventService(
+            @Qualifier("teamEventSequenceRepository") TeamEventSequenceRepository sequenceRepository,
+            @Lazy WebSocketNotificationService notificationService,
+            PlatformTransactionManager transactionManager) {
+        this.sequenceRepository = sequenceRepository;
+        this.notificationService = notificationService;
+        // only used on the publisher thread, which never runs inside a caller's transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() {
+        publisher.execute(this::publishLoop);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.shutdownNow();
+        // best effort for the events queued since the last batch
+        flush();
+    }
+
+    /**
+     * Sends the changes of one transaction to a team, numbered in the given order.
+     */
+    public void publishChanges(Long teamId, List<DatabaseChangeEventDTO<?>> events) {
+        if (teamId == null || events.isEmpty()) {
+            return;
+        }
+        enqueue(new Publication(teamId, List.copyOf(events), null));
+    }
+
+    public void publishUpdated(Long teamId, TaskGetDTO task) {
+        publishChanges(teamId, List.of(updated(task)));
+    }
+
+    /**
+     * Sends the full task list of a team, e.g. after a bulk update of all its tasks.
+     * The tasks are read after the number is reserved, so they contain every change
+     * numbered up to it.
+     */
+    public void publishSnapshot(Long teamId, Supplier<List<TaskGetDTO>> tasks) {
+        if (teamId == null) {
+            return;
+        }
+        enqueue(new Publication(teamId, null, tasks));
+    }
+
+    /**
+     * Numbers and sends the queued events right away, on the calling thread.
+     *
+     * @return The number of events and snapshots sent.
+     */
+    public int flush() {
+        int sent = 0;
+        List<Publication> batch = new ArrayList<>();
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            sent += send(batch);
+            batch.clear();
+        }
+        return sent;
+    }
+
+    /**
+     * @return The number of the last event sent to the team, 0 if none was sent yet.
+     */
+    public long currentSequence(Long teamId) {
+        Long last = teamId != null ? sequenceRepository.findLastSequence(teamId) : null;
+        return last != null ? last : 0L;
+    }
+
+    public static DatabaseChangeEventDTO<?> created(TaskGetDTO task) {
+        return new DatabaseChangeEventDTO<>(TASK_CREATED_ENTITY_TYPE, task);
+    }
+
+    public static DatabaseChangeEventDTO<?> updated(TaskGetDTO task) {
+        return new DatabaseChangeEventDTO<>(TASK_UPDATED_ENTITY_TYPE, task);
+    }
+
+    public static DatabaseChangeEventDTO<?> deleted(Long taskId) {
+        return new DatabaseChangeEventDTO<>(TASK_DELETED_ENTITY_TYPE, Map.of("id", taskId));
+    }
+
+    private void enqueue(Publication publication) {
+        if (!queue.offer(publication)) {
+            // the clients see the gap in the sequence and reload the snapshot
+            log.error("Task event queue is full, dropping {} event(s) of team {}", publication.count(),
+                    publication.teamId);
+        }
+    }
+
+    private void publishLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<Publication> batch = new ArrayList<>();
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // one reservation per team and batch, the publications of a team keep their order
+    private int send(List<Publication> batch) {
+        Map<Long, List<Publication>> byTeam = new LinkedHashMap<>();
+        for (Publication publication : batch) {
+            byTeam.computeIfAbsent(publication.teamId, id -> new ArrayList<>()).add(publication);
+        }
+        int sent = 0;
+        for (Map.Entry<Long, List<Publication>> team : byTeam.entrySet()) {
+            sent += sendTeam(team.getKey(), team.getValue());
+        }
+        return sent;
+    }
+
+    private int sendTeam(Long teamId, List<Publication> publications) {
+        int count = 0;
+        for (Publication publication : publications) {
+            count += publication.count();
+        }
+        try {
+            long sequence = reserve(teamId, count) - count;
+            for (Publication publication : publications) {
+                if (publication.snapshot != null) {
+                    sequence++;
+                    notificationService.notifyTeamMembers(teamId, TASKS_ENTITY_TYPE, publication.snapshot.get(),
+                            sequence);
+                    continue;
+                }
+                for (DatabaseChangeEventDTO<?> event : publication.events) {
+                    sequence++;
+                    notificationService.notifyTeamMembers(teamId, event.getEntityType(), event.getPayload(),
+                            sequence);
+                }
+            }
+            return count;
+        } catch (Exception e) {
+            log.error("Error sending {} task event(s) to team {}: {}", count, teamId, e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Reserves count numbers of the team's sequence.
+     *
+     * @return The last reserved number.
+     */
+    long reserve(Long teamId, int count) {
+        Long last = transactionTemplate.execute(status -> incrementAndGet(teamId, count));
+        if (last != null) {
+            return last;
+        }
+        try {
+            // first event of the team
+            transactionTemplate.executeWithoutResult(status -> sequenceRepository.insert(teamId, count));
+            return count;
+        } catch (DataIntegrityViolationException e) {
+            // another instance created the row first
+            return transactionTemplate.execute(status -> incrementAndGet(teamId, count));
+        }
+    }
+
+    private Long incrementAndGet(Long teamId, int count) {
+        if (sequenceRepository.increment(teamId, count) == 0) {
+            return null;
+        }
+        return sequenceRepository.findLastSequence(teamId);
+    }
+
+    // the events of one transaction, or a snapshot
+    private static final class Publication {
+        private final Long teamId;
+        private final List<DatabaseChangeEventDTO<?>> events;
+        private final Supplier<List<TaskGetDTO>> snapshot;
+
+        private Publication(Long teamId, List<DatabaseChangeEventDTO<?>> events, Supplier<List<TaskGetDTO>> snapshot) {
+            this.teamId = teamId;
+            this.events = events;
+            this.snapshot = snapshot;
+        }
+
+        private int count() {
+            return snapshot != null ? 1 : events.size();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ExpiryJobStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.entity.TaskExpiryJob;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.TaskExpiryJobRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Expires tasks whose deadline has passed.
+ * A run is stored as a TaskExpiryJob and processes the expired tasks in chunks
+ * of CHUNK_SIZE, each chunk in its own transaction. The job remembers the last
+ * processed task id, so a failed or interrupted run is resumed by the next
+ * cron call instead of starting over.
+ */
+@Service
+public class TaskExpiryService {
+
+    static final int CHUNK_SIZE = 100;
+    // a RUNNING job without progress for this long is considered abandoned (e.g. instance restart)
+    static final long STALE_AFTER_MILLIS = 5L * 60 * 1000;
+
+    private final Logger log = LoggerFactory.getLogger(TaskExpiryService.class);
+    private final TaskRepository taskRepository;
+    private final UserRepository userRepository;
+    private final TaskExpiryJobRepository taskExpiryJobRepository;
+    private final TaskService taskService;
+    private final UserService userService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "task-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Long runningJobId;
+
+    @Autowired
+    public TaskExpiryService(@Qualifier("taskRepository") TaskRepository taskRepository,
+            @Qualifier("userRepository") UserRepository userRepository,
+            @Qualifier("taskExpiryJobRepository") TaskExpiryJobRepository taskExpiryJobRepository,
+            @Qualifier("taskService") TaskService taskService,
+            @Qualifier("userService") UserService userService,
+            PlatformTransactionManager transactionManager) {
+        this.taskRepository = taskRepository;
+        this.userRepository = userRepository;
+        this.taskExpiryJobRepository = taskExpiryJobRepository;
+        this.taskService = taskService;
+        this.userService = userService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Starts (or resumes) the expiry run for today and returns immediately.
+     *
+     * @return The job that is processing the expired tasks.
+     */
+    public synchronized TaskExpiryJob startExpiryJob() {
+        if (runningJobId != null) {
+            return getJob(runningJobId); // already running on this instance
+        }
+        Date cutoffDate = startOfToday();
+        TaskExpiryJob job = taskExpiryJobRepository.findFirstByCutoffDateAndStatusNotOrderByIdDesc(cutoffDate,
+                ExpiryJobStatus.COMPLETED);
+        if (job != null && job.getStatus() == ExpiryJobStatus.RUNNING && !isStale(job)) {
+            return job; // another instance is still working on it
+        }
+        if (job == null) {
+            job = new TaskExpiryJob();
+            job.setCutoffDate(cutoffDate);
+            job.setLastTaskId(0L);
+            job.setProcessedTasks(0);
+            job.setStartedAt(new Date());
+        } else {
+            log.info("Resuming task expiry job {} after task {}", job.getId(), job.getLastTaskId());
+        }
+        job.setStatus(ExpiryJobStatus.RUNNING);
+        job.setUpdatedAt(new Date());
+        job.setLastError(null);
+        TaskExpiryJob savedJob = taskExpiryJobRepository.saveAndFlush(job);
+
+        runningJobId = savedJob.getId();
+        executor.execute(() -> runJob(savedJob.getId()));
+        return savedJob;
+    }
+
+    public TaskExpiryJob getJob(Long jobId) {
+        TaskExpiryJob job = taskExpiryJobRepository.findTaskExpiryJobById(jobId);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Expiry job not found with ID: " + jobId);
+        }
+        return job;
+    }
+
+    void runJob(Long jobId) {
+        try {
+            boolean hasMore = true;
+            while (hasMore) {
+                hasMore = Boolean.TRUE.equals(transactionTemplate.execute(status -> processChunk(jobId)));
+            }
+        } catch (Exception e) {
+            log.error("Task expiry job {} failed: {}", jobId, e.getMessage(), e);
+            transactionTemplate.executeWithoutResult(status -> markFailed(jobId, e.getMessage()));
+        } finally {
+            synchronized (this) {
+                runningJobId = null;
+            }
+        }
+    }
+
+    /**
+     * Expires the next chunk of tasks of a job. XP penalties are summed up per
+     * user first and applied in one batch, so every user is charged once per chunk.
+     *
+     * @param jobId The ID of the job to continue.
+     * @return true if there may be more tasks to process.
+     */
+    public boolean processChunk(Long jobId) {
+        TaskExpiryJob job = getJob(jobId);
+        List<Task> chunk = taskRepository.findTaskByActiveStatusAndDeadlineBeforeAndIdGreaterThanOrderByIdAsc(
+                true, job.getCutoffDate(), job.getLastTaskId(), PageRequest.of(0, CHUNK_SIZE));
+
+        Map<Long, Integer> xpDeltas = new HashMap<>();
+        Map<Long, List<User>> teamMembers = new HashMap<>();
+        for (Task task : chunk) {
+            addPenalty(task, xpDeltas, teamMembers);
+            taskService.expireTask(task);
+        }
+        userService.applyExperiencePointsDeltas(xpDeltas);
+
+        if (!chunk.isEmpty()) {
+            job.setLastTaskId(chunk.get(chunk.size() - 1).getId());
+            job.setProcessedTasks(job.getProcessedTasks() + chunk.size());
+        }
+        boolean hasMore = chunk.size() == CHUNK_SIZE;
+        job.setUpdatedAt(new Date());
+        if (!hasMore) {
+            job.setStatus(ExpiryJobStatus.COMPLETED);
+            job.setFinishedAt(new Date());
+            log.info("Task expiry job {} completed, {} task(s) expired", job.getId(), job.getProcessedTasks());
+        }
+        taskExpiryJobRepository.save(job);
+        return hasMore;
+    }
+
+    private void addPenalty(Task task, Map<Long, Integer> xpDeltas, Map<Long, List<User>> teamMembers) {
+        if (task.getIsAssignedTo() != null) {
+            xpDeltas.merge(task.getIsAssignedTo(), -task.getValue(), Integer::sum);
+            return;
+        }
+        // unclaimed tasks are split between all team members (rounded down)
+        List<User> members = teamMembers.computeIfAbsent(task.getTeamId(), userRepository::findByTeamId);
+        if (members.isEmpty()) {
+            log.warn("No users found for team {}, skipping penalty of task {}", task.getTeamId(), task.getId());
+            return;
+        }
+        int deductionPerUser = task.getValue() / members.size();
+        for (User member : members) {
+            xpDeltas.merge(member.getId(), -deductionPerUser, Integer::sum);
+        }
+    }
+
+    private void markFailed(Long jobId, String message) {
+        TaskExpiryJob job = taskExpiryJobRepository.findTaskExpiryJobById(jobId);
+        if (job != null) {
+            job.setStatus(ExpiryJobStatus.FAILED);
+            job.setUpdatedAt(new Date());
+            // lastError is a VARCHAR(255)
+            job.setLastError(message != null && message.length() > 255 ? message.substring(0, 255) : message);
+            taskExpiryJobRepository.save(job);
+        }
+    }
+
+    private boolean isStale(TaskExpiryJob job) {
+        return job.getUpdatedAt().getTime() < System.currentTimeMillis() - STALE_AFTER_MILLIS;
+    }
+
+    private Date startOfToday() {
+        Calendar today = Calendar.getInstance();
+        today.set(Calendar.HOUR_OF_DAY, 0);
+        today.set(Calendar.MINUTE, 0);
+        today.set(Calendar.SECOND, 0);
+        today.set(Calendar.MILLISECOND, 0);
+        return today.getTime();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,257 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskLockView;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.TaskLockChangedDTO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Soft locks that editors hold on tasks while a task dialog is open.
+ * A lock is a lease on the task row (lockedByUser until lockExpiresAt), so all
+ * instances agree on the holder. It is taken and released with compare-and-set
+ * updates of the two lock columns only, which neither load the task nor trigger
+ * the TaskEntityListener. The lease expires after the lease time unless it is
+ * renewed (by locking the task again or by a heartbeat), and all leases of a
+ * user are released when their WebSocket disconnects. Lease times are taken
+ * from the database clock, so instances with diverging clocks still agree on
+ * when a lease runs out.
+ * Locks are taken through the WebSocket of the user, which also sends the
+ * heartbeats, so every instance knows the leases its users hold (localLeases).
+ * A heartbeat only writes to the database if its user holds a lease.
+ * Changes are sent to the team as a small LOCK_CHANGED event instead of a full
+ * task snapshot. Every instance runs the reaper; of several instances only the
+ * one whose update clears an expired lease reports it.
+ */
+@Service
+public class TaskLockService {
+
+    static final String LOCK_CHANGED_ENTITY_TYPE = "LOCK_CHANGED";
+    static final int REAPER_BATCH_SIZE = 100;
+
+    private final Logger log = LoggerFactory.getLogger(TaskLockService.class);
+    private final TaskRepository taskRepository;
+    private final WebSocketNotificationService notificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final long leaseMillis;
+    private final LongSupplier clock;
+    // task ids leased through the sessions of this instance, per user
+    private final Map<Long, Set<Long>> localLeases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "task-lock-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public TaskLockService(@Qualifier("taskRepository") TaskRepository taskRepository,
+            @Lazy WebSocketNotificationService notificationService, PlatformTransactionManager transactionManager,
+            @Value("${tasks.lock.lease-millis:60000}") long leaseMillis) {
+        this(taskRepository, notificationService, new TransactionTemplate(transactionManager), leaseMillis,
+                System::currentTimeMillis);
+    }
+
+    public TaskLockService(TaskRepository taskRepository, WebSocketNotificationService notificationService,
+            TransactionTemplate transactionTemplate, long leaseMillis, LongSupplier clock) {
+        this.taskRepository = taskRepository;
+        this.notificationService = notificationService;
+        this.transactionTemplate = transactionTemplate;
+        this.leaseMillis = leaseMillis;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void startReaper() {
+        long interval = Math.max(1000L, leaseMillis / 4);
+        reaper.scheduleAtFixedRate(this::expireLeasesSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+    }
+
+    /**
+     * Locks a task for a user, or renews the lease if the user already holds it.
+     *
+     * @throws ResponseStatusException 409 if another user holds the lock.
+     */
+    public void lock(Long taskId, Long teamId, Long userId) {
+        Long previousHolder = taskRepository.findLockHolderById(taskId);
+        Integer locked = transactionTemplate.execute(status ->
+                taskRepository.lockIfFree(taskId, userId, leaseSeconds()));
+        if (locked == null || locked == 0) {
+            log.warn("Task {} is already locked by user {}. User {} cannot lock it.", taskId,
+                    taskRepository.findLockHolderById(taskId), userId);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Task is already locked by another user.");
+        }
+        localLeases.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(taskId);
+        if (!userId.equals(previousHolder)) {
+            publish(teamId, taskId, userId);
+        }
+    }
+
+    /**
+     * Releases the lock a user holds on a task.
+     *
+     * @throws ResponseStatusException 400 if the task is not locked, 403 if another user holds the lock.
+     */
+    public void unlock(Long taskId, Long userId) {
+        Long holder = taskRepository.findLockHolderById(taskId);
+        if (holder != null && !holder.equals(userId)) {
+            log.warn("Task {} is locked by user {}. User {} cannot unlock it.", taskId, holder, userId);
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not the user who locked this task.");
+        }
+        Integer unlocked = holder == null ? Integer.valueOf(0)
+                : transactionTemplate.execute(status -> taskRepository.unlockIfLockedBy(taskId, userId));
+        if (unlocked == null || unlocked == 0) {
+            log.warn("Task {} is not locked. User {} cannot unlock it.", taskId, userId);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task is not currently locked.");
+        }
+        forget(userId, taskId);
+        publish(taskRepository.findTeamIdById(taskId), taskId, null);
+    }
+
+    /**
+     * Extends all leases a user holds, called for every heartbeat of their
+     * WebSocket. Nothing is written if the user holds no lease on this instance.
+     *
+     * @return The number of renewed leases.
+     */
+    public int renewAll(Long userId) {
+        Set<Long> leased = userId != null ? localLeases.get(userId) : null;
+        if (leased == null || leased.isEmpty()) {
+            return 0;
+        }
+        Integer renewed = transactionTemplate.execute(status ->
+                taskRepository.renewLocksOfUser(userId, leaseSeconds()));
+        if (renewed == null || renewed == 0) {
+            // the leases ran out and were cleared in the meantime
+            localLeases.remove(userId, leased);
+            return 0;
+        }
+        return renewed;
+    }
+
+    /**
+     * Releases all locks of a user, e.g. when their WebSocket disconnects.
+     *
+     * @return The number of released locks.
+     */
+    public int releaseAll(Long userId) {
+        if (userId == null) {
+            return 0;
+        }
+        localLeases.remove(userId);
+        int released = 0;
+        for (TaskLockView lock : taskRepository.findLocksOfUser(userId)) {
+            Integer unlocked = transactionTemplate.execute(status ->
+                    taskRepository.unlockIfLockedBy(lock.getTaskId(), userId));
+            if (unlocked != null && unlocked > 0) {
+                publish(lock.getTeamId(), lock.getTaskId(), null);
+                released++;
+            }
+        }
+        if (released > 0) {
+            log.info("Released {} task lock(s) held by user {}", released, userId);
+        }
+        return released;
+    }
+
+    /**
+     * Clears the leases that were not renewed in time and tells their teams.
+     *
+     * @return The number of expired leases this instance cleared.
+     */
+    public int expireLeases() {
+        int expired = 0;
+        for (TaskLockView lock : taskRepository.findExpiredLocks(PageRequest.of(0, REAPER_BATCH_SIZE))) {
+            Integer unlocked = transactionTemplate.execute(status ->
+                    taskRepository.unlockIfExpired(lock.getTaskId(), lock.getLockedByUser()));
+            if (unlocked != null && unlocked > 0) {
+                forget(lock.getLockedByUser(), lock.getTaskId());
+                log.info("Lock of user {} on task {} expired", lock.getLockedByUser(), lock.getTaskId());
+                publish(lock.getTeamId(), lock.getTaskId(), null);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private void expireLeasesSafely() {
+        try {
+            expireLeases();
+        } catch (Exception e) {
+            log.warn("Expiring task locks failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return The ID of the user holding the lock on the task, or null if it is not locked.
+     */
+    public Long getLockHolder(Long taskId) {
+        return taskId != null ? taskRepository.findLockHolderById(taskId) : null;
+    }
+
+    /**
+     * Clears the lockedByUser field of a task DTO if the lease it was read with
+     * has expired, the reaper may not have cleared the row yet. Only used for
+     * display, so the clock of the instance is good enough here.
+     *
+     * @param lockExpiresAt The lockExpiresAt column read together with lockedByUser.
+     */
+    public TaskGetDTO withLockHolder(TaskGetDTO task, Date lockExpiresAt) {
+        if (lockExpiresAt == null || lockExpiresAt.getTime() <= clock.getAsLong()) {
+            task.setLockedByUser(null);
+        }
+        return task;
+    }
+
+    // the lease time in whole seconds, the unit of the database interval
+    private long leaseSeconds() {
+        return Math.max(1L, leaseMillis / 1000);
+    }
+
+    private void forget(Long userId, Long taskId) {
+        localLeases.computeIfPresent(userId, (id, leased) -> {
+            leased.remove(taskId);
+            return leased.isEmpty() ? null : leased;
+        });
+    }
+
+    private void publish(Long teamId, Long taskId, Long lockedByUser) {
+        if (teamId == null) {
+            return;
+        }
+        try {
+            notificationService.notifyTeamMembers(teamId, LOCK_CHANGED_ENTITY_TYPE,
+                    new TaskLockChangedDTO(taskId, lockedByUser));
+        } catch (Exception e) {
+            log.error("Error sending LOCK_CHANGED for task {}: {}", taskId, e.getMessage(), e);
+        }
+    }
+}
@@ -3,9 +3,14 @@ package ch.uzh.ifi.hase.soprafs24.service;
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.TeamMembershipRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.TeamRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskClaimView;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskView;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 
@@ -13,16 +18,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 import java.util.Date;
 import java.util.Calendar;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.Comparator;
 
 @Service
@@ -34,7 +52,12 @@ public class TaskService {
     private final TaskRepository taskRepository;
     private final UserRepository userRepository;
     private final TeamRepository teamRepository;
-    private final CalendarService calendarService;
+    private final TeamMembershipRepository teamMembershipRepository;
+    private final CalendarSyncOutbox calendarSyncOutbox;
+    private final WebSocketNotificationService notificationService;
+    private final TaskLockService taskLockService;
+    private final TaskEventService taskEventService;
+    static final int MAX_BATCH_SIZE = 100;
     private String recurringTask = "recurring";
     private String additionalTask = "additional";
 
@@ -42,44 +65,45 @@ public class TaskService {
     public TaskService(@Qualifier("taskRepository") TaskRepository taskRepository,
             @Qualifier("userRepository") UserRepository userRepository,
             @Qualifier("teamRepository") TeamRepository teamRepository,
+            @Qualifier("teamMembershipRepository") TeamMembershipRepository teamMembershipRepository,
             @Qualifier("userService") UserService userService,
-            @Qualifier("calendarService") CalendarService calendarService) {
+            @Qualifier("calendarSyncOutbox") CalendarSyncOutbox calendarSyncOutbox,
+            @Lazy WebSocketNotificationService notificationService,
+            @Qualifier("taskLockService") TaskLockService taskLockService,
+            @Qualifier("taskEventService") TaskEventService taskEventService) {
         this.taskRepository = taskRepository;
         this.userRepository = userRepository;
         this.teamRepository = teamRepository;
+        this.teamMembershipRepository = teamMembershipRepository;
         this.userService = userService;
-        this.calendarService = calendarService;
+        this.calendarSyncOutbox = calendarSyncOutbox;
+        this.notificationService = notificationService;
+        this.taskLockService = taskLockService;
+        this.taskEventService = taskEventService;
     }
 
     /**
      * Copilot generated this documentation
-     * Locks a task for a specific user.
+     * Locks a task for a specific user. The lock is a lease on the task row
+     * (see TaskLockService), locking it again renews the lease.
      *
      * @param taskId The ID of the task to lock.
      * @param userId The ID of the user who is locking the task.
-     * @return The updated Task entity.
      * @throws ResponseStatusException if the task is not found, or if the task is
      *                                 already locked by another user.
      */
-    @Transactional
-    public Task lockTask(Long taskId, Long userId) {
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void lockTask(Long taskId, Long userId) {
         log.debug("Attempting to lock task {} for user {}", taskId, userId);
 
-        Task task = taskRepository.findById(taskId)
-                .orElseThrow(
-                        () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Task not found with ID: " + taskId));
-
-        if (task.getLockedByUser() != null && !task.getLockedByUser().equals(userId)) {
-            log.warn("Task {} is already locked by user {}. User {} cannot lock it.", taskId, task.getLockedByUser(),
-                    userId);
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "Task is already locked by another user.");
+        // single-column read, the task itself is not loaded; the lease is taken in its own short transaction
+        Long teamId = taskRepository.findTeamIdById(taskId);
+        if (teamId == null && !taskRepository.existsById(taskId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Task not found with ID: " + taskId);
         }
 
-        task.setLockedByUser(userId);
-        Task savedTask = taskRepository.save(task);
-        // The TaskEntityListener will be triggered by the save operation.
+        taskLockService.lock(taskId, teamId, userId);
         log.info("Task {} locked by user {}", taskId, userId);
-        return savedTask;
     }
 
     /**
@@ -89,32 +113,49 @@ public class TaskService {
      *
      * @param taskId The ID of the task to unlock.
      * @param userId The ID of the user attempting to unlock the task.
-     * @return The updated Task entity.
-     * @throws ResponseStatusException if the task is not found, not locked, or
-     *                                 locked by a different user.
+     * @throws ResponseStatusException if the task is not locked, or locked by a
+     *                                 different user.
      */
-    @Transactional
-    public Task unlockTask(Long taskId, Long userId) {
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void unlockTask(Long taskId, Long userId) {
         log.debug("Attempting to unlock task {} by user {}", taskId, userId);
+        taskLockService.unlock(taskId, userId);
+        log.info("Task {} unlocked by user {}", taskId, userId);
+    }
 
-        Task task = taskRepository.findById(taskId)
-                .orElseThrow(
-                        () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Task not found with ID: " + taskId));
+    /**
+     * Renews the leases of all task locks a user holds (WebSocket heartbeat).
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void renewTaskLocks(Long userId) {
+        int renewed = taskLockService.renewAll(userId);
+        log.debug("Renewed {} task lock(s) of user {}", renewed, userId);
+    }
 
-        if (task.getLockedByUser() == null) {
-            log.warn("Task {} is not locked. User {} cannot unlock it.", taskId, userId);
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task is not currently locked.");
+    /**
+     * Validates all tasks of a batch before any of them is created.
+     *
+     * @param dtos The tasks of the batch.
+     * @throws ResponseStatusException 400 if the batch is empty, too large or one of its tasks is invalid.
+     */
+    public void validateBatchPostDtos(List<TaskPostDTO> dtos) {
+        if (dtos == null || dtos.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch must contain at least one task");
         }
-
-        if (!task.getLockedByUser().equals(userId)) {
-            log.warn("Task {} is locked by user {}. User {} cannot unlock it.", taskId, task.getLockedByUser(), userId);
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not the user who locked this task.");
+        if (dtos.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Batch cannot contain more than " + MAX_BATCH_SIZE + " tasks");
+        }
+        for (int i = 0; i < dtos.size(); i++) {
+            if (dtos.get(i) == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task " + i + ": Task cannot be null");
+            }
+            try {
+                validatePostDto(dtos.get(i));
+            } catch (ResponseStatusException e) {
+                throw new ResponseStatusException(e.getStatus(), "Task " + i + ": " + e.getReason());
+            }
         }
-
-        task.setLockedByUser(null);
-        Task savedTask = taskRepository.save(task);
-        log.info("Task {} unlocked by user {}", taskId, userId);
-        return savedTask;
     }
 
     // validate PostDTO based on the fields
@@ -187,6 +228,7 @@ public class TaskService {
                 calculateDaysVisible(task);
             }
         }
+        updateVisibleFrom(task); // deadline or daysVisible may have changed
     }
 
     private void validateCommonTaskPutDto(Task task, Task taskPutDTO) {
@@ -277,15 +319,19 @@ public class TaskService {
         if (user == null) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found");
         }
+        validateCreator(AuthenticatedUser.of(user), taskId);
+    }
+
+    public void validateCreator(AuthenticatedUser user, Long taskId) {
         Task task = taskRepository.findTaskById(taskId);
         if (task == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Task not found");
         }
-        if (!task.getcreatorId().equals(user.getId())) {
+        if (!task.getcreatorId().equals(user.getUserId())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not authorized to edit this task");
         }
         Long assignee = task.getIsAssignedTo(); // may be null
-        if (assignee != null && !assignee.equals(user.getId())) {
+        if (assignee != null && !assignee.equals(user.getUserId())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN,
                     "Not authorized to edit: task is currently claimed by another user");
         }
@@ -300,39 +346,201 @@ public class TaskService {
         // if task is recurring, we dont test anything else
     }
 
+    public void validateRecurringEdit(AuthenticatedUser user, Long taskId) {
+        Task task = taskRepository.findTaskById(taskId);
+        String taskType = checkTaskType(task);
+        if (taskType.equals(additionalTask)) { // if addtional task, validate more
+            validateCreator(user, taskId);
+        }
+    }
+
     public void validateTaskInTeam(String userToken, Long taskId) {
+        validateTaskInTeam(AuthenticatedUser.of(userRepository.findByToken(userToken)), taskId);
+    }
+
+    public void validateTaskInTeam(AuthenticatedUser user, Long taskId) {
         Task task = taskRepository.findTaskById(taskId);
-        Long userTeamId = userRepository.findByToken(userToken).getTeamId();
-        if (!task.getTeamId().equals(userTeamId)) { // if task and user are not in the same team
+        if (!task.getTeamId().equals(user.getTeamId())) { // if task and user are not in the same team
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Task does not belong to the team of the user");
         }
     }
 
-    public List<Task> getFilteredTasks(Boolean isActive, String type) {
-        List<Task> allTasks = getAllTasks();
+    public List<Task> getFilteredTasks(Long teamId, Boolean isActive, String type) {
+        if (teamId == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User team ID cannot be null");
+        }
+        // active status, type and visibility are filtered by the database, scoped to a single team
+        if (Boolean.TRUE.equals(isActive)) {
+            return findVisibleTeamTasks(teamId, type);
+        }
+        List<Task> teamTasks = findTeamTasks(teamId, isActive, type);
 
-        // Filter by type (e.g., "recurring" or "additional")
-        if (type != null) {
-            allTasks = allTasks.stream()
-                    .filter(task -> checkTaskType(task).equalsIgnoreCase(type))
-                    .collect(Collectors.toList());
+        // inactive tasks that are not visible yet
+        if (Boolean.FALSE.equals(isActive)) {
+            teamTasks = teamTasks.stream()
+                .filter(task -> !isTaskVisibleOrFinishable(task))
+                .collect(Collectors.toList());
         }
+        return teamTasks;
+    }
 
-        // Filter by visibility if isActive is specified
-        if (isActive != null) {
-            allTasks = allTasks.stream()
-                .filter(task -> isActive.equals(isTaskVisibleOrFinishable(task)) &&
-                                isActive.equals(task.getActiveStatus()))
+    /**
+     * The tasks of a team with the getFilteredTasks filters, read straight into DTOs.
+     * Runs in a read-only transaction (flush mode MANUAL) and loads no Task entities,
+     * so there is no hydration and nothing to dirty-check.
+     */
+    @Transactional(readOnly = true)
+    public List<TaskGetDTO> getFilteredTaskDTOs(Long teamId, Boolean isActive, String type) {
+        TaskFilter filter = new TaskFilter(teamId, isActive, type, today());
+        return toTaskGetDTOs(taskRepository.findTeamTaskViews(teamId, filter.activeStatuses, filter.recurring,
+                filter.additional, filter.anyVisibility, filter.unscheduled, filter.visibleFromMin,
+                filter.visibleFromMax));
+    }
+
+    /**
+     * Keyset pagination over the tasks of a team, with the same filters as getFilteredTasks.
+     *
+     * @param afterId Only tasks with a greater id are returned (0 for the first page).
+     * @param limit   The maximum number of tasks to return.
+     * @return The next tasks in id order.
+     */
+    @Transactional(readOnly = true)
+    public List<TaskGetDTO> getFilteredTaskDTOsPage(Long teamId, Boolean isActive, String type, long afterId,
+            int limit) {
+        TaskFilter filter = new TaskFilter(teamId, isActive, type, today());
+        return toTaskGetDTOs(taskRepository.findTeamTaskViewsAfterId(teamId, afterId, filter.activeStatuses,
+                filter.recurring, filter.additional, filter.anyVisibility, filter.unscheduled,
+                filter.visibleFromMin, filter.visibleFromMax, PageRequest.of(0, limit)));
+    }
+
+    /**
+     * Passes every task matching the getFilteredTasks filters to the action, in id
+     * order. The rows are read with a database cursor straight into DTOs, so memory
+     * use does not depend on the number of tasks.
+     */
+    @Transactional(readOnly = true)
+    public void forEachFilteredTaskDTO(Long teamId, Boolean isActive, String type, Consumer<TaskGetDTO> action) {
+        TaskFilter filter = new TaskFilter(teamId, isActive, type, today());
+        try (Stream<TaskView> tasks = taskRepository.streamTeamTaskViews(teamId, filter.activeStatuses,
+                filter.recurring, filter.additional, filter.anyVisibility, filter.unscheduled,
+                filter.visibleFromMin, filter.visibleFromMax)) {
+            tasks.forEach(task -> action.accept(toTaskGetDTO(task)));
+        }
+    }
+
+    /**
+     * All tasks of a team as DTOs.
+     * Read-only projection, see getFilteredTaskDTOs.
+     */
+    @Transactional(readOnly = true)
+    public List<TaskGetDTO> getTaskDTOsByTeamId(Long teamId) {
+        return toTaskGetDTOs(taskRepository.findTaskViewsByTeamId(teamId));
+    }
+
+    /**
+     * The TASKS WebSocket snapshot of a team, sent when a session joins the team
+     * or a client detects a gap in the task event sequence.
+     * The sequence number is read before the tasks, so the snapshot contains every
+     * change numbered up to it; later deltas replace tasks by id and can be applied on top.
+     */
+    @Transactional(readOnly = true)
+    public DatabaseChangeEventDTO<List<TaskGetDTO>> getTaskSnapshot(Long teamId) {
+        long sequence = taskEventService.currentSequence(teamId);
+        return new DatabaseChangeEventDTO<>(TaskEventService.TASKS_ENTITY_TYPE, getTaskDTOsByTeamId(teamId), sequence);
+    }
+
+    private List<TaskGetDTO> toTaskGetDTOs(List<TaskView> taskViews) {
+        return taskViews.stream()
+                .map(this::toTaskGetDTO)
                 .collect(Collectors.toList());
+    }
+
+    private TaskGetDTO toTaskGetDTO(TaskView taskView) {
+        // a lease that ran out is not shown, even if the reaper has not cleared it yet
+        return taskLockService.withLockHolder(DTOMapper.INSTANCE.convertTaskViewToTaskGetDTO(taskView),
+                taskView.getLockExpiresAt());
+    }
+
+    // the GET /tasks filters as always-bound query parameters
+    private final class TaskFilter {
+        private final List<Boolean> activeStatuses;
+        private final boolean recurring;
+        private final boolean additional;
+        private final boolean anyVisibility;
+        private final boolean unscheduled;
+        private final long visibleFromMin;
+        private final long visibleFromMax;
+
+        private TaskFilter(Long teamId, Boolean isActive, String type, long today) {
+            if (teamId == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User team ID cannot be null");
+            }
+            this.activeStatuses = isActive == null ? List.of(true, false) : List.of(isActive);
+            // unknown task types match no task
+            this.recurring = type == null || recurringTask.equalsIgnoreCase(type);
+            this.additional = type == null || additionalTask.equalsIgnoreCase(type);
+            // active: visible today; inactive: not visible yet
+            this.anyVisibility = isActive == null;
+            // tasks without a visibleFrom day are never visible (see isTaskVisibleOrFinishable)
+            this.unscheduled = Boolean.FALSE.equals(isActive);
+            this.visibleFromMin = Boolean.FALSE.equals(isActive) ? today + 1 : Long.MIN_VALUE;
+            this.visibleFromMax = Boolean.FALSE.equals(isActive) ? Long.MAX_VALUE : today;
         }
-        return allTasks;
+    }
+
+    public List<Task> getFilteredTasksForUser(Long userId, Boolean isActive, String type) {
+        User user = userService.getUserById(userId);
+        if (user.getTeamId() == null) {
+            return new ArrayList<>();
+        }
+        return getFilteredTasks(user.getTeamId(), isActive, type);
+    }
+
+    public List<Task> getUnclaimedTasks(Long teamId) {
+        return taskRepository.findTaskByTeamIdAndActiveStatusAndIsAssignedToIsNullAndVisibleFromLessThanEqual(
+                teamId, true, today());
+    }
+
+    private List<Task> findVisibleTeamTasks(Long teamId, String type) {
+        long today = today();
+        if (type == null) {
+            return taskRepository.findTaskByTeamIdAndActiveStatusAndVisibleFromLessThanEqual(teamId, true, today);
+        }
+        if (recurringTask.equalsIgnoreCase(type)) {
+            return taskRepository.findTaskByTeamIdAndActiveStatusAndFrequencyIsNotNullAndVisibleFromLessThanEqual(
+                    teamId, true, today);
+        }
+        if (additionalTask.equalsIgnoreCase(type)) {
+            return taskRepository.findTaskByTeamIdAndActiveStatusAndFrequencyIsNullAndVisibleFromLessThanEqual(
+                    teamId, true, today);
+        }
+        return new ArrayList<>(); // unknown task type matches no task
+    }
+
+    private List<Task> findTeamTasks(Long teamId, Boolean isActive, String type) {
+        if (type == null) {
+            return isActive == null
+                    ? taskRepository.findTaskByTeamId(teamId)
+                    : taskRepository.findTaskByTeamIdAndActiveStatus(teamId, isActive);
+        }
+        if (recurringTask.equalsIgnoreCase(type)) {
+            return isActive == null
+                    ? taskRepository.findTaskByTeamIdAndFrequencyIsNotNull(teamId)
+                    : taskRepository.findTaskByTeamIdAndActiveStatusAndFrequencyIsNotNull(teamId, isActive);
+        }
+        if (additionalTask.equalsIgnoreCase(type)) {
+            return isActive == null
+                    ? taskRepository.findTaskByTeamIdAndFrequencyIsNull(teamId)
+                    : taskRepository.findTaskByTeamIdAndActiveStatusAndFrequencyIsNull(teamId, isActive);
+        }
+        return new ArrayList<>(); // unknown task type matches no task
     }
 
     public List<Task> luckyDrawTasks(Long userTeamId) {
         if (userTeamId == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User team ID cannot be null");
         }
-        List<Task> activeTasks = getFilteredTasks(true, null);
+        List<Task> activeTasks = getUnclaimedTasks(userTeamId);
         // Filter out tasks that are already claimed
         if (activeTasks == null || activeTasks.isEmpty()) {
             // Return an empty list if no tasks are provided
@@ -359,14 +567,14 @@ public class TaskService {
         }
 
         // Step 2: Get the team members (user IDs), then load full User entities
-        List<Long> memberIds = team.getMembers();
+        List<Long> memberIds = teamMembershipRepository.findUserIdsByTeamId(userTeamId);
         List<User> teamMembers = userRepository.findAllById(memberIds);
         if (teamMembers.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No users found for team ID " + userTeamId);
         }
 
         // Step 3: Get all unclaimed tasks for this team
-        List<Task> unclaimedTasks = getFilteredTasks(true, null).stream()
+        List<Task> unclaimedTasks = getUnclaimedTasks(userTeamId).stream()
                 .filter(task -> task.getIsAssignedTo() == null)
                 .filter(task -> task.getTeamId().equals(userTeamId))
                 .sorted(Comparator.comparingInt(Task::getValue).reversed()) // Sort by XP desc
@@ -396,62 +604,45 @@ public class TaskService {
         return unclaimedTasks;
     }
 
-    public void pauseAllTasksInTeam() {
-        List<Task> tasks = getAllTasks();
-        for (Task task : tasks) {
-            task.setPaused(true);
-            task.setPausedDate(new Date());
-        }
-        taskRepository.saveAll(tasks);
-
+    public void pauseAllTasksInTeam(Long teamId) {
+        int paused = taskRepository.pauseAllTasksOfTeam(teamId, new Date());
+        log.debug("Paused {} task(s) of team {}", paused, teamId);
+        notifyTeamSnapshot(teamId);
     }
 
-    public void unpauseAllTasksInTeam() {
-        List<Task> tasks = getAllTasks();
-        for (Task task : tasks) {
-            task.setPaused(false);
-            task.setUnpausedDate(new Date());
-            newDeadline(task); // update the deadline based on the paused time
+    public void unpauseAllTasksInTeam(Long teamId) {
+        Date unpausedDate = new Date();
+        // tasks paused together share their pausedDate, so this is usually a single statement
+        for (Date pausedDate : taskRepository.findPausedDatesOfTeam(teamId)) {
+            int daysToAdd = getPausedDays(pausedDate, unpausedDate);
+            if (daysToAdd > 0) {
+                taskRepository.shiftPausedTasksOfTeam(teamId, pausedDate, daysToAdd);
+            }
         }
-        taskRepository.saveAll(tasks);
-
+        int unpaused = taskRepository.unpauseAllTasksOfTeam(teamId, unpausedDate);
+        log.debug("Unpaused {} task(s) of team {}", unpaused, teamId);
+        notifyTeamSnapshot(teamId);
     }
 
     public List<Task> getTasksAssignedToUser(Long userId) {
-        return taskRepository.findAll().stream()
-                .filter(task -> userId.equals(task.getIsAssignedTo()))
-                .collect(Collectors.toList());
+        return taskRepository.findTaskByIsAssignedTo(userId);
     }
 
     public List<Task> getTasksCreatedByUser(Long userId) {
-        return taskRepository.findAll().stream()
-                .filter(task -> userId.equals(task.getcreatorId()))
-                .collect(Collectors.toList());
+        return taskRepository.findTaskByCreatorId(userId);
     }
 
     public List<Task> getTasksByTeamId(Long teamId) {
         return taskRepository.findTaskByTeamId(teamId);
     }
 
-    private void newDeadline(Task task) {
+    private int getPausedDays(Date pausedDate, Date unpausedDate) {
         // Calculate paused time in milliseconds
-        long pausedTimeMillis = task.getUnpausedDate().getTime() - task.getPausedDate().getTime();
+        long pausedTimeMillis = unpausedDate.getTime() - pausedDate.getTime();
 
         // Convert to days (as double), then round up to next full day
         double pausedDays = (double) pausedTimeMillis / (1000 * 60 * 60 * 24);
-        int daysToAdd = (int) Math.ceil(pausedDays);
-
-        // Add the rounded-up number of days to the deadline
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(task.getDeadline());
-        calendar.add(Calendar.DAY_OF_MONTH, daysToAdd);
-        task.setDeadline(calendar.getTime());
-
-        // Recalculate daysVisible based on the new deadline (only for additional tasks)
-        String type = checkTaskType(task);
-        if (additionalTask.equals(type)) {
-            calculateDaysVisible(task); // recalculate daysVisible
-        }
+        return (int) Math.ceil(pausedDays);
     }
 
     public void checkIsPaused(Task task) { // check if task is paused
@@ -464,21 +655,63 @@ public class TaskService {
     }
 
     public Task createTask(Task task, String userToken) {
-        verifyTaskExistence(task);
         validateUserToken(userToken);
+        return createTask(task, AuthenticatedUser.of(userRepository.findByToken(userToken)));
+    }
+
+    public Task createTask(Task task, AuthenticatedUser creator) {
+        verifyTaskExistence(task);
         checkIsPaused(task);
-        String taskType = checkTaskType(task);
         log.debug("Creating a new task with name: {}", task.getName());
+        prepareNewTask(task, creator);
+        taskRepository.save(task);
+        taskRepository.flush();
+        calendarSyncOutbox.enqueueUpsert(task);
+        // Notify all users in the team about the new task
+
+        log.info("Task with name: {} created successfully", task.getName());
+        return task;
+    }
+
+    /**
+     * Creates several tasks for the team of the user at once. All tasks are
+     * prepared before anything is written, inserted together (one JDBC batch) and
+     * synced to the creator's Google Calendar by the CalendarSyncWorker after commit.
+     *
+     * @param tasks     The tasks to create, already validated with validateBatchPostDtos.
+     * @param userToken The token of the creator.
+     * @return The created tasks.
+     */
+    public List<Task> createTasks(List<Task> tasks, String userToken) {
+        validateUserToken(userToken);
+        return createTasks(tasks, AuthenticatedUser.of(userRepository.findByToken(userToken)));
+    }
+
+    public List<Task> createTasks(List<Task> tasks, AuthenticatedUser creator) {
+        for (Task task : tasks) {
+            verifyTaskExistence(task);
+            checkIsPaused(task);
+            prepareNewTask(task, creator);
+        }
+        List<Task> createdTasks = taskRepository.saveAll(tasks);
+        taskRepository.flush();
+        calendarSyncOutbox.enqueueUpserts(createdTasks);
+        log.info("{} task(s) created in batch by user {}", createdTasks.size(), creator.getUserId());
+        return createdTasks;
+    }
+
+    private void prepareNewTask(Task task, AuthenticatedUser creator) {
+        String taskType = checkTaskType(task);
         // set the task creation date
         task.setCreationDate(new Date(new Date().getTime() + 3600 * 1000));
         // store the userId of the creator
-        task.setcreatorId(userRepository.findByToken(userToken).getId());
+        task.setcreatorId(creator.getUserId());
         // store the name of the creator
-        task.setCreatorName(userRepository.findByToken(userToken).getUsername());
+        task.setCreatorName(creator.getUsername());
         // enforce that the task colour is initially set to white
         task.setColor(null);
         // set the task teamId
-        task.setTeamId(userRepository.findByToken(userToken).getTeamId());
+        task.setTeamId(creator.getTeamId());
         // store status of the task
         task.setActiveStatus(true);
         // if start Date wasnt given, we use a default value
@@ -497,56 +730,69 @@ public class TaskService {
             calculateDaysVisible(task); // set daysVisible to the difference between deadline and creation date -> easy
                                         // filtering for pinboard
         }
-        calendarService.syncSingleTask(task, task.getcreatorId());
-        taskRepository.save(task);
-        taskRepository.flush();
-        // Notify all users in the team about the new task
-
-        log.info("Task with name: {} created successfully", task.getName());
-        return task;
+        updateVisibleFrom(task);
     }
 
-    public Task claimTask(Task task, String userToken) {
-        log.debug("Claiming task with name: {}", task.getName());
-        // verify that the task has not yet been claimed
-        verifyClaimStatus(task);
+    /**
+     * Claims a task with a single conditional UPDATE (compare-and-set on isAssignedTo),
+     * so of several concurrent claims exactly one wins. The others get a 409 without
+     * the task being loaded.
+     *
+     * @param taskId    The ID of the task to claim.
+     * @param userToken The token of the claiming user.
+     * @return The claimed task.
+     */
+    public Task claimTask(Long taskId, String userToken) {
         validateUserToken(userToken);
-        checkIsPaused(task);
-        // store the userId and name of the assignee
-        User user = userRepository.findByToken(userToken);
-        task.setIsAssignedTo(user.getId());
-        task.setAssigneeName(user.getUsername());
-        // set the task color to the color of the user who claimed it
-        if (user.getColor() != null) {
-            task.setColor(user.getColor());
-        } else {
+        return claimTask(taskId, AuthenticatedUser.of(userRepository.findByToken(userToken)));
+    }
+
+    public Task claimTask(Long taskId, AuthenticatedUser user) {
+        log.debug("Claiming task with id: {}", taskId);
+        // the assignee's id, name and color are written together with the claim
+        if (user.getColor() == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User has no color set");
         }
-        taskRepository.save(task);
-        taskRepository.flush();
-        // Notify all users in the team about the claimed task
-
-        log.info("Task with name: {} claimed successfully by user with id: {}", task.getName(), user.getId());
+        if (taskRepository.claimIfUnassigned(taskId, user.getUserId(), user.getUsername(), user.getColor()) == 0) {
+            TaskClaimView claimView = taskRepository.findClaimViewById(taskId);
+            if (claimView == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Task not found");
+            }
+            // an assigned task is a conflict even when it is also paused
+            if (claimView.getIsAssignedTo() == null && Boolean.TRUE.equals(claimView.getIsPaused())) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Task is paused");
+            }
+            log.debug("Task with id: {} is already claimed", taskId);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Task already claimed (Needs to be released first)");
+        }
+        Task task = getTaskById(taskId);
+        // the bulk update does not trigger the TaskEntityListener
+        notifyTaskUpdated(task);
+        log.info("Task with name: {} claimed successfully by user with id: {}", task.getName(), user.getUserId());
         return task;
     }
 
     public void quitTask(Long taskId, Long userId) {
         log.debug("User {} attempting to quit task {}", userId, taskId);
-        Task task = getTaskById(taskId); // Throws 404 if not found
+        // compare-and-set: only succeeds for the current assignee of a task that was not lucky drawn
+        if (taskRepository.unassignIfAssignedTo(taskId, userId) == 0) {
+            Task task = getTaskById(taskId); // Throws 404 if not found
 
-        // Check if the task is actually assigned
-        if (task.getIsAssignedTo() == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task is not currently assigned.");
-        }
-        // Check if the user is the one assigned to the task
-        if (!Objects.equals(task.getIsAssignedTo(), userId)) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN,
-                    "You are not assigned to this task, so you cannot quit it.");
+            // Check if the task is actually assigned
+            if (task.getIsAssignedTo() == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task is not currently assigned.");
+            }
+            // Check if the user is the one assigned to the task
+            if (!Objects.equals(task.getIsAssignedTo(), userId)) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN,
+                        "You are not assigned to this task, so you cannot quit it.");
+            }
+            // Check if the task is has been lucky drawn
+            verifyLuckyDraw(task);
+            // the task changed between the update and the read
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Task was changed concurrently, please retry.");
         }
-        // Check if the task is has been lucky drawn
-        verifyLuckyDraw(task);
-        // If checks pass, unassign the task
-        unassignTask(task);
+        notifyTaskUpdated(getTaskById(taskId));
 
         log.info("Task with id: {} unassigned successfully", taskId);
         log.info("User {} successfully quit task {}", userId, taskId);
@@ -567,7 +813,7 @@ public class TaskService {
         checkIsPaused(task);
         verifyLuckyDraw(task);
         task.setActiveStatus(false);
-        calendarService.syncSingleTask(task, task.getcreatorId());
+        calendarSyncOutbox.enqueueDelete(task);
         taskRepository.deleteById(taskId);
         taskRepository.flush();
         // Notify all users in the team about the deleted task
@@ -579,9 +825,9 @@ public class TaskService {
         checkLockedByUser(task, userToken);
         checkIsPaused(task);
         validateToBeEditedFields(task, taskPutDTO);
-        calendarService.syncSingleTask(task, task.getcreatorId());
         taskRepository.save(task);
         taskRepository.flush();
+        calendarSyncOutbox.enqueueUpsert(task);
         log.info("Task with name: {} updated successfully", task.getName());
         return task;
     }
@@ -595,9 +841,15 @@ public class TaskService {
         // rounds down experience points to the nearest integer
         int deductionPerUser = experiencePoints / teamMembers.size();
 
+        Map<Long, Integer> deltas = new HashMap<>();
         for (User user : teamMembers) {
-            userService.deductExperiencePoints(user.getId(), deductionPerUser);
+            deltas.put(user.getId(), -deductionPerUser);
         }
+        userService.applyExperiencePointsDeltas(deltas);
+    }
+
+    public void updateGoogleEventId(Long taskId, String googleEventId) {
+        taskRepository.updateGoogleEventId(taskId, googleEventId);
     }
 
     public void saveTask(Task task) {
@@ -696,6 +948,7 @@ public class TaskService {
         calendar.add(Calendar.DATE, task.getFrequency() - 1);
         Date deadline = calendar.getTime();
         task.setDeadline(deadline);
+        updateVisibleFrom(task);
     }
 
     public void calculateDeadlineOnEdit(Task task) {
@@ -709,6 +962,7 @@ public class TaskService {
         calendar.add(Calendar.DATE, task.getFrequency()-1);
         Date newDeadline = calendar.getTime();
         task.setDeadline(newDeadline);
+        updateVisibleFrom(task);
     }
 
     public void calculateDeadlineOnFinish(Task task) {
@@ -728,24 +982,32 @@ public class TaskService {
         calendar.add(Calendar.DATE, task.getFrequency() - 1);
         Date deadline = calendar.getTime();
         task.setDeadline(deadline);
+        updateVisibleFrom(task);
     }
 
     public boolean isTaskVisibleOrFinishable(Task task) {
-        Date deadline = task.getDeadline();
-        int daysVisible = task.getDaysVisible(); // or task.getReminder() if you're using that field
-        // Get today's date
-        Date today = new Date();
-        if (task.getLastFinish() != null && today == task.getLastFinish()) {
-            return false;
+        // use the persisted "visible from" day, fall back to computing it for tasks that were not saved yet
+        Long visibleFrom = task.getVisibleFrom() != null ? task.getVisibleFrom() : computeVisibleFrom(task);
+        // Check if today is on or after visibleFrom date
+        return visibleFrom != null && visibleFrom <= today();
+    }
+
+    public void updateVisibleFrom(Task task) {
+        task.setVisibleFrom(computeVisibleFrom(task));
+    }
+
+    private Long computeVisibleFrom(Task task) {
+        if (task.getDeadline() == null || task.getDaysVisible() == null) {
+            return null;
         }
-        // Calculate "visible from" date: deadline - daysVisible
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(deadline);
-        calendar.add(Calendar.DATE, -daysVisible + 1);
-        Date visibleFrom = calendar.getTime();
+        // "visible from" day: deadline - daysVisible + 1
+        long deadlineDay = Instant.ofEpochMilli(task.getDeadline().getTime())
+                .atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+        return deadlineDay - task.getDaysVisible() + 1;
+    }
 
-        // Check if today is on or after visibleFrom date
-        return !today.before(visibleFrom);
+    private long today() {
+        return LocalDate.now().toEpochDay();
     }
 
     public void finishedTaskDate(Task task) {
@@ -760,6 +1022,23 @@ public class TaskService {
         calendar.add(Calendar.DATE, task.getFrequency());
         Date newDeadline = calendar.getTime();
         task.setDeadline(newDeadline);
+        updateVisibleFrom(task);
+    }
+
+    public void expireTask(Task task) {
+        // the missed deadline becomes the new start date
+        task.setStartDate(task.getDeadline());
+        if (additionalTask.equals(checkTaskType(task))) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(task.getStartDate());
+            calendar.add(Calendar.DATE, task.getDaysVisible());
+            task.setDeadline(calendar.getTime());
+            updateVisibleFrom(task);
+        } else {
+            calculateDeadlineOnExpire(task);
+        }
+        unLuckyDraw(task);
+        unassignTask(task);
     }
 
     public void calculateDaysVisible(Task task) {
@@ -767,6 +1046,7 @@ public class TaskService {
         double diffInDays = (double) millisDiff / (1000 * 60 * 60 * 24);
         int daysVisible = Math.max(1, (int) Math.ceil(diffInDays));
         task.setDaysVisible(daysVisible);
+        updateVisibleFrom(task);
     }
 
 
@@ -781,9 +1061,10 @@ public class TaskService {
     }
 
     public void checkLockedByUser(Task task, Long currentUserId) {
-        if (task.getLockedByUser() != null && !task.getLockedByUser().equals(currentUserId)) {
+        Long lockHolder = taskLockService.getLockHolder(task.getId());
+        if (lockHolder != null && !lockHolder.equals(currentUserId)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "Task is locked by another user: " + task.getLockedByUser());
+                    "Task is locked by another user: " + lockHolder);
         }
     }
 
@@ -791,13 +1072,53 @@ public class TaskService {
         return taskRepository.findAll();
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void unlockAllTasksForUser(Long userId) {
-        List<Task> lockedTasks = taskRepository.findAll().stream()
-                .filter(task -> userId.equals(task.getLockedByUser()))
-                .toList();
-        for (Task task : lockedTasks) {
-            task.setLockedByUser(null);
-            taskRepository.save(task);
+        // each released lock is sent to its team as LOCK_CHANGED
+        taskLockService.releaseAll(userId);
+    }
+
+    /**
+     * Sends a task to its team as TASK_UPDATED once the transaction has committed.
+     * Used after single-task bulk updates, which do not trigger the TaskEntityListener.
+     *
+     * @param task The updated task, as read after the update.
+     */
+    private void notifyTaskUpdated(Task task) {
+        if (task == null || task.getTeamId() == null) {
+            return;
+        }
+        // mapped now, the entity may be detached and changed by the time of the commit
+        TaskGetDTO taskDTO = taskLockService.withLockHolder(DTOMapper.INSTANCE.convertEntityToTaskGetDTO(task),
+                task.getLockExpiresAt());
+        runAfterCommit(() -> taskEventService.publishUpdated(task.getTeamId(), taskDTO));
+    }
+
+    /**
+     * Sends the current tasks of a team to its members once the transaction has
+     * committed. Used after bulk updates of all tasks of a team, which do not
+     * trigger the TaskEntityListener.
+     *
+     * @param teamId The ID of the team whose members are notified.
+     */
+    private void notifyTeamSnapshot(Long teamId) {
+        if (teamId == null) {
+            return;
+        }
+        runAfterCommit(() -> taskEventService.publishSnapshot(teamId,
+                () -> toTaskGetDTOs(taskRepository.findTaskViewsByTeamId(teamId))));
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
         }
     }
 }
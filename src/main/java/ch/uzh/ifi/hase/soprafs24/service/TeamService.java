@@ -3,8 +3,11 @@ package ch.uzh.ifi.hase.soprafs24.service;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
+import ch.uzh.ifi.hase.soprafs24.entity.TeamMembership;
+import ch.uzh.ifi.hase.soprafs24.repository.TeamMembershipRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.TeamRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.team.TeamGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs24.websocket.SocketHandler;
@@ -15,13 +18,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Set;
 import java.util.Objects;
@@ -41,24 +47,31 @@ import ch.uzh.ifi.hase.soprafs24.entity.Task;
 public class TeamService {
 
   private final Logger log = LoggerFactory.getLogger(TeamService.class);
+  private static final String TEAM_ENTITY_TYPE = "TEAM";
 
   private final TeamRepository teamRepository;
+  private final TeamMembershipRepository teamMembershipRepository;
   private final UserRepository userRepository;
   private final UserService userService;
   private final TaskService taskService;
   private final SocketHandler socketHandler;
   private final WebSocketNotificationService notificationService;
+  private final TeamStateCache teamStateCache;
 
   @Autowired
   public TeamService(@Qualifier("teamRepository") TeamRepository teamRepository,
+                     @Qualifier("teamMembershipRepository") TeamMembershipRepository teamMembershipRepository,
                      @Qualifier("userRepository") UserRepository userRepository,
                      @Qualifier("userService") UserService userService, 
                      @Qualifier("taskService") TaskService taskService,
                      @Qualifier("socketHandler") SocketHandler socketHandler,
-                     @Qualifier("webSocketNotificationService") WebSocketNotificationService notificationService) {
+                     @Qualifier("webSocketNotificationService") WebSocketNotificationService notificationService,
+                     TeamStateCache teamStateCache) {
     this.notificationService = notificationService;
+    this.teamStateCache = teamStateCache;
     this.socketHandler = socketHandler;
     this.teamRepository = teamRepository;
+    this.teamMembershipRepository = teamMembershipRepository;
     this.userRepository = userRepository;
     this.userService = userService;
     this.taskService = taskService;
@@ -74,14 +87,14 @@ public class TeamService {
     newTeam.setLevel(1);
     newTeam.setCode(generateUniqueTeamCode()); //generate a unique team code
     newTeam.setIsPaused(false); // Set the team to not paused by default
-    if (newTeam.getMembers() == null) {
-        newTeam.setMembers(new ArrayList<>());  // Initialize the list if null
-    }
-    newTeam.getMembers().add(userId); // Add userId to the list
     // saves the given entity but data is only persisted in the database once
     // flush() is called
     newTeam = teamRepository.save(newTeam);
     teamRepository.flush();
+
+    // the creator is the first member of the team
+    teamMembershipRepository.save(new TeamMembership(newTeam.getId(), userId));
+    teamStateCache.invalidateTeam(newTeam.getId());
     
     creator.setTeamId(newTeam.getId()); // Set the teamId for the user
     creator.setColor(ColorID.C1); // Set the color to C1 (default) for the creator
@@ -103,7 +116,7 @@ public class TeamService {
     Team team = getTeamByCode(teamCode);
 
     // Check if team has spots open
-    if (team.getMembers().size() >= ColorID.values().length) {
+    if (teamMembershipRepository.countByTeamId(team.getId()) >= ColorID.values().length) {
       throw new ResponseStatusException(
               HttpStatus.CONFLICT,
               "Team " + team.getId() + " is full (all colours in use).");
@@ -115,21 +128,24 @@ public class TeamService {
     // Check if user is already in a team
     checkUserNotInTeam(user);
 
-    // Assign a color to the user that is not already taken by another member
+    // Assign a color to the user that is not already taken by another member,
+    // from fresh rows since another instance may have added a member meanwhile
+    teamStateCache.invalidateTeam(team.getId());
     user.setColor(newTeamMemberColor(team));
 
     // Assign the user to the team
     user.setTeamId(team.getId());
 
-    // Add user to teamMembers list
-    team.getMembers().add(user.getId());
+    // Add user to the team members, a single row insert
+    teamMembershipRepository.save(new TeamMembership(team.getId(), user.getId()));
+    teamStateCache.invalidateTeam(team.getId());
 
     // Save updates
     userRepository.save(user);
-    teamRepository.save(team);
     socketHandler.associateSessionWithTeam(userId, team.getId());
     userRepository.flush();
-    teamRepository.flush();
+    teamMembershipRepository.flush();
+    notifyTeamMembersChanged(team.getId());
     log.debug("User {} joined team {}", userId, team.getId());
 
   }
@@ -139,7 +155,7 @@ public class TeamService {
     Team team = getTeamById(teamId);
 
     // Check if user is a member of the team
-    checkUserIsTeamMember(team, userId);
+    checkUserIsTeamMember(teamId, userId);
 
     // Check if team name is not empty or null
     validateTeamName(newTeamName);
@@ -159,7 +175,7 @@ public class TeamService {
     // Find the user
     User user = userService.getUserById(userId);
     // Ensure the user is actually in this team
-    checkUserIsTeamMember(team, userId);
+    checkUserIsTeamMember(teamId, userId);
 
     // Unassign all tasks the user is currently assigned to
     List<Task> assignedTasks = taskService.getTasksAssignedToUser(userId);
@@ -179,18 +195,20 @@ public class TeamService {
     }
 
 
-    // Remove user from the team
-    team.getMembers().remove(userId);
+    // Remove user from the team, a single row delete
+    teamMembershipRepository.deleteByTeamIdAndUserId(teamId, userId);
+    teamStateCache.invalidateTeam(teamId);
     user.setTeamId(null);  // Remove teamId from user
     user.setColor(null);
 
     // Save changes
     userRepository.save(user);
-    teamRepository.save(team);
 
     // If the team has no more members, delete it
-    if (team.getMembers().isEmpty()) {
+    if (teamMembershipRepository.countByTeamId(teamId) == 0) {
         teamRepository.delete(team);
+    } else {
+        notifyTeamMembersChanged(teamId);
     }
 
     teamRepository.flush();
@@ -198,9 +216,40 @@ public class TeamService {
   }
 
   public List<Long> getUsersByTeamId(Long teamId) {
-    Team team = this.teamRepository.findById(teamId)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Team not found."));
-    return team.getMembers();
+    if (!teamRepository.existsById(teamId)) {
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Team not found.");
+    }
+    return teamMembershipRepository.findUserIdsByTeamId(teamId);
+  }
+
+  /**
+   * Sends the team with its current members once the transaction has committed.
+   * Membership rows do not touch the team entity, so the TeamEntityListener
+   * is not triggered by joins and quits.
+   *
+   * @param teamId The ID of the team whose members changed.
+   */
+  private void notifyTeamMembersChanged(Long teamId) {
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                sendTeam(teamId);
+            }
+        });
+    } else {
+        sendTeam(teamId);
+    }
+  }
+
+  private void sendTeam(Long teamId) {
+    try {
+        TeamGetDTO teamGetDTO = DTOMapper.INSTANCE.convertEntityToTeamGetDTO(getTeamById(teamId));
+        teamGetDTO.setMembers(teamMembershipRepository.findUserIdsByTeamId(teamId));
+        notificationService.notifyTeamMembers(teamId, TEAM_ENTITY_TYPE, teamGetDTO);
+    } catch (Exception e) {
+        log.error("Error notifying team {} about changed members: {}", teamId, e.getMessage(), e);
+    }
   }
 
   public Team getTeamById(Long teamId) {
@@ -217,16 +266,16 @@ public class TeamService {
     // Find the team
     Team team = getTeamById(teamId);
     // Check if user is a member of the team
-    checkUserIsTeamMember(team, userId);
+    checkUserIsTeamMember(teamId, userId);
     // Check if the team is already paused
     if (Boolean.TRUE.equals(team.getIsPaused())) {
       // Unpause the team
       team.setIsPaused(false);
-      taskService.unpauseAllTasksInTeam();
+      taskService.unpauseAllTasksInTeam(teamId);
     } else {
       // Pause the team
       team.setIsPaused(true);
-      taskService.pauseAllTasksInTeam();
+      taskService.pauseAllTasksInTeam(teamId);
     }
     teamRepository.save(team);
     teamRepository.flush();
@@ -240,12 +289,28 @@ public class TeamService {
         throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid user token");
     }
 
-    Long teamId = user.getTeamId();
-    Team team = teamRepository.findTeamById(teamId);
-    if (team == null) {
+    validateTeamNotPaused(user.getTeamId());
+  }
+
+  /**
+   * Same checks as validateTeamPaused(String) for a user that was already
+   * authenticated by the AuthenticatedUserArgumentResolver. Answered from the
+   * TeamStateCache, so it joins no transaction of its own.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+  public void validateTeamPaused(AuthenticatedUser user) {
+    if (user.getTeamId() == null) {
+        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not in team");
+    }
+    validateTeamNotPaused(user.getTeamId());
+  }
+
+  private void validateTeamNotPaused(Long teamId) {
+    TeamStateCache.TeamState state = getTeamState(teamId);
+    if (state == null) {
         throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Team not found");
     }
-    if (Boolean.TRUE.equals(team.getIsPaused())) {
+    if (state.isPaused()) {
         throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Team is paused");
     }
   }
@@ -288,8 +353,12 @@ public class TeamService {
     }
   }
 
-  private void checkUserIsTeamMember(Team team, Long userId) {
-    if (!team.getMembers().contains(userId)) {
+  private void checkUserIsTeamMember(Long teamId, Long userId) {
+    TeamStateCache.TeamState state = getTeamState(teamId);
+    // a member is answered from the cache, anybody else is checked against the
+    // database in case they just joined through another instance
+    if ((state == null || !state.isMember(userId))
+        && !teamMembershipRepository.existsByTeamIdAndUserId(teamId, userId)) {
         throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not a member of this team.");
     }
   }
@@ -314,11 +383,8 @@ public class TeamService {
 
   private ColorID newTeamMemberColor(Team team) {
     // Collect colours already in use
-    Set<ColorID> usedColours = team.getMembers().stream()
-          .map(userService::getUserById)          // fetch each member
-          .map(User::getColor)                    // their colour
-          .filter(Objects::nonNull)               // skip nulls (no colour yet)
-          .collect(Collectors.toSet());
+    TeamStateCache.TeamState state = getTeamState(team.getId());
+    Set<ColorID> usedColours = state == null ? Collections.emptySet() : state.getUsedColors();
 
     // Return the first unused colour in the enum order C1…C10
     for (ColorID candidate : ColorID.values()) {
@@ -332,6 +398,25 @@ public class TeamService {
           HttpStatus.CONFLICT,
           "All team colours are already in use for team " + team.getId());
   }
+
+  private TeamStateCache.TeamState getTeamState(Long teamId) {
+    return teamStateCache.get(teamId, this::loadTeamState);
+  }
+
+  private TeamStateCache.TeamState loadTeamState(Long teamId) {
+    // single-column reads, so the state is as fresh as the database and not as a loaded entity
+    Boolean paused = teamRepository.findIsPausedById(teamId);
+    if (paused == null) {
+        return null;
+    }
+    List<Long> memberIds = teamMembershipRepository.findUserIdsByTeamId(teamId);
+    Map<Long, ColorID> colors = userRepository.findAllById(memberIds)
+          .stream()                               // all members in one query
+          .filter(member -> member.getId() != null && member.getColor() != null) // skip members without a colour yet
+          .collect(Collectors.toMap(User::getId, User::getColor, (first, second) -> first));
+    return new TeamStateCache.TeamState(teamId, paused, memberIds, colors);
+  }
+
   public List<UserGetDTO> getCurrentMembersForTeam(Long teamId) {
         if (teamId == null) {
             log.warn("getCurrentMembersForTeam called with null teamId.");
@@ -345,7 +430,7 @@ public class TeamService {
             return Collections.emptyList();
         }
 
-        List<Long> memberIds = team.getMembers();
+        List<Long> memberIds = teamMembershipRepository.findUserIdsByTeamId(team.getId());
 
         if (memberIds == null || memberIds.isEmpty()) {
             return Collections.emptyList();
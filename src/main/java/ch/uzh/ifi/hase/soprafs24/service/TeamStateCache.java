@@ -0,0 +1,152 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory state per team (paused flag, member ids and member colors), so
+ * the pause check in front of almost every task endpoint and the membership
+ * checks of TeamService are answered without a query.
+ * The state of a team is loaded on first use and dropped whenever the team,
+ * one of its members or its membership changes (TeamEntityListener,
+ * UserEntityListener, TeamService), once right away and once more after the
+ * transaction, so a reader that loaded the old rows in between does not keep
+ * them. Entries also expire after teams.state-cache.ttl-millis, which bounds
+ * how long a change made by another instance goes unseen.
+ */
+@Component
+public class TeamStateCache {
+
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    // bumped by every invalidation, a load that overlapped one is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public TeamStateCache(@Value("${teams.state-cache.ttl-millis:10000}") long ttlMillis) {
+        this(ttlMillis, System::currentTimeMillis);
+    }
+
+    public TeamStateCache(long ttlMillis, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @param teamId The ID of the team.
+     * @param loader Loads the state of a team that is not cached, returns null if the team does not exist.
+     * @return The state of the team, null if there is no such team.
+     */
+    public TeamState get(Long teamId, Function<Long, TeamState> loader) {
+        if (teamId == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        Entry entry = entries.get(teamId);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.state;
+        }
+        long loadGeneration = generation.get();
+        TeamState state = loader.apply(teamId);
+        if (state == null) {
+            entries.remove(teamId);
+            return null;
+        }
+        if (ttlMillis > 0 && generation.get() == loadGeneration) {
+            entries.put(teamId, new Entry(state, now + ttlMillis));
+        }
+        return state;
+    }
+
+    /**
+     * Drops the cached state of the team, again after the transaction if one
+     * is active.
+     */
+    public void invalidateTeam(Long teamId) {
+        if (teamId == null) {
+            return;
+        }
+        evict(teamId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(teamId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long teamId) {
+        generation.incrementAndGet();
+        entries.remove(teamId);
+    }
+
+    /**
+     * Immutable snapshot of a team.
+     */
+    public static final class TeamState {
+        private final Long teamId;
+        private final boolean paused;
+        private final Set<Long> memberIds;
+        private final Map<Long, ColorID> colors;
+
+        public TeamState(Long teamId, boolean paused, Collection<Long> memberIds, Map<Long, ColorID> colors) {
+            this.teamId = teamId;
+            this.paused = paused;
+            this.memberIds = Set.copyOf(memberIds);
+            this.colors = Map.copyOf(colors);
+        }
+
+        public Long getTeamId() {
+            return teamId;
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+
+        public boolean isMember(Long userId) {
+            return userId != null && memberIds.contains(userId);
+        }
+
+        public Set<Long> getMemberIds() {
+            return memberIds;
+        }
+
+        /**
+         * @return The color of each member that has one, by user id.
+         */
+        public Map<Long, ColorID> getColors() {
+            return colors;
+        }
+
+        public Set<ColorID> getUsedColors() {
+            return colors.isEmpty() ? EnumSet.noneOf(ColorID.class) : EnumSet.copyOf(colors.values());
+        }
+    }
+
+    private static final class Entry {
+        private final TeamState state;
+        private final long expiresAt;
+
+        private Entry(TeamState state, long expiresAt) {
+            this.state = state;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
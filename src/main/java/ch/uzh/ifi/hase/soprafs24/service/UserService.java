@@ -3,18 +3,33 @@ package ch.uzh.ifi.hase.soprafs24.service;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.Date;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 
@@ -32,15 +47,58 @@ public class UserService {
   private final Logger log = LoggerFactory.getLogger(UserService.class);
 
   private final UserRepository userRepository;
+  private final WebSocketNotificationService notificationService;
+  private final AuthenticatedUserCache authenticatedUserCache;
 
-  public UserService(@Qualifier("userRepository") UserRepository userRepository) {
+  private static final String MEMBERS_ENTITY_TYPE = "MEMBERS";
+  // XP_FOR_LEVEL[level] = XP needed for that level, precomputed up to MAX_LEVEL (level 1 is the floor)
+  private static final int MAX_LEVEL = 10_000;
+  private static final int[] XP_FOR_LEVEL = buildLevelTable();
+
+  public UserService(@Qualifier("userRepository") UserRepository userRepository,
+                     @Lazy WebSocketNotificationService notificationService,
+                     AuthenticatedUserCache authenticatedUserCache) {
     this.userRepository = userRepository;
+    this.notificationService = notificationService;
+    this.authenticatedUserCache = authenticatedUserCache;
   }
 
   public List<User> getUsers() {
     return this.userRepository.findAll();
   }
 
+  /**
+   * All users as DTOs, read with a projection query in a read-only transaction:
+   * no User entities are loaded, so there is nothing to dirty-check or flush.
+   */
+  @Transactional(readOnly = true)
+  public List<UserGetDTO> getUserDTOs() {
+    return userRepository.findAllUserDTOs();
+  }
+
+  /**
+   * Keyset pagination over all users.
+   *
+   * @param afterId Only users with a greater id are returned (0 for the first page).
+   * @param limit   The maximum number of users to return.
+   * @return The next users in id order.
+   */
+  @Transactional(readOnly = true)
+  public List<UserGetDTO> getUserDTOsPage(long afterId, int limit) {
+    return userRepository.findUserDTOsAfterId(afterId, PageRequest.of(0, limit));
+  }
+
+  /**
+   * Passes every user to the action, in id order. The rows are read with a
+   * database cursor straight into DTOs, so memory use stays flat.
+   */
+  @Transactional(readOnly = true)
+  public void forEachUserDTO(Consumer<UserGetDTO> action) {
+    try (Stream<UserGetDTO> users = userRepository.streamAllUserDTOs()) {
+      users.forEach(action);
+    }
+  }
+
   public User getUserById(Long userId) {
     User user = userRepository.findUserById(userId);
     if (user == null) {
@@ -137,67 +195,110 @@ public class UserService {
 }
 
   public void addExperiencePoints(Long userId, int points) {
-    User user = userRepository.findById(userId)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+    applyExperiencePointsDelta(userId, points);
+  }
 
-    user.setXp(user.getXp() + points);
-    checkLevelUp(user); 
-    userRepository.save(user);
-    userRepository.flush();
+  public void deductExperiencePoints(Long userId, int points) {
+    // XP never drops below 0, see UserRepository.addExperiencePoints
+    applyExperiencePointsDelta(userId, -points);
+  }
 
+  /**
+   * Applies several XP changes at once, e.g. the penalties of an expiry chunk.
+   * Unknown user ids are skipped.
+   *
+   * @param deltas user id -> XP change (negative to deduct)
+   */
+  public void applyExperiencePointsDeltas(Map<Long, Integer> deltas) {
+    if (deltas == null || deltas.isEmpty()) {
+      return;
+    }
+    // sorted by user id, so concurrent batches lock the rows in the same order
+    Map<Long, Integer> orderedDeltas = new TreeMap<>(deltas);
+    orderedDeltas.forEach(userRepository::addExperiencePoints);
+    updateLevels(orderedDeltas.keySet());
   }
 
-  private void checkLevelUp(User user) {
-    int currentXP = user.getXp();
-    int currentLevel = user.getLevel();
-    int nextLevelXP = getXpForLevel(currentLevel + 1);
+  private void applyExperiencePointsDelta(Long userId, int delta) {
+    if (userRepository.addExperiencePoints(userId, delta) == 0) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
+    }
+    updateLevels(List.of(userId));
+  }
 
-    while (currentXP >= nextLevelXP) {
-        user.setLevel(currentLevel + 1);
-        currentLevel++;
-        nextLevelXP = getXpForLevel(currentLevel + 1);
+  private void updateLevels(Collection<Long> userIds) {
+    // the xp rows stay locked by the UPDATE until commit, so the level matches the xp read here
+    Set<Long> teamIds = new HashSet<>();
+    for (User user : userRepository.findAllById(userIds)) {
+      int level = getLevelForXp(user.getXp());
+      if (level != user.getLevel()) {
+        userRepository.updateLevel(user.getId(), level);
+      }
+      if (user.getTeamId() != null) {
+        teamIds.add(user.getTeamId());
+      }
     }
-}
+    // bulk updates bypass the UserEntityListener, so every affected team is notified once
+    for (Long teamId : teamIds) {
+      notifyTeamMembersChanged(teamId);
+    }
+  }
+
+  /**
+   * Returns the level for an amount of XP: the highest level whose threshold
+   * (100 * level^1.5) is reached, at least 1.
+   */
+  public static int getLevelForXp(int xp) {
+    int low = 1;
+    int high = MAX_LEVEL;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (XP_FOR_LEVEL[mid] <= xp) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
 
-  private int getXpForLevel(int level) {
+  private static int[] buildLevelTable() {
+    int[] xpForLevel = new int[MAX_LEVEL + 1];
+    for (int level = 2; level <= MAX_LEVEL; level++) {
+      xpForLevel[level] = getXpForLevel(level);
+    }
+    return xpForLevel;
+  }
+
+  private static int getXpForLevel(int level) {
       int baseXP = 100;
       double exponent = 1.5;
       return (int)(baseXP * Math.pow(level, exponent));
   }
 
-  public void deductExperiencePoints(Long userId, int points) {
-    User user = userRepository.findById(userId)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
-
-    // Calculate new XP, ensuring it doesn't go below 0
-    int newXp = Math.max(0, user.getXp() - points);
-    user.setXp(newXp);
-    
-    // Check if level needs to be adjusted
-    adjustLevelAfterXpDeduction(user);
-    
-    userRepository.save(user);
-    userRepository.flush();
-}
-
-  private void adjustLevelAfterXpDeduction(User user) {
-      int currentXP = user.getXp();
-      int currentLevel = user.getLevel();
-      
-      // If user's level is already 1, no need to check further as 1 is the minimum level
-      if (currentLevel <= 1) {
-          user.setLevel(1);
-          return;
-      }
-      
-      // Check if current XP is less than what's required for the current level
-      while (currentLevel > 1 && currentXP < getXpForLevel(currentLevel)) {
-          currentLevel--;
-          user.setLevel(currentLevel);
-      }
+  private void notifyTeamMembersChanged(Long teamId) {
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          sendTeamMembers(teamId);
+        }
+      });
+    } else {
+      sendTeamMembers(teamId);
+    }
   }
 
-   
+  private void sendTeamMembers(Long teamId) {
+    try {
+      List<UserGetDTO> members = userRepository.findByTeamId(teamId).stream()
+          .map(DTOMapper.INSTANCE::convertEntityToUserGetDTO)
+          .collect(Collectors.toList());
+      notificationService.notifyTeamMembers(teamId, MEMBERS_ENTITY_TYPE, members);
+    } catch (Exception e) {
+      log.error("Error notifying team {} about changed members: {}", teamId, e.getMessage(), e);
+    }
+  }
 
 public User getUserByToken(String token) {
   User user = userRepository.findByToken(token); 
@@ -232,9 +333,21 @@ public User getUserByToken(String token) {
   }
     return userToken.substring(7);
 }
+  /**
+   * The user of a token, served from the AuthenticatedUserCache for a few
+   * seconds. No transaction is started, a cache hit does not touch the database.
+   *
+   * @return The user, null if no user has this token.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+  public AuthenticatedUser getAuthenticatedUser(String token) {
+    return authenticatedUserCache.get(token, userRepository::findByToken);
+  }
+
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
   public boolean validateToken(String token) {
-    User user = userRepository.findByToken(token);  // Assuming you store the token on the user object
-    return user != null && user.getStatus() == UserStatus.ONLINE;  // Token is valid and the user is online
+    AuthenticatedUser user = getAuthenticatedUser(token);
+    return user != null && user.isOnline();  // Token is valid and the user is online
 }
 
   private Date adjustBirthDateByOneHour(Date birthDate) {
@@ -244,13 +357,14 @@ public User getUserByToken(String token) {
     return new Date(birthDate.getTime() + 3600 * 1000); // Add 1 hour (3600 seconds * 1000 milliseconds)
 }
 
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
   public Long findIDforToken(String token) {
-    User user = userRepository.findByToken(token);
+    AuthenticatedUser user = getAuthenticatedUser(token);
     if (user == null) {
       return null;  // Or you can throw an exception or return a specific value
     }
     // Return the user ID if the user is found
-    return user.getId();
+    return user.getUserId();
   }
 
 
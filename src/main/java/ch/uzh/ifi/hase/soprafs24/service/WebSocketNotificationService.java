@@ -1,6 +1,8 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
 import ch.uzh.ifi.hase.soprafs24.websocket.SocketHandler;
+import ch.uzh.ifi.hase.soprafs24.websocket.WebSocketEvent;
+import ch.uzh.ifi.hase.soprafs24.websocket.WebSocketEventBus;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,28 +15,41 @@ public class WebSocketNotificationService {
 
     private static final Logger log = LoggerFactory.getLogger(WebSocketNotificationService.class);
     private final SocketHandler plainWebSocketHandler;
+    private final WebSocketEventBus eventBus;
 
     @Autowired
-    public WebSocketNotificationService(SocketHandler plainWebSocketHandler) {
+    public WebSocketNotificationService(SocketHandler plainWebSocketHandler, WebSocketEventBus eventBus) {
         this.plainWebSocketHandler = plainWebSocketHandler;
+        this.eventBus = eventBus;
+        // events of all instances arrive here, each instance delivers them to its own sessions
+        eventBus.subscribe(this::deliverToLocalSessions);
     }
 
     /**
-     * Broadcasts a generic entity change to ALL connected clients.
+     * Broadcasts a generic entity change to ALL connected clients, on every instance.
      * Used for entities where targeting by teamId is not applicable (e.g., User updates).
      */
     public void broadcastEntityChange(String entityType, Object entityData) {
         if (handleCommonChecks(entityType, entityData)) {
             DatabaseChangeEventDTO<?> event = new DatabaseChangeEventDTO<>(entityType, entityData);
-            plainWebSocketHandler.broadcastMessageToAll(event); // New method in handler
+            eventBus.publish(new WebSocketEvent(null, event));
         }
     }
 
     /**
-     * Notifies only users belonging to a specific team about an entity change.
+     * Notifies only users belonging to a specific team about an entity change,
+     * on whichever instance they are connected to.
      * Primarily used for Task updates.
      */
     public void notifyTeamMembers(Long teamId, String entityType, Object entityData) {
+        notifyTeamMembers(teamId, entityType, entityData, null);
+    }
+
+    /**
+     * Notifies the members of a team about a task event carrying its per-team
+     * sequence number (see TaskEventService).
+     */
+    public void notifyTeamMembers(Long teamId, String entityType, Object entityData, Long sequence) {
         if (teamId == null) {
             log.warn("Cannot notify team members: teamId is null. EntityType: {}", entityType);
             // Fallback to broadcast or log an error depending on desired behavior
@@ -42,8 +57,16 @@ public class WebSocketNotificationService {
             return;
         }
         if (handleCommonChecks(entityType, entityData)) {
-            DatabaseChangeEventDTO<?> event = new DatabaseChangeEventDTO<>(entityType, entityData);
-            plainWebSocketHandler.broadcastMessageToTeam(teamId, event); // New method in handler
+            DatabaseChangeEventDTO<?> event = new DatabaseChangeEventDTO<>(entityType, entityData, sequence);
+            eventBus.publish(new WebSocketEvent(teamId, event));
+        }
+    }
+
+    private void deliverToLocalSessions(WebSocketEvent event) {
+        if (event.getTeamId() == null) {
+            plainWebSocketHandler.broadcastMessageToAll(event.getEvent());
+        } else {
+            plainWebSocketHandler.broadcastMessageToTeam(event.getTeamId(), event.getEvent());
         }
     }
 
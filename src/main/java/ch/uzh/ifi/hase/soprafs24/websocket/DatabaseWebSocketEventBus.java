@@ -0,0 +1,247 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import ch.uzh.ifi.hase.soprafs24.entity.WebSocketEventRecord;
+import ch.uzh.ifi.hase.soprafs24.repository.WebSocketEventRecordRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Event bus shared by all instances through the WEBSOCKET_EVENT table.
+ * A published event is delivered to the local subscribers right away and
+ * queued for the table. A writer thread inserts the queued events in batches
+ * in its own transaction, so publishing neither blocks the caller on the
+ * database nor needs a second connection while the caller still holds one.
+ * Every other instance polls the table and delivers the rows it has not seen
+ * yet. If the queue is full (the database is down or too slow), events are
+ * only delivered locally. Clients on other instances recover lost task deltas
+ * from the gap in the team's sequence numbers by reloading the snapshot. The table is used instead of Postgres
+ * NOTIFY because task snapshots exceed the 8000 byte NOTIFY payload limit,
+ * and it works the same on H2.
+ * Ids come from a sequence, but a row with a lower id can commit after one
+ * with a higher id. The poller therefore keeps re-reading the ids of the last
+ * COMMIT_GRACE_MILLIS and only fetches the payloads of ids it has not seen.
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.event-bus", havingValue = "database")
+public class DatabaseWebSocketEventBus implements WebSocketEventBus {
+
+    static final int BATCH_SIZE = 200;
+    static final int QUEUE_CAPACITY = 10_000;
+    static final long COMMIT_GRACE_MILLIS = 5_000;
+    // rows are deleted after this, an instance that falls further behind misses them
+    static final long RETENTION_MILLIS = 60_000;
+    private static final long CLEANUP_INTERVAL_MILLIS = 30_000;
+    private static final TypeReference<DatabaseChangeEventDTO<JsonNode>> EVENT_TYPE = new TypeReference<>() {
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseWebSocketEventBus.class);
+    private final String nodeId = UUID.randomUUID().toString();
+    private final WebSocketEventRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final long pollMillis;
+    private final List<Consumer<WebSocketEvent>> subscribers = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<WebSocketEventRecord> outgoing = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "websocket-event-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "websocket-event-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // only used by the poller thread: ids above floorId that were delivered, with the time they were first seen
+    private final Map<Long, Long> seenIds = new LinkedHashMap<>();
+    private long floorId;
+    private long lastCleanup;
+
+    @Autowired
+    public DatabaseWebSocketEventBus(
+            @Qualifier("webSocketEventRecordRepository") WebSocketEventRecordRepository repository,
+            PlatformTransactionManager transactionManager,
+            @Value("${websocket.event-bus.poll-millis:250}") long pollMillis) {
+        this.repository = repository;
+        // only used on the writer and poller threads, which never run inside a caller's transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.pollMillis = pollMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        // a new instance only delivers events published from now on
+        Long maxId = transactionTemplate.execute(status -> repository.findMaxId());
+        floorId = maxId != null ? maxId : 0L;
+        poller.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        writer.execute(this::writeLoop);
+        log.info("WebSocket event bus node {} polling every {} ms after event {}", nodeId, pollMillis, floorId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        writer.shutdownNow();
+        // best effort for the events queued since the last batch
+        flush();
+    }
+
+    @Override
+    public void publish(WebSocketEvent event) {
+        deliverLocally(event);
+        try {
+            // serialized now, the payload objects may change after publishing
+            WebSocketEventRecord record = new WebSocketEventRecord();
+            record.setOriginNode(nodeId);
+            record.setTeamId(event.getTeamId());
+            record.setPayload(objectMapper.writeValueAsString(event.getEvent()));
+            record.setCreatedAt(new Date());
+            if (!outgoing.offer(record)) {
+                log.warn("WebSocket event queue is full, event for team {} is not sent to other instances",
+                        event.getTeamId());
+            }
+        } catch (Exception e) {
+            log.error("Failed to publish WebSocket event for team {} to other instances: {}", event.getTeamId(),
+                    e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<WebSocketEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    private void writeLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<WebSocketEventRecord> batch = new ArrayList<>();
+                batch.add(outgoing.take());
+                outgoing.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued events right away, on the calling thread.
+     *
+     * @return The number of events written.
+     */
+    int flush() {
+        int written = 0;
+        List<WebSocketEventRecord> batch = new ArrayList<>();
+        while (outgoing.drainTo(batch, BATCH_SIZE) > 0) {
+            written += write(batch);
+            batch.clear();
+        }
+        return written;
+    }
+
+    // one transaction per batch; the inserts are sent as JDBC batches
+    private int write(List<WebSocketEventRecord> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> repository.saveAll(batch));
+            return batch.size();
+        } catch (Exception e) {
+            log.error("Failed to write {} WebSocket event(s) for other instances: {}", batch.size(), e.getMessage());
+            return 0;
+        }
+    }
+
+    void poll() {
+        try {
+            long now = System.currentTimeMillis();
+            List<Long> newIds = new ArrayList<>();
+            for (Long id : transactionTemplate.execute(status -> repository.findIdsAfter(floorId))) {
+                if (!seenIds.containsKey(id) && newIds.size() < BATCH_SIZE) {
+                    newIds.add(id);
+                }
+            }
+            if (!newIds.isEmpty()) {
+                for (WebSocketEventRecord record : transactionTemplate
+                        .execute(status -> repository.findByIdInOrderByIdAsc(newIds))) {
+                    seenIds.put(record.getId(), now);
+                    if (!nodeId.equals(record.getOriginNode())) {
+                        deliverRecord(record);
+                    }
+                }
+            }
+            advanceFloor(now);
+            if (now - lastCleanup >= CLEANUP_INTERVAL_MILLIS) {
+                lastCleanup = now;
+                Date cutoff = new Date(now - RETENTION_MILLIS);
+                transactionTemplate.executeWithoutResult(status -> repository.deleteCreatedBefore(cutoff));
+            }
+        } catch (Exception e) {
+            log.warn("Polling WebSocket events failed: {}", e.getMessage());
+        }
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    private void advanceFloor(long now) {
+        Iterator<Map.Entry<Long, Long>> iterator = seenIds.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> seen = iterator.next();
+            if (now - seen.getValue() >= COMMIT_GRACE_MILLIS) {
+                floorId = Math.max(floorId, seen.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void deliverRecord(WebSocketEventRecord record) {
+        try {
+            DatabaseChangeEventDTO<JsonNode> event = objectMapper.readValue(record.getPayload(), EVENT_TYPE);
+            deliverLocally(new WebSocketEvent(record.getTeamId(), event));
+        } catch (Exception e) {
+            log.error("Skipping unreadable WebSocket event {}: {}", record.getId(), e.getMessage());
+        }
+    }
+
+    private void deliverLocally(WebSocketEvent event) {
+        for (Consumer<WebSocketEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (Exception e) {
+                log.error("WebSocket event subscriber failed for team {}: {}", event.getTeamId(), e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Event bus of a single instance: events are handed to the subscribers
+ * directly, on the publishing thread.
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.event-bus", havingValue = "memory", matchIfMissing = true)
+public class InMemoryWebSocketEventBus implements WebSocketEventBus {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryWebSocketEventBus.class);
+    private final List<Consumer<WebSocketEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(WebSocketEvent event) {
+        for (Consumer<WebSocketEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (Exception e) {
+                log.error("WebSocket event subscriber failed for team {}: {}", event.getTeamId(), e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<WebSocketEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+}
@@ -0,0 +1,83 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically cleans up the WebSocket sessions of this instance (see
+ * SocketHandler.reapSessions): sessions that do not authenticate within
+ * websocket.auth-timeout-millis are closed, authenticated sessions are pinged
+ * every websocket.ping-interval-millis and closed when nothing, not even a
+ * pong, arrived for websocket.idle-timeout-millis. Sessions blocked in a send
+ * for longer than websocket.send.time-limit-millis are evicted (see
+ * SessionSendQueues.evictStalled).
+ * The gauges websocket.sessions.connected, .authenticated and .pending show
+ * the sessions of this instance.
+ */
+@Component
+public class SessionReaper {
+
+    static final String CONNECTED_METRIC = "websocket.sessions.connected";
+    static final String AUTHENTICATED_METRIC = "websocket.sessions.authenticated";
+    static final String PENDING_METRIC = "websocket.sessions.pending";
+
+    private static final Logger log = LoggerFactory.getLogger(SessionReaper.class);
+    private final SocketHandler socketHandler;
+    private final long authTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long pingIntervalMillis;
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "websocket-session-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public SessionReaper(SocketHandler socketHandler, MeterRegistry meterRegistry,
+            @Value("${websocket.auth-timeout-millis:10000}") long authTimeoutMillis,
+            @Value("${websocket.idle-timeout-millis:90000}") long idleTimeoutMillis,
+            @Value("${websocket.ping-interval-millis:30000}") long pingIntervalMillis) {
+        this.socketHandler = socketHandler;
+        this.authTimeoutMillis = authTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.pingIntervalMillis = pingIntervalMillis;
+        Gauge.builder(CONNECTED_METRIC, socketHandler, SocketHandler::countConnectedSessions)
+                .register(meterRegistry);
+        Gauge.builder(AUTHENTICATED_METRIC, socketHandler, SocketHandler::countAuthenticatedSessions)
+                .register(meterRegistry);
+        Gauge.builder(PENDING_METRIC, socketHandler, SocketHandler::countPendingSessions)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void startReaper() {
+        // often enough to enforce the shortest of the limits within a few seconds
+        long interval = Math.max(1000L, Math.min(authTimeoutMillis, pingIntervalMillis) / 2);
+        reaper.scheduleWithFixedDelay(this::reap, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+    }
+
+    void reap() {
+        try {
+            socketHandler.reapSessions(System.currentTimeMillis(), authTimeoutMillis, idleTimeoutMillis,
+                    pingIntervalMillis);
+        } catch (Exception e) {
+            log.error("Error while reaping WebSocket sessions: {}", e.getMessage(), e);
+        }
+    }
+}
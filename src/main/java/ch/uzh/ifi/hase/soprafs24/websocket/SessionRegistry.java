@@ -0,0 +1,108 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The WebSocket sessions of this instance, indexed by user and by team, so a
+ * team broadcast only visits the sessions of the team and a per-user action
+ * does not scan every connection.
+ * The team index follows the "teamId" session attribute and the user index the
+ * "userId" attribute; both attributes are only changed through this registry.
+ * Changes are serialized on the registry (they happen on connect, auth, team
+ * changes and close), lookups are lock-free.
+ */
+class SessionRegistry {
+
+    static final String USER_ID_ATTRIBUTE = "userId";
+    static final String TEAM_ID_ATTRIBUTE = "teamId";
+
+    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+    private final Map<Long, WebSocketSession> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<Long, Set<WebSocketSession>> sessionsByTeam = new ConcurrentHashMap<>();
+
+    void add(WebSocketSession session) {
+        sessions.add(session);
+    }
+
+    /**
+     * Binds an authenticated session to its user.
+     *
+     * @return The session the user had before, or null.
+     */
+    synchronized WebSocketSession bindUser(WebSocketSession session, Long userId) {
+        session.getAttributes().put(USER_ID_ATTRIBUTE, userId);
+        WebSocketSession previous = sessionsByUser.put(userId, session);
+        return previous != session ? previous : null;
+    }
+
+    synchronized void assignTeam(WebSocketSession session, Long teamId) {
+        Long oldTeamId = (Long) session.getAttributes().put(TEAM_ID_ATTRIBUTE, teamId);
+        if (oldTeamId != null && !oldTeamId.equals(teamId)) {
+            removeFromTeam(oldTeamId, session);
+        }
+        sessionsByTeam.computeIfAbsent(teamId, id -> ConcurrentHashMap.newKeySet()).add(session);
+    }
+
+    /**
+     * @return The team the session belonged to, or null.
+     */
+    synchronized Long clearTeam(WebSocketSession session) {
+        Long oldTeamId = (Long) session.getAttributes().remove(TEAM_ID_ATTRIBUTE);
+        if (oldTeamId != null) {
+            removeFromTeam(oldTeamId, session);
+        }
+        return oldTeamId;
+    }
+
+    /**
+     * Removes a session from all indexes. The session attributes are kept.
+     *
+     * @return Whether the session was registered.
+     */
+    synchronized boolean remove(WebSocketSession session) {
+        boolean removed = sessions.remove(session);
+        Long userId = (Long) session.getAttributes().get(USER_ID_ATTRIBUTE);
+        if (userId != null) {
+            // only if it was not replaced by a newer session of the user
+            sessionsByUser.remove(userId, session);
+        }
+        Long teamId = (Long) session.getAttributes().get(TEAM_ID_ATTRIBUTE);
+        if (teamId != null) {
+            removeFromTeam(teamId, session);
+        }
+        return removed;
+    }
+
+    synchronized void clear() {
+        sessions.clear();
+        sessionsByUser.clear();
+        sessionsByTeam.clear();
+    }
+
+    WebSocketSession getByUser(Long userId) {
+        return userId != null ? sessionsByUser.get(userId) : null;
+    }
+
+    Collection<WebSocketSession> getByTeam(Long teamId) {
+        Set<WebSocketSession> teamSessions = teamId != null ? sessionsByTeam.get(teamId) : null;
+        return teamSessions != null ? teamSessions : Collections.emptySet();
+    }
+
+    Collection<WebSocketSession> getAll() {
+        return sessions;
+    }
+
+    // callers hold the registry monitor
+    private void removeFromTeam(Long teamId, WebSocketSession session) {
+        sessionsByTeam.computeIfPresent(teamId, (id, teamSessions) -> {
+            teamSessions.remove(session);
+            return teamSessions.isEmpty() ? null : teamSessions;
+        });
+    }
+}
@@ -0,0 +1,272 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Outbound message queue per WebSocket session. Callers only enqueue, a pool
+ * of send threads writes to the sockets: a slow client no longer stalls the
+ * thread that committed a change, and a session is only ever written by one
+ * thread at a time.
+ * A client that can't keep up is evicted (closed with SESSION_NOT_RELIABLE)
+ * when its queue exceeds websocket.send.queue-limit messages or
+ * websocket.send.buffer-size-limit bytes, or when a send has been blocked for
+ * longer than websocket.send.time-limit-millis. The time limit is checked when
+ * the next message is queued and by the SessionReaper (evictStalled), so a
+ * client stuck in a send is closed, which aborts the send and frees its send
+ * thread, even if nothing else is sent to it.
+ * The gauge websocket.session.queue.depth (tagged with the session) shows the
+ * messages waiting per session, the counter websocket.sessions.evicted the
+ * evicted clients.
+ */
+@Component
+public class SessionSendQueues {
+
+    static final String QUEUE_DEPTH_METRIC = "websocket.session.queue.depth";
+    static final String EVICTED_METRIC = "websocket.sessions.evicted";
+    static final CloseStatus SLOW_CONSUMER = CloseStatus.SESSION_NOT_RELIABLE.withReason("Client too slow");
+    // messages one send task writes before it gives the thread to other sessions
+    private static final int DRAIN_BATCH = 64;
+
+    private static final Logger log = LoggerFactory.getLogger(SessionSendQueues.class);
+    private final Map<WebSocketSession, SessionQueue> queues = new ConcurrentHashMap<>();
+    private final int queueLimit;
+    private final long bufferSizeLimit;
+    private final long sendTimeLimitMillis;
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
+    private volatile Consumer<WebSocketSession> failureHandler = session -> {
+    };
+
+    @Autowired
+    public SessionSendQueues(@Value("${websocket.send.queue-limit:256}") int queueLimit,
+            @Value("${websocket.send.buffer-size-limit:524288}") long bufferSizeLimit,
+            @Value("${websocket.send.time-limit-millis:10000}") long sendTimeLimitMillis,
+            @Value("${websocket.send.threads:4}") int threads,
+            MeterRegistry meterRegistry) {
+        this(queueLimit, bufferSizeLimit, sendTimeLimitMillis, newSendExecutor(threads), meterRegistry);
+    }
+
+    SessionSendQueues(int queueLimit, long bufferSizeLimit, long sendTimeLimitMillis, Executor executor,
+            MeterRegistry meterRegistry) {
+        this.queueLimit = queueLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private static ExecutorService newSendExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "websocket-send-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    /**
+     * Called with a session whose send failed or that was evicted, so it can be
+     * dropped from tracking before the container reports the close.
+     */
+    public void setFailureHandler(Consumer<WebSocketSession> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Queues a message for the session.
+     *
+     * @return false if the session is closed or was evicted.
+     */
+    public boolean send(WebSocketSession session, WebSocketMessage<?> message) {
+        if (!session.isOpen()) {
+            return false;
+        }
+        SessionQueue queue = queues.computeIfAbsent(session, SessionQueue::new);
+        return queue.offer(message);
+    }
+
+    /**
+     * Drops the queue of a closed session.
+     */
+    public void remove(WebSocketSession session) {
+        SessionQueue queue = queues.remove(session);
+        if (queue != null) {
+            queue.discard();
+        }
+    }
+
+    /**
+     * Evicts the sessions whose current send was started more than the send
+     * time limit before now.
+     *
+     * @return The number of evicted sessions.
+     */
+    public int evictStalled(long now) {
+        int evicted = 0;
+        for (SessionQueue queue : queues.values()) {
+            if (queue.isStalled(now)) {
+                queue.evict("send time limit");
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    int getQueueDepth(WebSocketSession session) {
+        SessionQueue queue = queues.get(session);
+        return queue != null ? queue.size.get() : 0;
+    }
+
+    private final class SessionQueue {
+        private final WebSocketSession session;
+        private final Queue<WebSocketMessage<?>> messages = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final Gauge depthGauge;
+        // 0 while no send is in progress
+        private volatile long sendStartedAt;
+        private volatile boolean discarded;
+
+        private SessionQueue(WebSocketSession session) {
+            this.session = session;
+            this.depthGauge = Gauge.builder(QUEUE_DEPTH_METRIC, size, AtomicInteger::get)
+                    .tag("session", session.getId())
+                    .register(meterRegistry);
+        }
+
+        private boolean offer(WebSocketMessage<?> message) {
+            if (discarded) {
+                return false;
+            }
+            if (isStalled(System.currentTimeMillis())) {
+                evict("send time limit");
+                return false;
+            }
+            messages.add(message);
+            int queued = size.incrementAndGet();
+            long queuedBytes = bytes.addAndGet(message.getPayloadLength());
+            if (queued > queueLimit || queuedBytes > bufferSizeLimit) {
+                evict("buffer limit");
+                return false;
+            }
+            scheduleDrain();
+            return true;
+        }
+
+        private boolean isStalled(long now) {
+            long startedAt = sendStartedAt;
+            return !discarded && startedAt != 0 && now - startedAt > sendTimeLimitMillis;
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RuntimeException e) {
+                    // rejected during shutdown
+                    draining.set(false);
+                    log.warn("Could not schedule send for session {}: {}", session.getId(), e.getMessage());
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                WebSocketMessage<?> message;
+                int sent = 0;
+                while (!discarded && sent < DRAIN_BATCH && (message = messages.poll()) != null) {
+                    size.decrementAndGet();
+                    bytes.addAndGet(-message.getPayloadLength());
+                    if (!write(message)) {
+                        return;
+                    }
+                    sent++;
+                }
+            } finally {
+                draining.set(false);
+                if (!discarded && !messages.isEmpty()) {
+                    scheduleDrain();
+                }
+            }
+        }
+
+        private boolean write(WebSocketMessage<?> message) {
+            sendStartedAt = System.currentTimeMillis();
+            try {
+                session.sendMessage(message);
+                return true;
+            } catch (IOException e) {
+                log.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
+            } catch (IllegalStateException e) {
+                log.error("Illegal state for session {} (likely closing/closed): {}", session.getId(), e.getMessage());
+            } finally {
+                sendStartedAt = 0;
+            }
+            // an evicted session was already reported
+            if (!discarded) {
+                fail();
+            }
+            return false;
+        }
+
+        private void evict(String reason) {
+            log.warn("Evicting slow WebSocket session {} ({}): {} message(s), {} byte(s) queued", session.getId(),
+                    reason, size.get(), bytes.get());
+            meterRegistry.counter(EVICTED_METRIC, "reason", reason).increment();
+            fail();
+            try {
+                session.close(SLOW_CONSUMER);
+            } catch (IOException e) {
+                log.warn("Failed to close slow session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+
+        private void fail() {
+            queues.remove(session, this);
+            discard();
+            failureHandler.accept(session);
+        }
+
+        private void discard() {
+            if (discarded) {
+                return;
+            }
+            discarded = true;
+            messages.clear();
+            size.set(0);
+            bytes.set(0);
+            meterRegistry.remove(depthGauge);
+        }
+    }
+}
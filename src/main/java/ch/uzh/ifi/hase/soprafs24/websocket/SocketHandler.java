@@ -2,13 +2,12 @@ package ch.uzh.ifi.hase.soprafs24.websocket;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
-import ch.uzh.ifi.hase.soprafs24.entity.Task;
 import ch.uzh.ifi.hase.soprafs24.repository.TeamRepository;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
-import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
+import ch.uzh.ifi.hase.soprafs24.websocket.WebSocketMessageEncoder.Encoding;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -18,14 +17,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.Map;
 import java.util.ArrayList;
 
@@ -33,54 +37,63 @@ import java.util.ArrayList;
 public class SocketHandler extends TextWebSocketHandler {
 
     private static final Logger log = LoggerFactory.getLogger(SocketHandler.class);
-    private final List<WebSocketSession> sessions = new CopyOnWriteArrayList<>();
+    static final String ENCODING_ATTRIBUTE = "encoding";
+    static final String CONNECTED_AT_ATTRIBUTE = "connectedAt";
+    static final String LAST_SEEN_ATTRIBUTE = "lastSeen";
+    static final String LAST_PING_ATTRIBUTE = "lastPing";
+    // all sessions of this instance, indexed by user and team
+    private final SessionRegistry sessions = new SessionRegistry();
     private final Map<Long, WebSocketSession> pendingSessionsMap = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper;
     private final UserService userService;
     private final TeamRepository teamRepository;
     private final TaskService taskService;
+    private final SessionSendQueues sendQueues;
+    private final WebSocketMessageEncoder messageEncoder;
 
     @Autowired
     public SocketHandler(UserService userService, TeamRepository teamRepository,
-            TaskService taskService) {
+            TaskService taskService, SessionSendQueues sendQueues, WebSocketMessageEncoder messageEncoder) {
         this.userService = userService;
         this.teamRepository = teamRepository;
         this.taskService = taskService;
+        this.sendQueues = sendQueues;
+        this.messageEncoder = messageEncoder;
+        this.sendQueues.setFailureHandler(this::removeClosedSession);
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
     }
 
-    private void closeExistingSessionForUser(Long userId) {
-        if (userId == null)
+    private void closePreviousSessionOfUser(Long userId, WebSocketSession session) {
+        if (session == null || !session.isOpen())
             return;
-        for (WebSocketSession session : new ArrayList<>(sessions)) {
-            Long sessionUserId = (Long) session.getAttributes().get("userId");
-            if (userId.equals(sessionUserId) && session.isOpen()) {
-                try {
-                    log.info("Closing previous WebSocket session {} for user {} due to new login.", session.getId(),
-                            userId);
-                    session.close(CloseStatus.NORMAL.withReason("New login from another device or tab"));
-                } catch (IOException e) {
-                    log.warn("Failed to close previous session for user {}: {}", userId, e.getMessage());
-                }
-            }
+        try {
+            log.info("Closing previous WebSocket session {} for user {} due to new login.", session.getId(),
+                    userId);
+            session.close(CloseStatus.NORMAL.withReason("New login from another device or tab"));
+        } catch (IOException e) {
+            log.warn("Failed to close previous session for user {}: {}", userId, e.getMessage());
         }
     }
 
     void sendCurrentTasksForTeam(WebSocketSession session, Long teamId) throws IOException {
-        List<Task> teamTasks = taskService.getAllTasks().stream()
-                .filter(t -> teamId.equals(t.getTeamId()))
-                .toList();
-        List<TaskGetDTO> taskDTOs = teamTasks.stream()
-                .map(DTOMapper.INSTANCE::convertEntityToTaskGetDTO)
-                .toList();
-        DatabaseChangeEventDTO<List<TaskGetDTO>> event = new DatabaseChangeEventDTO<>("TASKS", taskDTOs);
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(event)));
+        // carries the sequence number of the last task event it contains
+        DatabaseChangeEventDTO<List<TaskGetDTO>> event = taskService.getTaskSnapshot(teamId);
+        sendQueues.send(session, messageEncoder.encode(event, encodingOf(session)));
+    }
+
+    // events use the encoding the client asked for during auth, control messages are always JSON text
+    private static Encoding encodingOf(WebSocketSession session) {
+        Encoding encoding = (Encoding) session.getAttributes().get(ENCODING_ATTRIBUTE);
+        return encoding != null ? encoding : Encoding.JSON;
     }
 
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        long now = System.currentTimeMillis();
+        session.getAttributes().put(CONNECTED_AT_ATTRIBUTE, now);
+        session.getAttributes().put(LAST_SEEN_ATTRIBUTE, now);
         sessions.add(session);
         log.info("Plain WebSocket connection established: {} from {}. Awaiting authentication message.",
                 session.getId(), session.getRemoteAddress());
@@ -88,6 +101,7 @@ public class SocketHandler extends TextWebSocketHandler {
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        session.getAttributes().put(LAST_SEEN_ATTRIBUTE, System.currentTimeMillis());
         Boolean authenticated = (Boolean) session.getAttributes().get("authenticated");
 
         if (Boolean.TRUE.equals(authenticated)) {
@@ -129,6 +143,23 @@ public class SocketHandler extends TextWebSocketHandler {
 
                     }
                 }
+            } else if ("HEARTBEAT".equalsIgnoreCase(messageType)) {
+                // keeps the task lock leases of an open editor alive
+                try {
+                    taskService.renewTaskLocks(userId);
+                } catch (Exception e) {
+                    log.error("Error processing HEARTBEAT for user {}: {}", userId, e.getMessage());
+                }
+            } else if ("SNAPSHOT".equalsIgnoreCase(messageType)) {
+                // the client missed a task event (gap in the sequence numbers) and resyncs
+                Long teamId = (Long) session.getAttributes().get("teamId");
+                if (teamId != null) {
+                    try {
+                        sendCurrentTasksForTeam(session, teamId);
+                    } catch (Exception e) {
+                        log.error("Error processing SNAPSHOT for user {}: {}", userId, e.getMessage());
+                    }
+                }
             } else {
 
                 log.info("Received message of type '{}' from authenticated session {}.", messageType, session.getId());
@@ -165,6 +196,8 @@ public class SocketHandler extends TextWebSocketHandler {
                 handleAuthInconsistency(session, tokenToValidate);
                 return;
             }
+            session.getAttributes().put(ENCODING_ATTRIBUTE,
+                    Encoding.fromName(jsonNode.path("encoding").asText(null)));
             handleSuccessfulAuthentication(session, user);
         } catch (JsonProcessingException e) {
             handleJsonProcessingException(session, payload, e);
@@ -233,14 +266,13 @@ public class SocketHandler extends TextWebSocketHandler {
     }
 
     private void handleSuccessfulAuthentication(WebSocketSession session, User user) throws IOException {
-        closeExistingSessionForUser(user.getId());
-        session.getAttributes().put("userId", user.getId());
+        closePreviousSessionOfUser(user.getId(), sessions.bindUser(session, user.getId()));
         session.getAttributes().put("authenticated", true);
 
         if (user.getTeamId() != null) {
             Team userTeam = teamRepository.findTeamById(user.getTeamId());
             if (userTeam != null) {
-                session.getAttributes().put("teamId", userTeam.getId());
+                sessions.assignTeam(session, userTeam.getId());
                 log.info(
                         "WebSocket session {} authenticated for user: {}, userId: {}, teamId: {}",
                         session.getId(), user.getUsername(), user.getId(), userTeam.getId());
@@ -259,8 +291,10 @@ public class SocketHandler extends TextWebSocketHandler {
                     "WebSocket session {} authenticated for user: {}, userId: {}. User is not in any team. Session stored pending team assignment.",
                     session.getId(), user.getUsername(), user.getId());
         }
-        session.sendMessage(new TextMessage(
-                "{\"type\":\"auth_success\",\"message\":\"Authentication successful\"}"));
+        // confirms the encoding of the events, unknown encodings fall back to JSON
+        sendQueues.send(session, new TextMessage(String.format(
+                "{\"type\":\"auth_success\",\"message\":\"Authentication successful\",\"encoding\":\"%s\"}",
+                encodingOf(session).name().toLowerCase(Locale.ROOT))));
     }
 
     private void handleJsonProcessingException(WebSocketSession session, String payload, JsonProcessingException e) throws IOException {
@@ -287,11 +321,11 @@ public class SocketHandler extends TextWebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        sendQueues.remove(session);
         boolean removedFromSessions = sessions.remove(session);
         Long userId = (Long) session.getAttributes().get("userId");
         boolean removedFromPending = false;
         if (userId != null) {
-
             removedFromPending = pendingSessionsMap.remove(userId, session);
         }
         log.info(
@@ -301,10 +335,105 @@ public class SocketHandler extends TextWebSocketHandler {
                 taskService.unlockAllTasksForUser(userId);
     }
 
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        // answer to the server ping of the reaper, the peer is alive
+        session.getAttributes().put(LAST_SEEN_ATTRIBUTE, System.currentTimeMillis());
+    }
+
+    /**
+     * Run periodically by SessionReaper. Closes sessions that did not
+     * authenticate within authTimeoutMillis and authenticated sessions that sent
+     * nothing (not even a pong) for idleTimeoutMillis, pings the others every
+     * pingIntervalMillis and drops closed sessions the container did not report.
+     * Sessions stuck in a send for longer than the send time limit are evicted
+     * first, so they give back their send thread.
+     */
+    void reapSessions(long now, long authTimeoutMillis, long idleTimeoutMillis, long pingIntervalMillis) {
+        sendQueues.evictStalled(now);
+        for (WebSocketSession session : new ArrayList<>(sessions.getAll())) {
+            Map<String, Object> attributes = session.getAttributes();
+            if (!session.isOpen()) {
+                log.info("Reaper removed closed session {} that was still tracked.", session.getId());
+                removeClosedSession(session);
+                releaseTaskLocks(session);
+                continue;
+            }
+            boolean authenticated = Boolean.TRUE.equals(attributes.get("authenticated"));
+            if (!authenticated) {
+                if (now - timestamp(attributes, CONNECTED_AT_ATTRIBUTE, now) > authTimeoutMillis) {
+                    log.info("Closing session {}: not authenticated within {} ms.", session.getId(), authTimeoutMillis);
+                    reap(session, CloseStatus.POLICY_VIOLATION.withReason("Authentication timeout"));
+                }
+                continue;
+            }
+            if (now - timestamp(attributes, LAST_SEEN_ATTRIBUTE, now) > idleTimeoutMillis) {
+                log.info("Closing session {} of user {}: no message or pong for {} ms.", session.getId(),
+                        attributes.get("userId"), idleTimeoutMillis);
+                reap(session, CloseStatus.SESSION_NOT_RELIABLE.withReason("Heartbeat timeout"));
+                continue;
+            }
+            if (now - timestamp(attributes, LAST_PING_ATTRIBUTE, 0L) >= pingIntervalMillis) {
+                attributes.put(LAST_PING_ATTRIBUTE, now);
+                // queued like any other message, so it is never written concurrently
+                sendQueues.send(session, new PingMessage());
+            }
+        }
+        pendingSessionsMap.forEach((userId, session) -> {
+            if (!session.isOpen() || !sessions.getAll().contains(session)) {
+                if (pendingSessionsMap.remove(userId, session)) {
+                    log.info("Reaper removed stale pending session {} of user {}.", session.getId(), userId);
+                }
+            }
+        });
+    }
+
+    private void reap(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.warn("Failed to close session {}: {}", session.getId(), e.getMessage());
+        }
+        // afterConnectionClosed usually follows, but a dead peer may never complete the close
+        removeClosedSession(session);
+        releaseTaskLocks(session);
+    }
+
+    private void releaseTaskLocks(WebSocketSession session) {
+        Long userId = (Long) session.getAttributes().get("userId");
+        if (userId != null && sessions.getByUser(userId) == null) {
+            taskService.unlockAllTasksForUser(userId);
+        }
+    }
+
+    private static long timestamp(Map<String, Object> attributes, String name, long defaultValue) {
+        Object value = attributes.get(name);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    int countConnectedSessions() {
+        return sessions.getAll().size();
+    }
+
+    int countAuthenticatedSessions() {
+        int count = 0;
+        for (WebSocketSession session : sessions.getAll()) {
+            if (Boolean.TRUE.equals(session.getAttributes().get("authenticated"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int countPendingSessions() {
+        return pendingSessionsMap.size();
+    }
+
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         log.error("Plain WebSocket transport error for session {}: {}", session.getId(), exception.getMessage(),
                 exception);
+        sendQueues.remove(session);
         boolean removedFromSessions = sessions.remove(session);
         Long userId = (Long) session.getAttributes().get("userId");
         boolean removedFromPending = false;
@@ -326,13 +455,13 @@ public class SocketHandler extends TextWebSocketHandler {
     public void associateSessionWithTeam(Long userId, Long teamId) {
         WebSocketSession session = pendingSessionsMap.get(userId);
         if (session != null && session.isOpen()) {
-            session.getAttributes().put("teamId", teamId);
+            sessions.assignTeam(session, teamId);
             pendingSessionsMap.remove(userId, session);
             log.info("WebSocket session {} re-associated with teamId: {} for userId: {}", session.getId(), teamId,
                     userId);
             try {
 
-                session.sendMessage(
+                sendQueues.send(session,
                         new TextMessage(objectMapper
                                 .writeValueAsString(Map.of("type", "team_association_complete", "teamId", teamId))));
                 sendCurrentTasksForTeam(session, teamId);
@@ -362,18 +491,10 @@ public class SocketHandler extends TextWebSocketHandler {
             return;
         }
 
-        WebSocketSession sessionToPend = null;
-
-        for (WebSocketSession session : this.sessions) {
-            Long sessionUserId = (Long) session.getAttributes().get("userId");
-            if (userId.equals(sessionUserId)) {
-                sessionToPend = session;
-                break;
-            }
-        }
+        WebSocketSession sessionToPend = sessions.getByUser(userId);
 
         if (sessionToPend != null && sessionToPend.isOpen()) {
-            Object oldTeamId = sessionToPend.getAttributes().remove("teamId");
+            Long oldTeamId = sessions.clearTeam(sessionToPend);
 
             if (sessionToPend.getAttributes().get("authenticated") == null) {
                 sessionToPend.getAttributes().put("authenticated", true);
@@ -389,7 +510,7 @@ public class SocketHandler extends TextWebSocketHandler {
                         sessionToPend.getId(), sessionToPend.getRemoteAddress());
             }
             try {
-                sessionToPend.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                sendQueues.send(sessionToPend, new TextMessage(objectMapper.writeValueAsString(
                         Map.of("type", "session_pending", "message", "Your session is now pending team assignment."))));
             } catch (IOException e) {
                 log.error("Failed to send session_pending message to session {} for user {}: {}", sessionToPend.getId(),
@@ -420,14 +541,7 @@ public class SocketHandler extends TextWebSocketHandler {
             return;
         }
 
-        WebSocketSession sessionToClose = null;
-        for (WebSocketSession session : this.sessions) {
-            Long sessionUserId = (Long) session.getAttributes().get("userId");
-            if (userId.equals(sessionUserId)) {
-                sessionToClose = session;
-                break;
-            }
-        }
+        WebSocketSession sessionToClose = sessions.getByUser(userId);
 
         if (sessionToClose != null) {
             if (sessionToClose.isOpen()) {
@@ -458,8 +572,8 @@ public class SocketHandler extends TextWebSocketHandler {
             log.warn("Attempted to broadcast a null payload to all. Skipping.");
             return;
         }
-        List<WebSocketSession> authenticatedSessions = new CopyOnWriteArrayList<>();
-        for (WebSocketSession session : this.sessions) {
+        List<WebSocketSession> authenticatedSessions = new ArrayList<>();
+        for (WebSocketSession session : this.sessions.getAll()) {
             Boolean authenticated = (Boolean) session.getAttributes().get("authenticated");
             if (session.isOpen() && Boolean.TRUE.equals(authenticated)) {
                 authenticatedSessions.add(session);
@@ -480,25 +594,19 @@ public class SocketHandler extends TextWebSocketHandler {
         List<WebSocketSession> teamSessionsToSend = new ArrayList<>();
         List<WebSocketSession> sessionsToRemove = new ArrayList<>();
 
-        for (WebSocketSession session : this.sessions) {
+        // only the sessions of the team are visited
+        for (WebSocketSession session : this.sessions.getByTeam(teamId)) {
             if (!session.isOpen()) {
                 sessionsToRemove.add(session);
-                Long sessionUserId = (Long) session.getAttributes().get("userId");
-                if (sessionUserId != null) {
-                    pendingSessionsMap.remove(sessionUserId, session);
-                }
                 continue;
             }
             Boolean authenticated = (Boolean) session.getAttributes().get("authenticated");
             if (Boolean.TRUE.equals(authenticated)) {
-                Long sessionTeamId = (Long) session.getAttributes().get("teamId");
-                if (teamId.equals(sessionTeamId)) {
-                    teamSessionsToSend.add(session);
-                }
+                teamSessionsToSend.add(session);
             }
         }
         if (!sessionsToRemove.isEmpty()) {
-            this.sessions.removeAll(sessionsToRemove);
+            sessionsToRemove.forEach(this::removeClosedSession);
             log.debug("Removed {} closed sessions during team broadcast filtering.", sessionsToRemove.size());
         }
 
@@ -514,16 +622,14 @@ public class SocketHandler extends TextWebSocketHandler {
 
     private void sendMessageToSessions(List<WebSocketSession> targetSessions, Object dataPayload) {
         try {
-            String messageJson = objectMapper.writeValueAsString(dataPayload);
-            TextMessage textMessage = new TextMessage(messageJson);
-            int sentCount = sendMessagesToOpenSessions(targetSessions, textMessage);
+            int sentCount = sendMessagesToOpenSessions(targetSessions, dataPayload);
 
             if (sentCount > 0) {
-                log.info("Sent message to {} session(s). Message starts with: {}", sentCount,
-                        messageJson.substring(0, Math.min(messageJson.length(), 100)));
+                log.info("Queued message for {} session(s). Payload type: {}", sentCount,
+                        dataPayload.getClass().getSimpleName());
             } else {
-                log.info("No open sessions in the target list to send message: {}",
-                        messageJson.substring(0, Math.min(messageJson.length(), 100)));
+                log.info("No open sessions in the target list to send message. Payload type: {}",
+                        dataPayload.getClass().getSimpleName());
             }
         } catch (IOException e) {
             log.error("Failed to serialize data payload for WebSocket broadcast: {}",
@@ -531,13 +637,22 @@ public class SocketHandler extends TextWebSocketHandler {
         }
     }
 
-    private int sendMessagesToOpenSessions(List<WebSocketSession> targetSessions, TextMessage textMessage) {
+    private int sendMessagesToOpenSessions(List<WebSocketSession> targetSessions, Object dataPayload)
+            throws IOException {
         int sentCount = 0;
         List<WebSocketSession> sessionsToRemove = new ArrayList<>();
+        // the payload is encoded once per encoding in use, not once per session
+        Map<Encoding, WebSocketMessage<?>> messages = new EnumMap<>(Encoding.class);
 
         for (WebSocketSession session : targetSessions) {
             if (session.isOpen()) {
-                if (sendMessageToSession(session, textMessage)) {
+                Encoding encoding = encodingOf(session);
+                WebSocketMessage<?> message = messages.get(encoding);
+                if (message == null) {
+                    message = messageEncoder.encode(dataPayload, encoding);
+                    messages.put(encoding, message);
+                }
+                if (sendMessageToSession(session, message)) {
                     sentCount++;
                 }
             } else {
@@ -545,35 +660,21 @@ public class SocketHandler extends TextWebSocketHandler {
             }
         }
         if (!sessionsToRemove.isEmpty()) {
-            this.sessions.removeAll(sessionsToRemove);
             for (WebSocketSession removedSession : sessionsToRemove) {
-                Long userId = (Long) removedSession.getAttributes().get("userId");
-                if (userId != null) {
-                    this.pendingSessionsMap.remove(userId, removedSession);
-                }
+                removeClosedSession(removedSession);
                 log.debug("Removed closed session {} during batch send.", removedSession.getId());
             }
         }
         return sentCount;
     }
 
-    private boolean sendMessageToSession(WebSocketSession session, TextMessage textMessage) {
-        try {
-
-            session.sendMessage(textMessage);
-
-            return true;
-        } catch (IOException e) {
-            log.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
-            removeClosedSession(session);
-        } catch (IllegalStateException e) {
-            log.error("Illegal state for session {} (likely closing/closed): {}", session.getId(), e.getMessage());
-            removeClosedSession(session);
-        }
-        return false;
+    // only queues the message, the send threads write it (see SessionSendQueues)
+    private boolean sendMessageToSession(WebSocketSession session, WebSocketMessage<?> message) {
+        return sendQueues.send(session, message);
     }
 
     private void removeClosedSession(WebSocketSession session) {
+        sendQueues.remove(session);
         boolean removedMain = this.sessions.remove(session);
         Long userId = (Long) session.getAttributes().get("userId");
         boolean removedPending = false;
@@ -586,8 +687,27 @@ public class SocketHandler extends TextWebSocketHandler {
         }
     }
 
-    public List<WebSocketSession> getSessionsForTesting() {
-        return sessions;
+    public Collection<WebSocketSession> getSessionsForTesting() {
+        return sessions.getAll();
+    }
+
+    /**
+     * Registers a session and indexes it by its current userId and teamId attributes.
+     */
+    public void registerSessionForTesting(WebSocketSession session) {
+        sessions.add(session);
+        Long userId = (Long) session.getAttributes().get("userId");
+        if (userId != null) {
+            sessions.bindUser(session, userId);
+        }
+        Long teamId = (Long) session.getAttributes().get("teamId");
+        if (teamId != null) {
+            sessions.assignTeam(session, teamId);
+        }
+    }
+
+    public void clearSessionsForTesting() {
+        sessions.clear();
     }
 
     public Map<Long, WebSocketSession> getPendingSessionsMapForTesting() {
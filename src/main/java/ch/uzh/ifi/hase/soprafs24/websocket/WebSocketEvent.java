@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * An event on the WebSocketEventBus: the message for the clients and the team
+ * whose sessions receive it (null: all authenticated sessions).
+ */
+@Getter
+@AllArgsConstructor
+public class WebSocketEvent {
+    private final Long teamId;
+    private final DatabaseChangeEventDTO<?> event;
+}
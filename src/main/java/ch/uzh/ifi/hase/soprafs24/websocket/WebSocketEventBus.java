@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import java.util.function.Consumer;
+
+/**
+ * Fans WebSocket events out to all instances of the application.
+ * Every instance subscribes and delivers the events to the sessions it holds
+ * itself, so members of a team reach each other on whichever instance they
+ * are connected to. The implementation is chosen with websocket.event-bus:
+ * "memory" (single instance, default) or "database" (shared event table).
+ */
+public interface WebSocketEventBus {
+
+    /**
+     * Publishes an event to the subscribers of all instances, including this one.
+     */
+    void publish(WebSocketEvent event);
+
+    /**
+     * Registers a subscriber that is called once per published event.
+     */
+    void subscribe(Consumer<WebSocketEvent> subscriber);
+}
@@ -0,0 +1,88 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes the events sent to the WebSocket clients. JSON is sent as text
+ * frames, a client can ask for Smile or CBOR during auth and then receives
+ * binary frames, which drop the repeated field names and are smaller.
+ * The distribution summary websocket.message.size (bytes) and the timer
+ * websocket.message.encode, both tagged with the encoding, allow comparing
+ * the encodings.
+ */
+@Component
+public class WebSocketMessageEncoder {
+
+    static final String SIZE_METRIC = "websocket.message.size";
+    static final String ENCODE_METRIC = "websocket.message.encode";
+
+    public enum Encoding {
+        JSON, SMILE, CBOR;
+
+        /**
+         * @return The encoding with this name, JSON if it is null or unknown.
+         */
+        public static Encoding fromName(String name) {
+            if (name != null) {
+                for (Encoding encoding : values()) {
+                    if (encoding.name().equals(name.toUpperCase(Locale.ROOT))) {
+                        return encoding;
+                    }
+                }
+            }
+            return JSON;
+        }
+    }
+
+    private final Map<Encoding, ObjectMapper> objectMappers = new EnumMap<>(Encoding.class);
+    private final Map<Encoding, DistributionSummary> sizes = new EnumMap<>(Encoding.class);
+    private final Map<Encoding, Timer> encodeTimes = new EnumMap<>(Encoding.class);
+
+    @Autowired
+    public WebSocketMessageEncoder(MeterRegistry meterRegistry) {
+        objectMappers.put(Encoding.JSON, new ObjectMapper());
+        objectMappers.put(Encoding.SMILE, new ObjectMapper(new SmileFactory()));
+        objectMappers.put(Encoding.CBOR, new ObjectMapper(new CBORFactory()));
+        for (Encoding encoding : Encoding.values()) {
+            objectMappers.get(encoding).registerModule(new JavaTimeModule());
+            String tag = encoding.name().toLowerCase(Locale.ROOT);
+            sizes.put(encoding, DistributionSummary.builder(SIZE_METRIC)
+                    .baseUnit("bytes")
+                    .tag("encoding", tag)
+                    .register(meterRegistry));
+            encodeTimes.put(encoding, Timer.builder(ENCODE_METRIC)
+                    .tag("encoding", tag)
+                    .register(meterRegistry));
+        }
+    }
+
+    public WebSocketMessage<?> encode(Object payload, Encoding encoding) throws JsonProcessingException {
+        long start = System.nanoTime();
+        WebSocketMessage<?> message;
+        if (encoding == Encoding.JSON) {
+            message = new TextMessage(objectMappers.get(encoding).writeValueAsString(payload));
+        } else {
+            message = new BinaryMessage(objectMappers.get(encoding).writeValueAsBytes(payload));
+        }
+        encodeTimes.get(encoding).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        sizes.get(encoding).record(message.getPayloadLength());
+        return message;
+    }
+}
@@ -0,0 +1,17 @@
+-- Pending Google Calendar syncs, written with the task change and drained by the CalendarSyncWorker
+CREATE SEQUENCE IF NOT EXISTS calendar_sync_outbox_sequence START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE IF NOT EXISTS calendar_sync_outbox (
+    id              BIGINT       NOT NULL PRIMARY KEY,
+    task_id         BIGINT       NOT NULL,
+    user_id         BIGINT       NOT NULL,
+    action          VARCHAR(255) NOT NULL,
+    google_event_id VARCHAR(255),
+    attempts        INTEGER      NOT NULL,
+    next_attempt_at TIMESTAMP    NOT NULL,
+    created_at      TIMESTAMP    NOT NULL,
+    last_error      VARCHAR(255)
+);
+
+CREATE INDEX IF NOT EXISTS idx_calendar_sync_due ON calendar_sync_outbox (next_attempt_at);
+CREATE INDEX IF NOT EXISTS idx_calendar_sync_task ON calendar_sync_outbox (task_id);
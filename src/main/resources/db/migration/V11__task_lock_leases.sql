@@ -0,0 +1,6 @@
+-- Task locks are leases on the task row: locked_by_user holds the lock until lock_expires_at,
+-- written only by the conditional updates of the TaskLockService
+ALTER TABLE task ADD COLUMN IF NOT EXISTS lock_expires_at TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_task_locked_by ON task (locked_by_user);
+CREATE INDEX IF NOT EXISTS idx_task_lock_expires ON task (lock_expires_at);
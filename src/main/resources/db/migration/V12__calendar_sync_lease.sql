@@ -0,0 +1,7 @@
+-- Google Calendar syncs are leased per task, so two instances never push the same task at once;
+-- the row also keeps the event id last written by the worker for the DELETE of the task
+CREATE TABLE IF NOT EXISTS calendar_sync_lease (
+    task_id         BIGINT       NOT NULL PRIMARY KEY,
+    leased_until    TIMESTAMP    NOT NULL,
+    google_event_id VARCHAR(255)
+);
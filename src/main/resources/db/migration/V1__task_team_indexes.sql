@@ -0,0 +1,3 @@
+-- Team-scoped task lookups (TaskRepository.findTaskByTeamIdAnd...)
+CREATE INDEX IF NOT EXISTS idx_task_team_active ON task (team_id, active_status);
+CREATE INDEX IF NOT EXISTS idx_task_team_assignee ON task (team_id, is_assigned_to);
@@ -0,0 +1,9 @@
+-- Persisted "visible from" day (epoch day) of a task: deadline - days_visible + 1
+ALTER TABLE task ADD COLUMN IF NOT EXISTS visible_from BIGINT;
+
+UPDATE task
+SET visible_from = (CAST(deadline AS DATE) - DATE '1970-01-01') - days_visible + 1
+WHERE deadline IS NOT NULL AND days_visible IS NOT NULL;
+
+DROP INDEX IF EXISTS idx_task_team_active;
+CREATE INDEX IF NOT EXISTS idx_task_team_active_visible ON task (team_id, active_status, visible_from);
@@ -0,0 +1,4 @@
+-- Per-user task lookups (assignee, creator, lock holder)
+CREATE INDEX IF NOT EXISTS idx_task_assignee ON task (is_assigned_to);
+CREATE INDEX IF NOT EXISTS idx_task_creator ON task (creator_id);
+CREATE INDEX IF NOT EXISTS idx_task_locked_by ON task (locked_by_user);
@@ -0,0 +1,19 @@
+-- Expired-task selection (active_status = true AND deadline < today)
+CREATE INDEX IF NOT EXISTS idx_task_active_deadline ON task (active_status, deadline);
+
+-- Resumable expiry runs
+CREATE SEQUENCE IF NOT EXISTS task_expiry_job_sequence START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE IF NOT EXISTS task_expiry_job (
+    id              BIGINT       NOT NULL PRIMARY KEY,
+    status          VARCHAR(255) NOT NULL,
+    cutoff_date     TIMESTAMP    NOT NULL,
+    last_task_id    BIGINT       NOT NULL,
+    processed_tasks INTEGER      NOT NULL,
+    started_at      TIMESTAMP    NOT NULL,
+    updated_at      TIMESTAMP    NOT NULL,
+    finished_at     TIMESTAMP,
+    last_error      VARCHAR(255)
+);
+
+CREATE INDEX IF NOT EXISTS idx_expiry_job_cutoff_status ON task_expiry_job (cutoff_date, status);
@@ -0,0 +1,11 @@
+-- Ids are now allocated with the pooled-lo optimizer (increment_size = 50):
+-- every nextval reserves a block of 50 ids, starting at the returned value.
+-- The sequences must step by the same amount, otherwise blocks overlap.
+ALTER SEQUENCE task_sequence INCREMENT BY 50;
+ALTER SEQUENCE user_sequence INCREMENT BY 50;
+ALTER SEQUENCE team_sequence INCREMENT BY 50;
+
+-- Skip past ids already handed out with the old increment of 1
+SELECT setval('task_sequence', COALESCE((SELECT MAX(id) FROM task), 0) + 1, false);
+SELECT setval('user_sequence', COALESCE((SELECT MAX(id) FROM users), 0) + 1, false);
+SELECT setval('team_sequence', COALESCE((SELECT MAX(id) FROM team), 0) + 1, false);
@@ -0,0 +1,24 @@
+-- Team membership moves from the TEAM_MEMBERS element collection to one row per member
+CREATE SEQUENCE IF NOT EXISTS team_membership_sequence START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS team_membership (
+    id      BIGINT NOT NULL PRIMARY KEY,
+    team_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_team_membership_team_user ON team_membership (team_id, user_id);
+CREATE INDEX IF NOT EXISTS idx_team_membership_user ON team_membership (user_id);
+
+-- Backfill from the old collection table (duplicates collapse into one row)
+INSERT INTO team_membership (id, team_id, user_id)
+SELECT ROW_NUMBER() OVER (ORDER BY m.team_id, m.members), m.team_id, m.members
+FROM (
+    SELECT DISTINCT team_id, members
+    FROM team_members
+    WHERE members IS NOT NULL
+) m;
+
+SELECT setval('team_membership_sequence', COALESCE((SELECT MAX(id) FROM team_membership), 0) + 1, false);
+
+DROP TABLE team_members;
@@ -0,0 +1,4 @@
+-- Task locks are leases held in memory by the application, locked_by_user is no longer written
+UPDATE task SET locked_by_user = NULL WHERE locked_by_user IS NOT NULL;
+
+DROP INDEX IF EXISTS idx_task_locked_by;
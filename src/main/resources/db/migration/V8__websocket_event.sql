@@ -0,0 +1,12 @@
+-- Shared WebSocket events, every instance delivers them to its own sessions
+CREATE SEQUENCE IF NOT EXISTS websocket_event_sequence START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE IF NOT EXISTS websocket_event (
+    id          BIGINT       NOT NULL PRIMARY KEY,
+    origin_node VARCHAR(255) NOT NULL,
+    team_id     BIGINT,
+    payload     TEXT         NOT NULL,
+    created_at  TIMESTAMP    NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_websocket_event_created ON websocket_event (created_at);
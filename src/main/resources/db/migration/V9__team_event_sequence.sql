@@ -0,0 +1,5 @@
+-- Sequence number of the last task event per team, WebSocket clients use it to detect gaps
+CREATE TABLE IF NOT EXISTS team_event_sequence (
+    team_id       BIGINT NOT NULL PRIMARY KEY,
+    last_sequence BIGINT NOT NULL
+);
@@ -1,9 +1,12 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.GoogleToken;
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.repository.GoogleTokenRepository;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
 import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
 import ch.uzh.ifi.hase.soprafs24.service.TeamService;
@@ -66,9 +69,7 @@ class CalendarControllerTest {
     void POST_syncAllActiveTasks_valid_returns200() throws Exception {
         // assuming token maps to userId = 1
         doNothing().when(calendarService).syncAllActiveTasksToUserCalendar(anyLong());
-        // Also stub the userService mock
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(1L);
+        authenticate(validToken, 1L);
 
         // set any required fields on fakeGoogleToken if needed
         GoogleToken fakeGoogleToken = new GoogleToken();
@@ -85,8 +86,7 @@ class CalendarControllerTest {
 
     @Test
     void GET_userCalendarEvents_valid_returns200() throws Exception {
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(1L);
+        authenticate(validToken, 1L);
         when(calendarService.getUserGoogleCalendarEvents("2023-01-01", "2023-12-31", 1L))
             .thenReturn(Collections.emptyList());
 
@@ -128,8 +128,7 @@ class CalendarControllerTest {
 
     @Test
     void GET_generateAuthUrl_valid_returns200WithUrl() throws Exception {
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(1L);
+        authenticate(validToken, 1L);
         when(calendarService.generateAuthUrl(1L)).thenReturn("http://auth.url");
 
         mockMvc.perform(get("/calendar/auth-url")
@@ -141,8 +140,7 @@ class CalendarControllerTest {
 
     @Test
     void GET_generateAuthUrl_throwsException_returns500() throws Exception {
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(1L);
+        authenticate(validToken, 1L);
         when(calendarService.generateAuthUrl(1L))
             .thenThrow(new RuntimeException("Failed"));
 
@@ -156,7 +154,7 @@ class CalendarControllerTest {
     @Test
     void GET_userCalendarEvents_throwsUnauthorized_returns401() throws Exception {
         // Simulate token validation failure
-        when(userService.validateToken(validToken)).thenReturn(false);
+        when(userService.getAuthenticatedUser(validToken)).thenReturn(null);
 
         mockMvc.perform(get("/calendar/events")
                 .param("userId", "1")
@@ -175,8 +173,7 @@ class CalendarControllerTest {
         mockEvent.setId("eventId123");
         mockEvent.setSummary("Test Event");
 
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(1L);
+        authenticate(validToken, 1L);
         when(calendarService.getEventById("eventId123", 1L)).thenReturn(mockEvent);
 
         // set any required fields on fakeGoogleToken if needed
@@ -195,8 +192,7 @@ class CalendarControllerTest {
 
     @Test
     void GET_eventById_invalidEvent_returns404() throws Exception {
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(1L);
+        authenticate(validToken, 1L);
         when(calendarService.getEventById(anyString(), anyLong()))
             .thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Event not found"));
 
@@ -228,8 +224,7 @@ class CalendarControllerTest {
         List<Map<String, Object>> combinedEvents = List.of(googleEventMap, taskEventMap);
 
         // Mock service calls
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(1L);
+        authenticate(validToken, 1L);
         when(calendarService.getCombinedEvents(1L, true, "2025-05-01", "2025-05-15")).thenReturn(combinedEvents);
 
         // set any required fields on fakeGoogleToken if needed
@@ -256,7 +251,7 @@ class CalendarControllerTest {
     @Test
     void GET_combinedCalendar_throwsUnauthorized_returns401() throws Exception {
         // Simulate token validation failure
-        when(userService.validateToken(validToken)).thenReturn(false);
+        when(userService.getAuthenticatedUser(validToken)).thenReturn(null);
 
         mockMvc.perform(get("/calendar/combined")
                 .param("startDate", "2025-05-01")
@@ -266,7 +261,15 @@ class CalendarControllerTest {
 
         // Verify that the calendar and task service methods were not called, as the token validation failed
         verify(calendarService, never()).getUserGoogleCalendarEvents(anyString(), anyString(), anyLong());
-        verify(taskService, never()).getFilteredTasks(anyBoolean(), any());
+        verify(taskService, never()).getFilteredTasksForUser(anyLong(), any(), any());
+    }
+
+    @Test
+    void POST_syncAllActiveTasks_missingAuthorizationHeader_returns401() throws Exception {
+        mockMvc.perform(post("/calendar/sync"))
+            .andExpect(status().isUnauthorized());
+
+        verify(calendarService, never()).syncAllActiveTasksToUserCalendar(anyLong());
     }
 
     @Test
@@ -277,4 +280,10 @@ class CalendarControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(expectedDate));
     }
+
+    private AuthenticatedUser authenticate(String token, Long userId) {
+        AuthenticatedUser user = new AuthenticatedUser(userId, "testUser", 10L, UserStatus.ONLINE, ColorID.C1);
+        when(userService.getAuthenticatedUser(token)).thenReturn(user);
+        return user;
+    }
 }
@@ -1,12 +1,18 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import ch.uzh.ifi.hase.soprafs24.constant.ExpiryJobStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.entity.TaskExpiryJob;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.service.TaskExpiryService;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
 import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.TeamRepository;
@@ -26,6 +32,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.web.server.ResponseStatusException;
@@ -35,6 +42,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.function.Consumer;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
@@ -43,7 +51,9 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
@@ -77,6 +87,9 @@ class TaskControllerTest {
     @MockBean
     private TeamRepository teamRepository;
 
+    @MockBean
+    private TaskExpiryService taskExpiryService;
+
     @Test
     void POST_createTask_validInput_taskCreated() throws Exception {
         Date now = new Date();
@@ -101,8 +114,8 @@ class TaskControllerTest {
         taskPostDTO.setDeadline(now);
     
         String token = "token123";
-        doNothing().when(taskService).validateUserToken(token);
-        given(taskService.createTask(Mockito.any(), Mockito.eq(token))).willReturn(task);
+        AuthenticatedUser user = authenticate(token);
+        given(taskService.createTask(Mockito.any(), Mockito.eq(user))).willReturn(task);
     
         MockHttpServletRequestBuilder postRequest = post("/tasks")
             .contentType(MediaType.APPLICATION_JSON)
@@ -120,14 +133,74 @@ class TaskControllerTest {
            
     }
 
+    @Test
+    void POST_createTasks_validBatch_tasksCreated() throws Exception {
+        Date deadline = new Date(System.currentTimeMillis() + 3600 * 1000);
+        Task first = new Task();
+        first.setId(1L);
+        first.setName("Clean Room");
+        first.setActiveStatus(true);
+        Task second = new Task();
+        second.setId(2L);
+        second.setName("Take out trash");
+        second.setActiveStatus(true);
+
+        TaskPostDTO firstDTO = new TaskPostDTO();
+        firstDTO.setName("Clean Room");
+        firstDTO.setValue(10);
+        firstDTO.setDeadline(deadline);
+        TaskPostDTO secondDTO = new TaskPostDTO();
+        secondDTO.setName("Take out trash");
+        secondDTO.setValue(5);
+        secondDTO.setDeadline(deadline);
+
+        String token = "token123";
+        AuthenticatedUser user = authenticate(token);
+        given(taskService.createTasks(Mockito.anyList(), Mockito.eq(user))).willReturn(Arrays.asList(first, second));
+
+        MockHttpServletRequestBuilder postRequest = post("/tasks/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", "Bearer " + token)
+            .content(asJsonString(Arrays.asList(firstDTO, secondDTO)));
+
+        mockMvc.perform(postRequest)
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].id", is(1)))
+            .andExpect(jsonPath("$[1].name", is("Take out trash")));
+
+        verify(taskService).validateBatchPostDtos(Mockito.anyList());
+        verify(taskService, times(1)).createTasks(Mockito.anyList(), Mockito.eq(user));
+    }
+
+    @Test
+    void POST_createTasks_invalidTask_nothingCreated() throws Exception {
+        TaskPostDTO invalidDTO = new TaskPostDTO();
+        invalidDTO.setName(null);
+
+        String token = "token123";
+        authenticate(token);
+        doThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task 0: Task name cannot be null or empty"))
+            .when(taskService).validateBatchPostDtos(Mockito.anyList());
+
+        MockHttpServletRequestBuilder postRequest = post("/tasks/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", "Bearer " + token)
+            .content(asJsonString(Collections.singletonList(invalidDTO)));
+
+        mockMvc.perform(postRequest)
+            .andExpect(status().isBadRequest());
+
+        verify(taskService, never()).createTasks(Mockito.anyList(), any(AuthenticatedUser.class));
+    }
+
     @Test
     void POST_failedCreateTask_invalidInput_taskNotCreated() throws Exception {
         TaskPostDTO taskPostDTO = new TaskPostDTO();
         taskPostDTO.setName(null);  // Invalid input (null name)
     
         String token = "token123";
-    
-        doNothing().when(taskService).validateUserToken("Bearer " + token);
+        authenticate(token);
     
         // Simulate validation failure
         doThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task name cannot be null"))
@@ -164,7 +237,7 @@ class TaskControllerTest {
         task.setFrequency(3);
 
         // Mock service behavior
-        doNothing().when(taskService).validateUserToken(anyString());
+        authenticate("dummy-token");
         given(taskService.getTaskById(1L)).willReturn(task);
 
         MockHttpServletRequestBuilder getRequest = get("/tasks/{taskId}", 1L)
@@ -219,9 +292,8 @@ class TaskControllerTest {
         String token = "token123";
 
         // Mock service behavior
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(taskService.getFilteredTasks(null, null)).thenReturn(tasks);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        when(taskService.getFilteredTaskDTOs(10L, null, null)).thenReturn(toDTOs(tasks));
+        AuthenticatedUser user = authenticate(token, mockUser);
 
         // Perform the GET request
         MockHttpServletRequestBuilder getRequest = get("/tasks")
@@ -237,9 +309,110 @@ class TaskControllerTest {
             .andExpect(jsonPath("$[1].name", is(task2.getName())));
 
         // Verify that the service methods were called
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(taskService, times(1)).getFilteredTasks(null, null);
-        verify(userRepository, times(1)).findByToken(token);
+        verify(teamService, times(1)).validateTeamPaused(user);
+        verify(taskService, times(1)).getFilteredTaskDTOs(10L, null, null);
+        verify(userService, times(1)).getAuthenticatedUser(token);
+    }
+
+    @Test
+    void GET_getTasks_withAfterIdAndLimit_pageAndNextCursorReturned() throws Exception {
+        Task task1 = new Task();
+        task1.setId(3L);
+        task1.setName("Task 3");
+        task1.setTeamId(10L);
+        Task task2 = new Task();
+        task2.setId(7L);
+        task2.setName("Task 7");
+        task2.setTeamId(10L);
+
+        User mockUser = new User();
+        mockUser.setId(5L);
+        mockUser.setTeamId(10L);
+        String token = "token123";
+
+        AuthenticatedUser user = authenticate(token, mockUser);
+        when(taskService.getFilteredTaskDTOsPage(10L, true, null, 2L, 2)).thenReturn(toDTOs(Arrays.asList(task1, task2)));
+
+        mockMvc.perform(get("/tasks")
+                .param("isActive", "true")
+                .param("afterId", "2")
+                .param("limit", "2")
+                .header("Authorization", "Bearer " + token))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[1].id", is(7)))
+            .andExpect(header().string("X-Next-After-Id", "7"));
+
+        verify(taskService, never()).getFilteredTaskDTOs(anyLong(), any(), any());
+    }
+
+    @Test
+    void GET_getTasks_lastPage_noNextCursor() throws Exception {
+        Task task1 = new Task();
+        task1.setId(3L);
+        task1.setTeamId(10L);
+
+        User mockUser = new User();
+        mockUser.setTeamId(10L);
+        String token = "token123";
+
+        AuthenticatedUser user = authenticate(token, mockUser);
+        when(taskService.getFilteredTaskDTOsPage(10L, null, null, 0L, 5)).thenReturn(toDTOs(Collections.singletonList(task1)));
+
+        mockMvc.perform(get("/tasks")
+                .param("limit", "5")
+                .header("Authorization", "Bearer " + token))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(header().doesNotExist("X-Next-After-Id"));
+    }
+
+    @Test
+    void GET_getTasks_limitTooLarge_badRequest() throws Exception {
+        User mockUser = new User();
+        mockUser.setTeamId(10L);
+        String token = "token123";
+        AuthenticatedUser user = authenticate(token, mockUser);
+
+        mockMvc.perform(get("/tasks")
+                .param("limit", "100000")
+                .header("Authorization", "Bearer " + token))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void GET_streamTasks_writesJsonArray() throws Exception {
+        Task task1 = new Task();
+        task1.setId(3L);
+        task1.setName("Task 3");
+        Task task2 = new Task();
+        task2.setId(7L);
+        task2.setName("Task 7");
+
+        User mockUser = new User();
+        mockUser.setTeamId(10L);
+        String token = "token123";
+
+        AuthenticatedUser user = authenticate(token, mockUser);
+        doAnswer(invocation -> {
+            Consumer<TaskGetDTO> action = invocation.getArgument(3);
+            toDTOs(Arrays.asList(task1, task2)).forEach(action);
+            return null;
+        }).when(taskService).forEachFilteredTaskDTO(eq(10L), isNull(), isNull(), any());
+
+        MvcResult result = mockMvc.perform(get("/tasks")
+                .param("stream", "true")
+                .header("Authorization", "Bearer " + token))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].id", is(3)))
+            .andExpect(jsonPath("$[1].name", is("Task 7")));
+
+        verify(taskService, never()).getFilteredTaskDTOs(anyLong(), any(), any());
     }
 
     @Test
@@ -269,9 +442,8 @@ class TaskControllerTest {
         String type = "personal";
 
         // Mock service behavior
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(taskService.getFilteredTasks(isActive, type)).thenReturn(activeTasks);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        when(taskService.getFilteredTaskDTOs(10L, isActive, type)).thenReturn(toDTOs(activeTasks));
+        AuthenticatedUser user = authenticate(token, mockUser);
 
         // Perform the GET request with parameters
         MockHttpServletRequestBuilder getRequest = get("/tasks")
@@ -288,18 +460,17 @@ class TaskControllerTest {
             .andExpect(jsonPath("$[0].activeStatus", is(true)));
 
         // Verify that the service methods were called with correct parameters
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(taskService, times(1)).getFilteredTasks(isActive, type);
-        verify(userRepository, times(1)).findByToken(token);
+        verify(teamService, times(1)).validateTeamPaused(user);
+        verify(taskService, times(1)).getFilteredTaskDTOs(10L, isActive, type);
+        verify(userService, times(1)).getAuthenticatedUser(token);
     }
 
     @Test
     void GET_getTasks_unauthorized_returnsUnauthorized() throws Exception {
         String token = "invalid-token";
         
-        // Mock service to throw exception for invalid token
-        doThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token"))
-            .when(teamService).validateTeamPaused(token);
+        // the token belongs to no user
+        given(userService.getAuthenticatedUser(token)).willReturn(null);
 
         // Perform the GET request with invalid token
         MockHttpServletRequestBuilder getRequest = get("/tasks")
@@ -309,8 +480,8 @@ class TaskControllerTest {
         mockMvc.perform(getRequest)
             .andExpect(status().isUnauthorized());
 
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(taskService, times(0)).getFilteredTasks(any(), any());
+        verify(teamService, never()).validateTeamPaused(any(AuthenticatedUser.class));
+        verify(taskService, times(0)).getFilteredTaskDTOs(any(), any(), any());
     }
 
     @Test
@@ -322,8 +493,8 @@ class TaskControllerTest {
         mockTask.setId(taskId);
 
         // Mock service behavior for a valid creator
-        doNothing().when(teamService).validateTeamPaused(token);
-        doNothing().when(taskService).validateCreator(token, taskId);
+        AuthenticatedUser user = authenticate(token);
+        doNothing().when(taskService).validateCreator(user, taskId);
         when(taskService.getTaskById(taskId)).thenReturn(mockTask);
         when(taskService.checkTaskType(mockTask)).thenReturn("additional");
 
@@ -336,8 +507,8 @@ class TaskControllerTest {
             .andExpect(status().isOk())
             .andExpect(content().string("true"));
 
-        verify(teamService).validateTeamPaused(token);
-        verify(taskService).validateCreator(token, taskId);
+        verify(teamService).validateTeamPaused(user);
+        verify(taskService).validateCreator(user, taskId);
         verify(taskService).getTaskById(taskId);
         verify(taskService).checkTaskType(mockTask);
     }
@@ -348,9 +519,9 @@ class TaskControllerTest {
         String token = "token123";
 
         // Mock service behavior for an invalid creator
-        doNothing().when(teamService).validateTeamPaused(token);
+        AuthenticatedUser user = authenticate(token);
         doThrow(new ResponseStatusException(HttpStatus.FORBIDDEN, "User is not the creator"))
-            .when(taskService).validateCreator(token, taskId);
+            .when(taskService).validateCreator(user, taskId);
 
         // Perform the GET request
         MockHttpServletRequestBuilder getRequest = get("/tasks/{taskId}/isEditable", taskId)
@@ -361,8 +532,8 @@ class TaskControllerTest {
             .andExpect(status().isOk())
             .andExpect(content().string("false"));
 
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(taskService, times(1)).validateCreator(token, taskId);
+        verify(teamService, times(1)).validateTeamPaused(user);
+        verify(taskService, times(1)).validateCreator(user, taskId);
     }
 
     @Test
@@ -371,8 +542,7 @@ class TaskControllerTest {
         String token = "invalid-token";
 
         // Mock service behavior for an invalid token
-        doThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token"))
-            .when(teamService).validateTeamPaused(token);
+        given(userService.getAuthenticatedUser(token)).willReturn(null);
 
         // Perform the GET request
         MockHttpServletRequestBuilder getRequest = get("/tasks/{taskId}/isEditable", taskId)
@@ -383,8 +553,8 @@ class TaskControllerTest {
             .andExpect(status().isOk())
             .andExpect(content().string("false"));
 
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(taskService, times(0)).validateCreator(anyString(), anyLong());
+        verify(teamService, never()).validateTeamPaused(any(AuthenticatedUser.class));
+        verify(taskService, times(0)).validateCreator(any(AuthenticatedUser.class), anyLong());
     }
 
     @Test
@@ -393,9 +563,9 @@ class TaskControllerTest {
         String token = "token123";
 
         // Mock service behavior for a non-existent task
-        doNothing().when(teamService).validateTeamPaused(token);
+        AuthenticatedUser user = authenticate(token);
         doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Task not found"))
-            .when(taskService).validateCreator(token, nonExistentTaskId);
+            .when(taskService).validateCreator(user, nonExistentTaskId);
 
         // Perform the GET request
         MockHttpServletRequestBuilder getRequest = get("/tasks/{taskId}/isEditable", nonExistentTaskId)
@@ -406,14 +576,14 @@ class TaskControllerTest {
             .andExpect(status().isOk())
             .andExpect(content().string("false"));
 
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(taskService, times(1)).validateCreator(token, nonExistentTaskId);
+        verify(teamService, times(1)).validateTeamPaused(user);
+        verify(taskService, times(1)).validateCreator(user, nonExistentTaskId);
     }
 
     @Test
     void GET_getTaskById_invalidTaskId_taskNotFound() throws Exception {
         // Mock service behavior for invalid task ID (task not found)
-        doNothing().when(teamService).validateTeamPaused(anyString());
+        authenticate("dummy-token");
         given(taskService.getTaskById(999L)).willReturn(null); // or throw an exception, depending on how your service handles this
 
         MockHttpServletRequestBuilder getRequest = get("/tasks/{taskId}", 999L)
@@ -456,7 +626,7 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(5L);
         mockUser.setTeamId(10L);
-        when(userRepository.findByToken(anyString())).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
 
         // Mock the service layer to simulate the task update behavior
         given(taskService.getTaskById(1L)).willReturn(existingTask);
@@ -478,7 +648,7 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(5L);
         mockUser.setTeamId(10L);
-        when(userRepository.findByToken(anyString())).thenReturn(mockUser);
+        authenticate("token123", mockUser);
 
         String authorizationHeader = "Bearer token123";
         TaskPutDTO taskPutDTO = new TaskPutDTO();
@@ -509,10 +679,8 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(5L);
         mockUser.setTeamId(10L);
-        when(userRepository.findByToken(anyString())).thenReturn(mockUser);
+        authenticate("dummy-token", mockUser);
         doNothing().when(taskService).deleteTask(1L, mockUser.getId()); 
-        doNothing().when(teamService).validateTeamPaused(anyString());
-        doNothing().when(taskService).validateCreator(anyString(), eq(1L));
 
         MockHttpServletRequestBuilder deleteRequest = delete("/tasks/{taskId}", 1L)
             .header("Authorization", "Bearer dummy-token");
@@ -528,9 +696,7 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(5L);
         mockUser.setTeamId(10L);
-        when(userRepository.findByToken(anyString())).thenReturn(mockUser);
-        doNothing().when(teamService).validateTeamPaused(anyString());
-        doNothing().when(taskService).validateCreator(anyString(), eq(1L));
+        authenticate("dummy-token", mockUser);
         doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Task with ID 1 does not exist")).when(taskService).deleteTask(1L, mockUser.getId());
 
         MockHttpServletRequestBuilder deleteRequest = delete("/tasks/{taskId}", 1L)
@@ -548,12 +714,6 @@ class TaskControllerTest {
         Long taskId = 1L;
         String token = "valid_token";
         
-        Task existingTask = new Task();
-        existingTask.setId(taskId);
-        existingTask.setName("Test Task");
-        existingTask.setActiveStatus(true);
-        existingTask.setIsAssignedTo(null); // Not assigned yet
-        
         Task claimedTask = new Task();
         claimedTask.setId(taskId);
         claimedTask.setName("Test Task");
@@ -565,9 +725,8 @@ class TaskControllerTest {
         claimedTaskDTO.setName("Test Task");
         claimedTaskDTO.setIsAssignedTo(123L);
         
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(taskService.getTaskById(taskId)).thenReturn(existingTask);
-        when(taskService.claimTask(existingTask, token)).thenReturn(claimedTask);
+        AuthenticatedUser user = authenticate(token);
+        when(taskService.claimTask(taskId, user)).thenReturn(claimedTask);
         
         // Perform the PATCH request
         MockHttpServletRequestBuilder patchRequest = patch("/tasks/{taskId}/claim", taskId)
@@ -579,9 +738,8 @@ class TaskControllerTest {
             .andExpect(status().isNoContent());
             
         // Verify that the service methods were called correctly
-        verify(teamService).validateTeamPaused(token);
-        verify(taskService).getTaskById(taskId);
-        verify(taskService).claimTask(existingTask, token);
+        verify(teamService).validateTeamPaused(user);
+        verify(taskService).claimTask(taskId, user);
     }
 
     @Test
@@ -590,9 +748,8 @@ class TaskControllerTest {
         Long taskId = 1L;
         String invalidToken = "invalid_token";
         
-        // Mock service behavior - simulate invalid token with token without prefix
-        doThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token"))
-            .when(teamService).validateTeamPaused(invalidToken);
+        // Mock service behavior - the token belongs to no user
+        given(userService.getAuthenticatedUser(invalidToken)).willReturn(null);
         
         // Perform the PATCH request
         MockHttpServletRequestBuilder patchRequest = patch("/tasks/{taskId}/claim", taskId)
@@ -611,8 +768,8 @@ class TaskControllerTest {
         String token = "valid_token";
         
         // Mock service behavior - token without prefix
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(taskService.getTaskById(nonExistentTaskId))
+        AuthenticatedUser user = authenticate(token);
+        when(taskService.claimTask(nonExistentTaskId, user))
             .thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Task not found"));
         
         // Perform the PATCH request
@@ -631,16 +788,9 @@ class TaskControllerTest {
         Long taskId = 1L;
         String token = "valid_token";
         
-        Task existingTask = new Task();
-        existingTask.setId(taskId);
-        existingTask.setName("Already Claimed Task");
-        existingTask.setActiveStatus(true);
-        existingTask.setIsAssignedTo(456L); // Already assigned to another user
-        
         // Mock service behavior - token without prefix
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(taskService.getTaskById(taskId)).thenReturn(existingTask);
-        when(taskService.claimTask(existingTask, token))
+        AuthenticatedUser user = authenticate(token);
+        when(taskService.claimTask(taskId, user))
             .thenThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Task already claimed by another user"));
         
         // Perform the PATCH request
@@ -663,7 +813,7 @@ class TaskControllerTest {
             .contentType(MediaType.APPLICATION_JSON);
         
         mockMvc.perform(patchRequest)
-            .andExpect(status().isBadRequest());
+            .andExpect(status().isUnauthorized());
     }
 
     @Test
@@ -706,10 +856,7 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(userId);
         
-        doNothing().when(teamService).validateTeamPaused(token);
-        doNothing().when(taskService).validateTaskInTeam(token, taskId);
-        doNothing().when(taskService).validateRecurringEdit(token, taskId);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         doNothing().when(taskService).quitTask(taskId, userId);
         
         // Perform the PATCH request
@@ -722,9 +869,9 @@ class TaskControllerTest {
             .andExpect(status().isNoContent());
             
         // Verify that the service methods were called correctly
-        verify(teamService).validateTeamPaused(token);
-        verify(taskService).validateTaskInTeam(token, taskId);
-        verify(userRepository).findByToken(token);
+        verify(teamService).validateTeamPaused(user);
+        verify(taskService).validateTaskInTeam(user, taskId);
+        verify(userService).getAuthenticatedUser(token);
         verify(taskService).quitTask(taskId, userId);
     }
 
@@ -738,10 +885,7 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(userId);
         
-        doNothing().when(teamService).validateTeamPaused(token);
-        doNothing().when(taskService).validateTaskInTeam(token, taskId);
-        doNothing().when(taskService).validateRecurringEdit(token, taskId);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         
         // Mock service behavior - task not assigned to user
         doThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task is not currently assigned."))
@@ -767,10 +911,7 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(userId);
         
-        doNothing().when(teamService).validateTeamPaused(token);
-        doNothing().when(taskService).validateTaskInTeam(token, taskId);
-        doNothing().when(taskService).validateRecurringEdit(token, taskId);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         
         // Mock service behavior - task assigned to different user
         doThrow(new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not assigned to this task, so you cannot quit it."))
@@ -800,19 +941,48 @@ class TaskControllerTest {
     }
 
     @Test
-    void GET_expireTasks_validCronHeader_callsExpireLogic() throws Exception {
-        List<TaskGetDTO> expiredTasks = new ArrayList<>();
-        TaskGetDTO expiredTask = new TaskGetDTO();
-        expiredTask.setId(1L);
-        expiredTask.setName("Expired Task");
-        expiredTasks.add(expiredTask);
+    void GET_expireTasks_validCronHeader_startsExpiryJob() throws Exception {
+        TaskExpiryJob job = new TaskExpiryJob();
+        job.setId(5L);
+        job.setStatus(ExpiryJobStatus.RUNNING);
+        job.setCutoffDate(new Date());
+        job.setLastTaskId(0L);
+        job.setProcessedTasks(0);
+        job.setStartedAt(new Date());
 
-        when(taskService.getAllTasks()).thenReturn(Collections.emptyList()); // or mocked expired ones
-        // you can also mock more involved logic if needed
+        when(taskExpiryService.startExpiryJob()).thenReturn(job);
 
         mockMvc.perform(get("/tasks/expire")
                 .header("X-CRON-AUTH", "mySecureCronToken987"))
-              .andExpect(status().isNoContent());
+              .andExpect(status().isAccepted())
+              .andExpect(jsonPath("$.id", is(5)))
+              .andExpect(jsonPath("$.status", is("RUNNING")))
+              .andExpect(jsonPath("$.processedTasks", is(0)));
+        verify(taskService, never()).getAllTasks();
+    }
+
+    @Test
+    void GET_expiryJob_validCronHeader_returnsProgress() throws Exception {
+        TaskExpiryJob job = new TaskExpiryJob();
+        job.setId(5L);
+        job.setStatus(ExpiryJobStatus.COMPLETED);
+        job.setLastTaskId(42L);
+        job.setProcessedTasks(120);
+
+        when(taskExpiryService.getJob(5L)).thenReturn(job);
+
+        mockMvc.perform(get("/tasks/expire/5")
+                .header("X-CRON-AUTH", "mySecureCronToken987"))
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("$.status", is("COMPLETED")))
+              .andExpect(jsonPath("$.processedTasks", is(120)));
+    }
+
+    @Test
+    void GET_expiryJob_noCronHeader_returnsUnauthorized() throws Exception {
+        mockMvc.perform(get("/tasks/expire/5"))
+            .andExpect(status().isUnauthorized());
+        verify(taskExpiryService, never()).getJob(anyLong());
     }
 
     @Test
@@ -836,10 +1006,8 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(userId);
         
-        doNothing().when(teamService).validateTeamPaused(token);
-        doNothing().when(taskService).validateTaskInTeam(token, taskId);
         when(taskService.getTaskById(taskId)).thenReturn(existingTask);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         when(taskService.checkTaskType(existingTask)).thenReturn("additional");
         when(taskService.isTaskVisibleOrFinishable(existingTask)).thenReturn(true);
         doNothing().when(userService).addExperiencePoints(userId, existingTask.getValue());
@@ -855,10 +1023,10 @@ class TaskControllerTest {
             .andExpect(status().isNoContent());
         
         // Verify method calls
-        verify(teamService).validateTeamPaused(token);
-        verify(taskService).validateTaskInTeam(token, taskId);
+        verify(teamService).validateTeamPaused(user);
+        verify(taskService).validateTaskInTeam(user, taskId);
         verify(taskService).getTaskById(taskId);
-        verify(userRepository).findByToken(token);
+        verify(userService).getAuthenticatedUser(token);
         verify(taskService).checkTaskType(existingTask);
         verify(userService).addExperiencePoints(userId, existingTask.getValue());
         verify(taskService).deleteTask(taskId, userId);
@@ -888,10 +1056,8 @@ class TaskControllerTest {
         updatedTaskDTO.setName("Recurring Task");
         updatedTaskDTO.setIsAssignedTo(null); // Should be unassigned after completion
         
-        doNothing().when(teamService).validateTeamPaused(token);
-        doNothing().when(taskService).validateTaskInTeam(token, taskId);
         when(taskService.getTaskById(taskId)).thenReturn(existingTask);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         when(taskService.isTaskVisibleOrFinishable(existingTask)).thenReturn(true);
         when(taskService.checkTaskType(existingTask)).thenReturn("recurring");
         doNothing().when(userService).addExperiencePoints(userId, existingTask.getValue());
@@ -909,10 +1075,10 @@ class TaskControllerTest {
             .andExpect(status().isNoContent());
         
         // Verify method calls
-        verify(teamService).validateTeamPaused(token);
-        verify(taskService).validateTaskInTeam(token, taskId);
+        verify(teamService).validateTeamPaused(user);
+        verify(taskService).validateTaskInTeam(user, taskId);
         verify(taskService).getTaskById(taskId);
-        verify(userRepository).findByToken(token);
+        verify(userService).getAuthenticatedUser(token);
         verify(taskService).checkTaskType(existingTask);
         verify(userService).addExperiencePoints(userId, existingTask.getValue());
         verify(taskService).calculateDeadlineOnFinish(existingTask);
@@ -936,10 +1102,8 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(userId);
         
-        doNothing().when(teamService).validateTeamPaused(token);
-        doNothing().when(taskService).validateTaskInTeam(token, taskId);
         when(taskService.getTaskById(taskId)).thenReturn(existingTask);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         
         // Perform the DELETE request
         MockHttpServletRequestBuilder deleteRequest = delete("/tasks/{taskId}/finish", taskId)
@@ -952,10 +1116,10 @@ class TaskControllerTest {
 
         
         // Verify method calls
-        verify(teamService).validateTeamPaused(token);
-        verify(taskService).validateTaskInTeam(token, taskId);
+        verify(teamService).validateTeamPaused(user);
+        verify(taskService).validateTaskInTeam(user, taskId);
         verify(taskService).getTaskById(taskId);
-        verify(userRepository).findByToken(token);
+        verify(userService).getAuthenticatedUser(token);
         verify(userService, never()).addExperiencePoints(anyLong(), anyInt());
         verify(taskService, never()).checkTaskType(any(Task.class));
     }
@@ -976,10 +1140,8 @@ class TaskControllerTest {
         User mockUser = new User();
         mockUser.setId(userId);
         
-        doNothing().when(teamService).validateTeamPaused(token);
-        doNothing().when(taskService).validateTaskInTeam(token, taskId);
         when(taskService.getTaskById(taskId)).thenReturn(existingTask);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         
         // Perform the DELETE request
         MockHttpServletRequestBuilder deleteRequest = delete("/tasks/{taskId}/finish", taskId)
@@ -991,10 +1153,10 @@ class TaskControllerTest {
             .andExpect(status().isForbidden());
         
         // Verify method calls
-        verify(teamService).validateTeamPaused(token);
-        verify(taskService).validateTaskInTeam(token, taskId);
+        verify(teamService).validateTeamPaused(user);
+        verify(taskService).validateTaskInTeam(user, taskId);
         verify(taskService).getTaskById(taskId);
-        verify(userRepository).findByToken(token);
+        verify(userService).getAuthenticatedUser(token);
         verify(userService, never()).addExperiencePoints(anyLong(), anyInt());
         verify(taskService, never()).checkTaskType(any(Task.class));
     }
@@ -1034,8 +1196,7 @@ class TaskControllerTest {
         String token = "token123";
 
         // Mock service behavior
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         when(taskService.luckyDrawTasks(mockUser.getTeamId())).thenReturn(luckyDrawTasks);
 
         // Perform the POST request
@@ -1054,8 +1215,8 @@ class TaskControllerTest {
             .andExpect(jsonPath("$[1].isAssignedTo", is(task2.getIsAssignedTo().intValue())));
 
         // Verify that the service methods were called
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(userRepository, times(1)).findByToken(token);
+        verify(teamService, times(1)).validateTeamPaused(user);
+        verify(userService, times(1)).getAuthenticatedUser(token);
         verify(taskService, times(1)).luckyDrawTasks(mockUser.getTeamId());
     }
 
@@ -1063,9 +1224,8 @@ class TaskControllerTest {
     void POST_luckyDraw_unauthorized_returnsUnauthorized() throws Exception {
         String token = "invalid-token";
         
-        // Mock service to throw exception for invalid token
-        doThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token"))
-            .when(teamService).validateTeamPaused(token);
+        // the token belongs to no user
+        given(userService.getAuthenticatedUser(token)).willReturn(null);
 
         // Perform the POST request with invalid token
         MockHttpServletRequestBuilder postRequest = post("/tasks/luckyDraw")
@@ -1075,7 +1235,7 @@ class TaskControllerTest {
         mockMvc.perform(postRequest)
             .andExpect(status().isUnauthorized());
 
-        verify(teamService, times(1)).validateTeamPaused(token);
+        verify(teamService, never()).validateTeamPaused(any(AuthenticatedUser.class));
         verify(taskService, times(0)).luckyDrawTasks(anyLong());
     }
 
@@ -1084,8 +1244,9 @@ class TaskControllerTest {
         String token = "token123";
         
         // Mock service to throw exception for paused team
+        AuthenticatedUser user = authenticate(token);
         doThrow(new ResponseStatusException(HttpStatus.FORBIDDEN, "Team is paused"))
-            .when(teamService).validateTeamPaused(token);
+            .when(teamService).validateTeamPaused(user);
 
         // Perform the POST request
         MockHttpServletRequestBuilder postRequest = post("/tasks/luckyDraw")
@@ -1095,8 +1256,7 @@ class TaskControllerTest {
         mockMvc.perform(postRequest)
             .andExpect(status().isForbidden());
 
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(userRepository, times(0)).findByToken(anyString());
+        verify(teamService, times(1)).validateTeamPaused(user);
         verify(taskService, times(0)).luckyDrawTasks(anyLong());
     }
 
@@ -1135,8 +1295,7 @@ class TaskControllerTest {
         String token = "token123";
 
         // Mock service behavior
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         when(taskService.autodistributeTasks(mockUser.getTeamId())).thenReturn(distributedTasks);
 
         // Perform the POST request
@@ -1155,8 +1314,8 @@ class TaskControllerTest {
             .andExpect(jsonPath("$[1].isAssignedTo", is(task2.getIsAssignedTo().intValue())));
 
         // Verify that the service methods were called
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(userRepository, times(1)).findByToken(token);
+        verify(teamService, times(1)).validateTeamPaused(user);
+        verify(userService, times(1)).getAuthenticatedUser(token);
         verify(taskService, times(1)).autodistributeTasks(mockUser.getTeamId());
     }
 
@@ -1164,9 +1323,8 @@ class TaskControllerTest {
     void POST_autodistribute_unauthorized_returnsUnauthorized() throws Exception {
         String token = "invalid-token";
         
-        // Mock service to throw exception for invalid token
-        doThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token"))
-            .when(teamService).validateTeamPaused(token);
+        // the token belongs to no user
+        given(userService.getAuthenticatedUser(token)).willReturn(null);
 
         // Perform the POST request with invalid token
         MockHttpServletRequestBuilder postRequest = post("/tasks/autodistribute")
@@ -1176,7 +1334,7 @@ class TaskControllerTest {
         mockMvc.perform(postRequest)
             .andExpect(status().isUnauthorized());
 
-        verify(teamService, times(1)).validateTeamPaused(token);
+        verify(teamService, never()).validateTeamPaused(any(AuthenticatedUser.class));
         verify(taskService, times(0)).autodistributeTasks(anyLong());
     }
 
@@ -1185,8 +1343,9 @@ class TaskControllerTest {
         String token = "token123";
         
         // Mock service to throw exception for paused team
+        AuthenticatedUser user = authenticate(token);
         doThrow(new ResponseStatusException(HttpStatus.FORBIDDEN, "Team is paused"))
-            .when(teamService).validateTeamPaused(token);
+            .when(teamService).validateTeamPaused(user);
 
         // Perform the POST request
         MockHttpServletRequestBuilder postRequest = post("/tasks/autodistribute")
@@ -1196,8 +1355,7 @@ class TaskControllerTest {
         mockMvc.perform(postRequest)
             .andExpect(status().isForbidden());
 
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(userRepository, times(0)).findByToken(anyString());
+        verify(teamService, times(1)).validateTeamPaused(user);
         verify(taskService, times(0)).autodistributeTasks(anyLong());
     }
 
@@ -1211,8 +1369,7 @@ class TaskControllerTest {
         String token = "token123";
 
         // Mock service behavior - no tasks available for distribution
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         when(taskService.autodistributeTasks(mockUser.getTeamId())).thenReturn(Collections.emptyList());
 
         // Perform the POST request
@@ -1225,8 +1382,8 @@ class TaskControllerTest {
             .andExpect(jsonPath("$", hasSize(0)));
 
         // Verify that the service methods were called
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(userRepository, times(1)).findByToken(token);
+        verify(teamService, times(1)).validateTeamPaused(user);
+        verify(userService, times(1)).getAuthenticatedUser(token);
         verify(taskService, times(1)).autodistributeTasks(mockUser.getTeamId());
     }
 
@@ -1240,8 +1397,7 @@ class TaskControllerTest {
         String token = "token123";
 
         // Mock service behavior - no tasks available for lucky draw
-        doNothing().when(teamService).validateTeamPaused(token);
-        when(userRepository.findByToken(token)).thenReturn(mockUser);
+        AuthenticatedUser user = authenticate(token, mockUser);
         when(taskService.luckyDrawTasks(mockUser.getTeamId())).thenReturn(Collections.emptyList());
 
         // Perform the POST request
@@ -1254,10 +1410,29 @@ class TaskControllerTest {
             .andExpect(jsonPath("$", hasSize(0)));
 
         // Verify that the service methods were called
-        verify(teamService, times(1)).validateTeamPaused(token);
-        verify(userRepository, times(1)).findByToken(token);
+        verify(teamService, times(1)).validateTeamPaused(user);
+        verify(userService, times(1)).getAuthenticatedUser(token);
         verify(taskService, times(1)).luckyDrawTasks(mockUser.getTeamId());
     }
 
-    
+    private AuthenticatedUser authenticate(String token) {
+        AuthenticatedUser user = new AuthenticatedUser(5L, "testUser", 10L, UserStatus.ONLINE, ColorID.C1);
+        given(userService.getAuthenticatedUser(token)).willReturn(user);
+        return user;
+    }
+
+    private AuthenticatedUser authenticate(String token, User mockUser) {
+        AuthenticatedUser user = new AuthenticatedUser(mockUser.getId(), mockUser.getUsername(), mockUser.getTeamId(),
+                UserStatus.ONLINE, mockUser.getColor());
+        given(userService.getAuthenticatedUser(token)).willReturn(user);
+        return user;
+    }
+
+    private List<TaskGetDTO> toDTOs(List<Task> tasks) {
+        List<TaskGetDTO> dtos = new ArrayList<>();
+        for (Task task : tasks) {
+            dtos.add(DTOMapper.INSTANCE.convertEntityToTaskGetDTO(task));
+        }
+        return dtos;
+    }
 }
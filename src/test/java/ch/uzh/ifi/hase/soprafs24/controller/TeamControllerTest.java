@@ -1,8 +1,12 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.config.AuthenticatedUserArgumentResolver;
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.team.TeamGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.team.TeamPostDTO;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
 import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
 import ch.uzh.ifi.hase.soprafs24.service.TeamService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
@@ -57,7 +61,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
     @BeforeEach
      void setup() {
         // Setup MockMvc
-        mockMvc = MockMvcBuilders.standaloneSetup(teamController).build();
+        mockMvc = MockMvcBuilders.standaloneSetup(teamController)
+                .setCustomArgumentResolvers(new AuthenticatedUserArgumentResolver(userService))
+                .build();
 
         // Create mock team data
         team = new Team();
@@ -82,8 +88,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void POST_createTeam_validInput_teamCreated() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         when(teamService.createTeam(anyLong(), any(Team.class))).thenReturn(team);
 
         // When & Then
@@ -101,8 +106,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void POST_failedCreateTeam_invalidInput_duplicateTeamName_teamNotCreated() throws Exception {
     // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
     
     // Simulate a conflict when trying to create a team with an already existing name
         when(teamService.createTeam(anyLong(), any(Team.class)))
@@ -124,9 +128,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void POST_joinTeam_validInput_teamJoined() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         when(teamRepository.findByCode("ABC123")).thenReturn(new Team());
+        when(teamService.getTeamByCode("ABC123")).thenReturn(team);
         doNothing().when(teamService).joinTeam(anyLong(), anyString());
 
         // JSON body
@@ -151,8 +155,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
     void POST_joinTeam_invalidCode_teamNotFound() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
 
         // Mock joinTeam to throw 404
         doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Team not found."))
@@ -180,8 +183,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void GET_getTeamById_validTeamId_teamReturned() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         when(teamService.getTeamById(anyLong())).thenReturn(team);
 
         // When & Then
@@ -196,8 +198,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void GET_failedGetTeamById_invalidTeamId_teamNotFound() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         
         // Simulate that the team does not exist (throws a not found exception)
         when(teamService.getTeamById(anyLong())).thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Team not found"));
@@ -212,8 +213,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void GET_getUsersByTeam_validTeamId_usersReturned() throws Exception {
     // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         when(teamService.getUsersByTeamId(anyLong())).thenReturn(List.of(1L, 2L));
     
     // Mock userService.getUserById to return dummy User objects
@@ -236,8 +236,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void GET_getUsersByTeam_invalidTeamId_teamNotFound() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         when(teamService.getUsersByTeamId(anyLong())).thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Team not found"));
     
         // When & Then
@@ -252,8 +251,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void PUT_updateTeamName_validInput_teamNameUpdated() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         doNothing().when(teamService).updateTeamName(anyLong(), anyLong(), anyString());
 
         // When & Then
@@ -271,8 +269,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void PUT_updateTeamName_invalidTeamId_teamNotFound() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Team not found"))
                 .when(teamService).updateTeamName(anyLong(), anyLong(), anyString());
     
@@ -292,8 +289,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void DELETE_quitTeam_validInput_userQuitTeam() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         doNothing().when(teamService).quitTeam(anyLong(), anyLong());
 
         // When & Then
@@ -310,8 +306,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
      void DELETE_quitTeam_invalidTeamId_teamNotFound() throws Exception {
         // Given
         String authorizationHeader = "Bearer valid_token";
-        when(userService.validateToken(anyString())).thenReturn(true);
-        when(userService.findIDforToken(anyString())).thenReturn(1L);
+        authenticate("valid_token", 1L);
         
         // Ensure that the error is thrown when trying to quit a non-existent team
         doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Team not found"))
@@ -325,5 +320,19 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         // Verify the method was called with the correct userId, but any teamId
         verify(teamService, times(1)).quitTeam(eq(1L), anyLong());
     }
-    
+
+    @Test
+     void PUT_pauseTeam_missingAuthorizationHeader_unauthorized() throws Exception {
+        // same 401 as an invalid token, not a 400 for the missing header
+        mockMvc.perform(MockMvcRequestBuilders.put("/teams/1/paused"))
+                .andExpect(status().isUnauthorized());
+
+        verify(teamService, never()).pauseTeam(anyLong(), anyLong());
+    }
+
+    private AuthenticatedUser authenticate(String token, Long userId) {
+        AuthenticatedUser user = new AuthenticatedUser(userId, "testUser", 1L, UserStatus.ONLINE, ColorID.C1);
+        when(userService.getAuthenticatedUser(token)).thenReturn(user);
+        return user;
+    }
 }
@@ -1,9 +1,13 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
@@ -21,6 +25,7 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.web.server.ResponseStatusException;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -38,6 +43,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -62,6 +68,32 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
   @MockBean
   private TaskService taskService;
 
+  @Test
+  void GET_givenLimit_whenGetUsers_thenReturnPageAndNextCursor() throws Exception {
+    User user1 = new User();
+    user1.setId(4L);
+    user1.setUsername("first");
+    User user2 = new User();
+    user2.setId(9L);
+    user2.setUsername("second");
+
+    given(userService.getUserDTOsPage(0L, 2)).willReturn(Arrays.asList(
+        DTOMapper.INSTANCE.convertEntityToUserGetDTO(user1), DTOMapper.INSTANCE.convertEntityToUserGetDTO(user2)));
+    String validToken = "1";
+    authenticate(validToken, 1L);
+
+    MockHttpServletRequestBuilder getRequest = get("/users")
+        .param("limit", "2")
+        .header("Authorization", "Bearer " + validToken);
+
+    mockMvc.perform(getRequest).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[1].username", is("second")))
+        .andExpect(header().string("X-Next-After-Id", "9"));
+
+    Mockito.verify(userService, Mockito.never()).getUserDTOs();
+  }
+
   @Test
    void GET_givenUsers_whenGetUsers_thenReturnJsonArray() throws Exception { //./gradlew test --tests "ch.uzh.ifi.hase.soprafs24.controller.UserControllerTest.GET_givenUsers_whenGetUsers_thenReturnJsonArray"
     // given
@@ -70,14 +102,14 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
     user.setUsername("firstname@lastname");
     user.setStatus(UserStatus.ONLINE); 
 
-    List<User> allUsers = Collections.singletonList(user);
+    List<UserGetDTO> allUsers = Collections.singletonList(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
 
     // this mocks the UserService -> we define above what the userService should
-    // return when getUsers() is called
-    given(userService.getUsers()).willReturn(allUsers);
+    // return when getUserDTOs() is called
+    given(userService.getUserDTOs()).willReturn(allUsers);
 
     String validToken = "1";
-    given(userService.validateToken(validToken)).willReturn(true);
+    authenticate(validToken, 1L);
 
     // when
     MockHttpServletRequestBuilder getRequest = get("/users")
@@ -174,7 +206,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
       // return when getUsers() is called
       // specifying that the getUserById will succeed and return a user
       given(userService.getUserById(Mockito.any(Long.class))).willReturn(user);
-      given(userService.validateToken("1")).willReturn(true);
+      authenticate("1", 1L);
 
       // when
       // executing a mock get request. This time we do not need to format the request body, since the get request does not have a request body.
@@ -203,7 +235,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
     User user = new User();
     user.setId(1L);
 
-    given(userService.validateToken("1")).willReturn(true);
+    authenticate("1", 1L);
 
     // setting the getUserById function to throw an error (in the case of not finding a user)
     given(userService.getUserById(Mockito.any(Long.class))).willThrow( //specifying that this post request will throw an error. We are not actually executing createUser, so we don't have to setup the scenario of duplicate usernames...
@@ -242,8 +274,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         // this mocks the UserService -> we define above what the userService should
         // return when getUsers() is called
         // specifying that the updateUser function will succeed and return nothing
-        when(userService.validateToken(validToken)).thenReturn(true);  // Mock token validation to return true
-        when(userService.findIDforToken(validToken)).thenReturn(1L); // Mock user ID for valid token
+        authenticate(validToken, 1L);
         when(userService.updateUser(Mockito.any())).thenReturn(user);
         doNothing().when(taskService).updateAllTaskColors(Mockito.any()); // Mock updateAllTaskColors to do nothing
         // when
@@ -273,8 +304,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
         String validToken = "valid-token";
         String authHeader = "Bearer " + validToken;
-        when(userService.validateToken(validToken)).thenReturn(true);  // Mock token validation to return true
-        when(userService.findIDforToken(validToken)).thenReturn(1L); 
+        authenticate(validToken, 1L);
 
         doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "user with this ID was not found"))
             .when(userService).updateUser(Mockito.any());
@@ -295,8 +325,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         String validToken = "valid-token";
     
         // Mock service
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(userId);
+        authenticate(validToken, userId);
         doNothing().when(userService).deleteUser(userId);
     
         MockHttpServletRequestBuilder deleteRequest = delete("/users/{userId}", userId)
@@ -311,8 +340,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         Long userId = 1L;
         String validToken = "valid-token";
     
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(userId);
+        authenticate(validToken, userId);
         doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "user not found"))
                 .when(userService).deleteUser(userId);
     
@@ -379,8 +407,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         UserPutDTO userPutDTO = new UserPutDTO();
         userPutDTO.setId(userId);
         
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(userId);
+        authenticate(validToken, userId);
         doNothing().when(userService).logoffUser(Mockito.any());
         
         // when/then
@@ -398,7 +425,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
     // given
     String invalidToken = "invalid-token";
     
-    when(userService.validateToken(invalidToken)).thenReturn(false);
+    when(userService.getAuthenticatedUser(invalidToken)).thenReturn(null);
     
     // when/then
     mockMvc.perform(put("/logout")
@@ -410,7 +437,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
     void GET_users_unauthorized_invalidToken() throws Exception {
         // given
         String invalidToken = "invalid-token";
-        when(userService.validateToken(invalidToken)).thenReturn(false);
+        when(userService.getAuthenticatedUser(invalidToken)).thenReturn(null);
         
         // when/then
         MockHttpServletRequestBuilder getRequest = get("/users")
@@ -433,6 +460,15 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
             .andExpect(status().isUnauthorized());
     }
     
+    @Test
+    void GET_users_unauthorized_missingHeader() throws Exception {
+        // same 401 as an invalid token, not a 400 for the missing header
+        mockMvc.perform(get("/users"))
+            .andExpect(status().isUnauthorized());
+
+        Mockito.verify(userService, Mockito.never()).getUserDTOs();
+    }
+
     @Test
     void PUT_update_forbidden_differentUser() throws Exception {
         // given
@@ -447,8 +483,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         userPutDTO.setUsername("updatedUsername");
         
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(differentUserId);  // Token belongs to different user
+        authenticate(validToken, differentUserId);  // Token belongs to different user
         
         // when/then
         MockHttpServletRequestBuilder putRequest = put("/users/{userId}", userId)
@@ -467,8 +502,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         Long differentUserId = 2L;
         String validToken = "valid-token";
         
-        when(userService.validateToken(validToken)).thenReturn(true);
-        when(userService.findIDforToken(validToken)).thenReturn(differentUserId);  // Token belongs to different user
+        authenticate(validToken, differentUserId);  // Token belongs to different user
         
         // when/then
         MockHttpServletRequestBuilder deleteRequest = delete("/users/{userId}", userId)
@@ -482,10 +516,10 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
     @Test
     void GET_emptyUserList() throws Exception {
         // given
-        given(userService.getUsers()).willReturn(Collections.emptyList());
+        given(userService.getUserDTOs()).willReturn(Collections.emptyList());
         
         String validToken = "valid-token";
-        given(userService.validateToken(validToken)).willReturn(true);
+        authenticate(validToken, 1L);
         
         // when/then
         MockHttpServletRequestBuilder getRequest = get("/users")
@@ -516,6 +550,12 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
     }
   }
 
+  private AuthenticatedUser authenticate(String token, Long userId) {
+    AuthenticatedUser user = new AuthenticatedUser(userId, "testUser", 1L, UserStatus.ONLINE, ColorID.C1);
+    given(userService.getAuthenticatedUser(token)).willReturn(user);
+    return user;
+  }
+
   private String formatToIso8601(Date now) {
     SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
     isoFormat.setTimeZone(TimeZone.getTimeZone("UTC")); // Ensures UTC time
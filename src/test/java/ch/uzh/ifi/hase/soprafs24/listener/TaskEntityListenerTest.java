@@ -1,10 +1,10 @@
 package ch.uzh.ifi.hase.soprafs24.listener;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
-import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
-import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
-import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
+import ch.uzh.ifi.hase.soprafs24.service.TaskEventService;
+import ch.uzh.ifi.hase.soprafs24.service.TaskLockService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,13 +14,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Map;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,35 +27,26 @@ import static org.junit.jupiter.api.Assertions.*;
 @ExtendWith(MockitoExtension.class)
 class TaskEntityListenerTest {
 
-    private static final Logger log = LoggerFactory.getLogger(TaskEntityListenerTest.class);
-    private static final String ENTITY_TYPE = "TASKS";
-
     @Mock
-    private WebSocketNotificationService mockNotificationService;
+    private TaskEventService mockTaskEventService;
 
-    @Mock
-    private TaskRepository mockTaskRepository;
+    // the test tasks hold no lease, they are sent unlocked
+    @Spy
+    private TaskLockService taskLockService =
+            new TaskLockService(null, null, null, 60_000L, System::currentTimeMillis);
 
     @Spy
-    private DTOMapper dtoMapper = DTOMapper.INSTANCE;
+    private TransactionNotificationCollector notificationCollector =
+            new TransactionNotificationCollector(new SimpleMeterRegistry());
 
     @InjectMocks
     private TaskEntityListener taskEntityListener;
 
     private Task testTask;
-    private TaskGetDTO testTaskGetDTO;
 
     @BeforeEach
     void setUp() {
-        testTask = new Task();
-        testTask.setId(1L);
-        testTask.setTeamId(1L);
-        testTask.setName("Test Task");
-
-        testTaskGetDTO = new TaskGetDTO();
-        testTaskGetDTO.setId(testTask.getId());
-        testTaskGetDTO.setName(testTask.getName());
-
+        testTask = task(1L, 1L, "Test Task");
         TransactionSynchronizationManager.initSynchronization();
     }
 
@@ -65,116 +55,130 @@ class TaskEntityListenerTest {
         if (TransactionSynchronizationManager.isSynchronizationActive()) {
             TransactionSynchronizationManager.clearSynchronization();
         }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
     }
 
-
     @Test
-    void afterTaskPersist_noActiveTransaction_sendsNotificationDirectly() {
-        List<Task> tasksInRepo = new ArrayList<>(Collections.singletonList(testTask));
-        when(mockTaskRepository.findAll()).thenReturn(tasksInRepo);
+    void afterTaskPersist_noActiveTransaction_sendsCreatedDelta() {
+        taskEntityListener.afterTaskPersist(testTask);
 
-        if (TransactionSynchronizationManager.isSynchronizationActive()) {
-            TransactionSynchronizationManager.clearSynchronization();
-        }
+        List<DatabaseChangeEventDTO<?>> events = capturePublished(testTask.getTeamId());
+        assertEquals(1, events.size());
+        assertEquals("TASK_CREATED", events.get(0).getEntityType());
+        TaskGetDTO sent = (TaskGetDTO) events.get(0).getPayload();
+        assertEquals(testTask.getId(), sent.getId());
+        assertEquals("Test Task", sent.getName());
+    }
 
-        taskEntityListener.afterTaskPersist(testTask);
+    @Test
+    void afterTaskUpdate_noActiveTransaction_sendsUpdatedDelta() {
+        taskEntityListener.afterTaskUpdate(testTask);
 
-        assertFalse(TransactionSynchronizationManager.isSynchronizationActive(),
-                "Transaction synchronization should not be active when no transaction.");
-
-        ArgumentCaptor<List<TaskGetDTO>> payloadCaptor = ArgumentCaptor.forClass((Class) List.class);
-        verify(mockNotificationService, times(1)).notifyTeamMembers(
-                eq(testTask.getTeamId()),
-                eq(ENTITY_TYPE),
-                payloadCaptor.capture());
-        assertFalse(payloadCaptor.getValue().isEmpty());
-        assertEquals(testTask.getId(), payloadCaptor.getValue().get(0).getId());
-        verify(mockTaskRepository, times(1)).findAll();
+        List<DatabaseChangeEventDTO<?>> events = capturePublished(testTask.getTeamId());
+        assertEquals(1, events.size());
+        assertEquals("TASK_UPDATED", events.get(0).getEntityType());
+        assertEquals(testTask.getId(), ((TaskGetDTO) events.get(0).getPayload()).getId());
     }
 
     @Test
-    void afterTaskUpdate_noActiveTransaction_sendsNotificationDirectly() {
-        List<Task> tasksInRepo = new ArrayList<>(Collections.singletonList(testTask));
-        when(mockTaskRepository.findAll()).thenReturn(tasksInRepo);
+    void afterTaskRemove_noActiveTransaction_sendsDeletedDeltaWithIdOnly() {
+        taskEntityListener.afterTaskRemove(testTask);
 
-        if (TransactionSynchronizationManager.isSynchronizationActive()) {
-            TransactionSynchronizationManager.clearSynchronization();
-        }
+        List<DatabaseChangeEventDTO<?>> events = capturePublished(testTask.getTeamId());
+        assertEquals(1, events.size());
+        assertEquals("TASK_DELETED", events.get(0).getEntityType());
+        assertEquals(Map.of("id", 1L), events.get(0).getPayload());
+    }
+
+    @Test
+    void afterTaskUpdate_taskWithoutTeam_sendsNothing() {
+        testTask.setTeamId(null);
 
         taskEntityListener.afterTaskUpdate(testTask);
 
-        assertFalse(TransactionSynchronizationManager.isSynchronizationActive(),
-                "Transaction synchronization should not be active when no transaction.");
-        ArgumentCaptor<List> payloadCaptor = ArgumentCaptor.forClass(List.class);
-        verify(mockNotificationService, times(1)).notifyTeamMembers(
-                eq(testTask.getTeamId()),
-                eq(ENTITY_TYPE),
-                payloadCaptor.capture());
-        assertFalse(payloadCaptor.getValue().isEmpty());
-        verify(mockTaskRepository, times(1)).findAll();
+        verifyNoInteractions(mockTaskEventService);
     }
 
     @Test
-    void afterTaskRemove_noActiveTransaction_sendsNotificationDirectly() {
-        List<Task> tasksInRepo = new ArrayList<>();
+    void activeTransaction_sendsOneDeltaPerTaskAfterCommit() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        Task other = task(2L, 1L, "Other");
 
-        when(mockTaskRepository.findAll()).thenReturn(tasksInRepo);
+        taskEntityListener.afterTaskPersist(testTask);
+        testTask.setName("Renamed");
+        taskEntityListener.afterTaskUpdate(testTask);
+        taskEntityListener.afterTaskUpdate(other);
+        taskEntityListener.afterTaskUpdate(other);
+
+        verifyNoInteractions(mockTaskEventService);
+        commit();
+
+        List<DatabaseChangeEventDTO<?>> events = capturePublished(1L);
+        assertEquals(2, events.size());
+        // created and then updated in the same transaction is still sent as created, in its final state
+        assertEquals("TASK_CREATED", events.get(0).getEntityType());
+        assertEquals("Renamed", ((TaskGetDTO) events.get(0).getPayload()).getName());
+        assertEquals("TASK_UPDATED", events.get(1).getEntityType());
+        assertEquals(2L, ((TaskGetDTO) events.get(1).getPayload()).getId());
+    }
 
-        if (TransactionSynchronizationManager.isSynchronizationActive()) {
-            TransactionSynchronizationManager.clearSynchronization();
-        }
+    @Test
+    void activeTransaction_groupsChangesByTeam() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
 
-        taskEntityListener.afterTaskRemove(testTask);
+        taskEntityListener.afterTaskUpdate(testTask);
+        taskEntityListener.afterTaskRemove(task(2L, 9L, "Other team"));
+        commit();
 
-        assertFalse(TransactionSynchronizationManager.isSynchronizationActive(),
-                "Transaction synchronization should not be active when no transaction.");
-        ArgumentCaptor<List> payloadCaptor = ArgumentCaptor.forClass(List.class);
-        verify(mockNotificationService, times(1)).notifyTeamMembers(
-                eq(testTask.getTeamId()),
-                eq(ENTITY_TYPE),
-                payloadCaptor.capture());
-        assertTrue(payloadCaptor.getValue().isEmpty(),
-                "Payload should be empty if task is removed and repo is empty/filtered");
-        verify(mockTaskRepository, times(1)).findAll();
+        assertEquals("TASK_UPDATED", capturePublished(1L).get(0).getEntityType());
+        assertEquals("TASK_DELETED", capturePublished(9L).get(0).getEntityType());
     }
 
     @Test
-    void getCurrentTasksForTeamDTO_nullTeamId_returnsEmptyList() {
-        List<TaskGetDTO> result = taskEntityListener.getCurrentTasksForTeamDTO(null);
+    void activeTransaction_createdAndDeleted_sendsNothing() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
 
-        assertTrue(result.isEmpty());
-        verify(mockTaskRepository, never()).findAll();
+        taskEntityListener.afterTaskPersist(testTask);
+        taskEntityListener.afterTaskRemove(testTask);
+        commit();
+
+        verify(mockTaskEventService, never()).publishChanges(eq(1L), argThat(events -> !events.isEmpty()));
     }
 
     @Test
-    void getCurrentTasksForTeamDTO_validTeamId_filtersAndMapsTasks() {
-        Long targetTeamId = 1L;
-        Task task1Team1 = new Task();
-        task1Team1.setId(1L);
-        task1Team1.setTeamId(targetTeamId);
-        task1Team1.setName("T1");
-        Task task2Team2 = new Task();
-        task2Team2.setId(2L);
-        task2Team2.setTeamId(2L);
-        task2Team2.setName("T2");
-        Task task3Team1 = new Task();
-        task3Team1.setId(3L);
-        task3Team1.setTeamId(targetTeamId);
-        task3Team1.setName("T3");
-
-        List<Task> allTasks = new ArrayList<>();
-        allTasks.add(task1Team1);
-        allTasks.add(task2Team2);
-        allTasks.add(task3Team1);
-
-        when(mockTaskRepository.findAll()).thenReturn(allTasks);
-
-        List<TaskGetDTO> result = taskEntityListener.getCurrentTasksForTeamDTO(targetTeamId);
-
-        assertEquals(2, result.size());
-
-        assertTrue(result.stream().anyMatch(dto -> dto.getId().equals(task1Team1.getId())));
-        assertTrue(result.stream().anyMatch(dto -> dto.getId().equals(task3Team1.getId())));
-        verify(mockTaskRepository, times(1)).findAll();
+    void activeTransaction_updatedAndDeleted_sendsDeleted() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        taskEntityListener.afterTaskUpdate(testTask);
+        taskEntityListener.afterTaskRemove(testTask);
+        commit();
+
+        List<DatabaseChangeEventDTO<?>> events = capturePublished(1L);
+        assertEquals(1, events.size());
+        assertEquals("TASK_DELETED", events.get(0).getEntityType());
+    }
+
+    private void commit() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<DatabaseChangeEventDTO<?>> capturePublished(Long teamId) {
+        ArgumentCaptor<List> events = ArgumentCaptor.forClass(List.class);
+        verify(mockTaskEventService, times(1)).publishChanges(eq(teamId), events.capture());
+        return events.getValue();
+    }
+
+    private static Task task(Long id, Long teamId, String name) {
+        Task task = new Task();
+        task.setId(id);
+        task.setTeamId(teamId);
+        task.setName(name);
+        return task;
     }
-}
\ No newline at end of file
+}
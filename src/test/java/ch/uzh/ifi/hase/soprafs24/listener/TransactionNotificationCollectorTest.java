@@ -0,0 +1,109 @@
+package ch.uzh.ifi.hase.soprafs24.listener;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionNotificationCollectorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransactionNotificationCollector collector;
+    private final List<String> sent = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        collector = new TransactionNotificationCollector(meterRegistry);
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void afterCommit_sameTypeAndId_sentOnceWithLastRequest() {
+        for (int i = 0; i < 40; i++) {
+            int request = i;
+            collector.afterCommit("TASKS", 1L, () -> sent.add("TASKS 1 #" + request));
+        }
+        collector.afterCommit("MEMBERS", 1L, () -> sent.add("MEMBERS 1"));
+        collector.afterCommit("TASKS", 2L, () -> sent.add("TASKS 2"));
+        assertTrue(sent.isEmpty());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(List.of("TASKS 1 #39", "MEMBERS 1", "TASKS 2"), sent);
+        assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+        assertEquals(41.0, meterRegistry.counter(TransactionNotificationCollector.REQUESTED_METRIC, "type", "TASKS").count());
+        assertEquals(39.0, meterRegistry.counter(TransactionNotificationCollector.COALESCED_METRIC, "type", "TASKS").count());
+        assertEquals(2.0, meterRegistry.counter(TransactionNotificationCollector.SENT_METRIC, "type", "TASKS").count());
+    }
+
+    @Test
+    void collect_returnsSameStateWithinTransaction() {
+        List<Long> first = collector.collect("TASKS", 1L, ArrayList::new, ids -> sent.add("tasks " + ids));
+        first.add(5L);
+        List<Long> second = collector.collect("TASKS", 1L, ArrayList::new, ids -> sent.add("never"));
+        second.add(6L);
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertSame(first, second);
+        assertEquals(List.of("tasks [5, 6]"), sent);
+    }
+
+    @Test
+    void rollback_sendsNothing() {
+        collector.afterCommit("TEAM", 1L, () -> sent.add("TEAM 1"));
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertTrue(sent.isEmpty());
+        assertEquals(0.0, meterRegistry.counter(TransactionNotificationCollector.SENT_METRIC, "type", "TEAM").count());
+    }
+
+    @Test
+    void failingNotification_doesNotStopOthers() {
+        collector.afterCommit("TEAM", 1L, () -> {
+            throw new IllegalStateException("boom");
+        });
+        collector.afterCommit("TEAM", 2L, () -> sent.add("TEAM 2"));
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(List.of("TEAM 2"), sent);
+    }
+
+    @Test
+    void noTransaction_afterCommitSendsRightAway_collectThrows() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+
+        collector.afterCommit("TEAM", 1L, () -> sent.add("TEAM 1"));
+
+        assertEquals(List.of("TEAM 1"), sent);
+        assertThrows(IllegalStateException.class,
+                () -> collector.collect("TASKS", 1L, ArrayList::new, ids -> sent.add("never")));
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}
@@ -2,9 +2,13 @@ package ch.uzh.ifi.hase.soprafs24.listener;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.user.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUserCache;
 import ch.uzh.ifi.hase.soprafs24.service.TeamService;
+import ch.uzh.ifi.hase.soprafs24.service.TeamStateCache;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
+import ch.uzh.ifi.hase.soprafs24.websocket.SocketHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,6 +17,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
@@ -43,6 +48,20 @@ class UserEntityListenerTest {
     @Mock
     private UserService mockUserService;
 
+    @Mock
+    private SocketHandler mockSocketHandler;
+
+    @Mock
+    private AuthenticatedUserCache mockAuthenticatedUserCache;
+
+    @Mock
+    private TeamStateCache mockTeamStateCache;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private TransactionNotificationCollector notificationCollector = new TransactionNotificationCollector(meterRegistry);
+
     @InjectMocks
     private UserEntityListener userEntityListener;
 
@@ -64,6 +83,66 @@ class UserEntityListenerTest {
         if (TransactionSynchronizationManager.isSynchronizationActive()) {
             TransactionSynchronizationManager.clearSynchronization();
         }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void afterUserUpdate_manyMembersOfTeamInOneTransaction_notifiesTeamOnce() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        List<UserGetDTO> mockMembers = Collections.singletonList(new UserGetDTO());
+        when(mockTeamService.getCurrentMembersForTeam(10L)).thenReturn(mockMembers);
+
+        for (long id = 1; id <= 40; id++) {
+            User member = new User();
+            member.setId(id);
+            member.setTeamId(10L);
+            userEntityListener.afterUserUpdate(member);
+        }
+        verify(mockNotificationService, never()).notifyTeamMembers(any(), any(), any());
+
+        triggerAfterCommit();
+
+        verify(mockTeamService, times(1)).getCurrentMembersForTeam(10L);
+        verify(mockNotificationService, times(1)).notifyTeamMembers(10L, "MEMBERS", mockMembers);
+        assertEquals(39.0, meterRegistry.counter("websocket.notifications.coalesced", "type", "MEMBERS").count());
+    }
+
+    @Test
+    void afterUserUpdate_membersOfTwoTeams_notifiesEachTeamOnce() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        User otherTeamMember = new User();
+        otherTeamMember.setId(2L);
+        otherTeamMember.setTeamId(20L);
+
+        userEntityListener.afterUserUpdate(testUser);
+        userEntityListener.afterUserUpdate(otherTeamMember);
+        userEntityListener.afterUserUpdate(testUser);
+        triggerAfterCommit();
+
+        verify(mockTeamService, times(1)).getCurrentMembersForTeam(10L);
+        verify(mockTeamService, times(1)).getCurrentMembersForTeam(20L);
+    }
+
+    @Test
+    void afterUserRemove_afterLeavingTeamInSameTransaction_onlyClosesSession() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        testUser.setTeamId(null);
+
+        userEntityListener.afterUserUpdate(testUser);
+        userEntityListener.afterUserRemove(testUser);
+        triggerAfterCommit();
+
+        verify(mockSocketHandler, times(1)).closeSessionForUser(1L, "User account deleted");
+        verify(mockSocketHandler, never()).moveSessionToPending(any());
+    }
+
+    @Test
+    void afterUserUpdateAndRemove_invalidateCachedPrincipalAndTeamState() {
+        userEntityListener.afterUserUpdate(testUser);
+        userEntityListener.afterUserRemove(testUser);
+
+        verify(mockAuthenticatedUserCache, times(2)).invalidateUser(1L);
+        verify(mockTeamStateCache, times(2)).invalidateTeam(10L);
     }
 
     @Test
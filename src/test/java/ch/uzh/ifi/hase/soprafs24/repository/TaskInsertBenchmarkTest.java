@@ -0,0 +1,96 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures how many tasks per second can be inserted in one transaction.
+ * Tagged as benchmark, so it is left out of ./gradlew test; start it with
+ * ./gradlew benchmark --tests '*TaskInsertBenchmarkTest'. Run it on the commit before and after a change
+ * to the id generation or batching settings to compare the numbers.
+ */
+@WebAppConfiguration
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-dev.properties", properties = {
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true",
+        "logging.level.ch.uzh.ifi.hase.soprafs24.listener=ERROR"
+})
+@Tag("benchmark")
+class TaskInsertBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskInsertBenchmarkTest.class);
+
+    private static final int TASK_COUNT = 10_000;
+    private static final int WARMUP_COUNT = 1_000;
+
+    @Qualifier("taskRepository")
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private CalendarService calendarService;
+
+    @BeforeEach
+    void setup() {
+        taskRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void insertTenThousandTasks() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> taskRepository.saveAll(createTasks(WARMUP_COUNT)));
+        taskRepository.deleteAllInBatch();
+
+        List<Task> tasks = createTasks(TASK_COUNT);
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> taskRepository.saveAll(tasks));
+        long elapsedNanos = System.nanoTime() - start;
+
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        log.info("Inserted {} tasks in {} s ({} inserts/s)", TASK_COUNT, String.format("%.3f", seconds),
+                String.format("%.0f", TASK_COUNT / seconds));
+        assertEquals(TASK_COUNT, taskRepository.count());
+    }
+
+    private List<Task> createTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        Date now = new Date();
+        for (int i = 0; i < count; i++) {
+            Task task = new Task();
+            task.setName("Benchmark Task " + i);
+            task.setCreationDate(now);
+            task.setDeadline(new Date(now.getTime() + 3600 * 1000));
+            task.setValue(10);
+            task.setActiveStatus(true);
+            task.setPaused(false);
+            task.setcreatorId(1L);
+            // no team: the entity listener skips the TASKS notification
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
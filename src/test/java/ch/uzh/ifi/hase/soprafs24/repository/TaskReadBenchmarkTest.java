@@ -0,0 +1,129 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares reading the tasks of a team as managed entities (mapped to DTOs
+ * afterwards) with the TaskView projection in a read-only transaction.
+ * Reports the average latency and the bytes allocated per read.
+ * Tagged as benchmark, so it is left out of ./gradlew test; start it with
+ * ./gradlew benchmark --tests '*TaskReadBenchmarkTest'.
+ */
+@WebAppConfiguration
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-dev.properties", properties = {
+        "logging.level.ch.uzh.ifi.hase.soprafs24.listener=ERROR"
+})
+@Tag("benchmark")
+class TaskReadBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskReadBenchmarkTest.class);
+
+    private static final long TEAM_ID = 1L;
+    private static final int TASK_COUNT = 2_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 100;
+
+    @Qualifier("taskRepository")
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private CalendarService calendarService;
+
+    private TransactionTemplate readWriteTransaction;
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeEach
+    void setup() {
+        readWriteTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        taskRepository.deleteAllInBatch();
+        readWriteTransaction.executeWithoutResult(status -> taskRepository.saveAll(createTasks()));
+    }
+
+    @Test
+    void compareEntityAndProjectionReads() {
+        Supplier<List<TaskGetDTO>> entityRead = () -> readWriteTransaction.execute(status ->
+                taskRepository.findTaskByTeamId(TEAM_ID).stream()
+                        .map(DTOMapper.INSTANCE::convertEntityToTaskGetDTO)
+                        .collect(Collectors.toList()));
+        Supplier<List<TaskGetDTO>> projectionRead = () -> readOnlyTransaction.execute(status ->
+                taskRepository.findTaskViewsByTeamId(TEAM_ID).stream()
+                        .map(DTOMapper.INSTANCE::convertTaskViewToTaskGetDTO)
+                        .collect(Collectors.toList()));
+
+        measure("entity", entityRead);
+        measure("projection", projectionRead);
+    }
+
+    private void measure(String label, Supplier<List<TaskGetDTO>> read) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            assertEquals(TASK_COUNT, read.get().size());
+        }
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            read.get();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        log.info("{} read of {} tasks: {} ms, {} KiB allocated per read", label, TASK_COUNT,
+                String.format("%.2f", elapsedNanos / 1_000_000.0 / ROUNDS), allocatedBytes / 1024 / ROUNDS);
+    }
+
+    private List<Task> createTasks() {
+        List<Task> tasks = new ArrayList<>(TASK_COUNT);
+        Date now = new Date();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            Task task = new Task();
+            task.setName("Benchmark Task " + i);
+            task.setDescription("Description " + i);
+            task.setCreationDate(now);
+            task.setDeadline(new Date(now.getTime() + 3600 * 1000));
+            task.setValue(10);
+            task.setActiveStatus(true);
+            task.setPaused(false);
+            task.setcreatorId(1L);
+            task.setTeamId(TEAM_ID);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
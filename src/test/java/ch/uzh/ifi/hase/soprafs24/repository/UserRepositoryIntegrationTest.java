@@ -3,17 +3,23 @@ package ch.uzh.ifi.hase.soprafs24.repository;
 import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.listener.TransactionNotificationCollector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 import java.util.Date;
 
 @DataJpaTest
+// the UserEntityListener collects its notifications during the (rolled back) test transactions
+@Import({ TransactionNotificationCollector.class, SimpleMeterRegistry.class })
  class UserRepositoryIntegrationTest {
 
   @Autowired
@@ -57,4 +63,52 @@ import java.util.Date;
     assertEquals(found.getLevel(), user.getLevel());
     assertEquals(found.getColor(), user.getColor());
   }
+
+  @Test
+  void findByToken_success() {
+    User user = new User();
+    user.setName("token_user");
+    user.setUsername("token_user");
+    user.setPassword("1234");
+    user.setStatus(UserStatus.ONLINE);
+    user.setToken("token-abc");
+    user.setCreationDate(new Date());
+    user.setXp(0);
+    user.setLevel(1);
+    user.setColor(ColorID.C2);
+
+    entityManager.persist(user);
+    entityManager.flush();
+    entityManager.clear();
+
+    User found = userRepository.findByToken("token-abc");
+
+    assertNotNull(found);
+    assertEquals(user.getId(), found.getId());
+    assertEquals("token_user", found.getUsername());
+    assertNull(userRepository.findByToken("unknown-token"));
+    assertNull(userRepository.findByToken(null));
+  }
+
+  @Test
+  void addExperiencePoints_clampedAtZero() {
+    User user = new User();
+    user.setName("xp_user");
+    user.setUsername("xp_user");
+    user.setPassword("1234");
+    user.setStatus(UserStatus.ONLINE);
+    user.setToken("token-xp");
+    user.setCreationDate(new Date());
+    user.setXp(10);
+    user.setLevel(1);
+    user.setColor(ColorID.C3);
+
+    entityManager.persist(user);
+    entityManager.flush();
+
+    assertEquals(1, userRepository.addExperiencePoints(user.getId(), 5));
+    assertEquals(15, userRepository.findUserById(user.getId()).getXp());
+    assertEquals(1, userRepository.addExperiencePoints(user.getId(), -50));
+    assertEquals(0, userRepository.findUserById(user.getId()).getXp());
+  }
 }
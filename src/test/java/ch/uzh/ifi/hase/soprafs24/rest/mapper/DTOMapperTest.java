@@ -14,6 +14,7 @@ import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 
 import java.text.ParseException;
@@ -135,12 +136,6 @@ import java.util.List;
       team.setLevel(5);
       team.setCode("DREAM123");
       
-      // Create sample members (using user IDs instead of User objects)
-      List<Long> memberIds = new ArrayList<>();
-      memberIds.add(1L);  // Instead of adding User objects, we add user IDs
-      memberIds.add(2L);  // Same here
-      team.setMembers(memberIds);  // Set the members as IDs
-      
       // Create sample tasks
       List<Long> taskIds = new ArrayList<>();
       taskIds.add(1L);  // Use task IDs
@@ -156,9 +151,8 @@ import java.util.List;
       assertEquals(team.getXp(), teamGetDTO.getXp());
       assertEquals(team.getLevel(), teamGetDTO.getLevel());
       assertEquals(team.getCode(), teamGetDTO.getCode());
-      assertEquals(team.getMembers(), teamGetDTO.getMembers());  // Ensure members is a list of IDs
+      assertNull(teamGetDTO.getMembers());  // members come from TEAM_MEMBERSHIP, not from the entity
       assertEquals(team.getTasks(), teamGetDTO.getTasks());  // Ensure tasks is a list of IDs
-      assertEquals(2, teamGetDTO.getMembers().size());  // Members count should be 2
       assertEquals(2, teamGetDTO.getTasks().size());  // Tasks count should be 2
   }
 
@@ -0,0 +1,81 @@
+package ch.uzh.ifi.hase.soprafs24.service.Calendar;
+
+import ch.uzh.ifi.hase.soprafs24.service.CalendarClientCache;
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.services.calendar.Calendar;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class CalendarClientCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<Credential, Calendar> builder = credential -> mock(Calendar.class);
+    private CalendarClientCache cache;
+    private Credential credential;
+
+    @BeforeEach
+    void setup() {
+        cache = new CalendarClientCache(now::get);
+        credential = new Credential(BearerToken.authorizationHeaderAccessMethod());
+        // the access token is valid for one hour
+        credential.setExpirationTimeMilliseconds(now.get() + 3_600_000L);
+    }
+
+    private Calendar get(Long userId) throws Exception {
+        return cache.get(userId, id -> {
+            loads.incrementAndGet();
+            return credential;
+        }, builder);
+    }
+
+    @Test
+    void get_reusesClientWhileTokenIsValid() throws Exception {
+        Calendar first = get(1L);
+        now.addAndGet(3_000_000L);
+        Calendar second = get(1L);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_tokenAboutToExpire_rebuildsClient() throws Exception {
+        Calendar first = get(1L);
+        // within the margin in which CalendarService refreshes the token
+        now.addAndGet(3_600_000L - 30_000L);
+        Calendar second = get(1L);
+
+        assertNotSame(first, second);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_credentialWithoutExpiry_isNotCached() throws Exception {
+        credential.setExpirationTimeMilliseconds(null);
+
+        get(1L);
+        get(1L);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateUser_rebuildsClient() throws Exception {
+        Calendar first = get(1L);
+        get(2L);
+
+        cache.invalidateUser(1L);
+
+        assertNotSame(first, get(1L));
+        assertEquals(3, loads.get());
+    }
+}
@@ -4,14 +4,19 @@ import ch.uzh.ifi.hase.soprafs24.entity.GoogleToken;
 import ch.uzh.ifi.hase.soprafs24.entity.Task;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
 import ch.uzh.ifi.hase.soprafs24.repository.GoogleTokenRepository;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarClientCache;
 import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarSyncOutbox;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.model.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.*;
 
@@ -31,6 +36,14 @@ class CalendarServiceTest {
     @Mock
     private GoogleTokenRepository tokenRepository;
 
+    @Mock
+    private ObjectProvider<GoogleAuthorizationCodeFlow> flowProvider;
+
+    @Mock
+    private CalendarSyncOutbox calendarSyncOutbox;
+
+    private final NetHttpTransport httpTransport = new NetHttpTransport();
+
     CalendarService calendarService;
     CalendarService spyService;
 
@@ -44,7 +57,8 @@ class CalendarServiceTest {
                                     GoogleTokenRepository tokenRepository, 
                                     GoogleAuthorizationCodeFlow flow,
                                     String redirectUri) {
-            super(taskService, tokenRepository);
+            super(taskService, tokenRepository, httpTransport, flowProvider, new CalendarClientCache(),
+                    calendarSyncOutbox);
             this.flow = flow;
             this.redirectUri = redirectUri;
         }
@@ -157,6 +171,20 @@ class CalendarServiceTest {
         assertEquals("event123", task.getGoogleEventId());
     }
 
+    @Test
+    void testSyncAllActiveTasks_queuesTasksInsteadOfCallingGoogle() throws Exception {
+        Task task = new Task();
+        task.setId(1L);
+        task.setActiveStatus(true);
+        when(taskService.getFilteredTasksForUser(1L, true, null)).thenReturn(List.of(task));
+
+        spyService.syncAllActiveTasksToUserCalendar(1L);
+
+        verify(calendarSyncOutbox).enqueueUpserts(List.of(task));
+        verify(spyService, never()).getCalendarServiceForUser(any());
+        verify(taskService, never()).saveTask(any());
+    }
+
     @Test
     void testGetUserGoogleCalendarEvents_tokenNotFound() {
         Long userId = 99L;
@@ -206,7 +234,9 @@ class CalendarServiceTest {
         GoogleAuthorizationCodeFlow brokenFlow = mock(GoogleAuthorizationCodeFlow.class);
         when(brokenFlow.newAuthorizationUrl()).thenThrow(new RuntimeException("Broken"));
 
-        CalendarService service = new CalendarService(taskService, tokenRepository);
+        when(flowProvider.getObject()).thenReturn(brokenFlow);
+        CalendarService service = new CalendarService(taskService, tokenRepository, httpTransport, flowProvider,
+                new CalendarClientCache(), calendarSyncOutbox);
 
         RuntimeException ex = assertThrows(RuntimeException.class, () -> service.generateAuthUrl(123L));
         assertTrue(ex.getMessage().contains("Failed to generate"));
@@ -240,6 +270,72 @@ class CalendarServiceTest {
         verify(calEvents, times(1)).insert(eq("primary"), any(Event.class));
     }
 
+    @Test
+    void testGetCalendarServiceForUser_reusesClientUntilTokenExpires() throws Exception {
+        Long userId = 1L;
+        GoogleToken token = new GoogleToken();
+        token.setId(userId);
+        token.setAccessToken("access");
+        token.setRefreshToken("refresh");
+        token.setExpirationTime(System.currentTimeMillis() + 3_600_000L);
+        when(tokenRepository.findGoogleTokenById(userId)).thenReturn(token);
+
+        Calendar first = calendarService.getCalendarServiceForUser(userId);
+        Calendar second = calendarService.getCalendarServiceForUser(userId);
+
+        assertSame(first, second);
+        assertSame(httpTransport, first.getRequestFactory().getTransport());
+        verify(tokenRepository, times(1)).findGoogleTokenById(userId);
+    }
+
+    private void connectToFakeCalendar(FakeGoogleCalendarServer server, Long userId) {
+        ReflectionTestUtils.setField(calendarService, "calendarRootUrl", server.getRootUrl());
+        GoogleToken token = new GoogleToken();
+        token.setId(userId);
+        token.setAccessToken("access");
+        token.setRefreshToken("refresh");
+        token.setExpirationTime(System.currentTimeMillis() + 3_600_000L);
+        when(tokenRepository.findGoogleTokenById(userId)).thenReturn(token);
+    }
+
+    private Task calendarTask() {
+        Task task = new Task();
+        task.setId(1L);
+        task.setName("Clean the kitchen");
+        task.setStartDate(new Date());
+        task.setDeadline(new Date());
+        task.setActiveStatus(true);
+        return task;
+    }
+
+    @Test
+    void testPushTaskEvent_fakeCalendar_insertsThenUpdates() throws Exception {
+        try (FakeGoogleCalendarServer server = new FakeGoogleCalendarServer()) {
+            connectToFakeCalendar(server, 1L);
+            Task task = calendarTask();
+
+            assertEquals("fake-event-1", calendarService.pushTaskEvent(task, 1L));
+            assertEquals("fake-event-1", calendarService.pushTaskEvent(task, 1L));
+
+            assertEquals(List.of("POST /calendar/v3/calendars/primary/events",
+                    "PUT /calendar/v3/calendars/primary/events/fake-event-1"), server.getRequests());
+            // the task is saved by the caller
+            verify(taskService, never()).saveTask(any());
+        }
+    }
+
+    @Test
+    void testPushTaskEvent_fakeCalendarUnavailable_throwsForRetry() throws Exception {
+        try (FakeGoogleCalendarServer server = new FakeGoogleCalendarServer()) {
+            connectToFakeCalendar(server, 1L);
+            server.failNextRequests(1);
+            Task task = calendarTask();
+
+            assertThrows(java.io.IOException.class, () -> calendarService.pushTaskEvent(task, 1L));
+            assertNull(task.getGoogleEventId());
+        }
+    }
+
     @Test
     void testToISOString_returnsCorrectFormat() {
         Date now = new Date();
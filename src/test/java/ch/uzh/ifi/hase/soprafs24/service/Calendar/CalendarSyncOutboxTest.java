@@ -0,0 +1,85 @@
+package ch.uzh.ifi.hase.soprafs24.service.Calendar;
+
+import ch.uzh.ifi.hase.soprafs24.constant.CalendarSyncAction;
+import ch.uzh.ifi.hase.soprafs24.entity.CalendarSyncIntent;
+import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.repository.CalendarSyncIntentRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GoogleTokenRepository;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarSyncOutbox;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class CalendarSyncOutboxTest {
+
+    @Mock
+    private CalendarSyncIntentRepository intentRepository;
+
+    @Mock
+    private GoogleTokenRepository googleTokenRepository;
+
+    private CalendarSyncOutbox outbox;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        outbox = new CalendarSyncOutbox(intentRepository, googleTokenRepository);
+        when(googleTokenRepository.existsById(42L)).thenReturn(true);
+        when(googleTokenRepository.existsById(43L)).thenReturn(false);
+    }
+
+    private Task task(Long id, Long creatorId) {
+        Task task = new Task();
+        task.setId(id);
+        task.setcreatorId(creatorId);
+        task.setGoogleEventId("event" + id);
+        return task;
+    }
+
+    @Test
+    void enqueueUpsert_calendarConnected_writesIntent() {
+        outbox.enqueueUpsert(task(1L, 42L));
+
+        ArgumentCaptor<CalendarSyncIntent> intent = ArgumentCaptor.forClass(CalendarSyncIntent.class);
+        verify(intentRepository).save(intent.capture());
+        assertEquals(1L, intent.getValue().getTaskId());
+        assertEquals(42L, intent.getValue().getUserId());
+        assertEquals(CalendarSyncAction.UPSERT, intent.getValue().getAction());
+    }
+
+    @Test
+    void enqueueUpsertAndDelete_noCalendar_writeNothing() {
+        outbox.enqueueUpsert(task(1L, 43L));
+        outbox.enqueueDelete(task(1L, 43L));
+
+        verify(intentRepository, never()).save(any());
+    }
+
+    @Test
+    void enqueueUpserts_looksUpEachCreatorOnce_andSkipsCreatorsWithoutCalendar() {
+        outbox.enqueueUpserts(List.of(task(1L, 42L), task(2L, 43L), task(3L, 42L), task(4L, 43L)));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CalendarSyncIntent>> intents = ArgumentCaptor.forClass(List.class);
+        verify(intentRepository).saveAll(intents.capture());
+        assertEquals(List.of(1L, 3L), intents.getValue().stream().map(CalendarSyncIntent::getTaskId).toList());
+        verify(googleTokenRepository, times(1)).existsById(42L);
+        verify(googleTokenRepository, times(1)).existsById(43L);
+    }
+
+    @Test
+    void enqueueUpserts_noCreatorConnected_writesNothing() {
+        outbox.enqueueUpserts(List.of(task(2L, 43L)));
+
+        verify(intentRepository, never()).saveAll(anyList());
+    }
+}
@@ -0,0 +1,219 @@
+package ch.uzh.ifi.hase.soprafs24.service.Calendar;
+
+import ch.uzh.ifi.hase.soprafs24.constant.CalendarSyncAction;
+import ch.uzh.ifi.hase.soprafs24.entity.CalendarSyncIntent;
+import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.repository.CalendarSyncIntentRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.CalendarSyncLeaseRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarSyncWorker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CalendarSyncWorkerTest {
+
+    private static final long BACKOFF_MILLIS = 5_000L;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Mock
+    private CalendarSyncIntentRepository intentRepository;
+
+    @Mock
+    private CalendarSyncLeaseRepository leaseRepository;
+
+    @Mock
+    private TaskRepository taskRepository;
+
+    @Mock
+    private CalendarService calendarService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private CalendarSyncWorker worker;
+    private Task task;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        worker = new CalendarSyncWorker(intentRepository, leaseRepository, taskRepository, calendarService,
+                new TransactionTemplate(transactionManager), 1_000L, BACKOFF_MILLIS, MAX_ATTEMPTS, now::get);
+
+        task = new Task();
+        task.setId(7L);
+        task.setcreatorId(42L);
+        when(taskRepository.findById(7L)).thenReturn(Optional.of(task));
+        when(calendarService.isCalendarConnected(42L)).thenReturn(true);
+        when(leaseRepository.claim(anyLong(), any(Date.class), any(Date.class))).thenReturn(1);
+        when(intentRepository.existsById(anyLong())).thenReturn(true);
+    }
+
+    private CalendarSyncIntent intent(Long id, CalendarSyncAction action, int attempts) {
+        CalendarSyncIntent intent = new CalendarSyncIntent();
+        intent.setId(id);
+        intent.setTaskId(7L);
+        intent.setUserId(42L);
+        intent.setAction(action);
+        intent.setAttempts(attempts);
+        intent.setNextAttemptAt(new Date(now.get()));
+        intent.setCreatedAt(new Date(now.get()));
+        return intent;
+    }
+
+    private void due(CalendarSyncIntent... intents) {
+        when(intentRepository.findDue(any(Date.class), any(Pageable.class))).thenReturn(List.of(intents));
+    }
+
+    @Test
+    void drain_repeatedEditsOfTask_areCoalescedIntoOneCall() throws Exception {
+        due(intent(1L, CalendarSyncAction.UPSERT, 0), intent(2L, CalendarSyncAction.UPSERT, 0),
+                intent(3L, CalendarSyncAction.UPSERT, 0));
+        when(calendarService.pushTaskEvent(task, 42L)).thenReturn("event123");
+
+        assertEquals(1, worker.drain());
+
+        verify(leaseRepository, times(1)).claim(eq(7L), any(Date.class), any(Date.class));
+        verify(calendarService, times(1)).pushTaskEvent(task, 42L);
+        verify(taskRepository).updateGoogleEventId(7L, "event123");
+        verify(leaseRepository).updateGoogleEventId(7L, "event123");
+        verify(intentRepository).deleteUpTo(7L, 3L);
+        verify(leaseRepository).release(eq(7L), any(Date.class), any(Date.class));
+    }
+
+    @Test
+    void drain_firstSyncOfTask_insertsLease() throws Exception {
+        due(intent(1L, CalendarSyncAction.UPSERT, 0));
+        when(leaseRepository.claim(anyLong(), any(Date.class), any(Date.class))).thenReturn(0);
+        when(leaseRepository.insert(eq(7L), any(Date.class))).thenReturn(1);
+
+        assertEquals(1, worker.drain());
+
+        verify(calendarService).pushTaskEvent(task, 42L);
+    }
+
+    @Test
+    void drain_eventIdRecordedOnLease_isUsedForPush() throws Exception {
+        due(intent(1L, CalendarSyncAction.UPSERT, 0));
+        when(leaseRepository.findGoogleEventIdByTaskId(7L)).thenReturn("event123");
+        when(calendarService.pushTaskEvent(task, 42L)).thenReturn("event123");
+
+        worker.drain();
+
+        // the task row lost the id, the event is updated instead of created again
+        assertEquals("event123", task.getGoogleEventId());
+        verify(taskRepository).updateGoogleEventId(7L, "event123");
+    }
+
+    @Test
+    void drain_deleteAfterEdits_onlyDeletesEvent() throws Exception {
+        CalendarSyncIntent delete = intent(2L, CalendarSyncAction.DELETE, 0);
+        delete.setGoogleEventId("event123");
+        due(intent(1L, CalendarSyncAction.UPSERT, 0), delete);
+
+        worker.drain();
+
+        verify(calendarService).deleteTaskEvent("event123", 42L);
+        verify(calendarService, never()).pushTaskEvent(any(), anyLong());
+        verify(intentRepository).deleteUpTo(7L, 2L);
+        verify(leaseRepository).deleteByTaskId(7L);
+    }
+
+    @Test
+    void drain_deleteEnqueuedDuringPush_deletesEventRecordedByPush() throws Exception {
+        // the task was deleted before the push wrote back the id of the event it created
+        due(intent(2L, CalendarSyncAction.DELETE, 0));
+        when(leaseRepository.findGoogleEventIdByTaskId(7L)).thenReturn("event456");
+
+        worker.drain();
+
+        verify(calendarService).deleteTaskEvent("event456", 42L);
+        verify(intentRepository).deleteUpTo(7L, 2L);
+    }
+
+    @Test
+    void drain_taskLeasedByOtherInstance_isSkipped() throws Exception {
+        due(intent(1L, CalendarSyncAction.UPSERT, 0));
+        when(leaseRepository.claim(anyLong(), any(Date.class), any(Date.class))).thenReturn(0);
+        when(leaseRepository.insert(anyLong(), any(Date.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        assertEquals(0, worker.drain());
+
+        verify(calendarService, never()).pushTaskEvent(any(), anyLong());
+        verify(intentRepository, never()).deleteUpTo(anyLong(), anyLong());
+    }
+
+    @Test
+    void drain_intentProcessedByPreviousLeaseHolder_isSkipped() throws Exception {
+        due(intent(1L, CalendarSyncAction.UPSERT, 0));
+        when(intentRepository.existsById(1L)).thenReturn(false);
+
+        assertEquals(0, worker.drain());
+
+        verify(calendarService, never()).pushTaskEvent(any(), anyLong());
+        verify(leaseRepository).release(eq(7L), any(Date.class), any(Date.class));
+    }
+
+    @Test
+    void drain_calendarNotConnected_dropsIntent() throws Exception {
+        due(intent(1L, CalendarSyncAction.UPSERT, 0));
+        when(calendarService.isCalendarConnected(42L)).thenReturn(false);
+
+        worker.drain();
+
+        verify(calendarService, never()).pushTaskEvent(any(), anyLong());
+        verify(intentRepository).deleteUpTo(7L, 1L);
+    }
+
+    @Test
+    void drain_failure_isRetriedWithExponentialBackoff() throws Exception {
+        CalendarSyncIntent failing = intent(2L, CalendarSyncAction.UPSERT, 1);
+        due(failing);
+        when(intentRepository.findById(2L)).thenReturn(Optional.of(failing));
+        when(calendarService.pushTaskEvent(task, 42L)).thenThrow(new IOException("503 Service Unavailable"));
+
+        worker.drain();
+
+        ArgumentCaptor<CalendarSyncIntent> saved = ArgumentCaptor.forClass(CalendarSyncIntent.class);
+        verify(intentRepository).save(saved.capture());
+        assertEquals(2, saved.getValue().getAttempts());
+        // second attempt failed: twice the base backoff
+        assertEquals(now.get() + 2 * BACKOFF_MILLIS, saved.getValue().getNextAttemptAt().getTime());
+        assertEquals("503 Service Unavailable", saved.getValue().getLastError());
+        // the older intents of the task are dropped, this one is kept
+        verify(intentRepository).deleteUpTo(7L, 1L);
+        verify(intentRepository, never()).deleteUpTo(7L, 2L);
+    }
+
+    @Test
+    void drain_lastAttemptFails_givesUp() throws Exception {
+        due(intent(2L, CalendarSyncAction.UPSERT, MAX_ATTEMPTS - 1));
+        when(calendarService.pushTaskEvent(task, 42L)).thenThrow(new IOException("401 Unauthorized"));
+
+        worker.drain();
+
+        verify(intentRepository, never()).save(any());
+        verify(intentRepository).deleteUpTo(7L, 2L);
+    }
+}
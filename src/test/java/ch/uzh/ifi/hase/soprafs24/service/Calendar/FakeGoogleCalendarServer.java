@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs24.service.Calendar;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal local stand-in for the Google Calendar events API, set
+ * google.calendar.root-url to getRootUrl() to use it. Inserts return a new
+ * event id, updates and deletes succeed, every request is recorded as
+ * "METHOD path". failNextRequests makes the next requests answer 503.
+ */
+class FakeGoogleCalendarServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextEventId = new AtomicInteger(1);
+    private final AtomicInteger failures = new AtomicInteger();
+
+    FakeGoogleCalendarServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/calendar/v3/", this::handle);
+        server.start();
+    }
+
+    String getRootUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    List<String> getRequests() {
+        return requests;
+    }
+
+    void failNextRequests(int count) {
+        failures.set(count);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        requests.add(method + " " + exchange.getRequestURI().getPath());
+        exchange.getRequestBody().readAllBytes();
+        if (failures.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+            respond(exchange, 503, "{\"error\":{\"code\":503,\"message\":\"Backend Error\"}}");
+        } else if ("DELETE".equals(method)) {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        } else if ("POST".equals(method)) {
+            respond(exchange, 200, "{\"id\":\"fake-event-" + nextEventId.getAndIncrement() + "\"}");
+        } else {
+            String path = exchange.getRequestURI().getPath();
+            respond(exchange, 200, "{\"id\":\"" + path.substring(path.lastIndexOf('/') + 1) + "\"}");
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,152 @@
+package ch.uzh.ifi.hase.soprafs24.service.Task;
+
+import ch.uzh.ifi.hase.soprafs24.repository.TeamEventSequenceRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
+import ch.uzh.ifi.hase.soprafs24.service.TaskEventService;
+import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The publisher thread is not started, the tests call flush() directly.
+ */
+class TaskEventServiceTest {
+
+    private static final Long TEAM_ID = 7L;
+
+    @Mock
+    private TeamEventSequenceRepository sequenceRepository;
+
+    @Mock
+    private WebSocketNotificationService notificationService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TaskEventService taskEventService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        taskEventService = new TaskEventService(sequenceRepository, notificationService, transactionManager);
+    }
+
+    @Test
+    void publishChanges_numbersEventsConsecutively() {
+        when(sequenceRepository.increment(TEAM_ID, 2)).thenReturn(1);
+        when(sequenceRepository.findLastSequence(TEAM_ID)).thenReturn(12L);
+
+        taskEventService.publishChanges(TEAM_ID, List.of(TaskEventService.created(task(1L)), TaskEventService.deleted(2L)));
+        // queued after the commit, numbered by the publisher
+        verify(sequenceRepository, never()).increment(any(), anyLong());
+        assertEquals(2, taskEventService.flush());
+
+        InOrder inOrder = Mockito.inOrder(notificationService);
+        inOrder.verify(notificationService).notifyTeamMembers(eq(TEAM_ID), eq("TASK_CREATED"), any(TaskGetDTO.class),
+                eq(11L));
+        inOrder.verify(notificationService).notifyTeamMembers(TEAM_ID, "TASK_DELETED", Map.of("id", 2L), 12L);
+    }
+
+    @Test
+    void publishChanges_firstEventOfTeam_createsSequence() {
+        when(sequenceRepository.increment(TEAM_ID, 1)).thenReturn(0);
+
+        taskEventService.publishUpdated(TEAM_ID, task(1L));
+        taskEventService.flush();
+
+        verify(sequenceRepository).insert(TEAM_ID, 1);
+        verify(notificationService).notifyTeamMembers(eq(TEAM_ID), eq("TASK_UPDATED"), any(TaskGetDTO.class), eq(1L));
+    }
+
+    @Test
+    void publishChanges_sequenceCreatedConcurrently_incrementsExisting() {
+        when(sequenceRepository.increment(TEAM_ID, 1)).thenReturn(0, 1);
+        when(sequenceRepository.insert(TEAM_ID, 1)).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(sequenceRepository.findLastSequence(TEAM_ID)).thenReturn(2L);
+
+        taskEventService.publishUpdated(TEAM_ID, task(1L));
+        taskEventService.flush();
+
+        verify(notificationService).notifyTeamMembers(eq(TEAM_ID), eq("TASK_UPDATED"), any(TaskGetDTO.class), eq(2L));
+    }
+
+    @Test
+    void publishChanges_noEvents_reservesNothing() {
+        taskEventService.publishChanges(TEAM_ID, List.of());
+        assertEquals(0, taskEventService.flush());
+
+        verify(sequenceRepository, never()).increment(any(), anyLong());
+        verify(notificationService, never()).notifyTeamMembers(any(), any(), any(), any());
+    }
+
+    @Test
+    void publishSnapshot_readsTasksAfterReservingNumber() {
+        when(sequenceRepository.increment(TEAM_ID, 1)).thenReturn(1);
+        when(sequenceRepository.findLastSequence(TEAM_ID)).thenReturn(5L);
+        List<TaskGetDTO> tasks = List.of(task(1L), task(2L));
+
+        taskEventService.publishSnapshot(TEAM_ID, () -> {
+            // the number is already reserved when the tasks are read
+            verify(sequenceRepository, times(1)).increment(TEAM_ID, 1);
+            return tasks;
+        });
+        taskEventService.flush();
+
+        verify(notificationService).notifyTeamMembers(TEAM_ID, "TASKS", tasks, 5L);
+    }
+
+    @Test
+    void flush_queuedPublicationsOfTeam_reserveOnce() {
+        when(sequenceRepository.increment(TEAM_ID, 3)).thenReturn(1);
+        when(sequenceRepository.findLastSequence(TEAM_ID)).thenReturn(3L);
+        List<TaskGetDTO> tasks = List.of(task(1L));
+
+        taskEventService.publishUpdated(TEAM_ID, task(1L));
+        taskEventService.publishSnapshot(TEAM_ID, () -> tasks);
+        taskEventService.publishChanges(TEAM_ID, List.of(TaskEventService.deleted(1L)));
+        assertEquals(3, taskEventService.flush());
+
+        verify(sequenceRepository, times(1)).increment(any(), anyLong());
+        InOrder inOrder = Mockito.inOrder(notificationService);
+        inOrder.verify(notificationService).notifyTeamMembers(eq(TEAM_ID), eq("TASK_UPDATED"), any(TaskGetDTO.class),
+                eq(1L));
+        inOrder.verify(notificationService).notifyTeamMembers(TEAM_ID, "TASKS", tasks, 2L);
+        inOrder.verify(notificationService).notifyTeamMembers(TEAM_ID, "TASK_DELETED", Map.of("id", 1L), 3L);
+    }
+
+    @Test
+    void currentSequence_noEventsYet_returnsZero() {
+        when(sequenceRepository.findLastSequence(TEAM_ID)).thenReturn(null);
+        assertEquals(0L, taskEventService.currentSequence(TEAM_ID));
+
+        when(sequenceRepository.findLastSequence(TEAM_ID)).thenReturn(8L);
+        assertEquals(8L, taskEventService.currentSequence(TEAM_ID));
+    }
+
+    private static TaskGetDTO task(Long id) {
+        TaskGetDTO task = new TaskGetDTO();
+        task.setId(id);
+        return task;
+    }
+}
@@ -0,0 +1,172 @@
+package ch.uzh.ifi.hase.soprafs24.service.Task;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ExpiryJobStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.entity.TaskExpiryJob;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.TaskExpiryJobRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.service.TaskExpiryService;
+import ch.uzh.ifi.hase.soprafs24.service.TaskService;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TaskExpiryServiceTest {
+
+    @Mock
+    private TaskRepository taskRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private TaskExpiryJobRepository taskExpiryJobRepository;
+
+    @Mock
+    private TaskService taskService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TaskExpiryService taskExpiryService;
+
+    private TaskExpiryJob job;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        taskExpiryService = new TaskExpiryService(taskRepository, userRepository, taskExpiryJobRepository,
+                taskService, userService, transactionManager);
+
+        job = new TaskExpiryJob();
+        job.setId(1L);
+        job.setStatus(ExpiryJobStatus.RUNNING);
+        job.setCutoffDate(new Date());
+        job.setLastTaskId(0L);
+        job.setProcessedTasks(0);
+        job.setStartedAt(new Date());
+        job.setUpdatedAt(new Date());
+        when(taskExpiryJobRepository.findTaskExpiryJobById(1L)).thenReturn(job);
+    }
+
+    private Task expiredTask(Long id, Long assignee, Long teamId, int value) {
+        Task task = new Task();
+        task.setId(id);
+        task.setIsAssignedTo(assignee);
+        task.setTeamId(teamId);
+        task.setValue(value);
+        return task;
+    }
+
+    @Test
+    void processChunk_aggregatesPenaltiesPerUser() {
+        // given: two tasks of user 7 and one unclaimed task of a two-member team
+        User member1 = new User();
+        member1.setId(7L);
+        User member2 = new User();
+        member2.setId(8L);
+        List<Task> chunk = List.of(expiredTask(10L, 7L, 1L, 20), expiredTask(11L, 7L, 1L, 30),
+                expiredTask(12L, null, 1L, 10));
+        when(taskRepository.findTaskByActiveStatusAndDeadlineBeforeAndIdGreaterThanOrderByIdAsc(eq(true), any(),
+                eq(0L), any(Pageable.class))).thenReturn(chunk);
+        when(userRepository.findByTeamId(1L)).thenReturn(List.of(member1, member2));
+
+        // when
+        boolean hasMore = taskExpiryService.processChunk(1L);
+
+        // then
+        assertFalse(hasMore);
+        verify(userService, times(1)).applyExperiencePointsDeltas(Map.of(7L, -55, 8L, -5));
+        verify(taskService, times(3)).expireTask(any(Task.class));
+        assertEquals(12L, job.getLastTaskId());
+        assertEquals(3, job.getProcessedTasks());
+        assertEquals(ExpiryJobStatus.COMPLETED, job.getStatus());
+        assertNotNull(job.getFinishedAt());
+    }
+
+    @Test
+    void processChunk_fullChunk_continuesAfterLastTask() {
+        // given
+        List<Task> chunk = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            chunk.add(expiredTask(id, 7L, 1L, 1));
+        }
+        when(taskRepository.findTaskByActiveStatusAndDeadlineBeforeAndIdGreaterThanOrderByIdAsc(eq(true), any(),
+                eq(0L), any(Pageable.class))).thenReturn(chunk);
+
+        // when
+        boolean hasMore = taskExpiryService.processChunk(1L);
+
+        // then
+        assertTrue(hasMore);
+        assertEquals(100L, job.getLastTaskId());
+        assertEquals(ExpiryJobStatus.RUNNING, job.getStatus());
+        verify(userService, times(1)).applyExperiencePointsDeltas(Map.of(7L, -100));
+        verify(taskExpiryJobRepository, times(1)).save(job);
+    }
+
+    @Test
+    void processChunk_teamWithoutMembers_skipsPenalty() {
+        // given
+        when(taskRepository.findTaskByActiveStatusAndDeadlineBeforeAndIdGreaterThanOrderByIdAsc(eq(true), any(),
+                eq(0L), any(Pageable.class))).thenReturn(List.of(expiredTask(10L, null, 2L, 10)));
+        when(userRepository.findByTeamId(2L)).thenReturn(new ArrayList<>());
+
+        // when
+        taskExpiryService.processChunk(1L);
+
+        // then
+        verify(userService, times(1)).applyExperiencePointsDeltas(Map.of());
+        verify(taskService, times(1)).expireTask(any(Task.class));
+    }
+
+    @Test
+    void startExpiryJob_resumesUnfinishedJob() {
+        // given: a failed job of today that stopped after task 42
+        job.setStatus(ExpiryJobStatus.FAILED);
+        job.setLastTaskId(42L);
+        when(taskExpiryJobRepository.findFirstByCutoffDateAndStatusNotOrderByIdDesc(any(Date.class),
+                eq(ExpiryJobStatus.COMPLETED))).thenReturn(job);
+        when(taskExpiryJobRepository.saveAndFlush(job)).thenReturn(job);
+
+        // when
+        TaskExpiryJob started = taskExpiryService.startExpiryJob();
+
+        // then
+        assertEquals(1L, started.getId());
+        assertEquals(42L, started.getLastTaskId());
+        verify(taskExpiryJobRepository, times(1)).saveAndFlush(job);
+    }
+
+    @Test
+    void getJob_unknownId_throwsNotFound() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskExpiryService.getJob(99L));
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+    }
+}
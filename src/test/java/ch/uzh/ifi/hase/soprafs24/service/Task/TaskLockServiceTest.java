@@ -0,0 +1,203 @@
+package ch.uzh.ifi.hase.soprafs24.service.Task;
+
+import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskLockView;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.TaskLockChangedDTO;
+import ch.uzh.ifi.hase.soprafs24.service.TaskLockService;
+import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TaskLockServiceTest {
+
+    private static final long LEASE_MILLIS = 60_000L;
+    private static final long LEASE_SECONDS = 60L;
+    private static final Long TEAM_ID = 7L;
+
+    @Mock
+    private TaskRepository taskRepository;
+
+    @Mock
+    private WebSocketNotificationService notificationService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private TaskLockService taskLockService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        taskLockService = new TaskLockService(taskRepository, notificationService,
+                new TransactionTemplate(transactionManager), LEASE_MILLIS, now::get);
+    }
+
+    private TaskLockChangedDTO lockChanged() {
+        ArgumentCaptor<Object> event = ArgumentCaptor.forClass(Object.class);
+        verify(notificationService).notifyTeamMembers(eq(TEAM_ID), eq("LOCK_CHANGED"), event.capture());
+        return (TaskLockChangedDTO) event.getValue();
+    }
+
+    @Test
+    void lock_unlockedTask_takesLeaseAndBroadcastsLockChanged() {
+        when(taskRepository.lockIfFree(1L, 42L, LEASE_SECONDS)).thenReturn(1);
+
+        taskLockService.lock(1L, TEAM_ID, 42L);
+
+        TaskLockChangedDTO change = lockChanged();
+        assertEquals(1L, change.getTaskId());
+        assertEquals(42L, change.getLockedByUser());
+    }
+
+    @Test
+    void lock_sameUserAgain_renewsWithoutBroadcast() {
+        when(taskRepository.findLockHolderById(1L)).thenReturn(42L);
+        when(taskRepository.lockIfFree(1L, 42L, LEASE_SECONDS)).thenReturn(1);
+
+        taskLockService.lock(1L, TEAM_ID, 42L);
+
+        verify(taskRepository).lockIfFree(1L, 42L, LEASE_SECONDS);
+        verify(notificationService, never()).notifyTeamMembers(any(), any(), any());
+    }
+
+    @Test
+    void lock_heldByAnotherUser_throwsConflict() {
+        when(taskRepository.findLockHolderById(1L)).thenReturn(99L);
+        when(taskRepository.lockIfFree(1L, 42L, LEASE_SECONDS)).thenReturn(0);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskLockService.lock(1L, TEAM_ID, 42L));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        verify(notificationService, never()).notifyTeamMembers(any(), any(), any());
+    }
+
+    @Test
+    void unlock_byHolder_broadcastsUnlocked() {
+        when(taskRepository.findLockHolderById(1L)).thenReturn(42L);
+        when(taskRepository.unlockIfLockedBy(1L, 42L)).thenReturn(1);
+        when(taskRepository.findTeamIdById(1L)).thenReturn(TEAM_ID);
+
+        taskLockService.unlock(1L, 42L);
+
+        assertNull(lockChanged().getLockedByUser());
+    }
+
+    @Test
+    void unlock_notLocked_throwsBadRequest() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskLockService.unlock(1L, 42L));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verify(taskRepository, never()).unlockIfLockedBy(anyLong(), anyLong());
+        verify(notificationService, never()).notifyTeamMembers(any(), any(), any());
+    }
+
+    @Test
+    void unlock_byAnotherUser_throwsForbidden() {
+        when(taskRepository.findLockHolderById(1L)).thenReturn(42L);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskLockService.unlock(1L, 99L));
+        assertEquals(HttpStatus.FORBIDDEN, exception.getStatus());
+        verify(taskRepository, never()).unlockIfLockedBy(anyLong(), anyLong());
+    }
+
+    @Test
+    void renewAll_extendsLeasesOfUser() {
+        when(taskRepository.lockIfFree(anyLong(), eq(42L), eq(LEASE_SECONDS))).thenReturn(1);
+        taskLockService.lock(1L, TEAM_ID, 42L);
+        taskLockService.lock(2L, TEAM_ID, 42L);
+        when(taskRepository.renewLocksOfUser(42L, LEASE_SECONDS)).thenReturn(2);
+
+        assertEquals(2, taskLockService.renewAll(42L));
+        assertEquals(0, taskLockService.renewAll(null));
+    }
+
+    @Test
+    void renewAll_userWithoutLeaseOnThisInstance_writesNothing() {
+        assertEquals(0, taskLockService.renewAll(42L));
+
+        // the lease was taken and released again
+        when(taskRepository.lockIfFree(1L, 42L, LEASE_SECONDS)).thenReturn(1);
+        taskLockService.lock(1L, TEAM_ID, 42L);
+        when(taskRepository.findLockHolderById(1L)).thenReturn(42L);
+        when(taskRepository.unlockIfLockedBy(1L, 42L)).thenReturn(1);
+        taskLockService.unlock(1L, 42L);
+
+        assertEquals(0, taskLockService.renewAll(42L));
+        verify(taskRepository, never()).renewLocksOfUser(anyLong(), anyLong());
+    }
+
+    @Test
+    void renewAll_leasesLostMeanwhile_stopsRenewing() {
+        when(taskRepository.lockIfFree(1L, 42L, LEASE_SECONDS)).thenReturn(1);
+        taskLockService.lock(1L, TEAM_ID, 42L);
+        // cleared by the reaper of another instance
+        when(taskRepository.renewLocksOfUser(42L, LEASE_SECONDS)).thenReturn(0);
+
+        assertEquals(0, taskLockService.renewAll(42L));
+        assertEquals(0, taskLockService.renewAll(42L));
+
+        verify(taskRepository, times(1)).renewLocksOfUser(42L, LEASE_SECONDS);
+    }
+
+    @Test
+    void expireLeases_clearsExpiredLeasesAndBroadcasts() {
+        when(taskRepository.findExpiredLocks(any(Pageable.class)))
+                .thenReturn(List.of(new TaskLockView(1L, TEAM_ID, 42L), new TaskLockView(2L, TEAM_ID, 43L)));
+        when(taskRepository.unlockIfExpired(1L, 42L)).thenReturn(1);
+        // renewed or cleared by another instance in the meantime
+        when(taskRepository.unlockIfExpired(2L, 43L)).thenReturn(0);
+
+        assertEquals(1, taskLockService.expireLeases());
+
+        TaskLockChangedDTO change = lockChanged();
+        assertEquals(1L, change.getTaskId());
+        assertNull(change.getLockedByUser());
+    }
+
+    @Test
+    void releaseAll_releasesLocksOfUser() {
+        when(taskRepository.findLocksOfUser(42L)).thenReturn(List.of(new TaskLockView(1L, TEAM_ID, 42L)));
+        when(taskRepository.unlockIfLockedBy(1L, 42L)).thenReturn(1);
+
+        assertEquals(1, taskLockService.releaseAll(42L));
+
+        assertNull(lockChanged().getLockedByUser());
+        assertEquals(0, taskLockService.releaseAll(null));
+    }
+
+    @Test
+    void withLockHolder_dropsExpiredLease() {
+        TaskGetDTO locked = new TaskGetDTO();
+        locked.setLockedByUser(42L);
+        TaskGetDTO expired = new TaskGetDTO();
+        expired.setLockedByUser(5L);
+
+        assertEquals(42L, taskLockService.withLockHolder(locked, new Date(now.get() + 1)).getLockedByUser());
+        assertNull(taskLockService.withLockHolder(expired, new Date(now.get())).getLockedByUser());
+    }
+}
@@ -20,7 +20,16 @@ import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @WebAppConfiguration
@@ -79,7 +88,7 @@ class TaskServiceIntegrationTest {
         taskRepository.save(testTask);
 
         // When the task is claimed
-        Task claimedTask = taskService.claimTask(testTask, "valid-token");
+        Task claimedTask = taskService.claimTask(testTask.getId(), "valid-token");
 
         // Then the task is assigned to the user and color is set
         assertEquals(testUser.getId(), claimedTask.getIsAssignedTo());
@@ -101,7 +110,7 @@ class TaskServiceIntegrationTest {
         taskRepository.save(testTask);
 
         // When trying to claim the task
-        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask, "valid-token"));
+        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask.getId(), "valid-token"));
     }
 
     @Test
@@ -123,7 +132,7 @@ class TaskServiceIntegrationTest {
         taskRepository.save(testTask);
 
         // When trying to claim the task
-        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask, "valid-token"));
+        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask.getId(), "valid-token"));
     }
 
     @Test
@@ -141,7 +150,7 @@ class TaskServiceIntegrationTest {
         taskRepository.save(testTask);
 
         // When trying to claim the task with an invalid token
-        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask, "invalid-token"));
+        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask.getId(), "invalid-token"));
     }
 
     @Test
@@ -423,4 +432,68 @@ class TaskServiceIntegrationTest {
         assertEquals(HttpStatus.FORBIDDEN, exception.getStatus());
         assertEquals("You are not assigned to this task, so you cannot quit it.", exception.getReason());
     }
+
+    @Test
+    void claimTask_hundredParallelClaims_exactlyOneWinner() throws Exception {
+        int claimants = 100;
+        Task task = new Task();
+        task.setName("Contended Task");
+        task.setCreationDate(new Date());
+        task.setDeadline(new Date(System.currentTimeMillis() + 3600 * 1000));
+        task.setValue(10);
+        task.setActiveStatus(true);
+        task.setPaused(false);
+        task.setcreatorId(testUser.getId());
+        Long taskId = taskRepository.save(task).getId();
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < claimants; i++) {
+            User user = new User();
+            user.setUsername("claimant" + i);
+            user.setName("Claimant " + i);
+            user.setPassword("password");
+            user.setColor(ColorID.C2);
+            user.setXp(0);
+            user.setLevel(1);
+            user.setStatus(UserStatus.ONLINE);
+            user.setToken("claim-token-" + i);
+            user.setCreationDate(new Date());
+            users.add(user);
+        }
+        userRepository.saveAll(users);
+
+        // all claims are released at once
+        ExecutorService executor = Executors.newFixedThreadPool(claimants);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Future<Long>> results = new ArrayList<>();
+        for (User user : users) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    return taskService.claimTask(taskId, user.getToken()).getIsAssignedTo();
+                } catch (ResponseStatusException e) {
+                    if (e.getStatus() == HttpStatus.CONFLICT) {
+                        conflicts.incrementAndGet();
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+
+        List<Long> winners = new ArrayList<>();
+        for (Future<Long> result : results) {
+            Long assignee = result.get(30, TimeUnit.SECONDS);
+            if (assignee != null) {
+                winners.add(assignee);
+            }
+        }
+        executor.shutdown();
+
+        // exactly one claim succeeded, every other one got a 409
+        assertEquals(1, winners.size());
+        assertEquals(claimants - 1, conflicts.get());
+        assertEquals(winners.get(0), taskRepository.findById(taskId).orElseThrow().getIsAssignedTo());
+    }
 }
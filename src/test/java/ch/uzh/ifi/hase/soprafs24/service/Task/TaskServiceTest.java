@@ -6,9 +6,16 @@ import ch.uzh.ifi.hase.soprafs24.entity.Task;
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.TeamMembershipRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.TeamRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskClaimView;
+import ch.uzh.ifi.hase.soprafs24.repository.projection.TaskView;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
+import ch.uzh.ifi.hase.soprafs24.service.TaskEventService;
+import ch.uzh.ifi.hase.soprafs24.service.TaskLockService;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
@@ -22,15 +29,17 @@ import java.util.Comparator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarSyncOutbox;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 import java.util.Optional;
 import java.util.Calendar;
+import java.time.LocalDate;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -54,15 +63,24 @@ class TaskServiceTest {
     @Mock
     private TeamRepository teamRepository;
 
+    @Mock
+    private TeamMembershipRepository teamMembershipRepository;
+
     @Mock
     private UserService userService;
 
     @Mock
-    private CalendarService calendarService;
+    private CalendarSyncOutbox calendarSyncOutbox;
 
     @Mock
     private WebSocketNotificationService webSocketNotificationService;
 
+    @Mock
+    private TaskLockService taskLockService;
+
+    @Mock
+    private TaskEventService taskEventService;
+
     @InjectMocks
     private TaskService taskService;
 
@@ -72,6 +90,8 @@ class TaskServiceTest {
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
+        // no locks are held unless a test says so
+        when(taskLockService.withLockHolder(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
 
         // Setup test user
         testUser = new User();
@@ -90,30 +110,101 @@ class TaskServiceTest {
     @Test
     void claimTask_validInputs_success() {
         testUser.setTeamId(1L);
+        Task claimed = new Task();
+        claimed.setId(1L);
+        claimed.setName("Test Task");
+        claimed.setIsAssignedTo(42L);
+        claimed.setColor(ColorID.C1);
         // when
         Mockito.when(userRepository.findByToken("some-valid-token")).thenReturn(testUser);
         Mockito.when(userService.validateToken("some-valid-token")).thenReturn(true); // Mock validateToken
-        Mockito.when(taskRepository.save(Mockito.any(Task.class))).thenAnswer(i -> i.getArgument(0));
+        Mockito.when(taskRepository.claimIfUnassigned(1L, 42L, "testUser", ColorID.C1)).thenReturn(1);
+        Mockito.when(taskRepository.findById(1L)).thenReturn(Optional.of(claimed));
 
-        Task claimedTask = taskService.claimTask(testTask, "some-valid-token");
+        Task claimedTask = taskService.claimTask(1L, "some-valid-token");
 
-        // then
-        Mockito.verify(taskRepository, Mockito.times(1)).save(Mockito.any(Task.class));
+        // then the claim is a single conditional update, the task is not saved as an entity
+        Mockito.verify(taskRepository, Mockito.times(1)).claimIfUnassigned(1L, 42L, "testUser", ColorID.C1);
+        Mockito.verify(taskRepository, never()).save(Mockito.any(Task.class));
         assertEquals(42L, claimedTask.getIsAssignedTo());
         assertEquals(ColorID.C1, claimedTask.getColor());
     }
 
     @Test
-    void claimTask_alreadyClaimed_throwsConflictException() {
-        // given a task that is already claimed
-        testTask.setIsAssignedTo(99L); // task already assigned to another user
+    void claimTask_success_sendsOnlyTheClaimedTask() {
+        testUser.setTeamId(1L);
+        Task claimed = new Task();
+        claimed.setId(1L);
+        claimed.setTeamId(3L);
+        claimed.setName("Test Task");
+        claimed.setIsAssignedTo(42L);
+        Mockito.when(userRepository.findByToken("some-valid-token")).thenReturn(testUser);
+        Mockito.when(userService.validateToken("some-valid-token")).thenReturn(true);
+        Mockito.when(taskRepository.claimIfUnassigned(1L, 42L, "testUser", ColorID.C1)).thenReturn(1);
+        Mockito.when(taskRepository.findById(1L)).thenReturn(Optional.of(claimed));
 
-        // when
+        taskService.claimTask(1L, "some-valid-token");
+
+        // a TASK_UPDATED delta instead of the tasks of the whole team
+        ArgumentCaptor<TaskGetDTO> sent = ArgumentCaptor.forClass(TaskGetDTO.class);
+        verify(taskEventService, times(1)).publishUpdated(Mockito.eq(3L), sent.capture());
+        assertEquals(1L, sent.getValue().getId());
+        assertEquals(42L, sent.getValue().getIsAssignedTo());
+        verify(taskRepository, never()).findTaskViewsByTeamId(any());
+        verify(taskEventService, never()).publishSnapshot(any(), any());
+    }
+
+    @Test
+    void claimTask_alreadyClaimed_throwsConflictException() {
+        // given a task that is already claimed: the conditional update matches no row
         Mockito.when(userRepository.findByToken("some-valid-token")).thenReturn(testUser);
         Mockito.when(userService.validateToken("some-valid-token")).thenReturn(true);
+        Mockito.when(taskRepository.claimIfUnassigned(1L, 42L, "testUser", ColorID.C1)).thenReturn(0);
+        Mockito.when(taskRepository.findClaimViewById(1L)).thenReturn(new TaskClaimView(7L, false));
 
         // then
-        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask, "some-valid-token"));
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskService.claimTask(1L, "some-valid-token"));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        // the loser never loads the task
+        Mockito.verify(taskRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void claimTask_taskNotFound_throwsNotFoundException() {
+        Mockito.when(userRepository.findByToken("some-valid-token")).thenReturn(testUser);
+        Mockito.when(userService.validateToken("some-valid-token")).thenReturn(true);
+        Mockito.when(taskRepository.claimIfUnassigned(1L, 42L, "testUser", ColorID.C1)).thenReturn(0);
+        Mockito.when(taskRepository.findClaimViewById(1L)).thenReturn(null);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskService.claimTask(1L, "some-valid-token"));
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+    }
+
+    @Test
+    void claimTask_taskPaused_throwsForbiddenException() {
+        Mockito.when(userRepository.findByToken("some-valid-token")).thenReturn(testUser);
+        Mockito.when(userService.validateToken("some-valid-token")).thenReturn(true);
+        Mockito.when(taskRepository.claimIfUnassigned(1L, 42L, "testUser", ColorID.C1)).thenReturn(0);
+        Mockito.when(taskRepository.findClaimViewById(1L)).thenReturn(new TaskClaimView(null, true));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskService.claimTask(1L, "some-valid-token"));
+        assertEquals(HttpStatus.FORBIDDEN, exception.getStatus());
+    }
+
+    @Test
+    void claimTask_taskClaimedAndPaused_throwsConflictException() {
+        // the claim conflict wins over the pause, as before the compare-and-set claim
+        Mockito.when(userRepository.findByToken("some-valid-token")).thenReturn(testUser);
+        Mockito.when(userService.validateToken("some-valid-token")).thenReturn(true);
+        Mockito.when(taskRepository.claimIfUnassigned(1L, 42L, "testUser", ColorID.C1)).thenReturn(0);
+        Mockito.when(taskRepository.findClaimViewById(1L)).thenReturn(new TaskClaimView(7L, true));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskService.claimTask(1L, "some-valid-token"));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
     }
 
     @Test
@@ -126,7 +217,8 @@ class TaskServiceTest {
         Mockito.when(userService.validateToken("some-valid-token")).thenReturn(true); // Mock validateToken
 
         // then
-        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask, "some-valid-token"));
+        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(1L, "some-valid-token"));
+        Mockito.verify(taskRepository, never()).claimIfUnassigned(anyLong(), anyLong(), any(), any());
     }
 
     @Test
@@ -134,7 +226,7 @@ class TaskServiceTest {
         // given an invalid token
         Mockito.when(userRepository.findByToken("invalid-token")).thenReturn(null);
 
-        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(testTask, "invalid-token"));
+        assertThrows(ResponseStatusException.class, () -> taskService.claimTask(1L, "invalid-token"));
     }
 
     @Test
@@ -168,6 +260,10 @@ class TaskServiceTest {
         assertEquals(validTaskPostDTO.getDeadline(), createdTask.getDeadline());
         Mockito.verify(taskRepository, Mockito.times(1)).save(Mockito.any(Task.class)); // verifying save method is
                                                                                         // called
+        // the calendar sync is only recorded, after the task was saved
+        InOrder inOrder = Mockito.inOrder(taskRepository, calendarSyncOutbox);
+        inOrder.verify(taskRepository).save(createdTask);
+        inOrder.verify(calendarSyncOutbox).enqueueUpsert(createdTask);
     }
 
     @Test
@@ -184,6 +280,8 @@ class TaskServiceTest {
         // then
         assertThrows(ResponseStatusException.class,
                 () -> taskService.createTask(existingTask, "some-valid-token"));
+        // checked once, not again by the String overload
+        verify(taskRepository, times(1)).findTaskById(1L);
     }
 
     @Test
@@ -276,6 +374,73 @@ class TaskServiceTest {
         verify(taskRepository, Mockito.times(1)).save(task);
     }
 
+    @Test
+    void createTasks_validBatch_savesAllAtOnceAndQueuesCalendarSync() {
+        testUser.setTeamId(1L);
+        Task first = new Task();
+        first.setName("First");
+        first.setValue(10);
+        first.setDeadline(new Date(System.currentTimeMillis() + 3 * 24 * 3600 * 1000L));
+        Task second = new Task();
+        second.setName("Second");
+        second.setValue(5);
+        second.setFrequency(7);
+        List<Task> tasks = Arrays.asList(first, second);
+
+        when(userRepository.findByToken("some-valid-token")).thenReturn(testUser);
+        when(userService.validateToken("some-valid-token")).thenReturn(true);
+        when(taskRepository.saveAll(tasks)).thenReturn(tasks);
+
+        List<Task> created = taskService.createTasks(tasks, "some-valid-token");
+
+        assertEquals(2, created.size());
+        for (Task task : created) {
+            assertEquals(42L, task.getcreatorId());
+            assertEquals(1L, task.getTeamId());
+            assertTrue(task.getActiveStatus());
+            assertNotNull(task.getVisibleFrom());
+        }
+        verify(taskRepository, times(1)).saveAll(tasks);
+        verify(taskRepository, never()).save(any(Task.class));
+        // one outbox insert for the batch, Google is called by the worker after commit
+        verify(calendarSyncOutbox, times(1)).enqueueUpserts(tasks);
+        verify(calendarSyncOutbox, never()).enqueueUpsert(any(Task.class));
+    }
+
+    @Test
+    void createTasks_invalidToken_nothingSaved() {
+        when(userRepository.findByToken("invalid-token")).thenReturn(null);
+
+        List<Task> tasks = Arrays.asList(new Task(), new Task());
+        assertThrows(ResponseStatusException.class, () -> taskService.createTasks(tasks, "invalid-token"));
+        verify(taskRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void validateBatchPostDtos_emptyBatch_throwsBadRequest() {
+        List<TaskPostDTO> emptyBatch = new ArrayList<>();
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskService.validateBatchPostDtos(emptyBatch));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+    }
+
+    @Test
+    void validateBatchPostDtos_invalidTask_reportsIndex() {
+        TaskPostDTO valid = new TaskPostDTO();
+        valid.setName("Valid Task");
+        valid.setValue(10);
+        valid.setDeadline(new Date(System.currentTimeMillis() + 3600 * 1000));
+        TaskPostDTO invalid = new TaskPostDTO();
+        invalid.setName(null);
+        invalid.setDeadline(new Date(System.currentTimeMillis() + 3600 * 1000));
+
+        List<TaskPostDTO> batch = Arrays.asList(valid, invalid);
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskService.validateBatchPostDtos(batch));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        assertTrue(exception.getReason().startsWith("Task 1:"));
+    }
+
     @Test
     void validatePostDto_validInput_success() {
         // given
@@ -592,13 +757,14 @@ class TaskServiceTest {
 
         Mockito.when(taskRepository.findById(taskId)).thenReturn(Optional.of(mockTask));
 
-        Mockito.doNothing().when(calendarService).syncSingleTask(mockTask, mockTask.getcreatorId());
+        mockTask.setGoogleEventId("event123");
 
         // when
         taskService.deleteTask(taskId, 42L);
 
         // then
         Mockito.verify(taskRepository).deleteById(taskId);
+        Mockito.verify(calendarSyncOutbox).enqueueDelete(mockTask);
     }
 
     @Test
@@ -728,8 +894,8 @@ class TaskServiceTest {
         List<Task> allTasks = List.of(task1, task2, task3);
 
         // when
-        when(taskRepository.findAll()).thenReturn(allTasks);
-        List<Task> result = taskService.getFilteredTasks(null, null);
+        when(taskRepository.findTaskByTeamId(1L)).thenReturn(allTasks);
+        List<Task> result = taskService.getFilteredTasks(1L, null, null);
 
         // then
         assertEquals(3, result.size());
@@ -742,6 +908,7 @@ class TaskServiceTest {
     void getFilteredTasks_activeFilter_returnsActiveTasks() {
         // given
         Date futureDeadline = new Date(System.currentTimeMillis() + 3 * 24 * 60 * 60 * 1000); // 3 days from now
+        long today = LocalDate.now().toEpochDay();
 
         Task task1 = new Task();
         task1.setId(1L);
@@ -767,8 +934,9 @@ class TaskServiceTest {
         List<Task> allTasks = List.of(task1, task2, task3);
 
         // when
-        when(taskRepository.findAll()).thenReturn(allTasks);
-        List<Task> result = taskService.getFilteredTasks(true, null);
+        when(taskRepository.findTaskByTeamIdAndActiveStatusAndVisibleFromLessThanEqual(1L, true, today))
+                .thenReturn(List.of(task1, task2));
+        List<Task> result = taskService.getFilteredTasks(1L, true, null);
 
         // then
         assertEquals(2, result.size());
@@ -798,8 +966,8 @@ class TaskServiceTest {
         List<Task> allTasks = List.of(task1, task2, task3);
 
         // when
-        when(taskRepository.findAll()).thenReturn(allTasks);
-        List<Task> result = taskService.getFilteredTasks(null, "recurring");
+        when(taskRepository.findTaskByTeamIdAndFrequencyIsNotNull(1L)).thenReturn(List.of(task2, task3));
+        List<Task> result = taskService.getFilteredTasks(1L, null, "recurring");
 
         // then
         assertEquals(2, result.size());
@@ -812,6 +980,7 @@ class TaskServiceTest {
     void getFilteredTasks_bothFilters_returnsActiveRecurringTasks() {
         // given
         Date futureDeadline = new Date(System.currentTimeMillis() + 3 * 24 * 60 * 60 * 1000); // 3 days from now
+        long today = LocalDate.now().toEpochDay();
 
         Task task1 = new Task();
         task1.setId(1L);
@@ -848,8 +1017,9 @@ class TaskServiceTest {
         List<Task> allTasks = List.of(task1, task2, task3, task4);
 
         // when
-        when(taskRepository.findAll()).thenReturn(allTasks);
-        List<Task> result = taskService.getFilteredTasks(true, "recurring");
+        when(taskRepository.findTaskByTeamIdAndActiveStatusAndFrequencyIsNotNullAndVisibleFromLessThanEqual(1L, true,
+                today)).thenReturn(List.of(task2));
+        List<Task> result = taskService.getFilteredTasks(1L, true, "recurring");
 
         // then
         assertEquals(1, result.size());
@@ -859,6 +1029,139 @@ class TaskServiceTest {
         assertFalse(result.contains(task4));
     }
 
+    @Test
+    void getFilteredTasks_nullTeamId_throwsBadRequest() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> taskService.getFilteredTasks(null, null, null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        Mockito.verify(taskRepository, Mockito.never()).findAll();
+    }
+
+    @Test
+    void getFilteredTasks_unknownType_returnsEmptyList() {
+        List<Task> result = taskService.getFilteredTasks(1L, null, "unknown");
+
+        assertTrue(result.isEmpty());
+        Mockito.verify(taskRepository, Mockito.never()).findTaskByTeamId(Mockito.anyLong());
+    }
+
+    @Test
+    void getFilteredTaskDTOs_inactive_queriesNotYetVisibleTasksAsDTOs() {
+        long today = LocalDate.now().toEpochDay();
+        TaskView view = new TaskView(4L, 2L, null, "Later", null, new Date(), ColorID.C1, false, 10, null, 3,
+                7, null, false, null, null, null, null);
+        Mockito.when(taskRepository.findTeamTaskViews(1L, List.of(false), true, true, false, true, today + 1,
+                Long.MAX_VALUE)).thenReturn(List.of(view));
+
+        List<TaskGetDTO> result = taskService.getFilteredTaskDTOs(1L, false, null);
+
+        assertEquals(1, result.size());
+        assertEquals(4L, result.get(0).getId());
+        assertEquals("Later", result.get(0).getName());
+        assertEquals(ColorID.C1.toString(), result.get(0).getColor());
+        Mockito.verify(taskRepository, Mockito.never()).findTaskByTeamId(Mockito.anyLong());
+    }
+
+    @Test
+    void getTaskDTOsByTeamId_mapsProjectionWithoutLoadingEntities() {
+        TaskView view = new TaskView(1L, 2L, 3L, "Dishes", "desc", new Date(), null, true, 5, "evt", null, null,
+                null, false, "creator", "assignee", 3L, new Date(System.currentTimeMillis() + 60_000L));
+        Mockito.when(taskRepository.findTaskViewsByTeamId(1L)).thenReturn(List.of(view));
+
+        List<TaskGetDTO> result = taskService.getTaskDTOsByTeamId(1L);
+
+        assertEquals(1, result.size());
+        assertEquals(3L, result.get(0).getIsAssignedTo());
+        assertEquals("assignee", result.get(0).getAssigneeName());
+        assertEquals(3L, result.get(0).getLockedByUser());
+        Mockito.verify(taskRepository, Mockito.never()).findTaskByTeamId(Mockito.anyLong());
+    }
+
+    @Test
+    void getTaskSnapshot_carriesSequenceReadBeforeTasks() {
+        TaskView view = new TaskView(1L, 2L, null, "Dishes", "desc", new Date(), null, true, 5, null, null, null,
+                null, false, "creator", null, null, null);
+        Mockito.when(taskEventService.currentSequence(1L)).thenReturn(12L);
+        Mockito.when(taskRepository.findTaskViewsByTeamId(1L)).thenReturn(List.of(view));
+
+        DatabaseChangeEventDTO<List<TaskGetDTO>> snapshot = taskService.getTaskSnapshot(1L);
+
+        assertEquals("TASKS", snapshot.getEntityType());
+        assertEquals(12L, snapshot.getSequence());
+        assertEquals(1, snapshot.getPayload().size());
+        InOrder inOrder = Mockito.inOrder(taskEventService, taskRepository);
+        inOrder.verify(taskEventService).currentSequence(1L);
+        inOrder.verify(taskRepository).findTaskViewsByTeamId(1L);
+    }
+
+    @Test
+    void getUnclaimedTasks_queriesVisibleUnassignedTasksOfTeam() {
+        Task task = new Task();
+        task.setId(1L);
+        long today = LocalDate.now().toEpochDay();
+
+        when(taskRepository.findTaskByTeamIdAndActiveStatusAndIsAssignedToIsNullAndVisibleFromLessThanEqual(1L, true,
+                today)).thenReturn(List.of(task));
+
+        List<Task> result = taskService.getUnclaimedTasks(1L);
+
+        assertEquals(List.of(task), result);
+    }
+
+    @Test
+    void updateVisibleFrom_setsDeadlineMinusDaysVisiblePlusOne() {
+        Task task = new Task();
+        task.setDeadline(new Date(System.currentTimeMillis() + 3L * 24 * 60 * 60 * 1000)); // 3 days from now
+        task.setDaysVisible(2);
+
+        taskService.updateVisibleFrom(task);
+
+        assertEquals(LocalDate.now().plusDays(2).toEpochDay(), task.getVisibleFrom());
+        assertFalse(taskService.isTaskVisibleOrFinishable(task));
+    }
+
+    @Test
+    void isTaskVisibleOrFinishable_usesPersistedVisibleFrom() {
+        Task task = new Task();
+        task.setVisibleFrom(LocalDate.now().toEpochDay());
+
+        assertTrue(taskService.isTaskVisibleOrFinishable(task));
+
+        task.setVisibleFrom(LocalDate.now().plusDays(1).toEpochDay());
+        assertFalse(taskService.isTaskVisibleOrFinishable(task));
+    }
+
+    @Test
+    void expireTask_additionalTask_movesDeadlineAndUnassigns() {
+        Date oldDeadline = new Date(System.currentTimeMillis() - 24L * 60 * 60 * 1000); // yesterday
+        Task task = new Task();
+        task.setDeadline(oldDeadline);
+        task.setDaysVisible(3);
+        task.setIsAssignedTo(7L);
+        task.setLuckyDraw(true);
+
+        taskService.expireTask(task);
+
+        assertEquals(oldDeadline, task.getStartDate());
+        assertEquals(LocalDate.now().plusDays(1).toEpochDay(), task.getVisibleFrom());
+        assertNull(task.getIsAssignedTo());
+        assertFalse(task.getLuckyDraw());
+        verify(taskRepository, times(1)).save(task);
+    }
+
+    @Test
+    void calculateDeadlineOnExpire_updatesVisibleFrom() {
+        Task task = new Task();
+        task.setFrequency(7);
+        task.setDaysVisible(3);
+        task.setDeadline(new Date());
+
+        taskService.calculateDeadlineOnExpire(task);
+
+        assertEquals(LocalDate.now().plusDays(7 - 3 + 1).toEpochDay(), task.getVisibleFrom());
+    }
+
     @Test
     void validateRecurringPostDto_validInput_success() {
         // given
@@ -1201,27 +1504,17 @@ class TaskServiceTest {
     @Test
     void pauseAllTasksInTeam_allTasksPaused_success() {
         // given
-        Task task1 = new Task();
-        task1.setId(1L);
-        task1.setPaused(false);
-
-        Task task2 = new Task();
-        task2.setId(2L);
-        task2.setPaused(false);
-
-        List<Task> tasks = List.of(task1, task2);
+        Long teamId = 1L;
+        when(taskRepository.pauseAllTasksOfTeam(Mockito.eq(teamId), any(Date.class))).thenReturn(2);
 
         // when
-        when(taskRepository.findAll()).thenReturn(tasks);
-
-        taskService.pauseAllTasksInTeam();
+        taskService.pauseAllTasksInTeam(teamId);
 
         // then
-        assertTrue(task1.isPaused());
-        assertNotNull(task1.getPausedDate());
-        assertTrue(task2.isPaused());
-        assertNotNull(task2.getPausedDate());
-        verify(taskRepository, times(1)).saveAll(tasks);
+        verify(taskRepository, times(1)).pauseAllTasksOfTeam(Mockito.eq(teamId), any(Date.class));
+        verify(taskRepository, never()).findAll();
+        verify(taskRepository, never()).saveAll(Mockito.anyList());
+        verify(taskEventService, times(1)).publishSnapshot(Mockito.eq(teamId), any());
     }
 
     @Test
@@ -1233,7 +1526,7 @@ class TaskServiceTest {
         Team team = new Team();
         team.setId(teamId);
         List<Long> memberIds = List.of(1L, 2L, 3L);
-        team.setMembers(memberIds);
+        when(teamMembershipRepository.findUserIdsByTeamId(teamId)).thenReturn(memberIds);
 
         // Setup team members
         User user1 = new User();
@@ -1297,10 +1590,10 @@ class TaskServiceTest {
         when(userRepository.findAllById(memberIds)).thenReturn(users);
         when(taskRepository.findAll()).thenReturn(allTasks);
 
-        // For the getFilteredTasks internal method call
-        // Create a spy to intercept the getFilteredTasks call within the method
+        // For the getUnclaimedTasks internal method call
+        // Create a spy to intercept the getUnclaimedTasks call within the method
         TaskService spyTaskService = spy(taskService);
-        doReturn(allTasks).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(allTasks).when(spyTaskService).getUnclaimedTasks(teamId);
 
         // Mock notification service
         doNothing().when(webSocketNotificationService).notifyTeamMembers(anyLong(), anyString(), any());
@@ -1336,7 +1629,7 @@ class TaskServiceTest {
         Team team = new Team();
         team.setId(teamId);
         List<Long> memberIds = List.of(1L, 2L);
-        team.setMembers(memberIds);
+        when(teamMembershipRepository.findUserIdsByTeamId(teamId)).thenReturn(memberIds);
 
         // Setup team members
         User user1 = new User();
@@ -1369,7 +1662,7 @@ class TaskServiceTest {
         when(userRepository.findAllById(memberIds)).thenReturn(users);
 
         TaskService spyTaskService = spy(taskService);
-        doReturn(unclaimedTasks).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(unclaimedTasks).when(spyTaskService).getUnclaimedTasks(teamId);
 
         doNothing().when(webSocketNotificationService).notifyTeamMembers(anyLong(), anyString(), any());
 
@@ -1421,7 +1714,7 @@ class TaskServiceTest {
         // Setup team
         Team team = new Team();
         team.setId(teamId);
-        team.setMembers(List.of()); // Empty member list
+        when(teamMembershipRepository.findUserIdsByTeamId(teamId)).thenReturn(List.of()); // Empty member list
 
         // when
         when(teamRepository.findTeamById(teamId)).thenReturn(team);
@@ -1443,7 +1736,7 @@ class TaskServiceTest {
         Team team = new Team();
         team.setId(teamId);
         List<Long> memberIds = List.of(1L, 2L);
-        team.setMembers(memberIds);
+        when(teamMembershipRepository.findUserIdsByTeamId(teamId)).thenReturn(memberIds);
 
         // Setup team members
         User user1 = new User();
@@ -1474,7 +1767,7 @@ class TaskServiceTest {
         when(userRepository.findAllById(memberIds)).thenReturn(users);
 
         TaskService spyTaskService = spy(taskService);
-        doReturn(allTasks).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(allTasks).when(spyTaskService).getUnclaimedTasks(teamId);
 
         List<Task> result = spyTaskService.autodistributeTasks(teamId);
 
@@ -1495,7 +1788,7 @@ class TaskServiceTest {
         Team team = new Team();
         team.setId(teamId);
         List<Long> memberIds = List.of(1L, 2L);
-        team.setMembers(memberIds);
+        when(teamMembershipRepository.findUserIdsByTeamId(teamId)).thenReturn(memberIds);
 
         // Setup team members
         User user1 = new User();
@@ -1542,7 +1835,7 @@ class TaskServiceTest {
         when(userRepository.findAllById(memberIds)).thenReturn(users);
 
         TaskService spyTaskService = spy(taskService);
-        doReturn(allTasks).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(allTasks).when(spyTaskService).getUnclaimedTasks(teamId);
 
         doNothing().when(webSocketNotificationService).notifyTeamMembers(anyLong(), anyString(), any());
 
@@ -1569,7 +1862,7 @@ class TaskServiceTest {
         Team team = new Team();
         team.setId(teamId);
         List<Long> memberIds = List.of(1L, 2L);
-        team.setMembers(memberIds);
+        when(teamMembershipRepository.findUserIdsByTeamId(teamId)).thenReturn(memberIds);
 
         // Setup team members
         User user1 = new User();
@@ -1602,7 +1895,7 @@ class TaskServiceTest {
         when(userRepository.findAllById(memberIds)).thenReturn(users);
 
         TaskService spyTaskService = spy(taskService);
-        doReturn(unclaimedTasks).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(unclaimedTasks).when(spyTaskService).getUnclaimedTasks(teamId);
 
         doNothing().when(webSocketNotificationService).notifyTeamMembers(anyLong(), anyString(), any());
 
@@ -1640,7 +1933,7 @@ class TaskServiceTest {
         Team team = new Team();
         team.setId(teamId);
         List<Long> memberIds = List.of(1L, 2L, 3L);
-        team.setMembers(memberIds);
+        when(teamMembershipRepository.findUserIdsByTeamId(teamId)).thenReturn(memberIds);
 
         // Setup team members
         User user1 = new User();
@@ -1693,9 +1986,9 @@ class TaskServiceTest {
         when(teamRepository.findTeamById(teamId)).thenReturn(team);
         when(userRepository.findAllById(memberIds)).thenReturn(users);
 
-        // For the getFilteredTasks internal method call
+        // For the getUnclaimedTasks internal method call
         TaskService spyTaskService = spy(taskService);
-        doReturn(allTasks).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(allTasks).when(spyTaskService).getUnclaimedTasks(teamId);
 
         List<Task> result = spyTaskService.luckyDrawTasks(teamId);
 
@@ -1744,7 +2037,7 @@ class TaskServiceTest {
 
         // when
         TaskService spyTaskService = spy(taskService);
-        doReturn(emptyTaskList).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(emptyTaskList).when(spyTaskService).getUnclaimedTasks(teamId);
 
         List<Task> result = spyTaskService.luckyDrawTasks(teamId);
 
@@ -1759,7 +2052,7 @@ class TaskServiceTest {
 
         // when
         TaskService spyTaskService = spy(taskService);
-        doReturn(null).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(null).when(spyTaskService).getUnclaimedTasks(teamId);
 
         List<Task> result = spyTaskService.luckyDrawTasks(teamId);
 
@@ -1791,7 +2084,7 @@ class TaskServiceTest {
 
         // when
         TaskService spyTaskService = spy(taskService);
-        doReturn(allTasks).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(allTasks).when(spyTaskService).getUnclaimedTasks(teamId);
 
         List<Task> result = spyTaskService.luckyDrawTasks(teamId);
 
@@ -1826,7 +2119,7 @@ class TaskServiceTest {
 
         // when
         TaskService spyTaskService = spy(taskService);
-        doReturn(allTasks).when(spyTaskService).getFilteredTasks(true, null);
+        doReturn(allTasks).when(spyTaskService).getUnclaimedTasks(teamId);
 
         List<Task> result = spyTaskService.luckyDrawTasks(teamId);
 
@@ -1838,66 +2131,35 @@ class TaskServiceTest {
     }
 
     @Test
-    void unlockAllTasksForUser_unlocksAllLockedTasks_success() {
+    void unlockAllTasksForUser_releasesLocksInMemory() {
         // given
         Long userId = 42L;
-        Task lockedTask1 = new Task();
-        lockedTask1.setId(1L);
-        lockedTask1.setName("Locked Task 1");
-        lockedTask1.setLockedByUser(userId);
-
-        Task lockedTask2 = new Task();
-        lockedTask2.setId(2L);
-        lockedTask2.setName("Locked Task 2");
-        lockedTask2.setLockedByUser(userId);
-
-        Task unlockedTask = new Task();
-        unlockedTask.setId(3L);
-        unlockedTask.setName("Unlocked Task");
-        unlockedTask.setLockedByUser(null);
-
-        List<Task> allTasks = List.of(lockedTask1, lockedTask2, unlockedTask);
-
-        when(taskRepository.findAll()).thenReturn(allTasks);
-        when(taskRepository.save(any(Task.class))).thenAnswer(i -> i.getArgument(0));
 
         // when
         taskService.unlockAllTasksForUser(userId);
 
-        // then
-        assertNull(lockedTask1.getLockedByUser());
-        assertNull(lockedTask2.getLockedByUser());
-        assertNull(unlockedTask.getLockedByUser()); // should remain null
-        verify(taskRepository, times(1)).save(lockedTask1);
-        verify(taskRepository, times(1)).save(lockedTask2);
-        verify(taskRepository, never()).save(unlockedTask);
+        // then the lock table is asked, the database is not touched
+        verify(taskLockService, times(1)).releaseAll(userId);
+        verify(taskRepository, never()).save(any(Task.class));
+        verify(taskRepository, never()).findAll();
     }
 
     @Test
-    void unlockAllTasksForUser_noTasksLocked_nothingHappens() {
-        // given
-        Long userId = 42L;
-        Task task1 = new Task();
-        task1.setId(1L);
-        task1.setName("Task 1");
-        task1.setLockedByUser(null);
-
-        Task task2 = new Task();
-        task2.setId(2L);
-        task2.setName("Task 2");
-        task2.setLockedByUser(99L); // locked by another user
-
-        List<Task> allTasks = List.of(task1, task2);
+    void getTasksAssignedToUser_usesAssigneeQuery() {
+        Task task = new Task();
+        when(taskRepository.findTaskByIsAssignedTo(42L)).thenReturn(List.of(task));
 
-        when(taskRepository.findAll()).thenReturn(allTasks);
+        assertEquals(List.of(task), taskService.getTasksAssignedToUser(42L));
+        verify(taskRepository, never()).findAll();
+    }
 
-        // when
-        taskService.unlockAllTasksForUser(userId);
+    @Test
+    void getTasksCreatedByUser_usesCreatorQuery() {
+        Task task = new Task();
+        when(taskRepository.findTaskByCreatorId(42L)).thenReturn(List.of(task));
 
-        // then
-        verify(taskRepository, never()).save(any(Task.class));
-        assertNull(task1.getLockedByUser());
-        assertEquals(99L, task2.getLockedByUser());
+        assertEquals(List.of(task), taskService.getTasksCreatedByUser(42L));
+        verify(taskRepository, never()).findAll();
     }
 
     @Test
@@ -1905,34 +2167,14 @@ class TaskServiceTest {
         // given
         Long taskId = 1L;
         Long userId = 42L;
-        Task lockedTask = new Task();
-        lockedTask.setId(taskId);
-        lockedTask.setLockedByUser(userId);
-
-        when(taskRepository.findById(taskId)).thenReturn(Optional.of(lockedTask));
-        when(taskRepository.save(any(Task.class))).thenAnswer(i -> i.getArgument(0));
 
         // when
-        Task result = taskService.unlockTask(taskId, userId);
-
-        // then
-        assertNull(result.getLockedByUser());
-        verify(taskRepository).findById(taskId);
-        verify(taskRepository).save(lockedTask);
-    }
+        taskService.unlockTask(taskId, userId);
 
-    @Test
-    void unlockTask_throwsNotFound_whenTaskDoesNotExist() {
-        // given
-        Long taskId = 99L;
-        Long userId = 42L;
-        when(taskRepository.findById(taskId)).thenReturn(Optional.empty());
-
-        // when & then
-        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> taskService.unlockTask(taskId, userId));
-        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
-        assertTrue(exception.getReason().contains("Task not found"));
+        // then the lock is released in memory, the task is not loaded
+        verify(taskLockService).unlock(taskId, userId);
+        verify(taskRepository, never()).findById(anyLong());
+        verify(taskRepository, never()).save(any(Task.class));
     }
 
     @Test
@@ -1940,11 +2182,8 @@ class TaskServiceTest {
         // given
         Long taskId = 1L;
         Long userId = 42L;
-        Task unlockedTask = new Task();
-        unlockedTask.setId(taskId);
-        unlockedTask.setLockedByUser(null);
-
-        when(taskRepository.findById(taskId)).thenReturn(Optional.of(unlockedTask));
+        Mockito.doThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Task is not currently locked."))
+                .when(taskLockService).unlock(taskId, userId);
 
         // when & then
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -1953,65 +2192,20 @@ class TaskServiceTest {
         assertEquals("Task is not currently locked.", exception.getReason());
     }
 
-    @Test
-    void unlockTask_throwsForbidden_whenLockedByAnotherUser() {
-        // given
-        Long taskId = 1L;
-        Long userId = 42L;
-        Long anotherUserId = 99L;
-        Task lockedTask = new Task();
-        lockedTask.setId(taskId);
-        lockedTask.setLockedByUser(anotherUserId);
-
-        when(taskRepository.findById(taskId)).thenReturn(Optional.of(lockedTask));
-
-        // when & then
-        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
-                () -> taskService.unlockTask(taskId, userId));
-        assertEquals(HttpStatus.FORBIDDEN, exception.getStatus());
-        assertEquals("You are not the user who locked this task.", exception.getReason());
-    }
-
     @Test
     void lockTask_success_whenNotLocked() {
         // given
         Long taskId = 1L;
         Long userId = 42L;
-        Task task = new Task();
-        task.setId(taskId);
-        task.setLockedByUser(null);
-
-        when(taskRepository.findById(taskId)).thenReturn(Optional.of(task));
-        when(taskRepository.save(any(Task.class))).thenAnswer(i -> i.getArgument(0));
-
-        // when
-        Task result = taskService.lockTask(taskId, userId);
-
-        // then
-        assertEquals(userId, result.getLockedByUser());
-        verify(taskRepository).findById(taskId);
-        verify(taskRepository).save(task);
-    }
-
-    @Test
-    void lockTask_success_whenAlreadyLockedBySameUser() {
-        // given
-        Long taskId = 1L;
-        Long userId = 42L;
-        Task task = new Task();
-        task.setId(taskId);
-        task.setLockedByUser(userId);
-
-        when(taskRepository.findById(taskId)).thenReturn(Optional.of(task));
-        when(taskRepository.save(any(Task.class))).thenAnswer(i -> i.getArgument(0));
+        when(taskRepository.findTeamIdById(taskId)).thenReturn(7L);
 
         // when
-        Task result = taskService.lockTask(taskId, userId);
+        taskService.lockTask(taskId, userId);
 
-        // then
-        assertEquals(userId, result.getLockedByUser());
-        verify(taskRepository).findById(taskId);
-        verify(taskRepository).save(task);
+        // then only the team id is read, the task is not loaded or saved
+        verify(taskLockService).lock(taskId, 7L, userId);
+        verify(taskRepository, never()).findById(anyLong());
+        verify(taskRepository, never()).save(any(Task.class));
     }
 
     @Test
@@ -2019,19 +2213,15 @@ class TaskServiceTest {
         // given
         Long taskId = 1L;
         Long userId = 42L;
-        Long anotherUserId = 99L;
-        Task task = new Task();
-        task.setId(taskId);
-        task.setLockedByUser(anotherUserId);
-
-        when(taskRepository.findById(taskId)).thenReturn(Optional.of(task));
+        when(taskRepository.findTeamIdById(taskId)).thenReturn(7L);
+        Mockito.doThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Task is already locked by another user."))
+                .when(taskLockService).lock(taskId, 7L, userId);
 
         // when & then
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
                 () -> taskService.lockTask(taskId, userId));
         assertEquals(HttpStatus.CONFLICT, exception.getStatus());
         assertEquals("Task is already locked by another user.", exception.getReason());
-        verify(taskRepository).findById(taskId);
         verify(taskRepository, never()).save(any(Task.class));
     }
 
@@ -2040,22 +2230,29 @@ class TaskServiceTest {
         // given
         Long taskId = 123L;
         Long userId = 42L;
-        when(taskRepository.findById(taskId)).thenReturn(Optional.empty());
+        when(taskRepository.findTeamIdById(taskId)).thenReturn(null);
+        when(taskRepository.existsById(taskId)).thenReturn(false);
 
         // when & then
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
                 () -> taskService.lockTask(taskId, userId));
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
         assertEquals("Task not found with ID: " + taskId, exception.getReason());
-        verify(taskRepository).findById(taskId);
-        verify(taskRepository, never()).save(any(Task.class));
+        verify(taskLockService, never()).lock(any(), any(), any());
+    }
+
+    @Test
+    void renewTaskLocks_renewsLeasesOfUser() {
+        taskService.renewTaskLocks(42L);
+
+        verify(taskLockService).renewAll(42L);
     }
 
     @Test
     void checkLockedByUser_taskNotLocked_doesNotThrow() {
         Task task = new Task();
         task.setId(1L);
-        task.setLockedByUser(null);
+        when(taskLockService.getLockHolder(1L)).thenReturn(null);
 
         assertDoesNotThrow(() -> taskService.checkLockedByUser(task, 42L));
     }
@@ -2064,7 +2261,7 @@ class TaskServiceTest {
     void checkLockedByUser_taskLockedByCurrentUser_doesNotThrow() {
         Task task = new Task();
         task.setId(1L);
-        task.setLockedByUser(42L);
+        when(taskLockService.getLockHolder(1L)).thenReturn(42L);
 
         assertDoesNotThrow(() -> taskService.checkLockedByUser(task, 42L));
     }
@@ -2073,7 +2270,7 @@ class TaskServiceTest {
     void checkLockedByUser_taskLockedByAnotherUser_throwsBadRequest() {
         Task task = new Task();
         task.setId(1L);
-        task.setLockedByUser(99L);
+        when(taskLockService.getLockHolder(1L)).thenReturn(99L);
 
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
                 () -> taskService.checkLockedByUser(task, 42L));
@@ -2082,51 +2279,33 @@ class TaskServiceTest {
     }
 
     @Test
-    void unpauseAllTasksInTeam_updatesAllTasksAndSaves() {
+    void unpauseAllTasksInTeam_shiftsDeadlinesByPausedDays() {
         // given
-        Task task1 = new Task();
-        task1.setId(1L);
-        task1.setName("Task 1");
-        task1.setPaused(true);
-        task1.setDeadline(new Date(System.currentTimeMillis() + 1000000));
-        task1.setPausedDate(new Date(System.currentTimeMillis() - 1000000));
-        task1.setCreationDate(new Date(System.currentTimeMillis() - 2000000));
-
-        Task task2 = new Task();
-        task2.setId(2L);
-        task2.setName("Task 2");
-        task2.setPaused(true);
-        task2.setDeadline(new Date(System.currentTimeMillis() + 2000000));
-        task2.setPausedDate(new Date(System.currentTimeMillis() - 2000000));
-        task2.setCreationDate(new Date(System.currentTimeMillis() - 3000000));
-
-        List<Task> tasks = Arrays.asList(task1, task2);
-
-        when(taskRepository.findAll()).thenReturn(tasks);
-        when(taskRepository.saveAll(Mockito.anyList())).thenReturn(tasks);
+        Long teamId = 1L;
+        Date pausedDate = new Date(System.currentTimeMillis() - 36L * 60 * 60 * 1000); // 1.5 days ago
+        when(taskRepository.findPausedDatesOfTeam(teamId)).thenReturn(List.of(pausedDate));
 
         // when
-        taskService.unpauseAllTasksInTeam();
+        taskService.unpauseAllTasksInTeam(teamId);
 
         // then
-        assertFalse(task1.isPaused());
-        assertFalse(task2.isPaused());
-        assertNotNull(task1.getUnpausedDate());
-        assertNotNull(task2.getUnpausedDate());
-        verify(taskRepository, times(1)).saveAll(tasks);
+        verify(taskRepository, times(1)).shiftPausedTasksOfTeam(teamId, pausedDate, 2); // rounded up
+        verify(taskRepository, times(1)).unpauseAllTasksOfTeam(Mockito.eq(teamId), any(Date.class));
+        verify(taskRepository, never()).saveAll(Mockito.anyList());
+        verify(taskEventService, times(1)).publishSnapshot(Mockito.eq(teamId), any());
     }
 
     @Test
     void unpauseAllTasksInTeam_handlesEmptyTaskList() {
         // given
-        when(taskRepository.findAll()).thenReturn(List.of());
-        when(taskRepository.saveAll(Mockito.anyList())).thenReturn(List.of());
+        when(taskRepository.findPausedDatesOfTeam(1L)).thenReturn(List.of());
 
         // when
-        taskService.unpauseAllTasksInTeam();
+        taskService.unpauseAllTasksInTeam(1L);
 
         // then
-        verify(taskRepository, times(1)).saveAll(List.of());
+        verify(taskRepository, never()).shiftPausedTasksOfTeam(any(), any(), Mockito.anyInt());
+        verify(taskRepository, times(1)).unpauseAllTasksOfTeam(Mockito.eq(1L), any(Date.class));
     }
 
     @Test
@@ -2145,14 +2324,13 @@ class TaskServiceTest {
         Long userId = 42L;
 
         // when
-        Mockito.doNothing().when(calendarService).syncSingleTask(existingTask, existingTask.getcreatorId());
         Mockito.when(taskRepository.save(existingTask)).thenReturn(existingTask);
 
         Task updatedTask = taskService.updateTask(existingTask, updateDTO, userId);
 
         // then
         assertEquals("Updated Task", updatedTask.getName());
-        Mockito.verify(calendarService).syncSingleTask(existingTask, existingTask.getcreatorId());
+        Mockito.verify(calendarSyncOutbox).enqueueUpsert(existingTask);
         Mockito.verify(taskRepository).save(existingTask);
         Mockito.verify(taskRepository).flush();
     }
@@ -2164,7 +2342,7 @@ class TaskServiceTest {
         existingTask.setId(1L);
         existingTask.setName("Old Task");
         existingTask.setcreatorId(42L);
-        existingTask.setLockedByUser(99L); // locked by someone else
+        when(taskLockService.getLockHolder(1L)).thenReturn(99L); // locked by someone else
 
         Task updateDTO = new Task();
         updateDTO.setName("Updated Task");
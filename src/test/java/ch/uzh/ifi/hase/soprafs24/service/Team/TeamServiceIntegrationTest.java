@@ -2,7 +2,9 @@ package ch.uzh.ifi.hase.soprafs24.service.Team;
 
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
+import ch.uzh.ifi.hase.soprafs24.entity.TeamMembership;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.TeamMembershipRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.TeamRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
@@ -20,7 +22,6 @@ import org.springframework.web.server.ResponseStatusException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -41,6 +42,10 @@ class TeamServiceIntegrationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Qualifier("teamMembershipRepository")
+    @Autowired
+    private TeamMembershipRepository teamMembershipRepository;
+
     @Autowired
     private TeamService teamService;
 
@@ -52,6 +57,7 @@ class TeamServiceIntegrationTest {
 
     @BeforeEach
     void setup() {
+        teamMembershipRepository.deleteAll();
         userRepository.deleteAll();
         teamRepository.deleteAll();
 
@@ -79,9 +85,7 @@ class TeamServiceIntegrationTest {
         teamRepository.save(testTeam);
 
         // Add user to the team
-        testTeam.setMembers(new ArrayList<>());
-        testTeam.getMembers().add(testUser.getId());
-        teamRepository.save(testTeam);
+        teamMembershipRepository.save(new TeamMembership(testTeam.getId(), testUser.getId()));
     }
 
 
@@ -179,7 +183,8 @@ class TeamServiceIntegrationTest {
         userRepository.save(testUser);
 
         // Assert: Ensure the user is initially in the team
-        assertTrue(testTeam.getMembers().contains(testUser.getId()), "User should initially be in the team");
+        assertTrue(teamMembershipRepository.existsByTeamIdAndUserId(testTeam.getId(), testUser.getId()),
+                "User should initially be in the team");
 
         // Act: User quits the team
         teamService.quitTeam(testUser.getId(), testTeam.getId());
@@ -196,16 +201,17 @@ class TeamServiceIntegrationTest {
             assertTrue(true, "Team was deleted because it had no members left");
         } else {
             // Assert: Team still exists and the user was removed from the members list
-            assertFalse(updatedTeam.getMembers().contains(testUser.getId()), "User should be removed from team members");
+            assertFalse(teamMembershipRepository.existsByTeamIdAndUserId(testTeam.getId(), testUser.getId()),
+                    "User should be removed from team members");
         }
+        assertEquals(0, teamMembershipRepository.countByTeamId(testTeam.getId()));
     }
 
 
 
     @Test
     void quitTeam_userNotInTeam_throwsException() {
-        testTeam.setMembers(new ArrayList<>());
-        teamRepository.save(testTeam);
+        teamMembershipRepository.deleteAll();
 
         assertThrows(ResponseStatusException.class, () -> teamService.quitTeam(testUser.getId(), testTeam.getId()));
     }
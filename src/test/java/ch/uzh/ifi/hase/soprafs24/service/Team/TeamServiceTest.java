@@ -1,10 +1,16 @@
 package ch.uzh.ifi.hase.soprafs24.service.Team;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.entity.TeamMembership;
+import ch.uzh.ifi.hase.soprafs24.repository.TeamMembershipRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.TeamRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
 import ch.uzh.ifi.hase.soprafs24.service.TeamService;
+import ch.uzh.ifi.hase.soprafs24.service.TeamStateCache;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
 import ch.uzh.ifi.hase.soprafs24.websocket.SocketHandler;
@@ -15,6 +21,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,6 +35,9 @@ class TeamServiceTest {
     @Mock
     private TeamRepository teamRepository;
 
+    @Mock
+    private TeamMembershipRepository teamMembershipRepository;
+
     @Mock
     private UserRepository userRepository;
 
@@ -42,6 +53,9 @@ class TeamServiceTest {
     @Mock
     private WebSocketNotificationService webSocketNotificationService;
 
+    @Spy
+    private TeamStateCache teamStateCache = new TeamStateCache(5_000L);
+
     @InjectMocks
     private TeamService teamService;
 
@@ -61,7 +75,9 @@ class TeamServiceTest {
 
         List<Long> members = new ArrayList<>();
         members.add(1L);
-        testTeam.setMembers(members);
+        Mockito.when(teamMembershipRepository.findUserIdsByTeamId(1L)).thenReturn(members);
+        Mockito.when(teamMembershipRepository.existsByTeamIdAndUserId(1L, 1L)).thenReturn(true);
+        Mockito.when(teamMembershipRepository.countByTeamId(1L)).thenReturn((long) members.size());
 
         testUser = new User();
         testUser.setId(1L);
@@ -71,6 +87,8 @@ class TeamServiceTest {
 
         Mockito.when(teamRepository.save(Mockito.any())).thenReturn(testTeam);
         Mockito.when(teamRepository.findTeamById(Mockito.anyLong())).thenReturn(testTeam);
+        Mockito.when(teamRepository.findIsPausedById(Mockito.anyLong()))
+                .thenAnswer(invocation -> Boolean.TRUE.equals(testTeam.getIsPaused()));
         Mockito.when(userRepository.findById(Mockito.anyLong())).thenReturn(java.util.Optional.of(testUser));
         Mockito.when(userService.getUserById(Mockito.anyLong())).thenReturn(testUser);
     }
@@ -115,6 +133,22 @@ class TeamServiceTest {
         teamService.joinTeam(testUser.getId(), "ABC123");
 
         Mockito.verify(teamRepository, Mockito.times(1)).findByCode(Mockito.anyString());
+        Mockito.verify(teamMembershipRepository, Mockito.times(1)).save(Mockito.any(TeamMembership.class));
+        Mockito.verify(teamRepository, Mockito.never()).save(Mockito.any());
+        assertEquals(testTeam.getId(), testUser.getTeamId());
+    }
+
+    @Test
+    void joinTeam_teamFull_throwsConflict() {
+        testUser.setTeamId(null);
+
+        Mockito.when(teamRepository.findByCode(Mockito.anyString())).thenReturn(testTeam);
+        Mockito.when(teamMembershipRepository.countByTeamId(1L)).thenReturn((long) ColorID.values().length);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> teamService.joinTeam(testUser.getId(), "ABC123"));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        Mockito.verify(teamMembershipRepository, Mockito.never()).save(Mockito.any(TeamMembership.class));
     }
 
     @Test
@@ -158,20 +192,55 @@ class TeamServiceTest {
         Mockito.when(taskService.getTasksAssignedToUser(Mockito.anyLong())).thenReturn(new ArrayList<>());
         Mockito.when(taskService.getTasksCreatedByUser(Mockito.anyLong())).thenReturn(new ArrayList<>());
 
+        Mockito.when(teamMembershipRepository.countByTeamId(1L)).thenReturn(1L);
+
         teamService.quitTeam(testUser.getId(), testTeam.getId());
 
-        Mockito.verify(teamRepository, Mockito.times(1)).save(Mockito.any());
+        Mockito.verify(teamMembershipRepository, Mockito.times(1)).deleteByTeamIdAndUserId(1L, 1L);
+        Mockito.verify(teamRepository, Mockito.never()).delete(Mockito.any());
+        assertNull(testUser.getTeamId());
+    }
+
+    @Test
+    void quitTeam_lastMember_teamDeleted() {
+        Mockito.when(taskService.getTasksAssignedToUser(Mockito.anyLong())).thenReturn(new ArrayList<>());
+        Mockito.when(taskService.getTasksCreatedByUser(Mockito.anyLong())).thenReturn(new ArrayList<>());
+        Mockito.when(teamMembershipRepository.countByTeamId(1L)).thenReturn(0L);
+
+        teamService.quitTeam(testUser.getId(), testTeam.getId());
+
+        Mockito.verify(teamMembershipRepository, Mockito.times(1)).deleteByTeamIdAndUserId(1L, 1L);
+        Mockito.verify(teamRepository, Mockito.times(1)).delete(testTeam);
     }
 
     @Test
     void quitTeam_userNotInTeam_throwsException() {
-        testTeam.setMembers(new ArrayList<>());
+        Mockito.when(teamMembershipRepository.existsByTeamIdAndUserId(Mockito.anyLong(), Mockito.anyLong())).thenReturn(false);
 
         Mockito.when(teamRepository.findTeamById(Mockito.anyLong())).thenReturn(testTeam);
 
         assertThrows(ResponseStatusException.class, () -> teamService.quitTeam(testUser.getId(), 999L));
     }
 
+    @Test
+    void getUsersByTeamId_existingTeam_returnsMemberIds() {
+        Mockito.when(teamRepository.existsById(1L)).thenReturn(true);
+
+        List<Long> memberIds = teamService.getUsersByTeamId(1L);
+
+        assertEquals(List.of(1L), memberIds);
+        Mockito.verify(teamRepository, Mockito.never()).findById(Mockito.anyLong());
+    }
+
+    @Test
+    void getUsersByTeamId_unknownTeam_throwsNotFound() {
+        Mockito.when(teamRepository.existsById(999L)).thenReturn(false);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> teamService.getUsersByTeamId(999L));
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+    }
+
     @Test
     void quitTeam_invalidTeamId_throwsException() {
         Mockito.when(teamRepository.findTeamById(Mockito.anyLong())).thenReturn(null);
@@ -223,9 +292,46 @@ class TeamServiceTest {
         testUser.setTeamId(999L);
 
         Mockito.when(userRepository.findByToken(userToken)).thenReturn(testUser);
-        Mockito.when(teamRepository.findTeamById(999L)).thenReturn(null);
+        Mockito.when(teamRepository.findIsPausedById(999L)).thenReturn(null);
 
         assertThrows(ResponseStatusException.class, () -> teamService.validateTeamPaused(userToken));
         Mockito.verify(taskService).validateUserToken(userToken);
     }
-}
\ No newline at end of file
+
+    @Test
+    void validateTeamPaused_authenticatedUser_repeatedChecksReadTeamOnce() {
+        AuthenticatedUser user = new AuthenticatedUser(1L, "testuser", testTeam.getId(), UserStatus.ONLINE, ColorID.C1);
+        testTeam.setIsPaused(false);
+
+        teamService.validateTeamPaused(user);
+        teamService.validateTeamPaused(user);
+        teamService.validateTeamPaused(user);
+
+        Mockito.verify(teamRepository, Mockito.times(1)).findIsPausedById(testTeam.getId());
+        Mockito.verify(teamMembershipRepository, Mockito.times(1)).findUserIdsByTeamId(testTeam.getId());
+    }
+
+    @Test
+    void validateTeamPaused_authenticatedUser_seesPauseAfterInvalidation() {
+        AuthenticatedUser user = new AuthenticatedUser(1L, "testuser", testTeam.getId(), UserStatus.ONLINE, ColorID.C1);
+        testTeam.setIsPaused(false);
+        teamService.validateTeamPaused(user);
+
+        // the TeamEntityListener drops the state when the team is updated
+        testTeam.setIsPaused(true);
+        teamStateCache.invalidateTeam(testTeam.getId());
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> teamService.validateTeamPaused(user));
+        assertEquals(HttpStatus.FORBIDDEN, exception.getStatus());
+    }
+
+    @Test
+    void pauseTeam_cachedMember_noMembershipQuery() {
+        teamService.pauseTeam(testTeam.getId(), testUser.getId());
+        teamService.pauseTeam(testTeam.getId(), testUser.getId());
+
+        Mockito.verify(teamMembershipRepository, Mockito.times(1)).findUserIdsByTeamId(testTeam.getId());
+        Mockito.verify(teamMembershipRepository, Mockito.never()).existsByTeamIdAndUserId(Mockito.anyLong(), Mockito.anyLong());
+    }
+}
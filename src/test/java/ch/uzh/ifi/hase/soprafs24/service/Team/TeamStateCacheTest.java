@@ -0,0 +1,123 @@
+package ch.uzh.ifi.hase.soprafs24.service.Team;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import ch.uzh.ifi.hase.soprafs24.service.TeamStateCache;
+import ch.uzh.ifi.hase.soprafs24.service.TeamStateCache.TeamState;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TeamStateCacheTest {
+
+    private static final long TTL_MILLIS = 10_000L;
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final Map<Long, TeamState> teams = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<Long, TeamState> loader = teamId -> {
+        loads.incrementAndGet();
+        return teams.get(teamId);
+    };
+    private TeamStateCache cache;
+
+    @BeforeEach
+    void setup() {
+        cache = new TeamStateCache(TTL_MILLIS, now::get);
+        teams.put(1L, new TeamState(1L, false, List.of(1L, 2L), Map.of(1L, ColorID.C1, 2L, ColorID.C3)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void get_servesRepeatedLookupsFromCache() {
+        TeamState first = cache.get(1L, loader);
+        TeamState second = cache.get(1L, loader);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertFalse(first.isPaused());
+        assertTrue(first.isMember(2L));
+        assertFalse(first.isMember(3L));
+        assertFalse(first.isMember(null));
+        assertEquals(EnumSet.of(ColorID.C1, ColorID.C3), first.getUsedColors());
+    }
+
+    @Test
+    void get_afterTtl_reloads() {
+        cache.get(1L, loader);
+        now.addAndGet(TTL_MILLIS);
+
+        cache.get(1L, loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_unknownTeam_isNotCached() {
+        assertNull(cache.get(999L, loader));
+        assertNull(cache.get(999L, loader));
+        assertNull(cache.get(null, loader));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateTeam_nextLookupSeesChange() {
+        cache.get(1L, loader);
+        teams.put(1L, new TeamState(1L, true, List.of(1L), Map.of(1L, ColorID.C1)));
+
+        cache.invalidateTeam(1L);
+        TeamState reloaded = cache.get(1L, loader);
+
+        assertTrue(reloaded.isPaused());
+        assertFalse(reloaded.isMember(2L));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateTeam_loadOverlappingInvalidation_isNotCached() {
+        Function<Long, TeamState> slowLoader = teamId -> {
+            // the team is updated while its old rows are being read
+            cache.invalidateTeam(1L);
+            return loader.apply(teamId);
+        };
+
+        cache.get(1L, slowLoader);
+        cache.get(1L, loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateTeam_inTransaction_evictsAgainAfterCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidateTeam(1L);
+        // a concurrent request caches the rows before the update is committed
+        cache.get(1L, loader);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        cache.get(1L, loader);
+
+        assertEquals(2, loads.get());
+    }
+}
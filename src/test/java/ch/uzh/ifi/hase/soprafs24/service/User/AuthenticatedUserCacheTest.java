@@ -0,0 +1,143 @@
+package ch.uzh.ifi.hase.soprafs24.service.User;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUserCache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthenticatedUserCacheTest {
+
+    private static final long TTL_MILLIS = 5_000L;
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final Map<String, User> usersByToken = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, User> loader = token -> {
+        loads.incrementAndGet();
+        return usersByToken.get(token);
+    };
+    private AuthenticatedUserCache cache;
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        cache = new AuthenticatedUserCache(TTL_MILLIS, now::get);
+        user = new User();
+        user.setId(1L);
+        user.setUsername("alice");
+        user.setTeamId(10L);
+        user.setStatus(UserStatus.ONLINE);
+        user.setColor(ColorID.C3);
+        user.setToken("token-1");
+        usersByToken.put("token-1", user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void get_copiesUserAndServesRepeatedLookupsFromCache() {
+        AuthenticatedUser first = cache.get("token-1", loader);
+        AuthenticatedUser second = cache.get("token-1", loader);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1L, first.getUserId());
+        assertEquals("alice", first.getUsername());
+        assertEquals(10L, first.getTeamId());
+        assertEquals(ColorID.C3, first.getColor());
+        assertTrue(first.isOnline());
+    }
+
+    @Test
+    void get_afterTtl_reloads() {
+        cache.get("token-1", loader);
+        now.addAndGet(TTL_MILLIS);
+
+        cache.get("token-1", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_unknownToken_isNotCached() {
+        assertNull(cache.get("unknown", loader));
+        assertNull(cache.get("unknown", loader));
+        assertNull(cache.get(null, loader));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateUser_nextLookupSeesChange() {
+        cache.get("token-1", loader);
+        user.setTeamId(null);
+        user.setStatus(UserStatus.OFFLINE);
+
+        cache.invalidateUser(1L);
+        AuthenticatedUser reloaded = cache.get("token-1", loader);
+
+        assertNull(reloaded.getTeamId());
+        assertFalse(reloaded.isOnline());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateUser_loadOverlappingInvalidation_isNotCached() {
+        Function<String, User> slowLoader = token -> {
+            // the user is updated while its old row is being read
+            cache.invalidateUser(1L);
+            return loader.apply(token);
+        };
+
+        cache.get("token-1", slowLoader);
+        cache.get("token-1", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateUser_inTransaction_evictsAgainAfterCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidateUser(1L);
+        // a concurrent request caches the row before the update is committed
+        cache.get("token-1", loader);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        cache.get("token-1", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_newTokenOfUser_dropsOldToken() {
+        cache.get("token-1", loader);
+        usersByToken.remove("token-1");
+        usersByToken.put("token-2", user);
+
+        cache.get("token-2", loader);
+
+        assertNull(cache.get("token-1", loader));
+    }
+}
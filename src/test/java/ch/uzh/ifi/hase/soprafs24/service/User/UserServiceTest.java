@@ -4,7 +4,9 @@ import ch.uzh.ifi.hase.soprafs24.constant.ColorID;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.service.AuthenticatedUserCache;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,11 +14,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.web.server.ResponseStatusException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 class UserServiceTest {
@@ -24,6 +28,12 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private WebSocketNotificationService notificationService;
+
+    @Spy
+    private AuthenticatedUserCache authenticatedUserCache = new AuthenticatedUserCache(5_000L);
+
     @InjectMocks
     private UserService userService;
 
@@ -279,6 +289,31 @@ class UserServiceTest {
         assertFalse(result);
     }
 
+    @Test
+    void validateToken_repeatedCalls_userLoadedOnce() {
+        String token = "validToken";
+        Mockito.when(userRepository.findByToken(token)).thenReturn(testUser);
+
+        assertTrue(userService.validateToken(token));
+        assertTrue(userService.validateToken(token));
+        assertEquals(testUser.getId(), userService.findIDforToken(token));
+
+        Mockito.verify(userRepository, Mockito.times(1)).findByToken(token);
+    }
+
+    @Test
+    void validateToken_userInvalidated_userReloaded() {
+        String token = "validToken";
+        Mockito.when(userRepository.findByToken(token)).thenReturn(testUser);
+        assertTrue(userService.validateToken(token));
+
+        testUser.setStatus(UserStatus.OFFLINE);
+        authenticatedUserCache.invalidateUser(testUser.getId());
+
+        assertFalse(userService.validateToken(token));
+        Mockito.verify(userRepository, Mockito.times(2)).findByToken(token);
+    }
+
     @Test
     void findIDforToken_validToken_returnsId() {
         // given
@@ -305,26 +340,35 @@ class UserServiceTest {
         assertNull(result);
     }
 
+    // simulates the atomic UPDATE: the row holds the new xp when it is read back
+    private void stubXpUpdate(int xpAfterUpdate) {
+        Mockito.when(userRepository.addExperiencePoints(Mockito.eq(testUser.getId()), Mockito.anyInt()))
+                .thenAnswer(invocation -> {
+                    testUser.setXp(xpAfterUpdate);
+                    return 1;
+                });
+        Mockito.when(userRepository.findAllById(Mockito.anyIterable())).thenReturn(List.of(testUser));
+    }
+
     @Test
     void addExperiencePoints_userFound_success() {
         // given
-        Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+        stubXpUpdate(50);
         
         // when
         userService.addExperiencePoints(testUser.getId(), 50);
         
         // then
-        assertEquals(50, testUser.getXp());
-        assertEquals(1, testUser.getLevel()); // Should still be level 1
-        Mockito.verify(userRepository, Mockito.times(1)).save(testUser);
-        Mockito.verify(userRepository, Mockito.times(1)).flush();
+        Mockito.verify(userRepository, Mockito.times(1)).addExperiencePoints(testUser.getId(), 50);
+        Mockito.verify(userRepository, Mockito.never()).updateLevel(Mockito.anyLong(), Mockito.anyInt()); // still level 1
+        Mockito.verify(userRepository, Mockito.never()).save(Mockito.any());
     }
 
     @Test
     void addExperiencePoints_userNotFound_throwsException() {
         // given
         Long nonExistentUserId = 999L;
-        Mockito.when(userRepository.findById(nonExistentUserId)).thenReturn(Optional.empty());
+        Mockito.when(userRepository.addExperiencePoints(Mockito.eq(nonExistentUserId), Mockito.anyInt())).thenReturn(0);
         
         // when/then
         assertThrows(ResponseStatusException.class, () -> userService.addExperiencePoints(nonExistentUserId, 50));
@@ -333,139 +377,127 @@ class UserServiceTest {
     @Test
     void addExperiencePoints_enoughForLevelUp_success() {
         // given
-        Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
-        
         // Level 2 requires 100*2^1.5 = ~283 XP
         int xpForLevelUp = 300;
+        stubXpUpdate(xpForLevelUp);
         
         // when
         userService.addExperiencePoints(testUser.getId(), xpForLevelUp);
         
         // then
-        assertEquals(xpForLevelUp, testUser.getXp());
-        assertEquals(2, testUser.getLevel()); // Should level up to 2
-        Mockito.verify(userRepository, Mockito.times(1)).save(testUser);
-        Mockito.verify(userRepository, Mockito.times(1)).flush();
+        Mockito.verify(userRepository, Mockito.times(1)).updateLevel(testUser.getId(), 2); // Should level up to 2
     }
 
     @Test
     void addExperiencePoints_enoughForMultipleLevelUps_success() {
         // given
-        Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
-        
         // Add enough XP for multiple level ups (to level 4)
         // Level 2: ~283 XP
         // Level 3: ~520 XP
         // Level 4: ~800 XP
         int xpForMultipleLevelUps = 900;
+        stubXpUpdate(xpForMultipleLevelUps);
         
         // when
         userService.addExperiencePoints(testUser.getId(), xpForMultipleLevelUps);
         
         // then
-        assertEquals(xpForMultipleLevelUps, testUser.getXp());
-        assertEquals(4, testUser.getLevel()); // Should level up to 4
-        Mockito.verify(userRepository, Mockito.times(1)).save(testUser);
-        Mockito.verify(userRepository, Mockito.times(1)).flush();
+        Mockito.verify(userRepository, Mockito.times(1)).updateLevel(testUser.getId(), 4); // Should level up to 4
     }
 
     @Test
     void deductExperiencePoints_userFound_success() {
         // given
-        testUser.setXp(100); // Start with some XP
-        Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+        stubXpUpdate(50);
         
         // when
         userService.deductExperiencePoints(testUser.getId(), 50);
         
         // then
-        assertEquals(50, testUser.getXp());
-        assertEquals(1, testUser.getLevel()); // Level should remain the same
-        Mockito.verify(userRepository, Mockito.times(1)).save(testUser);
-        Mockito.verify(userRepository, Mockito.times(1)).flush();
+        Mockito.verify(userRepository, Mockito.times(1)).addExperiencePoints(testUser.getId(), -50);
+        Mockito.verify(userRepository, Mockito.never()).updateLevel(Mockito.anyLong(), Mockito.anyInt()); // Level should remain the same
     }
 
     @Test
     void deductExperiencePoints_userNotFound_throwsException() {
         // given
         Long nonExistentUserId = 999L;
-        Mockito.when(userRepository.findById(nonExistentUserId)).thenReturn(Optional.empty());
+        Mockito.when(userRepository.addExperiencePoints(Mockito.eq(nonExistentUserId), Mockito.anyInt())).thenReturn(0);
         
         // when/then
         assertThrows(ResponseStatusException.class, () -> userService.deductExperiencePoints(nonExistentUserId, 50));
     }
 
-    @Test
-    void deductExperiencePoints_preventNegativeXp_success() {
-        // given
-        testUser.setXp(30);
-        Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
-        
-        // when - try to deduct more than available
-        userService.deductExperiencePoints(testUser.getId(), 50);
-        
-        // then - should be capped at 0
-        assertEquals(0, testUser.getXp());
-        assertEquals(1, testUser.getLevel()); // Minimum level
-        Mockito.verify(userRepository, Mockito.times(1)).save(testUser);
-        Mockito.verify(userRepository, Mockito.times(1)).flush();
-    }
-
     @Test
     void deductExperiencePoints_causesLevelDown_success() {
         // given
-        // Set user to level 3 with just enough XP for level 3
+        // Set user to level 3, the deduction leaves 220 XP
         testUser.setLevel(3);
-        int xpForLevel3 = 520; // Approximate based on the formula
-        testUser.setXp(xpForLevel3);
+        stubXpUpdate(220);
         
-        Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
-        
-        // when - deduct enough to drop to level 2
+        // when - deduct enough to drop below level 2
         userService.deductExperiencePoints(testUser.getId(), 300);
         
-        assertTrue(testUser.getXp() < xpForLevel3);
-        assertEquals(1, testUser.getLevel()); 
-        Mockito.verify(userRepository, Mockito.times(1)).save(testUser);
-        Mockito.verify(userRepository, Mockito.times(1)).flush();
+        // then
+        Mockito.verify(userRepository, Mockito.times(1)).updateLevel(testUser.getId(), 1);
     }
 
     @Test
     void deductExperiencePoints_causeMultipleLevelDowns_success() {
         // given
-        // Set user to level 4 with just enough XP for level 4
+        // Set user to level 4, the deduction leaves 50 XP
         testUser.setLevel(4);
-        int xpForLevel4 = 800; // Approximate based on the formula
-        testUser.setXp(xpForLevel4);
-        
-        Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+        stubXpUpdate(50);
         
         // when - deduct enough XP to drop to level 1
         userService.deductExperiencePoints(testUser.getId(), 750);
         
         // then
-        assertEquals(xpForLevel4 - 750, testUser.getXp());
-        assertEquals(1, testUser.getLevel()); // Should drop to level 1
-        Mockito.verify(userRepository, Mockito.times(1)).save(testUser);
-        Mockito.verify(userRepository, Mockito.times(1)).flush();
+        Mockito.verify(userRepository, Mockito.times(1)).updateLevel(testUser.getId(), 1); // Should drop to level 1
     }
 
     @Test
     void deductExperiencePoints_levelCannotGoBelowOne_success() {
         // given
-        testUser.setXp(50);
         testUser.setLevel(1);
-        
-        Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+        stubXpUpdate(0);
         
         // when - deduct all XP
         userService.deductExperiencePoints(testUser.getId(), 50);
         
         // then
-        assertEquals(0, testUser.getXp());
-        assertEquals(1, testUser.getLevel()); // Level should stay at 1
-        Mockito.verify(userRepository, Mockito.times(1)).save(testUser);
-        Mockito.verify(userRepository, Mockito.times(1)).flush();
+        Mockito.verify(userRepository, Mockito.never()).updateLevel(Mockito.anyLong(), Mockito.anyInt()); // Level should stay at 1
+    }
+
+    @Test
+    void applyExperiencePointsDeltas_updatesEveryUserOnce() {
+        // given
+        User otherUser = new User();
+        otherUser.setId(2L);
+        otherUser.setXp(900);
+        otherUser.setLevel(1);
+        Mockito.when(userRepository.addExperiencePoints(Mockito.anyLong(), Mockito.anyInt())).thenReturn(1);
+        Mockito.when(userRepository.findAllById(Mockito.anyIterable())).thenReturn(List.of(testUser, otherUser));
+
+        // when
+        userService.applyExperiencePointsDeltas(Map.of(1L, -20, 2L, 900));
+
+        // then
+        Mockito.verify(userRepository, Mockito.times(1)).addExperiencePoints(1L, -20);
+        Mockito.verify(userRepository, Mockito.times(1)).addExperiencePoints(2L, 900);
+        Mockito.verify(userRepository, Mockito.times(1)).findAllById(Mockito.anyIterable());
+        Mockito.verify(userRepository, Mockito.times(1)).updateLevel(2L, 4);
+    }
+
+    @Test
+    void getLevelForXp_usesLevelThresholds() {
+        assertEquals(1, UserService.getLevelForXp(0));
+        assertEquals(1, UserService.getLevelForXp(281));
+        assertEquals(2, UserService.getLevelForXp(282));
+        assertEquals(3, UserService.getLevelForXp(519));
+        assertEquals(4, UserService.getLevelForXp(800));
+        assertEquals(4, UserService.getLevelForXp(1117));
+        assertEquals(5, UserService.getLevelForXp(1118));
     }
 
     @Test
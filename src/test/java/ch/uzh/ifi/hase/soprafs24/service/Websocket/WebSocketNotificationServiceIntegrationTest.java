@@ -64,15 +64,15 @@ class WebSocketNotificationServiceIntegrationTest {
         // deeper integration tests but can be fragile.
         // A more robust approach might involve a dedicated test WebSocket client.
         originalSessions = new ArrayList<>(socketHandler.getSessionsForTesting()); // Assuming a getter for tests
-        socketHandler.getSessionsForTesting().clear();
+        socketHandler.clearSessionsForTesting();
         socketHandler.getPendingSessionsMapForTesting().clear(); // Assuming a getter for tests
     }
 
     @AfterEach
     void tearDown() {
         // Restore original sessions
-        socketHandler.getSessionsForTesting().clear();
-        socketHandler.getSessionsForTesting().addAll(originalSessions);
+        socketHandler.clearSessionsForTesting();
+        originalSessions.forEach(socketHandler::registerSessionForTesting);
         socketHandler.getPendingSessionsMapForTesting().clear();
     }
 
@@ -103,10 +103,10 @@ class WebSocketNotificationServiceIntegrationTest {
         WebSocketSession session4 = createMockSession("s4", 4L, 10L, true);
         when(session4.isOpen()).thenReturn(false); // Closed session
 
-        socketHandler.getSessionsForTesting().add(session1);
-        socketHandler.getSessionsForTesting().add(session2);
-        socketHandler.getSessionsForTesting().add(session3);
-        socketHandler.getSessionsForTesting().add(session4);
+        socketHandler.registerSessionForTesting(session1);
+        socketHandler.registerSessionForTesting(session2);
+        socketHandler.registerSessionForTesting(session3);
+        socketHandler.registerSessionForTesting(session4);
 
 
         String entityType = "global-event";
@@ -121,12 +121,12 @@ class WebSocketNotificationServiceIntegrationTest {
 
         // Verify session1 (authenticated, open) received the message
         ArgumentCaptor<TextMessage> messageCaptor1 = ArgumentCaptor.forClass(TextMessage.class);
-        verify(session1, times(1)).sendMessage(messageCaptor1.capture());
+        verify(session1, timeout(1000).times(1)).sendMessage(messageCaptor1.capture());
         assertEquals(expectedJsonPayload, messageCaptor1.getValue().getPayload());
 
         // Verify session2 (authenticated, open) received the message
         ArgumentCaptor<TextMessage> messageCaptor2 = ArgumentCaptor.forClass(TextMessage.class);
-        verify(session2, times(1)).sendMessage(messageCaptor2.capture());
+        verify(session2, timeout(1000).times(1)).sendMessage(messageCaptor2.capture());
         assertEquals(expectedJsonPayload, messageCaptor2.getValue().getPayload());
 
         // Verify session3 (unauthenticated) did NOT receive the message
@@ -146,11 +146,11 @@ class WebSocketNotificationServiceIntegrationTest {
         WebSocketSession unauthenticatedMember = createMockSession("ua1", 4L, targetTeamId, false); // Same team, but not auth
         WebSocketSession pendingMemberNoTeam = createMockSession("pm1", 5L, null, true); // Authenticated, no team yet
 
-        socketHandler.getSessionsForTesting().add(teamMember1);
-        socketHandler.getSessionsForTesting().add(teamMember2);
-        socketHandler.getSessionsForTesting().add(otherTeamMember);
-        socketHandler.getSessionsForTesting().add(unauthenticatedMember);
-        socketHandler.getSessionsForTesting().add(pendingMemberNoTeam);
+        socketHandler.registerSessionForTesting(teamMember1);
+        socketHandler.registerSessionForTesting(teamMember2);
+        socketHandler.registerSessionForTesting(otherTeamMember);
+        socketHandler.registerSessionForTesting(unauthenticatedMember);
+        socketHandler.registerSessionForTesting(pendingMemberNoTeam);
 
         String entityType = "team-task-update";
         Map<String, Object> entityData = Map.of("taskId", 7L, "status", "in-progress");
@@ -164,12 +164,12 @@ class WebSocketNotificationServiceIntegrationTest {
 
         // Verify teamMember1 received the message
         ArgumentCaptor<TextMessage> messageCaptorTm1 = ArgumentCaptor.forClass(TextMessage.class);
-        verify(teamMember1, times(1)).sendMessage(messageCaptorTm1.capture());
+        verify(teamMember1, timeout(1000).times(1)).sendMessage(messageCaptorTm1.capture());
         assertEquals(expectedJsonPayload, messageCaptorTm1.getValue().getPayload());
 
         // Verify teamMember2 received the message
         ArgumentCaptor<TextMessage> messageCaptorTm2 = ArgumentCaptor.forClass(TextMessage.class);
-        verify(teamMember2, times(1)).sendMessage(messageCaptorTm2.capture());
+        verify(teamMember2, timeout(1000).times(1)).sendMessage(messageCaptorTm2.capture());
         assertEquals(expectedJsonPayload, messageCaptorTm2.getValue().getPayload());
 
         // Verify otherTeamMember did NOT receive the message
@@ -189,8 +189,8 @@ class WebSocketNotificationServiceIntegrationTest {
         WebSocketSession otherTeamMember = createMockSession("otm2", 6L, 400L, true);
         WebSocketSession unauthenticatedMember = createMockSession("ua2", 7L, targetTeamId, false);
 
-        socketHandler.getSessionsForTesting().add(otherTeamMember);
-        socketHandler.getSessionsForTesting().add(unauthenticatedMember);
+        socketHandler.registerSessionForTesting(otherTeamMember);
+        socketHandler.registerSessionForTesting(unauthenticatedMember);
 
         String entityType = "team-announcement";
         Map<String, Object> entityData = Map.of("message", "Meeting moved");
@@ -210,7 +210,7 @@ class WebSocketNotificationServiceIntegrationTest {
     void notifyTeamMembers_nullTeamId_noMessageSent() throws IOException {
         // Given
         WebSocketSession session1 = createMockSession("s1", 1L, 10L, true);
-        socketHandler.getSessionsForTesting().add(session1);
+        socketHandler.registerSessionForTesting(session1);
 
         String entityType = "some-event";
         Map<String, Object> entityData = Map.of("data", "important data");
@@ -226,7 +226,7 @@ class WebSocketNotificationServiceIntegrationTest {
     void broadcastEntityChange_nullEntityData_noMessageSent() throws IOException {
         // Given
         WebSocketSession session1 = createMockSession("s1", 1L, 10L, true);
-        socketHandler.getSessionsForTesting().add(session1);
+        socketHandler.registerSessionForTesting(session1);
 
         String entityType = "another-event";
 
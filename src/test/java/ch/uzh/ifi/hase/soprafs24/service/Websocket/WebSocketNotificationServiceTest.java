@@ -2,11 +2,11 @@ package ch.uzh.ifi.hase.soprafs24.service.Websocket;
 
 import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
 import ch.uzh.ifi.hase.soprafs24.service.WebSocketNotificationService;
+import ch.uzh.ifi.hase.soprafs24.websocket.InMemoryWebSocketEventBus;
 import ch.uzh.ifi.hase.soprafs24.websocket.SocketHandler;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -21,12 +21,14 @@ class WebSocketNotificationServiceTest {
     @Mock
     private SocketHandler mockSocketHandler;
 
-    @InjectMocks
     private WebSocketNotificationService webSocketNotificationService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        // single instance: published events come straight back to the local sessions
+        webSocketNotificationService = new WebSocketNotificationService(mockSocketHandler,
+                new InMemoryWebSocketEventBus());
     }
 
     @Test
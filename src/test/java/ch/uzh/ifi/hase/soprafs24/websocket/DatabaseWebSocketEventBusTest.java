@@ -0,0 +1,112 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import ch.uzh.ifi.hase.soprafs24.repository.WebSocketEventRecordRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarService;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two bus nodes on the same (H2) database stand in for two instances.
+ * The pollers and writers are not started, the tests call flush() and poll() directly.
+ */
+@WebAppConfiguration
+@SpringBootTest
+@TestPropertySource("classpath:application-dev.properties")
+class DatabaseWebSocketEventBusTest {
+
+    @Qualifier("webSocketEventRecordRepository")
+    @Autowired
+    private WebSocketEventRecordRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private CalendarService calendarService;
+
+    private DatabaseWebSocketEventBus nodeA;
+    private DatabaseWebSocketEventBus nodeB;
+    private final List<WebSocketEvent> receivedByA = new CopyOnWriteArrayList<>();
+    private final List<WebSocketEvent> receivedByB = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        repository.deleteAll();
+        nodeA = new DatabaseWebSocketEventBus(repository, transactionManager, 250);
+        nodeB = new DatabaseWebSocketEventBus(repository, transactionManager, 250);
+        nodeA.subscribe(receivedByA::add);
+        nodeB.subscribe(receivedByB::add);
+    }
+
+    @Test
+    void publish_deliveredLocallyAndToOtherNode() {
+        DatabaseChangeEventDTO<?> event = new DatabaseChangeEventDTO<>("TASKS", List.of(Map.of("id", 1, "name", "Dishes")));
+
+        nodeA.publish(new WebSocketEvent(7L, event));
+
+        // the publishing node delivers right away
+        assertEquals(1, receivedByA.size());
+        assertSame(event, receivedByA.get(0).getEvent());
+        assertTrue(receivedByB.isEmpty());
+        // written by the writer thread, not by the publishing caller
+        assertEquals(0, repository.count());
+
+        assertEquals(1, nodeA.flush());
+        nodeB.poll();
+
+        assertEquals(1, receivedByB.size());
+        WebSocketEvent received = receivedByB.get(0);
+        assertEquals(7L, received.getTeamId());
+        assertEquals("TASKS", received.getEvent().getEntityType());
+        JsonNode payload = (JsonNode) received.getEvent().getPayload();
+        assertEquals("Dishes", payload.get(0).get("name").asText());
+    }
+
+    @Test
+    void poll_ownEventsAndSeenEventsAreNotDeliveredAgain() {
+        nodeA.publish(new WebSocketEvent(null, new DatabaseChangeEventDTO<>("USERS", Map.of("id", 3))));
+        nodeA.flush();
+
+        nodeA.poll();
+        nodeB.poll();
+        nodeB.poll();
+
+        assertEquals(1, receivedByA.size());
+        assertEquals(1, receivedByB.size());
+        assertNull(receivedByB.get(0).getTeamId());
+    }
+
+    @Test
+    void poll_eventsOfBothNodesArriveInOrder() {
+        nodeA.publish(new WebSocketEvent(1L, new DatabaseChangeEventDTO<>("LOCK_CHANGED", Map.of("taskId", 1))));
+        nodeB.publish(new WebSocketEvent(1L, new DatabaseChangeEventDTO<>("LOCK_CHANGED", Map.of("taskId", 2))));
+        nodeA.publish(new WebSocketEvent(1L, new DatabaseChangeEventDTO<>("LOCK_CHANGED", Map.of("taskId", 3))));
+        // A's queue holds two events and is written as one batch
+        assertEquals(2, nodeA.flush());
+        assertEquals(1, nodeB.flush());
+
+        nodeB.poll();
+
+        // B delivered its own event when publishing, the events of A follow in publishing order
+        assertEquals(3, receivedByB.size());
+        assertEquals(Map.of("taskId", 2), receivedByB.get(0).getEvent().getPayload());
+        assertEquals(1, ((JsonNode) receivedByB.get(1).getEvent().getPayload()).get("taskId").asInt());
+        assertEquals(3, ((JsonNode) receivedByB.get(2).getEvent().getPayload()).get("taskId").asInt());
+    }
+}
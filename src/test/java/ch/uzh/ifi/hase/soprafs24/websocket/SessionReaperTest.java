@@ -0,0 +1,51 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionReaperTest {
+
+    @Mock
+    private SocketHandler socketHandler;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SessionReaper sessionReaper;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        sessionReaper = new SessionReaper(socketHandler, meterRegistry, 10_000L, 90_000L, 30_000L);
+    }
+
+    @Test
+    void gauges_reportSessionCounts() {
+        when(socketHandler.countConnectedSessions()).thenReturn(5);
+        when(socketHandler.countAuthenticatedSessions()).thenReturn(3);
+        when(socketHandler.countPendingSessions()).thenReturn(1);
+
+        assertEquals(5.0, meterRegistry.get(SessionReaper.CONNECTED_METRIC).gauge().value());
+        assertEquals(3.0, meterRegistry.get(SessionReaper.AUTHENTICATED_METRIC).gauge().value());
+        assertEquals(1.0, meterRegistry.get(SessionReaper.PENDING_METRIC).gauge().value());
+    }
+
+    @Test
+    void reap_passesConfiguredLimits_andSurvivesErrors() {
+        doThrow(new IllegalStateException("boom")).when(socketHandler)
+                .reapSessions(anyLong(), eq(10_000L), eq(90_000L), eq(30_000L));
+
+        sessionReaper.reap();
+
+        verify(socketHandler).reapSessions(anyLong(), eq(10_000L), eq(90_000L), eq(30_000L));
+    }
+}
@@ -0,0 +1,208 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SessionSendQueuesTest {
+
+    @Mock
+    private WebSocketSession session;
+
+    @Mock
+    private WebSocketSession otherSession;
+
+    private SimpleMeterRegistry meterRegistry;
+    // send tasks only run when the test runs them
+    private final Queue<Runnable> sendTasks = new ArrayDeque<>();
+    private final List<WebSocketSession> failed = new ArrayList<>();
+    private SessionSendQueues sendQueues;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        when(otherSession.getId()).thenReturn("s2");
+        when(otherSession.isOpen()).thenReturn(true);
+        meterRegistry = new SimpleMeterRegistry();
+        sendQueues = new SessionSendQueues(3, 1_000, 10_000, sendTasks::add, meterRegistry);
+        sendQueues.setFailureHandler(failed::add);
+    }
+
+    @Test
+    void send_doesNotWriteOnCallingThread_thenWritesInOrder() throws Exception {
+        assertTrue(sendQueues.send(session, new TextMessage("one")));
+        assertTrue(sendQueues.send(session, new TextMessage("two")));
+
+        verify(session, never()).sendMessage(any());
+        assertEquals(2, sendQueues.getQueueDepth(session));
+        assertEquals(2.0, meterRegistry.get(SessionSendQueues.QUEUE_DEPTH_METRIC).tag("session", "s1").gauge().value());
+        // one send task per session, however many messages are queued
+        assertEquals(1, sendTasks.size());
+
+        runSendTasks();
+
+        InOrder inOrder = inOrder(session);
+        inOrder.verify(session).sendMessage(new TextMessage("one"));
+        inOrder.verify(session).sendMessage(new TextMessage("two"));
+        assertEquals(0, sendQueues.getQueueDepth(session));
+    }
+
+    @Test
+    void send_queueLimitExceeded_evictsOnlySlowSession() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(sendQueues.send(session, new TextMessage("m" + i)));
+        }
+        sendQueues.send(otherSession, new TextMessage("other"));
+
+        assertFalse(sendQueues.send(session, new TextMessage("m3")));
+
+        verify(session).close(SessionSendQueues.SLOW_CONSUMER);
+        assertEquals(List.of(session), failed);
+        assertEquals(1.0, meterRegistry.counter(SessionSendQueues.EVICTED_METRIC, "reason", "buffer limit").count());
+        assertTrue(meterRegistry.find(SessionSendQueues.QUEUE_DEPTH_METRIC).tag("session", "s1").gauges().isEmpty());
+
+        runSendTasks();
+
+        verify(session, never()).sendMessage(any());
+        verify(otherSession).sendMessage(new TextMessage("other"));
+    }
+
+    @Test
+    void send_bufferSizeLimitExceeded_evictsSession() throws Exception {
+        assertFalse(sendQueues.send(session, new TextMessage("x".repeat(1_001))));
+
+        verify(session).close(SessionSendQueues.SLOW_CONSUMER);
+        assertEquals(List.of(session), failed);
+    }
+
+    @Test
+    void send_whileSendBlockedLongerThanTimeLimit_evictsSession() throws Exception {
+        ExecutorService sendThread = Executors.newSingleThreadExecutor();
+        try {
+            sendQueues = new SessionSendQueues(100, 100_000, 50, sendThread, meterRegistry);
+            sendQueues.setFailureHandler(failed::add);
+            CountDownLatch sending = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            doAnswer(invocation -> {
+                sending.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }).when(session).sendMessage(any());
+
+            sendQueues.send(session, new TextMessage("blocks"));
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+
+            assertFalse(sendQueues.send(session, new TextMessage("next")));
+            release.countDown();
+
+            verify(session).close(SessionSendQueues.SLOW_CONSUMER);
+            assertEquals(1.0,
+                    meterRegistry.counter(SessionSendQueues.EVICTED_METRIC, "reason", "send time limit").count());
+        } finally {
+            sendThread.shutdownNow();
+        }
+    }
+
+    @Test
+    void evictStalled_sessionBlockedInSend_isClosedAndOtherSessionsStillReceive() throws Exception {
+        // one send thread: without the eviction the blocked session would keep it
+        ExecutorService sendThread = Executors.newSingleThreadExecutor();
+        try {
+            sendQueues = new SessionSendQueues(100, 100_000, 1_000, sendThread, meterRegistry);
+            sendQueues.setFailureHandler(failed::add);
+            CountDownLatch sending = new CountDownLatch(1);
+            CountDownLatch aborted = new CountDownLatch(1);
+            doAnswer(invocation -> {
+                sending.countDown();
+                aborted.await(5, TimeUnit.SECONDS);
+                throw new IOException("connection closed");
+            }).when(session).sendMessage(any());
+            // closing the session aborts the blocked write, like the container does
+            doAnswer(invocation -> {
+                aborted.countDown();
+                return null;
+            }).when(session).close(any());
+            CountDownLatch received = new CountDownLatch(1);
+            doAnswer(invocation -> {
+                received.countDown();
+                return null;
+            }).when(otherSession).sendMessage(any());
+
+            sendQueues.send(session, new TextMessage("blocks"));
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+            sendQueues.send(otherSession, new TextMessage("other"));
+            assertEquals(0, sendQueues.evictStalled(System.currentTimeMillis()));
+
+            assertEquals(1, sendQueues.evictStalled(System.currentTimeMillis() + 2_000));
+
+            verify(session).close(SessionSendQueues.SLOW_CONSUMER);
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            verify(otherSession).sendMessage(new TextMessage("other"));
+            assertTrue(failed.contains(session));
+            assertFalse(failed.contains(otherSession));
+        } finally {
+            sendThread.shutdownNow();
+        }
+    }
+
+    @Test
+    void sendFails_reportsSessionAndDropsQueue() throws Exception {
+        doThrow(new IOException("broken pipe")).when(session).sendMessage(any());
+        sendQueues.send(session, new TextMessage("one"));
+        sendQueues.send(session, new TextMessage("two"));
+
+        runSendTasks();
+
+        verify(session, times(1)).sendMessage(any());
+        assertEquals(List.of(session), failed);
+        assertEquals(0, sendQueues.getQueueDepth(session));
+    }
+
+    @Test
+    void send_closedSession_isNotQueued() {
+        when(session.isOpen()).thenReturn(false);
+
+        assertFalse(sendQueues.send(session, new TextMessage("one")));
+        assertTrue(sendTasks.isEmpty());
+    }
+
+    @Test
+    void remove_discardsQueuedMessages() throws Exception {
+        sendQueues.send(session, new TextMessage("one"));
+
+        sendQueues.remove(session);
+        runSendTasks();
+
+        verify(session, never()).sendMessage(any());
+        assertTrue(meterRegistry.find(SessionSendQueues.QUEUE_DEPTH_METRIC).gauges().isEmpty());
+    }
+
+    private void runSendTasks() {
+        Runnable task;
+        while ((task = sendTasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
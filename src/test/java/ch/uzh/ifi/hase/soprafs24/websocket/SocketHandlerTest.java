@@ -2,21 +2,29 @@ package ch.uzh.ifi.hase.soprafs24.websocket;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Team;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
-import ch.uzh.ifi.hase.soprafs24.entity.Task;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.task.TaskGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
 import ch.uzh.ifi.hase.soprafs24.repository.TaskRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.TeamRepository;
 
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.service.TaskService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
@@ -99,8 +107,12 @@ class SocketHandlerTest {
         } catch (IOException e) {
             fail("Setup failed");
         }
-        socketHandler = new SocketHandler(mockUserService, mockTeamRepository, mockTaskService);
-        socketHandler.getSessionsForTesting().clear();
+        // messages are written on the calling thread, so the tests can verify them right away
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SessionSendQueues sendQueues = new SessionSendQueues(256, 512 * 1024, 10_000, Runnable::run, meterRegistry);
+        socketHandler = new SocketHandler(mockUserService, mockTeamRepository, mockTaskService, sendQueues,
+                new WebSocketMessageEncoder(meterRegistry));
+        socketHandler.clearSessionsForTesting();
         socketHandler.getPendingSessionsMapForTesting().clear();
     }
 
@@ -136,7 +148,7 @@ class SocketHandlerTest {
         when(mockUserService.getUserByToken(token)).thenReturn(user);
         when(mockTeamRepository.findTeamById(10L)).thenReturn(team);
         when(mockTaskRepository.findAll()).thenReturn(Collections.emptyList());
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, createAuthMessage(token, true));
 
@@ -147,6 +159,43 @@ class SocketHandlerTest {
         verify(mockSession1).sendMessage(argThat(msg -> ((TextMessage) msg).getPayload().contains("auth_success")));
     }
 
+    @Test
+    void tryAuthenticate_requestsSmile_snapshotAndBroadcastsAreBinary() throws Exception {
+        String token = "valid-token-smile";
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("user1");
+        user.setTeamId(10L);
+        Team team = new Team();
+        team.setId(10L);
+        TaskGetDTO task = new TaskGetDTO();
+        task.setId(5L);
+        when(mockUserService.validateToken(token)).thenReturn(true);
+        when(mockUserService.getUserByToken(token)).thenReturn(user);
+        when(mockTeamRepository.findTeamById(10L)).thenReturn(team);
+        when(mockTaskService.getTaskSnapshot(10L)).thenReturn(new DatabaseChangeEventDTO<>("TASKS", List.of(task), 2L));
+        attributes2.put("authenticated", true);
+        attributes2.put("teamId", 10L);
+        socketHandler.registerSessionForTesting(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession2);
+
+        socketHandler.handleTextMessage(mockSession1,
+                new TextMessage("{\"type\":\"auth\",\"token\":\"Bearer " + token + "\",\"encoding\":\"smile\"}"));
+        socketHandler.broadcastMessageToTeam(10L, Map.of("data", "team message"));
+
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(mockSession1, times(3)).sendMessage(sent.capture());
+        BinaryMessage snapshot = (BinaryMessage) sent.getAllValues().get(0);
+        assertEquals(5L, smileMapper.readTree(snapshot.getPayload().array()).get("payload").get(0).get("id").asLong());
+        TextMessage authSuccess = (TextMessage) sent.getAllValues().get(1);
+        assertTrue(authSuccess.getPayload().contains("\"encoding\":\"smile\""));
+        BinaryMessage broadcast = (BinaryMessage) sent.getAllValues().get(2);
+        assertEquals("team message", smileMapper.readTree(broadcast.getPayload().array()).get("data").asText());
+        // the JSON client of the same team still gets text
+        verify(mockSession2).sendMessage(new TextMessage(objectMapper.writeValueAsString(Map.of("data", "team message"))));
+    }
+
     @Test
     void tryAuthenticate_validTokenNoBearer_userNoTeam_successAndPending() throws Exception {
         String token = "valid-token-no-team-no-bearer";
@@ -157,7 +206,7 @@ class SocketHandlerTest {
 
         when(mockUserService.validateToken(token)).thenReturn(true);
         when(mockUserService.getUserByToken(token)).thenReturn(user);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1,
                 new TextMessage("{\"type\":\"auth\",\"token\":\"" + token + "\"}"));
@@ -175,7 +224,7 @@ class SocketHandlerTest {
         String token = "invalid-token";
 
         when(mockUserService.validateToken(token)).thenReturn(false);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, createAuthMessage(token, true));
 
@@ -186,7 +235,7 @@ class SocketHandlerTest {
 
     @Test
     void tryAuthenticate_emptyTokenValueInMessage_sendsFailureAndCloses() throws Exception {
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, new TextMessage("{\"type\":\"auth\",\"token\":\"\"}"));
 
@@ -197,7 +246,7 @@ class SocketHandlerTest {
 
     @Test
     void tryAuthenticate_nullTokenValueInMessage_sendsCorrectFailureAndCloses() throws Exception {
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         String rawTokenValueThatBecomesValidateArg = "null";
         when(mockUserService.validateToken(rawTokenValueThatBecomesValidateArg)).thenReturn(false);
@@ -211,7 +260,7 @@ class SocketHandlerTest {
 
     @Test
     void tryAuthenticate_missingTokenFieldInMessage_sendsFailureAndCloses() throws Exception {
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, createAuthMessageMissingTokenField());
 
@@ -225,7 +274,7 @@ class SocketHandlerTest {
         String token = "inconsistent-token";
         when(mockUserService.validateToken(token)).thenReturn(true);
         when(mockUserService.getUserByToken(token)).thenReturn(null);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, createAuthMessage(token, true));
 
@@ -245,7 +294,7 @@ class SocketHandlerTest {
         when(mockUserService.validateToken(token)).thenReturn(true);
         when(mockUserService.getUserByToken(token)).thenReturn(user);
         when(mockTeamRepository.findTeamById(20L)).thenReturn(null);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, createAuthMessage(token, true));
 
@@ -257,7 +306,7 @@ class SocketHandlerTest {
 
     @Test
     void tryAuthenticate_nonAuthTypeMessage_closesSession() throws Exception {
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         socketHandler.handleTextMessage(mockSession1, new TextMessage("{\"type\":\"not_auth\",\"content\":\"stuff\"}"));
 
         verify(mockSession1, never()).sendMessage(any(TextMessage.class));
@@ -267,7 +316,7 @@ class SocketHandlerTest {
 
     @Test
     void tryAuthenticate_malformedJson_sendsFailureAndCloses() throws Exception {
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         socketHandler.handleTextMessage(mockSession1, new TextMessage("not-json"));
 
         verify(mockSession1)
@@ -279,7 +328,7 @@ class SocketHandlerTest {
     void tryAuthenticate_genericExceptionDuringAuth_sendsFailureAndCloses() throws Exception {
         String token = "exception-token";
         when(mockUserService.validateToken(token)).thenThrow(new RuntimeException("Unexpected DB error"));
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, createAuthMessage(token, true));
 
@@ -293,7 +342,7 @@ class SocketHandlerTest {
         String token = "exception-token-session-closed";
         when(mockUserService.validateToken(token)).thenThrow(new RuntimeException("Unexpected DB error"));
         when(mockSession1.isOpen()).thenReturn(false);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, createAuthMessage(token, true));
 
@@ -305,7 +354,7 @@ class SocketHandlerTest {
     @Test
     void handleTextMessage_alreadyAuthenticated_logsMessage() throws Exception {
         attributes1.put("authenticated", true);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTextMessage(mockSession1, new TextMessage("{\"data\":\"some payload\"}"));
 
@@ -317,7 +366,7 @@ class SocketHandlerTest {
     void afterConnectionClosed_removesSessionAndFromPendingMap() throws Exception {
         Long userId = 1L;
         attributes1.put("userId", userId);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         socketHandler.getPendingSessionsMapForTesting().put(userId, mockSession1);
 
         socketHandler.afterConnectionClosed(mockSession1, CloseStatus.NORMAL);
@@ -329,7 +378,7 @@ class SocketHandlerTest {
     @Test
     void afterConnectionClosed_userIdNotPresentInAttributes_removesSessionOnly() throws Exception {
 
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         assertTrue(socketHandler.getSessionsForTesting().contains(mockSession1));
 
         socketHandler.afterConnectionClosed(mockSession1, CloseStatus.NORMAL);
@@ -343,7 +392,7 @@ class SocketHandlerTest {
     void handleTransportError_closesAndRemovesSessionAndFromPendingMap() throws Exception {
         Long userId = 1L;
         attributes1.put("userId", userId);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         socketHandler.getPendingSessionsMapForTesting().put(userId, mockSession1);
 
         socketHandler.handleTransportError(mockSession1, new IOException("Network issue"));
@@ -356,7 +405,7 @@ class SocketHandlerTest {
     @Test
     void handleTransportError_sessionNotOpen_removesSession() throws Exception {
         when(mockSession1.isOpen()).thenReturn(false);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.handleTransportError(mockSession1, new IOException("Network issue on already closed session"));
 
@@ -369,7 +418,7 @@ class SocketHandlerTest {
         Long userId = 1L;
         Long teamId = 10L;
         socketHandler.getPendingSessionsMapForTesting().put(userId, mockSession1);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.associateSessionWithTeam(userId, teamId);
 
@@ -398,7 +447,7 @@ class SocketHandlerTest {
         Long userId = 1L;
         Long teamId = 10L;
         socketHandler.getPendingSessionsMapForTesting().put(userId, mockSession1);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         doThrow(new IOException("Failed to send message")).when(mockSession1).sendMessage(any(TextMessage.class));
 
@@ -418,9 +467,9 @@ class SocketHandlerTest {
         attributes2.put("authenticated", true);
         attributes3.put("authenticated", false);
 
-        socketHandler.getSessionsForTesting().add(mockSession1);
-        socketHandler.getSessionsForTesting().add(mockSession2);
-        socketHandler.getSessionsForTesting().add(mockSession3);
+        socketHandler.registerSessionForTesting(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession2);
+        socketHandler.registerSessionForTesting(mockSession3);
 
         socketHandler.broadcastMessageToAll(payload);
 
@@ -432,7 +481,7 @@ class SocketHandlerTest {
     @Test
     void broadcastMessageToAll_noAuthenticatedSessions_logsInfo() throws Exception {
         attributes1.put("authenticated", false);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         Map<String, Object> payload = Map.of("data", "message");
 
         socketHandler.broadcastMessageToAll(payload);
@@ -442,7 +491,7 @@ class SocketHandlerTest {
 
     @Test
     void broadcastMessageToAll_nullPayload_logsWarningAndSkips() throws Exception {
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         attributes1.put("authenticated", true);
 
         socketHandler.broadcastMessageToAll(null);
@@ -464,9 +513,9 @@ class SocketHandlerTest {
         attributes3.put("authenticated", true);
         attributes3.put("teamId", teamId1);
 
-        socketHandler.getSessionsForTesting().add(mockSession1);
-        socketHandler.getSessionsForTesting().add(mockSession2);
-        socketHandler.getSessionsForTesting().add(mockSession3);
+        socketHandler.registerSessionForTesting(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession2);
+        socketHandler.registerSessionForTesting(mockSession3);
 
         socketHandler.broadcastMessageToTeam(teamId1, payload);
 
@@ -475,6 +524,81 @@ class SocketHandlerTest {
         verify(mockSession3).sendMessage(eq(new TextMessage(expectedJson)));
     }
 
+    @Test
+    void broadcastMessageToTeam_doesNotVisitSessionsOfOtherTeams() throws Exception {
+        attributes1.put("authenticated", true);
+        attributes1.put("teamId", 10L);
+        attributes2.put("authenticated", true);
+        attributes2.put("teamId", 20L);
+        socketHandler.registerSessionForTesting(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession2);
+        clearInvocations(mockSession2);
+
+        socketHandler.broadcastMessageToTeam(10L, Map.of("data", "team 10 message"));
+
+        verify(mockSession1).sendMessage(any(TextMessage.class));
+        verifyNoInteractions(mockSession2);
+    }
+
+    @Test
+    void sessionIndex_followsAuthPendingAssociationAndClose() throws Exception {
+        String token = "token-user-1";
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("user1");
+        user.setTeamId(10L);
+        Team team = new Team();
+        team.setId(10L);
+        when(mockUserService.validateToken(token)).thenReturn(true);
+        when(mockUserService.getUserByToken(token)).thenReturn(user);
+        when(mockTeamRepository.findTeamById(10L)).thenReturn(team);
+        socketHandler.afterConnectionEstablished(mockSession1);
+        socketHandler.handleTextMessage(mockSession1, createAuthMessage(token, true));
+        clearInvocations(mockSession1);
+
+        socketHandler.broadcastMessageToTeam(10L, Map.of("data", "to team 10"));
+        verify(mockSession1).sendMessage(any(TextMessage.class));
+
+        socketHandler.moveSessionToPending(1L);
+        clearInvocations(mockSession1);
+        socketHandler.broadcastMessageToTeam(10L, Map.of("data", "to team 10"));
+        verify(mockSession1, never()).sendMessage(any());
+
+        socketHandler.associateSessionWithTeam(1L, 20L);
+        clearInvocations(mockSession1);
+        socketHandler.broadcastMessageToTeam(20L, Map.of("data", "to team 20"));
+        verify(mockSession1).sendMessage(any(TextMessage.class));
+
+        socketHandler.afterConnectionClosed(mockSession1, CloseStatus.NORMAL);
+        clearInvocations(mockSession1);
+        socketHandler.broadcastMessageToTeam(20L, Map.of("data", "to team 20"));
+        socketHandler.closeSessionForUser(1L, "closed");
+        verify(mockSession1, never()).sendMessage(any());
+        verify(mockSession1, never()).close(any());
+        assertFalse(socketHandler.getSessionsForTesting().contains(mockSession1));
+    }
+
+    @Test
+    void newLogin_closesPreviousSession_andKeepsNewSessionIndexed() throws Exception {
+        String token = "token-user-1";
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("user1");
+        when(mockUserService.validateToken(token)).thenReturn(true);
+        when(mockUserService.getUserByToken(token)).thenReturn(user);
+        socketHandler.afterConnectionEstablished(mockSession1);
+        socketHandler.afterConnectionEstablished(mockSession2);
+        socketHandler.handleTextMessage(mockSession1, createAuthMessage(token, true));
+
+        socketHandler.handleTextMessage(mockSession2, createAuthMessage(token, true));
+        verify(mockSession1).close(CloseStatus.NORMAL.withReason("New login from another device or tab"));
+        // the close callback of the old session must not unbind the new one
+        socketHandler.afterConnectionClosed(mockSession1, CloseStatus.NORMAL);
+        socketHandler.closeSessionForUser(1L, "logout");
+
+        verify(mockSession2).close(CloseStatus.NORMAL.withReason("logout"));
+    }
+
     @Test
     void broadcastMessageToTeam_removesClosedSessionDuringIterationAndSendsToOpen() throws Exception {
         Long targetTeamId = 77L;
@@ -488,9 +612,9 @@ class SocketHandlerTest {
         attributes3.put("authenticated", true);
         attributes3.put("teamId", targetTeamId);
 
-        socketHandler.getSessionsForTesting().add(mockSession1);
-        socketHandler.getSessionsForTesting().add(mockSession2);
-        socketHandler.getSessionsForTesting().add(mockSession3);
+        socketHandler.registerSessionForTesting(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession2);
+        socketHandler.registerSessionForTesting(mockSession3);
 
         when(mockSession2.isOpen()).thenReturn(false);
 
@@ -508,7 +632,7 @@ class SocketHandlerTest {
 
     @Test
     void broadcastMessageToTeam_nullTeamIdOrPayload_logsWarningAndSkips() throws Exception {
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         attributes1.put("authenticated", true);
         attributes1.put("teamId", 10L);
 
@@ -524,7 +648,7 @@ class SocketHandlerTest {
         Long targetTeamId = 100L;
         attributes1.put("authenticated", true);
         attributes1.put("teamId", 10L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         Map<String, Object> payload = Map.of("data", "message");
 
         socketHandler.broadcastMessageToTeam(targetTeamId, payload);
@@ -539,7 +663,7 @@ class SocketHandlerTest {
         attributes1.put("authenticated", true);
 
         attributes1.put("userId", 1L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         Map<String, Object> payload = Map.of("data", "test");
 
@@ -555,7 +679,7 @@ class SocketHandlerTest {
         doThrow(new IllegalStateException("Simulated session closing")).when(mockSession1)
                 .sendMessage(any(TextMessage.class));
         attributes1.put("authenticated", true);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         Map<String, Object> payload = Map.of("data", "test");
         socketHandler.broadcastMessageToAll(payload);
@@ -567,17 +691,13 @@ class SocketHandlerTest {
     void sendCurrentTasksForTeam_sendsTasksForGivenTeam() throws Exception {
         // Arrange
         Long teamId = 42L;
-        Task task1 = new Task();
+        TaskGetDTO task1 = new TaskGetDTO();
         task1.setId(1L);
-        task1.setTeamId(teamId);
-        Task task2 = new Task();
+        TaskGetDTO task2 = new TaskGetDTO();
         task2.setId(2L);
-        task2.setTeamId(teamId);
-        Task taskOther = new Task();
-        taskOther.setId(3L);
-        taskOther.setTeamId(99L);
 
-        when(mockTaskService.getAllTasks()).thenReturn(List.of(task1, task2, taskOther));
+        when(mockTaskService.getTaskSnapshot(teamId))
+                .thenReturn(new DatabaseChangeEventDTO<>("TASKS", List.of(task1, task2), 17L));
 
         // Act
         socketHandler.sendCurrentTasksForTeam(mockSession1, teamId);
@@ -590,14 +710,15 @@ class SocketHandlerTest {
                     && payload.contains("\"id\":1")
                     && payload.contains("\"id\":2")
                     && !payload.contains("\"id\":3")
-                    && payload.contains("\"payload\":[");
+                    && payload.contains("\"payload\":[")
+                    && payload.contains("\"sequence\":17");
         }));
     }
 
     @Test
     void sendCurrentTasksForTeam_noTasksForTeam_sendsEmptyList() throws Exception {
         Long teamId = 123L;
-        when(mockTaskService.getAllTasks()).thenReturn(List.of());
+        when(mockTaskService.getTaskSnapshot(teamId)).thenReturn(new DatabaseChangeEventDTO<>("TASKS", List.of(), 0L));
 
         socketHandler.sendCurrentTasksForTeam(mockSession1, teamId);
 
@@ -610,16 +731,18 @@ class SocketHandlerTest {
     }
 
     @Test
-    void sendCurrentTasksForTeam_sendMessageThrowsIOException_logsError() throws Exception {
+    void sendCurrentTasksForTeam_sendMessageThrowsIOException_removesSession() throws Exception {
         Long teamId = 55L;
-        Task task = new Task();
+        TaskGetDTO task = new TaskGetDTO();
         task.setId(1L);
-        task.setTeamId(teamId);
+        socketHandler.registerSessionForTesting(mockSession1);
 
-        when(mockTaskService.getAllTasks()).thenReturn(List.of(task));
+        when(mockTaskService.getTaskSnapshot(teamId)).thenReturn(new DatabaseChangeEventDTO<>("TASKS", List.of(task), 1L));
         doThrow(new IOException("fail")).when(mockSession1).sendMessage(any(TextMessage.class));
 
-        assertThrows(IOException.class, () -> socketHandler.sendCurrentTasksForTeam(mockSession1, teamId));
+        // the send queue handles the failure, the caller is not affected
+        assertDoesNotThrow(() -> socketHandler.sendCurrentTasksForTeam(mockSession1, teamId));
+        assertFalse(socketHandler.getSessionsForTesting().contains(mockSession1));
     }
 
     @Test
@@ -629,7 +752,7 @@ class SocketHandlerTest {
         attributes1.put("userId", userId);
         attributes1.put("authenticated", true);
         attributes1.put("teamId", teamId);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.moveSessionToPending(userId);
 
@@ -644,7 +767,7 @@ class SocketHandlerTest {
         Long userId = 77L;
         attributes1.put("userId", userId);
         attributes1.put("authenticated", true);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.moveSessionToPending(userId);
 
@@ -659,7 +782,7 @@ class SocketHandlerTest {
         attributes1.put("userId", userId);
         attributes1.put("authenticated", true);
         when(mockSession1.isOpen()).thenReturn(false);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         socketHandler.getPendingSessionsMapForTesting().put(userId, mockSession1);
 
         socketHandler.moveSessionToPending(userId);
@@ -690,7 +813,7 @@ class SocketHandlerTest {
         Long userId = 88L;
         attributes1.put("userId", userId);
         // No "authenticated" attribute
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         socketHandler.moveSessionToPending(userId);
 
@@ -700,23 +823,25 @@ class SocketHandlerTest {
     }
 
     @Test
-    void moveSessionToPending_sendMessageThrowsIOException_logsError() throws Exception {
+    void moveSessionToPending_sendMessageThrowsIOException_dropsBrokenSession() throws Exception {
         Long userId = 66L;
         attributes1.put("userId", userId);
         attributes1.put("authenticated", true);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
         doThrow(new IOException("fail")).when(mockSession1).sendMessage(any(TextMessage.class));
 
         socketHandler.moveSessionToPending(userId);
 
-        assertTrue(socketHandler.getPendingSessionsMapForTesting().containsKey(userId));
+        // a session that can't be written to is no longer tracked, pending or not
+        assertFalse(socketHandler.getPendingSessionsMapForTesting().containsKey(userId));
+        assertFalse(socketHandler.getSessionsForTesting().contains(mockSession1));
     }
 
     @Test
     void handleTextMessage_authenticated_LOCK_callsTaskServiceLockTask() throws Exception {
         attributes1.put("authenticated", true);
         attributes1.put("userId", 123L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         String lockMessage = "{\"type\":\"LOCK\",\"payload\":{\"taskId\":\"456\"}}";
         socketHandler.handleTextMessage(mockSession1, new TextMessage(lockMessage));
@@ -731,7 +856,7 @@ class SocketHandlerTest {
     void handleTextMessage_authenticated_LOCK_invalidTaskId_logsWarning() throws Exception {
         attributes1.put("authenticated", true);
         attributes1.put("userId", 123L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         String lockMessage = "{\"type\":\"LOCK\",\"payload\":{\"taskId\":\"notANumber\"}}";
         socketHandler.handleTextMessage(mockSession1, new TextMessage(lockMessage));
@@ -745,7 +870,7 @@ class SocketHandlerTest {
     void handleTextMessage_authenticated_LOCK_taskServiceThrowsException_logsError() throws Exception {
         attributes1.put("authenticated", true);
         attributes1.put("userId", 123L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         doThrow(new RuntimeException("fail")).when(mockTaskService).lockTask(anyLong(), anyLong());
 
@@ -761,7 +886,7 @@ class SocketHandlerTest {
     void handleTextMessage_authenticated_UNLOCK_callsTaskServiceUnlockTask() throws Exception {
         attributes1.put("authenticated", true);
         attributes1.put("userId", 321L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         String unlockMessage = "{\"type\":\"UNLOCK\",\"payload\":{\"taskId\":\"789\"}}";
         socketHandler.handleTextMessage(mockSession1, new TextMessage(unlockMessage));
@@ -775,7 +900,7 @@ class SocketHandlerTest {
     void handleTextMessage_authenticated_UNLOCK_invalidTaskId_logsWarning() throws Exception {
         attributes1.put("authenticated", true);
         attributes1.put("userId", 321L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         String unlockMessage = "{\"type\":\"UNLOCK\",\"payload\":{\"taskId\":\"badId\"}}";
         socketHandler.handleTextMessage(mockSession1, new TextMessage(unlockMessage));
@@ -789,7 +914,7 @@ class SocketHandlerTest {
     void handleTextMessage_authenticated_UNLOCK_taskServiceThrowsException_logsError() throws Exception {
         attributes1.put("authenticated", true);
         attributes1.put("userId", 321L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         doThrow(new RuntimeException("fail")).when(mockTaskService).unlockTask(anyLong(), anyLong());
 
@@ -801,11 +926,57 @@ class SocketHandlerTest {
         verify(mockSession1, never()).sendMessage(any());
     }
 
+    @Test
+    void handleTextMessage_authenticated_HEARTBEAT_renewsTaskLocks() throws Exception {
+        attributes1.put("authenticated", true);
+        attributes1.put("userId", 321L);
+        socketHandler.registerSessionForTesting(mockSession1);
+
+        socketHandler.handleTextMessage(mockSession1, new TextMessage("{\"type\":\"HEARTBEAT\"}"));
+
+        verify(mockTaskService).renewTaskLocks(321L);
+        verify(mockSession1, never()).close(any());
+        verify(mockSession1, never()).sendMessage(any());
+    }
+
+    @Test
+    void handleTextMessage_authenticated_SNAPSHOT_resendsTasksOfTeam() throws Exception {
+        attributes1.put("authenticated", true);
+        attributes1.put("userId", 321L);
+        attributes1.put("teamId", 8L);
+        socketHandler.registerSessionForTesting(mockSession1);
+        TaskGetDTO task = new TaskGetDTO();
+        task.setId(5L);
+        when(mockTaskService.getTaskSnapshot(8L)).thenReturn(new DatabaseChangeEventDTO<>("TASKS", List.of(task), 40L));
+
+        socketHandler.handleTextMessage(mockSession1, new TextMessage("{\"type\":\"SNAPSHOT\"}"));
+
+        verify(mockTaskService).getTaskSnapshot(8L);
+        verify(mockSession1).sendMessage(argThat(msg -> {
+            String payload = ((TextMessage) msg).getPayload();
+            return payload.contains("\"entityType\":\"TASKS\"")
+                    && payload.contains("\"id\":5")
+                    && payload.contains("\"sequence\":40");
+        }));
+    }
+
+    @Test
+    void handleTextMessage_authenticated_SNAPSHOT_withoutTeam_sendsNothing() throws Exception {
+        attributes1.put("authenticated", true);
+        attributes1.put("userId", 321L);
+        socketHandler.registerSessionForTesting(mockSession1);
+
+        socketHandler.handleTextMessage(mockSession1, new TextMessage("{\"type\":\"SNAPSHOT\"}"));
+
+        verify(mockTaskService, never()).getTaskSnapshot(any());
+        verify(mockSession1, never()).sendMessage(any());
+    }
+
     @Test
     void handleTextMessage_authenticated_otherType_logsInfo() throws Exception {
         attributes1.put("authenticated", true);
         attributes1.put("userId", 1L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         String otherMessage = "{\"type\":\"SOMETHING_ELSE\",\"payload\":{\"foo\":\"bar\"}}";
         socketHandler.handleTextMessage(mockSession1, new TextMessage(otherMessage));
@@ -818,7 +989,7 @@ class SocketHandlerTest {
     void handleTextMessage_authenticated_typeMissing_logsInfo() throws Exception {
         attributes1.put("authenticated", true);
         attributes1.put("userId", 1L);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         String noTypeMessage = "{\"payload\":{\"foo\":\"bar\"}}";
         socketHandler.handleTextMessage(mockSession1, new TextMessage(noTypeMessage));
@@ -831,7 +1002,7 @@ class SocketHandlerTest {
     void handleTextMessage_notAuthenticated_delegatesToTryAuthenticate() throws Exception {
         // Already covered by many tests above, but check delegation
         attributes1.put("authenticated", false);
-        socketHandler.getSessionsForTesting().add(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession1);
 
         String authMessage = "{\"type\":\"auth\",\"token\":\"token123\"}";
         when(mockUserService.validateToken("token123")).thenReturn(false);
@@ -841,4 +1012,83 @@ class SocketHandlerTest {
         verify(mockUserService).validateToken("token123");
         verify(mockSession1).sendMessage(argThat(msg -> ((TextMessage) msg).getPayload().contains("Invalid token")));
     }
-}
\ No newline at end of file
+
+    @Test
+    void reapSessions_unauthenticatedPastTimeout_closesAndRemoves() throws Exception {
+        socketHandler.afterConnectionEstablished(mockSession1);
+        socketHandler.afterConnectionEstablished(mockSession2);
+        attributes1.put(SocketHandler.CONNECTED_AT_ATTRIBUTE, 1_000L);
+
+        socketHandler.reapSessions(12_000L, 10_000L, 90_000L, 30_000L);
+
+        verify(mockSession1).close(CloseStatus.POLICY_VIOLATION.withReason("Authentication timeout"));
+        assertFalse(socketHandler.getSessionsForTesting().contains(mockSession1));
+        // connected just now, still has time to authenticate
+        verify(mockSession2, never()).close(any());
+        assertTrue(socketHandler.getSessionsForTesting().contains(mockSession2));
+    }
+
+    @Test
+    void reapSessions_authenticatedWithoutHeartbeat_closesAndReleasesLocks() throws Exception {
+        attributes1.put("authenticated", true);
+        attributes1.put("userId", 7L);
+        attributes1.put("teamId", 3L);
+        attributes1.put(SocketHandler.LAST_SEEN_ATTRIBUTE, 1_000L);
+        socketHandler.registerSessionForTesting(mockSession1);
+
+        socketHandler.reapSessions(100_000L, 10_000L, 90_000L, 30_000L);
+
+        verify(mockSession1).close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Heartbeat timeout"));
+        verify(mockTaskService).unlockAllTasksForUser(7L);
+        socketHandler.broadcastMessageToTeam(3L, Map.of("data", "after reap"));
+        verify(mockSession1, never()).sendMessage(any());
+    }
+
+    @Test
+    void reapSessions_liveSession_pingedOncePerInterval_pongKeepsItAlive() throws Exception {
+        attributes1.put("authenticated", true);
+        attributes1.put("userId", 7L);
+        attributes1.put(SocketHandler.LAST_SEEN_ATTRIBUTE, 1_000L);
+        socketHandler.registerSessionForTesting(mockSession1);
+
+        socketHandler.reapSessions(40_000L, 10_000L, 90_000L, 30_000L);
+        socketHandler.reapSessions(45_000L, 10_000L, 90_000L, 30_000L);
+        verify(mockSession1, times(1)).sendMessage(any(PingMessage.class));
+
+        socketHandler.handlePongMessage(mockSession1, new PongMessage());
+        long lastSeen = (Long) attributes1.get(SocketHandler.LAST_SEEN_ATTRIBUTE);
+        socketHandler.reapSessions(lastSeen + 60_000L, 10_000L, 90_000L, 30_000L);
+
+        verify(mockSession1, times(2)).sendMessage(any(PingMessage.class));
+        verify(mockSession1, never()).close(any());
+    }
+
+    @Test
+    void reapSessions_purgesClosedAndStalePendingSessions() throws Exception {
+        attributes1.put("authenticated", true);
+        attributes1.put("userId", 1L);
+        socketHandler.registerSessionForTesting(mockSession1);
+        socketHandler.getPendingSessionsMapForTesting().put(1L, mockSession1);
+        when(mockSession1.isOpen()).thenReturn(false);
+        // pending but no longer tracked as a session
+        socketHandler.getPendingSessionsMapForTesting().put(2L, mockSession2);
+
+        socketHandler.reapSessions(2_000L, 10_000L, 90_000L, 30_000L);
+
+        assertFalse(socketHandler.getSessionsForTesting().contains(mockSession1));
+        assertTrue(socketHandler.getPendingSessionsMapForTesting().isEmpty());
+    }
+
+    @Test
+    void countSessions_connectedAuthenticatedPending() throws Exception {
+        attributes1.put("authenticated", true);
+        attributes1.put("userId", 1L);
+        socketHandler.registerSessionForTesting(mockSession1);
+        socketHandler.registerSessionForTesting(mockSession2);
+        socketHandler.getPendingSessionsMapForTesting().put(1L, mockSession1);
+
+        assertEquals(2, socketHandler.countConnectedSessions());
+        assertEquals(1, socketHandler.countAuthenticatedSessions());
+        assertEquals(1, socketHandler.countPendingSessions());
+    }
+}
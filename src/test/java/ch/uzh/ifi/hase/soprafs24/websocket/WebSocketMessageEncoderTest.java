@@ -0,0 +1,86 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.websocket.DatabaseChangeEventDTO;
+import ch.uzh.ifi.hase.soprafs24.websocket.WebSocketMessageEncoder.Encoding;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketMessageEncoderTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private WebSocketMessageEncoder encoder;
+    private DatabaseChangeEventDTO<List<Map<String, Object>>> event;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        encoder = new WebSocketMessageEncoder(meterRegistry);
+        List<Map<String, Object>> tasks = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            tasks.add(Map.of("id", id, "name", "Task " + id, "description", "Clean the kitchen",
+                    "deadline", LocalDateTime.of(2024, 5, 1, 12, 0)));
+        }
+        event = new DatabaseChangeEventDTO<>("TASKS", tasks, 3L);
+    }
+
+    @Test
+    void encode_json_isTextFrame() throws Exception {
+        WebSocketMessage<?> message = encoder.encode(event, Encoding.JSON);
+
+        assertTrue(message instanceof TextMessage);
+        assertTrue(((TextMessage) message).getPayload().contains("\"entityType\":\"TASKS\""));
+    }
+
+    @Test
+    void encode_binaryEncodings_roundTripAndAreSmallerThanJson() throws Exception {
+        int jsonSize = encoder.encode(event, Encoding.JSON).getPayloadLength();
+
+        WebSocketMessage<?> smile = encoder.encode(event, Encoding.SMILE);
+        WebSocketMessage<?> cbor = encoder.encode(event, Encoding.CBOR);
+
+        assertTrue(smile instanceof BinaryMessage);
+        assertTrue(cbor instanceof BinaryMessage);
+        JsonNode smileEvent = new ObjectMapper(new SmileFactory()).readTree(((BinaryMessage) smile).getPayload().array());
+        JsonNode cborEvent = new ObjectMapper(new CBORFactory()).readTree(((BinaryMessage) cbor).getPayload().array());
+        assertEquals("TASKS", smileEvent.get("entityType").asText());
+        assertEquals(50, smileEvent.get("payload").size());
+        assertEquals(3L, cborEvent.get("sequence").asLong());
+        assertTrue(smile.getPayloadLength() < jsonSize);
+        assertTrue(cbor.getPayloadLength() < jsonSize);
+    }
+
+    @Test
+    void encode_recordsSizeAndTimePerEncoding() throws Exception {
+        WebSocketMessage<?> message = encoder.encode(event, Encoding.SMILE);
+        encoder.encode(event, Encoding.SMILE);
+
+        assertEquals(2, meterRegistry.get(WebSocketMessageEncoder.SIZE_METRIC).tag("encoding", "smile").summary().count());
+        assertEquals(2.0 * message.getPayloadLength(),
+                meterRegistry.get(WebSocketMessageEncoder.SIZE_METRIC).tag("encoding", "smile").summary().totalAmount());
+        assertEquals(2, meterRegistry.get(WebSocketMessageEncoder.ENCODE_METRIC).tag("encoding", "smile").timer().count());
+        assertEquals(0, meterRegistry.get(WebSocketMessageEncoder.SIZE_METRIC).tag("encoding", "json").summary().count());
+    }
+
+    @Test
+    void fromName_unknownOrMissing_isJson() {
+        assertEquals(Encoding.SMILE, Encoding.fromName("smile"));
+        assertEquals(Encoding.CBOR, Encoding.fromName("CBOR"));
+        assertEquals(Encoding.JSON, Encoding.fromName("msgpack"));
+        assertEquals(Encoding.JSON, Encoding.fromName(null));
+    }
+}